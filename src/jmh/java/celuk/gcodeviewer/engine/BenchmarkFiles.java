@@ -0,0 +1,106 @@
+package celuk.gcodeviewer.engine;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Creates the GCode files used by the benchmarks. The files are written to
+ * the temp directory and reused by later runs, as the larger ones take a
+ * while to write.
+ *
+ * @author Tony Aldhous
+ */
+class BenchmarkFiles {
+    static final String SYNTHETIC = "synthetic";
+    static final String SAMPLE = "sample";
+
+    private static final String SAMPLE_RESOURCE = "/sample.gcode";
+    private static final Pattern LAYER_PATTERN = Pattern.compile(";LAYER:(\\d+)");
+
+    /**
+     * Get a GCode file with the given number of lines.
+     *
+     * @param source SYNTHETIC for generated moves, or SAMPLE for the bundled sample
+     *               repeated with increasing layer numbers.
+     * @param nLines number of lines in the file.
+     * @return path of the file.
+     */
+    static Path getFile(String source, int nLines) throws IOException {
+        Path filePath = Paths.get(System.getProperty("java.io.tmpdir"),
+                                  "GCodeViewerBenchmark-" + source + "-" + nLines + ".gcode");
+        if (!Files.isRegularFile(filePath)) {
+            Path tempPath = filePath.resolveSibling(filePath.getFileName() + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
+                if (source.equals(SAMPLE))
+                    writeSample(writer, nLines);
+                else
+                    writeSynthetic(writer, nLines);
+            }
+            Files.move(tempPath, filePath, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return filePath;
+    }
+
+    private static void writeSynthetic(BufferedWriter writer, int nLines) throws IOException {
+        int lineCount = 0;
+        int layer = 0;
+        int linesPerLayer = 2000;
+        writer.write(";Generated by BenchmarkFiles\nG90\nM83\n");
+        lineCount += 3;
+        while (lineCount < nLines) {
+            if (lineCount % linesPerLayer == 3) {
+                writer.write(";LAYER:" + layer + "\n");
+                writer.write(";TYPE:" + (layer % 2 == 0 ? "FILL" : "WALL-OUTER") + "\n");
+                writer.write("G0 F12000 Z" + (0.3 * (layer + 1)) + "\n");
+                ++layer;
+                lineCount += 3;
+            }
+            else {
+                int move = lineCount % linesPerLayer;
+                writer.write("G1 X" + (10.0 + 0.01 * move) + " Y" + (move % 2 == 0 ? 20.5 : 80.5) + " E0.0123\n");
+                ++lineCount;
+            }
+        }
+    }
+
+    private static void writeSample(BufferedWriter writer, int nLines) throws IOException {
+        List<String> sampleLines = new ArrayList<>();
+        try (InputStream in = BenchmarkFiles.class.getResourceAsStream(SAMPLE_RESOURCE)) {
+            if (in == null)
+                throw new IOException("Sample resource " + SAMPLE_RESOURCE + " not found");
+            for (String line : new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\n"))
+                sampleLines.add(line);
+        }
+
+        // Repeat the sample, renumbering the layers so they keep increasing.
+        int nSampleLayers = 0;
+        for (String line : sampleLines) {
+            if (LAYER_PATTERN.matcher(line).find())
+                ++nSampleLayers;
+        }
+        int lineCount = 0;
+        for (int repeat = 0; lineCount < nLines; ++repeat) {
+            for (int sampleIndex = 0; sampleIndex < sampleLines.size() && lineCount < nLines; ++sampleIndex) {
+                String line = sampleLines.get(sampleIndex);
+                Matcher matcher = LAYER_PATTERN.matcher(line);
+                if (matcher.find()) {
+                    int layer = Integer.parseInt(matcher.group(1)) + repeat * nSampleLayers;
+                    line = matcher.replaceFirst(";LAYER:" + layer);
+                }
+                writer.write(line);
+                writer.write('\n');
+                ++lineCount;
+            }
+        }
+    }
+}
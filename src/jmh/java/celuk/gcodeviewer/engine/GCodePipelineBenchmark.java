@@ -0,0 +1,174 @@
+package celuk.gcodeviewer.engine;
+
+import celuk.gcodeviewer.gcode.GCodeLine;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the stages of loading a GCode file: parsing, processing the
+ * lines into segments, and building the segment vertex buffer. They run
+ * headless, as none of the stages need a GL context.
+ *
+ * Each benchmark operation loads a whole file. The "lines" counter reports
+ * lines per second. Run with the gc profiler (the default in the benchmark
+ * profile) to get the bytes allocated per operation, gc.alloc.rate.norm,
+ * which divided by the number of lines gives the bytes allocated per line.
+ * The peak heap used in each iteration is printed at the end of each trial.
+ *
+ * @author Tony Aldhous
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+@State(Scope.Benchmark)
+public class GCodePipelineBenchmark {
+
+    @Param({"1000", "1000000", "10000000"})
+    public int nLines;
+
+    @Param({BenchmarkFiles.SYNTHETIC, BenchmarkFiles.SAMPLE})
+    public String source;
+
+    private String filePath;
+    private RenderParameters renderParameters;
+    private GCodeViewerConfiguration configuration;
+    private SegmentStore processedSegments;
+    private long peakHeapUsed = 0;
+
+    /**
+     * Counts the lines processed, so JMH reports them as a rate.
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class LineCounter {
+        public long lines;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            lines = 0;
+        }
+    }
+
+    /**
+     * Consumer that only keeps the parsed lines alive, so the benchmark
+     * measures the parser alone.
+     */
+    private static class ParseOnlyConsumer implements GCodeConsumer {
+        private final Blackhole blackhole;
+
+        ParseOnlyConsumer(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void reset() {
+        }
+
+        @Override
+        public void processLine(GCodeLine line) {
+            blackhole.consume(line.commandNumber);
+        }
+
+        @Override
+        public void complete() {
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        filePath = BenchmarkFiles.getFile(source, nLines).toString();
+        renderParameters = new RenderParameters();
+        configuration = new GCodeViewerConfiguration();
+        configuration.setProgressiveLoading(false);
+        configuration.setUseCache(false);
+        renderParameters.setFromConfiguration(configuration);
+
+        GCodeLineProcessor lineProcessor = processFile();
+        processedSegments = lineProcessor.getSegments();
+    }
+
+    @Setup(Level.Iteration)
+    public void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP)
+                pool.resetPeakUsage();
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void recordPeakHeap() {
+        long heapUsed = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP)
+                heapUsed += pool.getPeakUsage().getUsed();
+        }
+        peakHeapUsed = Math.max(peakHeapUsed, heapUsed);
+    }
+
+    @TearDown(Level.Trial)
+    public void reportPeakHeap() {
+        System.out.println();
+        System.out.println("Peak heap used: " + (peakHeapUsed / (1024 * 1024)) + " MB");
+    }
+
+    private GCodeLineProcessor processFile() {
+        GCodeProcessor processor = new GCodeProcessor(true);
+        GCodeLineProcessor lineProcessor = new GCodeLineProcessor(renderParameters, configuration, processor.getSettings());
+        if (!processor.processFile(filePath, lineProcessor))
+            throw new IllegalStateException("Failed to process " + filePath);
+        return lineProcessor;
+    }
+
+    @Benchmark
+    public void parse(LineCounter counter, Blackhole blackhole) {
+        GCodeProcessor processor = new GCodeProcessor(true);
+        if (!processor.processFile(filePath, new ParseOnlyConsumer(blackhole)))
+            throw new IllegalStateException("Failed to parse " + filePath);
+        counter.lines += nLines;
+    }
+
+    @Benchmark
+    public void parseParallel(LineCounter counter, Blackhole blackhole) {
+        GCodeProcessor processor = new GCodeProcessor(true);
+        if (!processor.processMappedFile(filePath, new ParseOnlyConsumer(blackhole),
+                                         Runtime.getRuntime().availableProcessors()))
+            throw new IllegalStateException("Failed to parse " + filePath);
+        counter.lines += nLines;
+    }
+
+    @Benchmark
+    public GCodeLineProcessor parseAndProcess(LineCounter counter) {
+        GCodeLineProcessor lineProcessor = processFile();
+        counter.lines += nLines;
+        return lineProcessor;
+    }
+
+    @Benchmark
+    public SegmentVertexBuffer buildVertexBuffer(LineCounter counter) {
+        SegmentVertexBuffer vertexBuffer = new SegmentVertexBuffer();
+        for (int index = 0; index < processedSegments.size(); ++index)
+            vertexBuffer.addSegment(processedSegments, index);
+        counter.lines += nLines;
+        return vertexBuffer;
+    }
+}
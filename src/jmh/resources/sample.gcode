@@ -0,0 +1,288 @@
+;Generated with Cura_SteamEngine Robox 1.5
+;# infillLayerThickness = 0.3
+;# fillExtrusionWidth_mm = 0.5
+;# nozzle0_ejectionvolume = 0.15
+M104 S210
+M140 S60
+G28 X Y
+G90
+M83
+T0 ; select nozzle 0
+G0 F12000 X50 Y50 Z0.3
+;LAYER:0 height:0.3
+;TYPE:WALL-OUTER
+G1 B1 F150 ;PARTIAL OPEN B1.0
+G1 F1800 X70.000 Y60.000 E0.0421
+G1 F1800 X69.659 Y62.588 E0.0421
+G1 F1800 X68.660 Y65.000 E0.0421
+G1 F1800 X67.071 Y67.071 E0.0421
+G1 F1800 X65.000 Y68.660 E0.0421
+G1 F1800 X62.588 Y69.659 E0.0421
+G1 F1800 X60.000 Y70.000 E0.0421
+G1 F1800 X57.412 Y69.659 E0.0421
+G1 F1800 X55.000 Y68.660 E0.0421
+G1 F1800 X52.929 Y67.071 E0.0421
+G1 F1800 X51.340 Y65.000 E0.0421
+G1 F1800 X50.341 Y62.588 E0.0421
+G1 F1800 X50.000 Y60.000 E0.0421
+G1 F1800 X50.341 Y57.412 E0.0421
+G1 F1800 X51.340 Y55.000 E0.0421
+G1 F1800 X52.929 Y52.929 E0.0421
+G1 F1800 X55.000 Y51.340 E0.0421
+G1 F1800 X57.412 Y50.341 E0.0421
+G1 F1800 X60.000 Y50.000 E0.0421
+G1 F1800 X62.588 Y50.341 E0.0421
+G1 F1800 X65.000 Y51.340 E0.0421
+G1 F1800 X67.071 Y52.929 E0.0421
+G1 F1800 X68.660 Y55.000 E0.0421
+G1 F1800 X69.659 Y57.412 E0.0421
+G1 B0 F150 ;Close
+;TYPE:WALL-INNER
+G0 F12000 X69.5 Y60
+G1 B1 F150
+G1 F2400 X69.500 Y60.000 E0.0398
+G1 F2400 X69.176 Y62.459 E0.0398
+G1 F2400 X68.227 Y64.750 E0.0398
+G1 F2400 X66.718 Y66.718 E0.0398
+G1 F2400 X64.750 Y68.227 E0.0398
+G1 F2400 X62.459 Y69.176 E0.0398
+G1 F2400 X60.000 Y69.500 E0.0398
+G1 F2400 X57.541 Y69.176 E0.0398
+G1 F2400 X55.250 Y68.227 E0.0398
+G1 F2400 X53.282 Y66.718 E0.0398
+G1 F2400 X51.773 Y64.750 E0.0398
+G1 F2400 X50.824 Y62.459 E0.0398
+G1 F2400 X50.500 Y60.000 E0.0398
+G1 F2400 X50.824 Y57.541 E0.0398
+G1 F2400 X51.773 Y55.250 E0.0398
+G1 F2400 X53.282 Y53.282 E0.0398
+G1 F2400 X55.250 Y51.773 E0.0398
+G1 F2400 X57.541 Y50.824 E0.0398
+G1 F2400 X60.000 Y50.500 E0.0398
+G1 F2400 X62.459 Y50.824 E0.0398
+G1 F2400 X64.750 Y51.773 E0.0398
+G1 F2400 X66.718 Y53.282 E0.0398
+G1 F2400 X68.227 Y55.250 E0.0398
+G1 F2400 X69.176 Y57.541 E0.0398
+G1 B0 F150
+;TYPE:FILL
+T0 ; select nozzle 0
+G0 F12000 X51.500 Y51.500
+G1 F3000 X68.500 Y51.500 D0.0802
+G0 F12000 X51.500 Y52.500
+G1 F3000 X68.500 Y52.500 D0.0802
+G0 F12000 X51.500 Y53.500
+G1 F3000 X68.500 Y53.500 D0.0802
+G0 F12000 X51.500 Y54.500
+G1 F3000 X68.500 Y54.500 D0.0802
+G0 F12000 X51.500 Y55.500
+G1 F3000 X68.500 Y55.500 D0.0802
+G0 F12000 X51.500 Y56.500
+G1 F3000 X68.500 Y56.500 D0.0802
+G0 F12000 X51.500 Y57.500
+G1 F3000 X68.500 Y57.500 D0.0802
+G0 F12000 X51.500 Y58.500
+G1 F3000 X68.500 Y58.500 D0.0802
+G0 F12000 X51.500 Y59.500
+G1 F3000 X68.500 Y59.500 D0.0802
+G0 F12000 X51.500 Y60.500
+G1 F3000 X68.500 Y60.500 D0.0802
+G0 F12000 X51.500 Y61.500
+G1 F3000 X68.500 Y61.500 D0.0802
+G0 F12000 X51.500 Y62.500
+G1 F3000 X68.500 Y62.500 D0.0802
+G0 F12000 X51.500 Y63.500
+G1 F3000 X68.500 Y63.500 D0.0802
+G0 F12000 X51.500 Y64.500
+G1 F3000 X68.500 Y64.500 D0.0802
+G0 F12000 X51.500 Y65.500
+G1 F3000 X68.500 Y65.500 D0.0802
+G0 F12000 X51.500 Y66.500
+G1 F3000 X68.500 Y66.500 D0.0802
+G0 F12000 Z0.6
+;LAYER:1 height:0.6
+;TYPE:WALL-OUTER
+G1 B1 F150 ;PARTIAL OPEN B1.0
+G1 F1800 X70.000 Y60.000 E0.0421
+G1 F1800 X69.659 Y62.588 E0.0421
+G1 F1800 X68.660 Y65.000 E0.0421
+G1 F1800 X67.071 Y67.071 E0.0421
+G1 F1800 X65.000 Y68.660 E0.0421
+G1 F1800 X62.588 Y69.659 E0.0421
+G1 F1800 X60.000 Y70.000 E0.0421
+G1 F1800 X57.412 Y69.659 E0.0421
+G1 F1800 X55.000 Y68.660 E0.0421
+G1 F1800 X52.929 Y67.071 E0.0421
+G1 F1800 X51.340 Y65.000 E0.0421
+G1 F1800 X50.341 Y62.588 E0.0421
+G1 F1800 X50.000 Y60.000 E0.0421
+G1 F1800 X50.341 Y57.412 E0.0421
+G1 F1800 X51.340 Y55.000 E0.0421
+G1 F1800 X52.929 Y52.929 E0.0421
+G1 F1800 X55.000 Y51.340 E0.0421
+G1 F1800 X57.412 Y50.341 E0.0421
+G1 F1800 X60.000 Y50.000 E0.0421
+G1 F1800 X62.588 Y50.341 E0.0421
+G1 F1800 X65.000 Y51.340 E0.0421
+G1 F1800 X67.071 Y52.929 E0.0421
+G1 F1800 X68.660 Y55.000 E0.0421
+G1 F1800 X69.659 Y57.412 E0.0421
+G1 B0 F150 ;Close
+;TYPE:WALL-INNER
+G0 F12000 X69.5 Y60
+G1 B1 F150
+G1 F2400 X69.500 Y60.000 E0.0398
+G1 F2400 X69.176 Y62.459 E0.0398
+G1 F2400 X68.227 Y64.750 E0.0398
+G1 F2400 X66.718 Y66.718 E0.0398
+G1 F2400 X64.750 Y68.227 E0.0398
+G1 F2400 X62.459 Y69.176 E0.0398
+G1 F2400 X60.000 Y69.500 E0.0398
+G1 F2400 X57.541 Y69.176 E0.0398
+G1 F2400 X55.250 Y68.227 E0.0398
+G1 F2400 X53.282 Y66.718 E0.0398
+G1 F2400 X51.773 Y64.750 E0.0398
+G1 F2400 X50.824 Y62.459 E0.0398
+G1 F2400 X50.500 Y60.000 E0.0398
+G1 F2400 X50.824 Y57.541 E0.0398
+G1 F2400 X51.773 Y55.250 E0.0398
+G1 F2400 X53.282 Y53.282 E0.0398
+G1 F2400 X55.250 Y51.773 E0.0398
+G1 F2400 X57.541 Y50.824 E0.0398
+G1 F2400 X60.000 Y50.500 E0.0398
+G1 F2400 X62.459 Y50.824 E0.0398
+G1 F2400 X64.750 Y51.773 E0.0398
+G1 F2400 X66.718 Y53.282 E0.0398
+G1 F2400 X68.227 Y55.250 E0.0398
+G1 F2400 X69.176 Y57.541 E0.0398
+G1 B0 F150
+;TYPE:FILL
+T1 ; select nozzle 1
+G0 F12000 X51.500 Y51.500
+G1 F3000 X68.500 Y51.500 D0.0802
+G0 F12000 X51.500 Y52.500
+G1 F3000 X68.500 Y52.500 D0.0802
+G0 F12000 X51.500 Y53.500
+G1 F3000 X68.500 Y53.500 D0.0802
+G0 F12000 X51.500 Y54.500
+G1 F3000 X68.500 Y54.500 D0.0802
+G0 F12000 X51.500 Y55.500
+G1 F3000 X68.500 Y55.500 D0.0802
+G0 F12000 X51.500 Y56.500
+G1 F3000 X68.500 Y56.500 D0.0802
+G0 F12000 X51.500 Y57.500
+G1 F3000 X68.500 Y57.500 D0.0802
+G0 F12000 X51.500 Y58.500
+G1 F3000 X68.500 Y58.500 D0.0802
+G0 F12000 X51.500 Y59.500
+G1 F3000 X68.500 Y59.500 D0.0802
+G0 F12000 X51.500 Y60.500
+G1 F3000 X68.500 Y60.500 D0.0802
+G0 F12000 X51.500 Y61.500
+G1 F3000 X68.500 Y61.500 D0.0802
+G0 F12000 X51.500 Y62.500
+G1 F3000 X68.500 Y62.500 D0.0802
+G0 F12000 X51.500 Y63.500
+G1 F3000 X68.500 Y63.500 D0.0802
+G0 F12000 X51.500 Y64.500
+G1 F3000 X68.500 Y64.500 D0.0802
+G0 F12000 X51.500 Y65.500
+G1 F3000 X68.500 Y65.500 D0.0802
+G0 F12000 X51.500 Y66.500
+G1 F3000 X68.500 Y66.500 D0.0802
+G0 F12000 Z0.9
+;LAYER:2 height:0.9
+;TYPE:WALL-OUTER
+G1 B1 F150 ;PARTIAL OPEN B1.0
+G1 F1800 X70.000 Y60.000 E0.0421
+G1 F1800 X69.659 Y62.588 E0.0421
+G1 F1800 X68.660 Y65.000 E0.0421
+G1 F1800 X67.071 Y67.071 E0.0421
+G1 F1800 X65.000 Y68.660 E0.0421
+G1 F1800 X62.588 Y69.659 E0.0421
+G1 F1800 X60.000 Y70.000 E0.0421
+G1 F1800 X57.412 Y69.659 E0.0421
+G1 F1800 X55.000 Y68.660 E0.0421
+G1 F1800 X52.929 Y67.071 E0.0421
+G1 F1800 X51.340 Y65.000 E0.0421
+G1 F1800 X50.341 Y62.588 E0.0421
+G1 F1800 X50.000 Y60.000 E0.0421
+G1 F1800 X50.341 Y57.412 E0.0421
+G1 F1800 X51.340 Y55.000 E0.0421
+G1 F1800 X52.929 Y52.929 E0.0421
+G1 F1800 X55.000 Y51.340 E0.0421
+G1 F1800 X57.412 Y50.341 E0.0421
+G1 F1800 X60.000 Y50.000 E0.0421
+G1 F1800 X62.588 Y50.341 E0.0421
+G1 F1800 X65.000 Y51.340 E0.0421
+G1 F1800 X67.071 Y52.929 E0.0421
+G1 F1800 X68.660 Y55.000 E0.0421
+G1 F1800 X69.659 Y57.412 E0.0421
+G1 B0 F150 ;Close
+;TYPE:WALL-INNER
+G0 F12000 X69.5 Y60
+G1 B1 F150
+G1 F2400 X69.500 Y60.000 E0.0398
+G1 F2400 X69.176 Y62.459 E0.0398
+G1 F2400 X68.227 Y64.750 E0.0398
+G1 F2400 X66.718 Y66.718 E0.0398
+G1 F2400 X64.750 Y68.227 E0.0398
+G1 F2400 X62.459 Y69.176 E0.0398
+G1 F2400 X60.000 Y69.500 E0.0398
+G1 F2400 X57.541 Y69.176 E0.0398
+G1 F2400 X55.250 Y68.227 E0.0398
+G1 F2400 X53.282 Y66.718 E0.0398
+G1 F2400 X51.773 Y64.750 E0.0398
+G1 F2400 X50.824 Y62.459 E0.0398
+G1 F2400 X50.500 Y60.000 E0.0398
+G1 F2400 X50.824 Y57.541 E0.0398
+G1 F2400 X51.773 Y55.250 E0.0398
+G1 F2400 X53.282 Y53.282 E0.0398
+G1 F2400 X55.250 Y51.773 E0.0398
+G1 F2400 X57.541 Y50.824 E0.0398
+G1 F2400 X60.000 Y50.500 E0.0398
+G1 F2400 X62.459 Y50.824 E0.0398
+G1 F2400 X64.750 Y51.773 E0.0398
+G1 F2400 X66.718 Y53.282 E0.0398
+G1 F2400 X68.227 Y55.250 E0.0398
+G1 F2400 X69.176 Y57.541 E0.0398
+G1 B0 F150
+;TYPE:FILL
+T0 ; select nozzle 0
+G0 F12000 X51.500 Y51.500
+G1 F3000 X68.500 Y51.500 D0.0802
+G0 F12000 X51.500 Y52.500
+G1 F3000 X68.500 Y52.500 D0.0802
+G0 F12000 X51.500 Y53.500
+G1 F3000 X68.500 Y53.500 D0.0802
+G0 F12000 X51.500 Y54.500
+G1 F3000 X68.500 Y54.500 D0.0802
+G0 F12000 X51.500 Y55.500
+G1 F3000 X68.500 Y55.500 D0.0802
+G0 F12000 X51.500 Y56.500
+G1 F3000 X68.500 Y56.500 D0.0802
+G0 F12000 X51.500 Y57.500
+G1 F3000 X68.500 Y57.500 D0.0802
+G0 F12000 X51.500 Y58.500
+G1 F3000 X68.500 Y58.500 D0.0802
+G0 F12000 X51.500 Y59.500
+G1 F3000 X68.500 Y59.500 D0.0802
+G0 F12000 X51.500 Y60.500
+G1 F3000 X68.500 Y60.500 D0.0802
+G0 F12000 X51.500 Y61.500
+G1 F3000 X68.500 Y61.500 D0.0802
+G0 F12000 X51.500 Y62.500
+G1 F3000 X68.500 Y62.500 D0.0802
+G0 F12000 X51.500 Y63.500
+G1 F3000 X68.500 Y63.500 D0.0802
+G0 F12000 X51.500 Y64.500
+G1 F3000 X68.500 Y64.500 D0.0802
+G0 F12000 X51.500 Y65.500
+G1 F3000 X68.500 Y65.500 D0.0802
+G0 F12000 X51.500 Y66.500
+G1 F3000 X68.500 Y66.500 D0.0802
+G0 F12000 Z1.2
+M104 S0
+M140 S0
+G28 X Y
+M84
@@ -5,6 +5,7 @@
  */
 package celuk.gcodeviewer.comms;
 
+import celuk.gcodeviewer.engine.LoadMetrics;
 import celuk.gcodeviewer.engine.RenderParameters;
 import celuk.gcodeviewer.engine.RenderingEngine;
 import celuk.gcodeviewer.entities.Entity;
@@ -82,6 +83,15 @@ public class CommandHandler {
                                 processColourCommand(command, commandScanner);
                                 break;
 
+                            case "detail":
+                            case "de":
+                                if (commandScanner.hasNextFloat()) {
+                                    renderParameters.setLodLineWidth(commandScanner.nextFloat());
+                                    if (commandScanner.hasNextFloat())
+                                        renderParameters.setLodMergeWidth(commandScanner.nextFloat());
+                                }
+                                break;
+
                             case "extruder-letter":
                             case "ex":
                                 if (commandScanner.hasNext()) {
@@ -171,6 +181,11 @@ public class CommandHandler {
                                 renderingEngine.setPrinterType(printerType);
                                 break;
 
+                            case "renderer":
+                            case "re":
+                                processRendererCommand(command, commandScanner);
+                                break;
+
                             case "restore":
                             case "r":
                                 renderParameters.setWindowAction(RenderParameters.WindowAction.WINDOW_RESTORE);
@@ -181,6 +196,11 @@ public class CommandHandler {
                                 processShowCommand(command, commandScanner);
                                 break;
 
+                            case "stats":
+                            case "st":
+                                processStatsCommand(commandScanner);
+                                break;
+
                             case "tool":
                             case "to":
                                 processToolCommand(command, commandScanner);
@@ -274,7 +294,6 @@ public class CommandHandler {
                 if (dataIndex >= 0)
                 {
                     renderingEngine.colourSegmentsFromData(dataIndex);
-                    renderingEngine.reloadSegmentColours();
                     renderParameters.setColourMode(RenderParameters.ColourMode.COLOUR_AS_DATA);
                 }
                 break;
@@ -347,6 +366,29 @@ public class CommandHandler {
         }
     }
 
+    private void processRendererCommand(String command, Scanner commandScanner) {
+        String commandParameter = commandScanner.next().toLowerCase();
+        switch (commandParameter) {
+            case "geometry":
+            case "g":
+                renderParameters.setSegmentRendering(RenderParameters.SegmentRendering.GEOMETRY_SHADER);
+                break;
+
+            case "instanced":
+            case "i":
+                renderParameters.setSegmentRendering(RenderParameters.SegmentRendering.INSTANCED);
+                break;
+
+            case "cached":
+            case "c":
+                renderParameters.setSegmentRendering(RenderParameters.SegmentRendering.FEEDBACK_CACHE);
+                break;
+
+            default:
+                System.out.println("Unrecognised renderer in command " + command);
+        }
+    }
+
     private void processShowCommand(String command, Scanner commandScanner) {
         String  commandParameter = commandScanner.next().toLowerCase();
         switch (commandParameter) {
@@ -383,6 +425,21 @@ public class CommandHandler {
         }
     }
 
+    private void processStatsCommand(Scanner commandScanner) {
+        // "stats" prints the metrics of the latest load, "stats all" those of all the recent loads.
+        if (commandScanner.hasNext() && commandScanner.next().equalsIgnoreCase("all")) {
+            for (LoadMetrics metrics : renderingEngine.getLoadMetricsRegistry().getRecent())
+                System.out.println("stats " + metrics.getSummary());
+        }
+        else {
+            LoadMetrics metrics = renderingEngine.getLoadMetricsRegistry().getLatest();
+            if (metrics != null)
+                System.out.println("stats " + metrics.getSummary());
+            else
+                System.out.println("stats status=none");
+        }
+    }
+
     private void processToolCommand(String command, Scanner commandScanner) {
         int toolIndex = -1;
         String commandParameter = "";
@@ -0,0 +1,199 @@
+package celuk.gcodeviewer.engine;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import libertysystems.stenographer.Stenographer;
+import libertysystems.stenographer.StenographerFactory;
+import static org.lwjgl.glfw.GLFW.*;
+import org.lwjgl.opengl.GL;
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL32.*;
+import static org.lwjgl.system.MemoryUtil.NULL;
+
+/**
+ * Uploads vertex buffers on a thread of its own, with an OpenGL context
+ * shared with the main window, so large uploads do not stall the render loop.
+ *
+ * The shared context belongs to a hidden window, which must be created and
+ * destroyed on the main thread. Each buffer is uploaded in slices, flushing
+ * after each one, and is only reported as complete once a fence placed after
+ * its last slice has signalled, so the main thread never draws from a buffer
+ * that is still being written. Vertex arrays are not shared between contexts,
+ * so they are created on the main thread from the uploaded buffers.
+ *
+ * @author Tony Aldhous
+ */
+public class BufferUploader {
+
+    private final static Stenographer STENO = StenographerFactory.getStenographer(BufferUploader.class.getName());
+
+    // Size of the slices in which the buffers are uploaded.
+    private static final int SLICE_BYTES = 4 * 1024 * 1024;
+    private static final long FENCE_TIMEOUT_NS = 100000000L;
+
+    /**
+     * A buffer queued for upload. The VBO id is valid once the upload is complete.
+     */
+    public static class PendingBuffer {
+        private final List<ByteBuffer> data;
+        private int vboId = 0;
+        private boolean complete = false;
+        private boolean cancelled = false;
+
+        private PendingBuffer(List<ByteBuffer> data) {
+            this.data = data;
+        }
+
+        public synchronized boolean isComplete() {
+            return complete;
+        }
+
+        public synchronized int getVboId() {
+            return vboId;
+        }
+
+        /**
+         * Delete the buffer, now if it has been uploaded, otherwise when the upload completes.
+         */
+        public synchronized void cancel() {
+            cancelled = true;
+            if (complete && vboId != 0) {
+                glDeleteBuffers(vboId);
+                vboId = 0;
+            }
+        }
+
+        private synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * @return false if the buffer was cancelled, in which case it must be deleted by the caller.
+         */
+        private synchronized boolean setComplete(int vboId) {
+            complete = true;
+            if (!cancelled)
+                this.vboId = vboId;
+            return !cancelled;
+        }
+    }
+
+    private static final PendingBuffer STOP = new PendingBuffer(null);
+
+    private final long uploadWindowId;
+    private final LinkedBlockingQueue<PendingBuffer> queue = new LinkedBlockingQueue<>();
+    private final Thread uploadThread;
+    private volatile boolean running = true;
+
+    private BufferUploader(long uploadWindowId) {
+        this.uploadWindowId = uploadWindowId;
+        uploadThread = new Thread(this::run, "BufferUploader");
+        uploadThread.setDaemon(true);
+        uploadThread.start();
+    }
+
+    /**
+     * Create an uploader with a context shared with the given window. Must be
+     * called on the main thread.
+     *
+     * @return the uploader, or null if the shared context could not be created.
+     */
+    public static BufferUploader create(long sharedWindowId) {
+        glfwDefaultWindowHints();
+        glfwWindowHint(GLFW_CONTEXT_VERSION_MAJOR, 3);
+        glfwWindowHint(GLFW_CONTEXT_VERSION_MINOR, 3);
+        glfwWindowHint(GLFW_OPENGL_FORWARD_COMPAT, GL_TRUE);
+        glfwWindowHint(GLFW_OPENGL_PROFILE, GLFW_OPENGL_CORE_PROFILE);
+        glfwWindowHint(GLFW_VISIBLE, GLFW_FALSE);
+        long uploadWindowId = glfwCreateWindow(1, 1, "", NULL, sharedWindowId);
+        glfwDefaultWindowHints();
+        if (uploadWindowId == NULL) {
+            STENO.warning("Unable to create a shared context - buffers will be uploaded on the main thread");
+            return null;
+        }
+        return new BufferUploader(uploadWindowId);
+    }
+
+    /**
+     * Queue the data of a buffer for upload.
+     *
+     * @param data buffers holding the data, each from position zero to the limit,
+     *             which must not be changed until the upload is complete.
+     * @return the pending buffer.
+     */
+    public PendingBuffer upload(List<ByteBuffer> data) {
+        PendingBuffer buffer = new PendingBuffer(data);
+        queue.add(buffer);
+        return buffer;
+    }
+
+    /**
+     * Stop the upload thread and destroy the shared context. Must be called on the main thread.
+     */
+    public void cleanUp() {
+        running = false;
+        queue.add(STOP);
+        try {
+            uploadThread.join();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        glfwDestroyWindow(uploadWindowId);
+    }
+
+    private void run() {
+        glfwMakeContextCurrent(uploadWindowId);
+        GL.createCapabilities();
+        try {
+            while (running) {
+                PendingBuffer buffer = queue.take();
+                if (buffer != STOP && !buffer.isCancelled())
+                    uploadBuffer(buffer);
+            }
+        }
+        catch (InterruptedException ex) {
+            // Stop uploading.
+        }
+        finally {
+            GL.setCapabilities(null);
+            glfwMakeContextCurrent(NULL);
+        }
+    }
+
+    private void uploadBuffer(PendingBuffer buffer) {
+        long size = 0;
+        for (ByteBuffer data : buffer.data)
+            size += data.limit();
+        int vboId = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, vboId);
+        glBufferData(GL_ARRAY_BUFFER, size, GL_STATIC_DRAW);
+        long offset = 0;
+        for (ByteBuffer data : buffer.data) {
+            for (int position = 0; position < data.limit() && running; position += SLICE_BYTES) {
+                ByteBuffer slice = data.duplicate();
+                slice.position(position);
+                slice.limit(Math.min(position + SLICE_BYTES, data.limit()));
+                glBufferSubData(GL_ARRAY_BUFFER, offset + position, slice);
+                // Let the driver start on each slice, so the uploads are spread out.
+                glFlush();
+            }
+            offset += data.limit();
+        }
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+
+        long fence = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        int result = glClientWaitSync(fence, GL_SYNC_FLUSH_COMMANDS_BIT, FENCE_TIMEOUT_NS);
+        while (result == GL_TIMEOUT_EXPIRED && running)
+            result = glClientWaitSync(fence, 0, FENCE_TIMEOUT_NS);
+        glDeleteSync(fence);
+        if (result == GL_WAIT_FAILED)
+            STENO.error("Failed to wait for a buffer upload");
+
+        if (!buffer.setComplete(vboId))
+            glDeleteBuffers(vboId);
+        glfwPostEmptyEvent(); // Wake up main thread.
+    }
+}
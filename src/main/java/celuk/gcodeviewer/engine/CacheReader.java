@@ -0,0 +1,58 @@
+package celuk.gcodeviewer.engine;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the values and arrays written by CacheWriter from a memory mapped
+ * cache file. Arrays are copied with bulk gets, rather than value by value.
+ *
+ * A BufferUnderflowException is thrown if the file is truncated.
+ *
+ * @author Tony Aldhous
+ */
+class CacheReader {
+    private final ByteBuffer buffer;
+
+    CacheReader(ByteBuffer buffer) {
+        this.buffer = buffer.order(ByteOrder.nativeOrder());
+    }
+
+    int readInt() {
+        return buffer.getInt();
+    }
+
+    long readLong() {
+        return buffer.getLong();
+    }
+
+    double readDouble() {
+        return buffer.getDouble();
+    }
+
+    boolean readBoolean() {
+        return buffer.getInt() != 0;
+    }
+
+    String readString() {
+        byte[] bytes = new byte[readInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    void readFloats(float[] values, int count) {
+        buffer.asFloatBuffer().get(values, 0, count);
+        buffer.position(buffer.position() + 4 * count);
+    }
+
+    void readInts(int[] values, int count) {
+        buffer.asIntBuffer().get(values, 0, count);
+        buffer.position(buffer.position() + 4 * count);
+    }
+
+    void readLongs(long[] values, int count) {
+        buffer.asLongBuffer().get(values, 0, count);
+        buffer.position(buffer.position() + 8 * count);
+    }
+}
@@ -0,0 +1,110 @@
+package celuk.gcodeviewer.engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import org.lwjgl.BufferUtils;
+
+/**
+ * Writes the primitive values and arrays of a cache file through a direct
+ * buffer, in native byte order, so they can be read back in bulk from a
+ * memory mapped file by CacheReader.
+ *
+ * @author Tony Aldhous
+ */
+class CacheWriter {
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = BufferUtils.createByteBuffer(BUFFER_SIZE).order(ByteOrder.nativeOrder());
+    private long size = 0;
+
+    CacheWriter(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    private void ensureSpace(int nBytes) throws IOException {
+        if (buffer.remaining() < nBytes)
+            flush();
+    }
+
+    void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            size += channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * @return number of bytes written, including those still in the buffer.
+     */
+    long size() {
+        return size + buffer.position();
+    }
+
+    void writeInt(int value) throws IOException {
+        ensureSpace(4);
+        buffer.putInt(value);
+    }
+
+    void writeLong(long value) throws IOException {
+        ensureSpace(8);
+        buffer.putLong(value);
+    }
+
+    void writeDouble(double value) throws IOException {
+        ensureSpace(8);
+        buffer.putDouble(value);
+    }
+
+    void writeBoolean(boolean value) throws IOException {
+        writeInt(value ? 1 : 0);
+    }
+
+    void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeInt(bytes.length);
+        int offset = 0;
+        while (offset < bytes.length) {
+            ensureSpace(1);
+            int n = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, n);
+            offset += n;
+        }
+    }
+
+    void writeFloats(float[] values, int count) throws IOException {
+        int offset = 0;
+        while (offset < count) {
+            ensureSpace(4);
+            int n = Math.min(buffer.remaining() / 4, count - offset);
+            buffer.asFloatBuffer().put(values, offset, n);
+            buffer.position(buffer.position() + 4 * n);
+            offset += n;
+        }
+    }
+
+    void writeInts(int[] values, int count) throws IOException {
+        int offset = 0;
+        while (offset < count) {
+            ensureSpace(4);
+            int n = Math.min(buffer.remaining() / 4, count - offset);
+            buffer.asIntBuffer().put(values, offset, n);
+            buffer.position(buffer.position() + 4 * n);
+            offset += n;
+        }
+    }
+
+    void writeLongs(long[] values, int count) throws IOException {
+        int offset = 0;
+        while (offset < count) {
+            ensureSpace(8);
+            int n = Math.min(buffer.remaining() / 8, count - offset);
+            buffer.asLongBuffer().put(values, offset, n);
+            buffer.position(buffer.position() + 8 * n);
+            offset += n;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package celuk.gcodeviewer.engine;
+
+import org.joml.FrustumIntersection;
+import org.joml.Vector3f;
+
+/**
+ * Level of detail at which each chunk of segments is drawn in a frame.
+ *
+ * Chunks outside the view frustum are culled. The other chunks are drawn in
+ * full, unless their widest segment is narrower on screen than the line width
+ * threshold, in which case they are drawn as lines, or narrower than the merge
+ * width threshold, in which case they are drawn as lines from the merged
+ * segments. A threshold of zero disables its level.
+ *
+ * The levels are bit flags, so renderers can be asked for several levels at once.
+ *
+ * @author Tony Aldhous
+ */
+public class ChunkSelection {
+
+    public static final int CULLED = 0;
+    public static final int FULL = 1;
+    public static final int LINES = 2;
+    public static final int MERGED = 4;
+
+    private byte[] levels = new byte[0];
+    private int nChunks = 0;
+    // Bits set for each level selected for at least one chunk.
+    private int selectedLevels = 0;
+
+    public void clear() {
+        nChunks = 0;
+        selectedLevels = 0;
+    }
+
+    public int getNumberOfChunks() {
+        return nChunks;
+    }
+
+    public int getLevel(int chunk) {
+        return levels[chunk];
+    }
+
+    /**
+     * @return true if any chunk is drawn at one of the given levels.
+     */
+    public boolean hasLevel(int levelFlags) {
+        return (selectedLevels & levelFlags) != 0;
+    }
+
+    /**
+     * Select the level of each chunk.
+     *
+     * @param bounds bounds of the chunks.
+     * @param frustum view frustum.
+     * @param eye position of the camera.
+     * @param pixelScale size in pixels of a unit length at unit distance from the camera.
+     * @param lineWidth width in pixels below which segments are drawn as lines.
+     * @param mergeWidth width in pixels below which segments are drawn as merged lines.
+     */
+    public void select(SegmentBounds bounds, FrustumIntersection frustum, Vector3f eye,
+                       float pixelScale, float lineWidth, float mergeWidth) {
+        nChunks = bounds.getNumberOfChunks();
+        selectedLevels = 0;
+        if (levels.length < nChunks)
+            levels = new byte[Math.max(nChunks, 2 * levels.length)];
+        for (int chunk = 0; chunk < nChunks; ++chunk) {
+            int level = CULLED;
+            if (bounds.isChunkVisible(chunk, frustum)) {
+                // Use the nearest point of the chunk, so no part of it is drawn with too little detail.
+                float distance = Math.max(bounds.getChunkDistance(chunk, eye), 1.0f);
+                float width = bounds.getChunkWidth(chunk) * pixelScale / distance;
+                if (width < mergeWidth)
+                    level = MERGED;
+                else if (width < lineWidth)
+                    level = LINES;
+                else
+                    level = FULL;
+            }
+            levels[chunk] = (byte)level;
+            selectedLevels |= level;
+        }
+    }
+
+    /**
+     * Draw the merged chunks holding the first and last visible segments as
+     * lines from the original segments. A merged segment takes the line number
+     * of its first segment, so it cannot be trimmed to the visible lines.
+     *
+     * @param bounds bounds of the chunks.
+     * @param firstSegment first visible segment.
+     * @param endSegment segment after the last visible segment.
+     */
+    public void unmergeVisibleEnds(SegmentBounds bounds, int firstSegment, int endSegment) {
+        if (firstSegment < endSegment) {
+            unmergeChunk(bounds.findChunk(firstSegment));
+            unmergeChunk(bounds.findChunk(endSegment - 1));
+        }
+    }
+
+    private void unmergeChunk(int chunk) {
+        if (chunk < nChunks && levels[chunk] == MERGED) {
+            levels[chunk] = LINES;
+            selectedLevels = 0;
+            for (int c = 0; c < nChunks; ++c)
+                selectedLevels |= levels[c];
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package celuk.gcodeviewer.engine;
+
+import java.nio.IntBuffer;
+import org.lwjgl.BufferUtils;
+
+/**
+ * List of ranges of vertices to be drawn, held in the first and count buffers
+ * expected by glMultiDrawArrays. Ranges that follow on from the previous range
+ * are merged into it, so the list is as short as possible.
+ *
+ * The buffers are reused from frame to frame, and only grow when required.
+ *
+ * An offset can be set, which is added to the first vertex of the ranges
+ * added after it, to draw segments from the slots of a paged entity.
+ *
+ * @author Tony Aldhous
+ */
+public class DrawList {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private IntBuffer firsts = BufferUtils.createIntBuffer(INITIAL_CAPACITY);
+    private IntBuffer counts = BufferUtils.createIntBuffer(INITIAL_CAPACITY);
+    private int size = 0;
+    private int offset = 0;
+
+    public void clear() {
+        size = 0;
+        offset = 0;
+    }
+
+    /**
+     * Set the offset added to the first vertex of the ranges added after it.
+     */
+    public void setOffset(int offset) {
+        this.offset = offset;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Add a range of vertices to the list.
+     *
+     * @param first first vertex of the range.
+     * @param count number of vertices in the range.
+     */
+    public void add(int first, int count) {
+        if (count <= 0)
+            return;
+        first += offset;
+        // The buffers may have been limited by getFirsts() and getCounts().
+        firsts.limit(firsts.capacity());
+        counts.limit(counts.capacity());
+        if (size > 0 && firsts.get(size - 1) + counts.get(size - 1) == first) {
+            counts.put(size - 1, counts.get(size - 1) + count);
+            return;
+        }
+        if (size == firsts.capacity()) {
+            firsts = grow(firsts);
+            counts = grow(counts);
+        }
+        firsts.put(size, first);
+        counts.put(size, count);
+        ++size;
+    }
+
+    public int getFirst(int index) {
+        return firsts.get(index);
+    }
+
+    public int getCount(int index) {
+        return counts.get(index);
+    }
+
+    /**
+     * @return the first vertices of the ranges, limited to the size of the list.
+     */
+    public IntBuffer getFirsts() {
+        firsts.position(0);
+        firsts.limit(size);
+        return firsts;
+    }
+
+    /**
+     * @return the vertex counts of the ranges, limited to the size of the list.
+     */
+    public IntBuffer getCounts() {
+        counts.position(0);
+        counts.limit(size);
+        return counts;
+    }
+
+    private IntBuffer grow(IntBuffer buffer) {
+        IntBuffer grownBuffer = BufferUtils.createIntBuffer(2 * buffer.capacity());
+        buffer.position(0);
+        buffer.limit(size);
+        grownBuffer.put(buffer);
+        grownBuffer.clear();
+        return grownBuffer;
+    }
+}
@@ -0,0 +1,364 @@
+package celuk.gcodeviewer.engine;
+
+import celuk.gcodeviewer.entities.Entity;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.CRC32C;
+import libertysystems.stenographer.Stenographer;
+import libertysystems.stenographer.StenographerFactory;
+
+/**
+ * Cache of the results of processing GCode files, so a file that is loaded
+ * again does not have to be parsed.
+ *
+ * Each GCode file has a binary cache file in the cache directory, named from
+ * a hash of the path of the GCode file. The cache file holds the segments,
+ * moves, layer map, tool and type sets, settings, data ranges and line starts.
+ * It is only used if the size, modification time and CRC of the GCode file,
+ * and the configuration that affects the segments, match those recorded
+ * when it was written.
+ *
+ * The CRC only covers a block at the start and a block at the end of the
+ * GCode file, so checking a cache hit does not read the whole file. This
+ * trusts the size and modification time to catch changes to the middle of
+ * the file, which misses an edit that keeps both the same. The header and
+ * the end of the file are where slicers write the settings and statistics
+ * that differ between slices.
+ *
+ * The cache file is mapped while it is read, and the mapping is released
+ * as soon as the columns have been copied out of it, so the file can be
+ * replaced or evicted while the GCode is displayed.
+ *
+ * The total size of the cache files is limited by deleting the least recently
+ * used files.
+ *
+ * @author Tony Aldhous
+ */
+public class GCodeCache {
+    private static final Stenographer STENO = StenographerFactory.getStenographer(GCodeCache.class.getName());
+
+    static final String CACHE_FILE_EXTENSION = ".gcvcache";
+    private static final int MAGIC = 0x43564347; // "GCVC"
+    private static final int VERSION = 2;
+    private static final int MAX_TOOLS = 16;
+    private static final int HASH_BLOCK_SIZE = 64 * 1024;
+
+    private final Path cacheDirectory;
+    private final long sizeLimit;
+
+    /**
+     * @param cacheDirectory directory holding the cache files.
+     * @param sizeLimit maximum total size of the cache files in bytes.
+     */
+    public GCodeCache(Path cacheDirectory, long sizeLimit) {
+        this.cacheDirectory = cacheDirectory;
+        this.sizeLimit = sizeLimit;
+    }
+
+    /**
+     * @return the cache set up by the configuration, or null if the cache is not used.
+     */
+    public static GCodeCache fromConfiguration(GCodeViewerConfiguration configuration) {
+        if (!configuration.getUseCache())
+            return null;
+        String directory = configuration.getCacheDirectory();
+        Path cacheDirectory = (directory == null || directory.isEmpty())
+                                ? Paths.get(System.getProperty("java.io.tmpdir"), "GCodeViewerCache")
+                                : Paths.get(directory);
+        return new GCodeCache(cacheDirectory, 1024L * 1024L * configuration.getCacheSizeLimitMB());
+    }
+
+    /**
+     * Describe the configuration used by the line processor to generate the
+     * segments. A cache file is only used if it was written with the same configuration.
+     * The nozzle ejection volumes set in the GCode file override the configured volumes
+     * when the segments are generated, so they are covered by the check of the file.
+     */
+    public static String configurationKey(RenderParameters renderParameters, GCodeViewerConfiguration configuration) {
+        StringBuilder key = new StringBuilder();
+        key.append(configuration.getRelativeExtrusionAsDefault())
+           .append(' ').append(configuration.getHasNozzleValves())
+           .append(' ').append(configuration.getExtruderLetterD())
+           .append(' ').append(configuration.getExtruderLetterE());
+        for (int tool = 0; tool < MAX_TOOLS; ++tool)
+            key.append(' ').append(renderParameters.getFilamentFactorForTool(tool))
+               .append(' ').append(renderParameters.getNozzleEjectVolumeForTool(tool));
+        return key.toString();
+    }
+
+    Path getCachePath(String gCodeFile) {
+        String absolutePath = Paths.get(gCodeFile).toAbsolutePath().toString();
+        return cacheDirectory.resolve(UUID.nameUUIDFromBytes(absolutePath.getBytes(StandardCharsets.UTF_8))
+                                      + CACHE_FILE_EXTENSION);
+    }
+
+    /**
+     * Load the results of processing the given file from the cache.
+     *
+     * @param gCodeFile path of the GCode file.
+     * @param configurationKey key of the current configuration.
+     * @param processor processor to receive the lines, settings and layer range.
+     * @param lineProcessor line processor to receive the segments and layers.
+     * @return true if the file was loaded from the cache, false if it must be parsed.
+     */
+    public boolean load(String gCodeFile, String configurationKey, GCodeProcessor processor, GCodeLineProcessor lineProcessor) {
+        Path cachePath = getCachePath(gCodeFile);
+        if (!Files.isRegularFile(cachePath))
+            return false;
+
+        MappedByteBuffer buffer = null;
+        MappedLineStore lines = null;
+        try (FileChannel channel = FileChannel.open(cachePath, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                return false;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            CacheReader in = new CacheReader(buffer);
+            if (!readHeader(in, gCodeFile, configurationKey)) {
+                STENO.debug("Cache file \"" + cachePath + "\" is out of date");
+                return false;
+            }
+
+            int numberOfBottomLayer = in.readInt();
+            int numberOfTopLayer = in.readInt();
+            Map<String, Double> settingsMap = new HashMap<>();
+            int nSettings = in.readInt();
+            for (int settingIndex = 0; settingIndex < nSettings; ++settingIndex) {
+                String name = in.readString();
+                settingsMap.put(name, in.readDouble());
+            }
+            lines = MappedLineStore.open(gCodeFile, in);
+
+            RenderParameters renderParameters = lineProcessor.getRenderParameters();
+            GCodeViewerConfiguration configuration = lineProcessor.getConfiguration();
+            SegmentStore segments = SegmentStore.readFrom(in, renderParameters::getIndexForType, configuration::getColourForType);
+            SegmentStore moves = SegmentStore.readFrom(in, renderParameters::getIndexForType, configuration::getColourForType);
+
+            Map<Integer, LayerDetails> layerMap = new HashMap<>();
+            int nLayers = in.readInt();
+            for (int layerIndex = 0; layerIndex < nLayers; ++layerIndex) {
+                LayerDetails details = new LayerDetails(in.readInt(), in.readInt(), in.readInt(),
+                                                        in.readDouble(), in.readDouble());
+                details.setStartOffset(in.readInt());
+                details.setEndOffset(in.readInt());
+                details.setLayerOpen(in.readBoolean());
+                layerMap.put(details.getLayerNumber(), details);
+            }
+            Set<Integer> toolSet = new HashSet<>();
+            int nTools = in.readInt();
+            for (int toolIndex = 0; toolIndex < nTools; ++toolIndex)
+                toolSet.add(in.readInt());
+            Set<String> typeSet = new HashSet<>();
+            int nTypes = in.readInt();
+            for (int typeIndex = 0; typeIndex < nTypes; ++typeIndex)
+                typeSet.add(in.readString());
+            double[] minDataValues = new double[Entity.N_DATA_VALUES];
+            double[] maxDataValues = new double[Entity.N_DATA_VALUES];
+            for (int dataIndex = 0; dataIndex < Entity.N_DATA_VALUES; ++dataIndex) {
+                minDataValues[dataIndex] = in.readDouble();
+                maxDataValues[dataIndex] = in.readDouble();
+            }
+            if (in.readInt() != MAGIC) {
+                STENO.warning("Cache file \"" + cachePath + "\" is corrupt");
+                return false;
+            }
+
+            // Everything has been read, so update the processors.
+            processor.numberOfBottomLayer = numberOfBottomLayer;
+            processor.numberOfTopLayer = numberOfTopLayer;
+            processor.settingsMap.clear();
+            processor.settingsMap.putAll(settingsMap);
+            processor.setLines(lines);
+            lines = null; // Now closed by the processor.
+            lineProcessor.restore(segments, moves, layerMap, toolSet, typeSet, minDataValues, maxDataValues);
+
+            // Mark the file as recently used.
+            Files.setLastModifiedTime(cachePath, FileTime.fromMillis(System.currentTimeMillis()));
+            STENO.info("Loaded \"" + gCodeFile + "\" from cache file \"" + cachePath + "\"");
+            return true;
+        }
+        catch (IOException | RuntimeException ex) {
+            STENO.warning("Failed to read cache file \"" + cachePath + "\": " + ex);
+            return false;
+        }
+        finally {
+            // Everything has been copied out of the cache file, so release it.
+            MappedBuffers.unmap(buffer);
+            if (lines != null)
+                lines.close();
+        }
+    }
+
+    private boolean readHeader(CacheReader in, String gCodeFile, String configurationKey) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION)
+            return false;
+        Path gCodePath = Paths.get(gCodeFile);
+        if (!in.readString().equals(gCodePath.toAbsolutePath().toString()) ||
+            in.readLong() != Files.size(gCodePath) ||
+            in.readLong() != Files.getLastModifiedTime(gCodePath).toMillis() ||
+            !in.readString().equals(configurationKey))
+            return false;
+        return in.readLong() == hashFile(gCodePath);
+    }
+
+    /**
+     * Save the results of processing the given file to the cache, then remove
+     * the least recently used cache files if the cache is over its size limit.
+     * Errors are logged, as the cache is not essential.
+     */
+    public void save(String gCodeFile, String configurationKey, GCodeProcessor processor, GCodeLineProcessor lineProcessor) {
+        if (!(processor.lines instanceof MappedLineStore))
+            return;
+
+        Path cachePath = getCachePath(gCodeFile);
+        Path tempPath = cachePath.resolveSibling(cachePath.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(cacheDirectory);
+            long cacheSize;
+            try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                                                        StandardOpenOption.TRUNCATE_EXISTING,
+                                                        StandardOpenOption.WRITE)) {
+                CacheWriter out = new CacheWriter(channel);
+                writeCache(out, gCodeFile, configurationKey, processor, lineProcessor);
+                out.flush();
+                cacheSize = out.size();
+            }
+            if (cacheSize > Integer.MAX_VALUE) {
+                // Too big to map in one go.
+                Files.delete(tempPath);
+                return;
+            }
+            Files.move(tempPath, cachePath, StandardCopyOption.REPLACE_EXISTING);
+            STENO.debug("Saved \"" + gCodeFile + "\" to cache file \"" + cachePath + "\"");
+            evict();
+        }
+        catch (IOException ex) {
+            STENO.warning("Failed to write cache file \"" + cachePath + "\": " + ex);
+            try {
+                Files.deleteIfExists(tempPath);
+            }
+            catch (IOException deleteEx) {
+                // Carry on!
+            }
+        }
+    }
+
+    private void writeCache(CacheWriter out, String gCodeFile, String configurationKey,
+                            GCodeProcessor processor, GCodeLineProcessor lineProcessor) throws IOException {
+        Path gCodePath = Paths.get(gCodeFile);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeString(gCodePath.toAbsolutePath().toString());
+        out.writeLong(Files.size(gCodePath));
+        out.writeLong(Files.getLastModifiedTime(gCodePath).toMillis());
+        out.writeString(configurationKey);
+        out.writeLong(hashFile(gCodePath));
+
+        out.writeInt(processor.numberOfBottomLayer);
+        out.writeInt(processor.numberOfTopLayer);
+        out.writeInt(processor.settingsMap.size());
+        for (Map.Entry<String, Double> setting : processor.settingsMap.entrySet()) {
+            out.writeString(setting.getKey());
+            out.writeDouble(setting.getValue());
+        }
+        ((MappedLineStore)processor.lines).writeLineStarts(out);
+
+        lineProcessor.getSegments().writeTo(out);
+        lineProcessor.getMoves().writeTo(out);
+
+        Map<Integer, LayerDetails> layerMap = lineProcessor.getLayerMap();
+        out.writeInt(layerMap.size());
+        for (LayerDetails details : layerMap.values()) {
+            out.writeInt(details.getLayerNumber());
+            out.writeInt(details.getStartLine());
+            out.writeInt(details.getEndLine());
+            out.writeDouble(details.getLayerHeight());
+            out.writeDouble(details.getLayerThickness());
+            out.writeInt(details.getStartOffset());
+            out.writeInt(details.getEndOffset());
+            out.writeBoolean(details.getLayerOpen());
+        }
+        Set<Integer> toolSet = lineProcessor.getToolSet();
+        out.writeInt(toolSet.size());
+        for (int tool : toolSet)
+            out.writeInt(tool);
+        Set<String> typeSet = lineProcessor.getTypeSet();
+        out.writeInt(typeSet.size());
+        for (String type : typeSet)
+            out.writeString(type);
+        for (int dataIndex = 0; dataIndex < Entity.N_DATA_VALUES; ++dataIndex) {
+            out.writeDouble(lineProcessor.getMinDataValue(dataIndex));
+            out.writeDouble(lineProcessor.getMaxDataValue(dataIndex));
+        }
+        out.writeInt(MAGIC);
+    }
+
+    /**
+     * Delete the least recently used cache files until the total size of the
+     * cache files is within the limit.
+     */
+    void evict() throws IOException {
+        List<Path> cacheFiles = new ArrayList<>();
+        Map<Path, FileTime> lastUsedTimes = new HashMap<>();
+        long totalSize = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(cacheDirectory, "*" + CACHE_FILE_EXTENSION)) {
+            for (Path cacheFile : stream) {
+                cacheFiles.add(cacheFile);
+                lastUsedTimes.put(cacheFile, Files.getLastModifiedTime(cacheFile));
+                totalSize += Files.size(cacheFile);
+            }
+        }
+        cacheFiles.sort((a, b) -> lastUsedTimes.get(a).compareTo(lastUsedTimes.get(b)));
+        for (int fileIndex = 0; fileIndex < cacheFiles.size() && totalSize > sizeLimit; ++fileIndex) {
+            Path cacheFile = cacheFiles.get(fileIndex);
+            long fileSize = Files.size(cacheFile);
+            Files.delete(cacheFile);
+            totalSize -= fileSize;
+            STENO.debug("Evicted cache file \"" + cacheFile + "\"");
+        }
+    }
+
+    /**
+     * Calculate the CRC of the first and last blocks of a file, along with its size.
+     */
+    static long hashFile(Path filePath) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            ByteBuffer block = ByteBuffer.allocate(HASH_BLOCK_SIZE);
+            hashBlock(crc, channel, 0, block);
+            if (fileSize > HASH_BLOCK_SIZE)
+                hashBlock(crc, channel, Math.max(fileSize - HASH_BLOCK_SIZE, HASH_BLOCK_SIZE), block);
+            block.clear();
+            block.putLong(fileSize).flip();
+            crc.update(block);
+        }
+        return crc.getValue();
+    }
+
+    private static void hashBlock(CRC32C crc, FileChannel channel, long blockStart, ByteBuffer block) throws IOException {
+        block.clear();
+        while (block.hasRemaining()) {
+            if (channel.read(block, blockStart + block.position()) <= 0)
+                break;
+        }
+        block.flip();
+        crc.update(block);
+    }
+}
@@ -0,0 +1,368 @@
+package celuk.gcodeviewer.engine;
+
+import celuk.gcodeviewer.gcode.FastGCodeParser;
+import celuk.gcodeviewer.gcode.GCodeLine;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A section of a GCode file that starts and ends on a line boundary, and
+ * is parsed independently of the other sections.
+ *
+ * The parsed lines are held in columns rather than as GCodeLine objects, so
+ * a chunk can be parsed on one thread and replayed in file order on another.
+ *
+ * @author Tony Aldhous
+ */
+class GCodeChunk {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int PROBE_SIZE = 4096;
+    private static final int LINE_BUFFER_SIZE = 256;
+
+    private final long fileOffset;
+    private final int length;
+    private final FastGCodeParser parser = new FastGCodeParser();
+
+    // Offset from the start of the chunk of every line in the chunk, including empty lines.
+    private int nLines = 0;
+    private int[] lineStarts;
+
+    // Columns of the non-empty lines.
+    private int nParsedLines = 0;
+    private int[] lineIndices;
+    private char[] commandLetters;
+    private int[] commandNumbers;
+    private int[] layerNumbers;
+    private double[] layerHeights;
+    private String[] types;
+    private String[] comments;
+    private int[] valueStarts;
+    private int nValues = 0;
+    private char[] valueLetters;
+    private double[] values;
+
+    // Settings read from the comments, with the index of the parsed line that set them.
+    private int nSettings = 0;
+    private int[] settingLines;
+    private String[] settingIds;
+    private double[] settingValues;
+    private int nextSetting = 0;
+
+    // Index of the line that failed to parse, or -1.
+    private int failedLineIndex = -1;
+    private String errorReport = "";
+
+    // Total time taken by the parses to read the chunk from the file, and to parse it.
+    private long readTime = 0;
+    private long parseTime = 0;
+
+    private GCodeChunk(long fileOffset, int length) {
+        this.fileOffset = fileOffset;
+        this.length = length;
+    }
+
+    /**
+     * Split the file into chunks of roughly the given size, breaking after a newline.
+     *
+     * @param channel channel of the file to split.
+     * @param chunkSize the nominal size of each chunk in bytes.
+     * @return list of chunks, in file order.
+     */
+    static List<GCodeChunk> split(FileChannel channel, int chunkSize) throws IOException {
+        List<GCodeChunk> chunks = new ArrayList<>();
+        long fileSize = channel.size();
+        ByteBuffer probe = ByteBuffer.allocate(PROBE_SIZE);
+        long start = 0;
+        while (start < fileSize) {
+            long end = start + chunkSize;
+            if (end >= fileSize)
+                end = fileSize;
+            else
+                end = findLineBoundary(channel, end - 1, probe);
+            chunks.add(new GCodeChunk(start, Math.toIntExact(end - start)));
+            start = end;
+        }
+        return chunks;
+    }
+
+    // Find the position following the first newline at or after the given position.
+    private static long findLineBoundary(FileChannel channel, long position, ByteBuffer probe) throws IOException {
+        long fileSize = channel.size();
+        while (position < fileSize) {
+            probe.clear();
+            int nRead = channel.read(probe, position);
+            if (nRead <= 0)
+                break;
+            for (int i = 0; i < nRead; ++i) {
+                if (probe.get(i) == '\n')
+                    return position + i + 1;
+            }
+            position += nRead;
+        }
+        return fileSize;
+    }
+
+    /**
+     * Parse the chunk, with no values carried over from previous chunks.
+     *
+     * @param channel channel of the file containing the chunk.
+     */
+    void parse(FileChannel channel) throws IOException {
+        parser.resetCarriedValues();
+        parseLines(channel);
+    }
+
+    /**
+     * Parse the chunk again, with the values carried over from the previous chunks.
+     *
+     * @param channel channel of the file containing the chunk.
+     * @param carried parser holding the values carried over from the previous chunks.
+     */
+    void reparse(FileChannel channel, FastGCodeParser carried) throws IOException {
+        parser.inheritCarriedValues(carried);
+        parseLines(channel);
+    }
+
+    private void parseLines(FileChannel channel) throws IOException {
+        nLines = 0;
+        nParsedLines = 0;
+        nValues = 0;
+        nSettings = 0;
+        nextSetting = 0;
+        failedLineIndex = -1;
+        errorReport = "";
+        lineStarts = new int[INITIAL_CAPACITY];
+        allocateLineColumns(INITIAL_CAPACITY);
+        valueLetters = new char[4 * INITIAL_CAPACITY];
+        values = new double[4 * INITIAL_CAPACITY];
+        settingLines = new int[0];
+        settingIds = new String[0];
+        settingValues = new double[0];
+
+        // The lines are read straight from the mapping, rather than copying the whole chunk.
+        long readStartTime = System.nanoTime();
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, fileOffset, length);
+        long parseStartTime = System.nanoTime();
+        readTime += parseStartTime - readStartTime;
+
+        parser.setSettingsMap(new SettingsRecorder());
+        // The type is not cleared by resetLine(), so clear any type left from a previous parse.
+        parser.getLine().type = "";
+
+        // Lines are terminated by "\n", "\r" or "\r\n", as for BufferedReader.readLine().
+        byte[] lineBuffer = new byte[LINE_BUFFER_SIZE];
+        int lineStart = 0;
+        while (lineStart < length && failedLineIndex < 0) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && buffer.get(lineEnd) != '\n' && buffer.get(lineEnd) != '\r')
+                ++lineEnd;
+            int nextLineStart = lineEnd + 1;
+            if (lineEnd < length - 1 && buffer.get(lineEnd) == '\r' && buffer.get(lineEnd + 1) == '\n')
+                ++nextLineStart;
+
+            // Trim as for String.trim().
+            int textStart = lineStart;
+            int textEnd = lineEnd;
+            while (textStart < textEnd && (buffer.get(textStart) & 0xFF) <= ' ')
+                ++textStart;
+            while (textEnd > textStart && (buffer.get(textEnd - 1) & 0xFF) <= ' ')
+                --textEnd;
+
+            if (nLines == lineStarts.length)
+                lineStarts = Arrays.copyOf(lineStarts, 2 * nLines);
+            lineStarts[nLines] = lineStart;
+            if (textEnd > textStart) {
+                int textLength = textEnd - textStart;
+                if (textLength > lineBuffer.length)
+                    lineBuffer = new byte[textLength];
+                buffer.position(textStart);
+                buffer.get(lineBuffer, 0, textLength);
+                parser.resetLine();
+                if (parser.parse(lineBuffer, 0, textLength))
+                    addParsedLine(nLines, parser.getLine());
+                else {
+                    failedLineIndex = nLines;
+                    errorReport = parser.getErrorReport();
+                }
+            }
+            ++nLines;
+            lineStart = nextLineStart;
+        }
+        parseTime += System.nanoTime() - parseStartTime;
+    }
+
+    private void allocateLineColumns(int capacity) {
+        lineIndices = new int[capacity];
+        commandLetters = new char[capacity];
+        commandNumbers = new int[capacity];
+        layerNumbers = new int[capacity];
+        layerHeights = new double[capacity];
+        types = new String[capacity];
+        comments = new String[capacity];
+        valueStarts = new int[capacity + 1];
+    }
+
+    private void addParsedLine(int lineIndex, GCodeLine line) {
+        if (nParsedLines == lineIndices.length) {
+            int capacity = 2 * nParsedLines;
+            lineIndices = Arrays.copyOf(lineIndices, capacity);
+            commandLetters = Arrays.copyOf(commandLetters, capacity);
+            commandNumbers = Arrays.copyOf(commandNumbers, capacity);
+            layerNumbers = Arrays.copyOf(layerNumbers, capacity);
+            layerHeights = Arrays.copyOf(layerHeights, capacity);
+            types = Arrays.copyOf(types, capacity);
+            comments = Arrays.copyOf(comments, capacity);
+            valueStarts = Arrays.copyOf(valueStarts, capacity + 1);
+        }
+        int valueCount = line.getValueCount();
+        if (nValues + valueCount > values.length) {
+            int capacity = Math.max(2 * values.length, nValues + valueCount);
+            valueLetters = Arrays.copyOf(valueLetters, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        lineIndices[nParsedLines] = lineIndex;
+        commandLetters[nParsedLines] = line.commandLetter;
+        commandNumbers[nParsedLines] = line.commandNumber;
+        layerNumbers[nParsedLines] = line.layerNumber;
+        layerHeights[nParsedLines] = line.layerHeight;
+        types[nParsedLines] = line.type;
+        comments[nParsedLines] = line.comment;
+        valueStarts[nParsedLines] = nValues;
+        nValues += line.copyValues(valueLetters, values, nValues);
+        ++nParsedLines;
+        valueStarts[nParsedLines] = nValues;
+    }
+
+    /**
+     * @return the parser used for this chunk, which holds the values carried over to the next chunk.
+     */
+    FastGCodeParser getParser() {
+        return parser;
+    }
+
+    int getNumberOfLines() {
+        return nLines;
+    }
+
+    /**
+     * Add the starts of the first lines of the chunk to the line store builder.
+     *
+     * @param builder builder of the line store for the whole file.
+     * @param nLinesToAdd number of lines to add.
+     */
+    void addLineStarts(MappedLineStore.Builder builder, int nLinesToAdd) {
+        for (int lineIndex = 0; lineIndex < nLinesToAdd; ++lineIndex)
+            builder.addLineStart(fileOffset + lineStarts[lineIndex]);
+    }
+
+    int getNumberOfParsedLines() {
+        return nParsedLines;
+    }
+
+    /**
+     * @return the index of the line that failed to parse, or -1 if all the lines were parsed.
+     */
+    int getFailedLineIndex() {
+        return failedLineIndex;
+    }
+
+    String getErrorReport() {
+        return errorReport;
+    }
+
+    /**
+     * @return the total time in nanoseconds the parses took to read the chunk from the file.
+     */
+    long getReadTime() {
+        return readTime;
+    }
+
+    /**
+     * @return the total time in nanoseconds the parses took to parse the lines of the chunk.
+     */
+    long getParseTime() {
+        return parseTime;
+    }
+
+    /**
+     * Load the given parsed line into a GCodeLine.
+     *
+     * As with the parsers, the type is not reset, as the type
+     * applies to all the following lines until the next type comment.
+     *
+     * @param parsedIndex index of the parsed line.
+     * @param firstLineNumber line number of the first line in the chunk.
+     * @param line the line to load.
+     */
+    void loadLine(int parsedIndex, int firstLineNumber, GCodeLine line) {
+        line.reset();
+        line.lineNumber = firstLineNumber + lineIndices[parsedIndex];
+        line.commandLetter = commandLetters[parsedIndex];
+        line.commandNumber = commandNumbers[parsedIndex];
+        line.layerNumber = layerNumbers[parsedIndex];
+        line.layerHeight = layerHeights[parsedIndex];
+        String type = types[parsedIndex];
+        if (!type.isEmpty() && !type.equals(line.type))
+            line.type = type;
+        line.comment = comments[parsedIndex];
+        for (int valueIndex = valueStarts[parsedIndex]; valueIndex < valueStarts[parsedIndex + 1]; ++valueIndex)
+            line.setValue(valueLetters[valueIndex], values[valueIndex]);
+    }
+
+    /**
+     * Copy any settings read from the given parsed line into the settings map.
+     * The lines must be loaded in order.
+     *
+     * @param parsedIndex index of the parsed line.
+     * @param settingsMap map to receive the settings.
+     */
+    void loadSettings(int parsedIndex, Map<String, Double> settingsMap) {
+        while (nextSetting < nSettings && settingLines[nextSetting] == parsedIndex) {
+            settingsMap.put(settingIds[nextSetting], settingValues[nextSetting]);
+            ++nextSetting;
+        }
+    }
+
+    /**
+     * Release the parsed data once it has been replayed.
+     */
+    void release() {
+        lineStarts = null;
+        allocateLineColumns(0);
+        valueLetters = null;
+        values = null;
+        settingLines = null;
+        settingIds = null;
+        settingValues = null;
+    }
+
+    // Records the settings in the order they are read, along with the line that set them.
+    private class SettingsRecorder extends HashMap<String, Double> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Double put(String settingId, Double settingValue) {
+            if (nSettings == settingLines.length) {
+                int capacity = Math.max(8, 2 * nSettings);
+                settingLines = Arrays.copyOf(settingLines, capacity);
+                settingIds = Arrays.copyOf(settingIds, capacity);
+                settingValues = Arrays.copyOf(settingValues, capacity);
+            }
+            // The setting is put before the line is added, so it belongs to the next parsed line.
+            settingLines[nSettings] = nParsedLines;
+            settingIds[nSettings] = settingId;
+            settingValues[nSettings] = settingValue;
+            ++nSettings;
+            return super.put(settingId, settingValue);
+        }
+    }
+}
@@ -1,15 +1,16 @@
 package celuk.gcodeviewer.engine;
 
 import celuk.gcodeviewer.entities.Entity;
-import celuk.gcodeviewer.utils.VectorUtils;
 import celuk.gcodeviewer.gcode.GCodeLine;
 import static java.lang.Math.sqrt;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 import libertysystems.stenographer.Stenographer;
 import libertysystems.stenographer.StenographerFactory;
 import org.joml.Vector3f;
@@ -25,6 +26,10 @@ public class GCodeLineProcessor implements GCodeConsumer
     private final double MINIMUM_EXTRUSION = 0.0001;
     private final double MINIMUM_HEIGHT_DIFFERENCE = 0.0001;
     private final String VALVE_MOVE_TYPE = "VALVE-MOVE";
+    // Settings giving the ejection volume of each nozzle, which override the configured volumes.
+    private final String[] EJECT_VOLUME_SETTINGS = { "nozzle0_ejectionvolume", "nozzle1_ejectionvolume" };
+    // Minimum number of segments in a batch published while loading.
+    private final int MINIMUM_BATCH_SEGMENTS = 4096;
     
     private final GCodeViewerConfiguration configuration;
     private final RenderParameters renderParameters;
@@ -80,8 +85,32 @@ public class GCodeLineProcessor implements GCodeConsumer
     private Set<String> typeSet = new HashSet<>();
 
     // Moves a rendered separately from lines.
-    private List<Entity> segments = new ArrayList<>();
-    private List<Entity> moves = new ArrayList<>();
+    private SegmentStore segments = new SegmentStore(true);
+    private SegmentStore moves = new SegmentStore(false);
+    // Vertex data of the segments, built as they are generated.
+    private SegmentVertexBuffer segmentVertexBuffer = new SegmentVertexBuffer();
+    private final SegmentBounds segmentBounds = new SegmentBounds();
+    private SegmentLod segmentLod = null;
+
+    // If set, batches of segments are published as layers are completed.
+    private Consumer<SegmentBatch> batchConsumer = null;
+    private int nPublishedSegments = 0;
+    private List<LayerDetails> unpublishedLayers = new ArrayList<>();
+
+    // If set, the processing of one line in LoadMetrics.SAMPLE_INTERVAL is timed.
+    private LoadMetrics metrics = null;
+    private int nLinesSinceSample = 0;
+    private boolean sampling = false;
+    private long generateTime = 0;
+    private long vertexBufferTime = 0;
+
+    // Working vectors, reused for every segment.
+    private final Vector3f direction = new Vector3f();
+    private final Vector3f normal = new Vector3f();
+    private final Vector3f normalX = new Vector3f();
+    private final Vector3f normalY = new Vector3f();
+    private final Vector3f fromPosition = new Vector3f();
+    private final Vector3f segmentPosition = new Vector3f();
     
     static private final double RADIANS_TO_DEGREES = 57.2957795131;
     
@@ -103,6 +132,26 @@ public class GCodeLineProcessor implements GCodeConsumer
         }
     }
 
+    // The ejection volume set in the file takes precedence over the configured volume,
+    // so the segments only depend on the file and the configuration.
+    private double getNozzleEjectVolume(int tool)
+    {
+        double ejectVolume = -1.0;
+        if (tool >= 0 && tool < EJECT_VOLUME_SETTINGS.length)
+            ejectVolume = settingsMap.getOrDefault(EJECT_VOLUME_SETTINGS[tool], -1.0);
+        return (ejectVolume > 0.0 ? ejectVolume : renderParameters.getNozzleEjectVolumeForTool(tool));
+    }
+
+    RenderParameters getRenderParameters()
+    {
+        return renderParameters;
+    }
+
+    GCodeViewerConfiguration getConfiguration()
+    {
+        return configuration;
+    }
+
     public int getCurrentLayer()
     {
         return currentLayer;
@@ -123,16 +172,63 @@ public class GCodeLineProcessor implements GCodeConsumer
         return layerMap;
     }
     
-    public List<Entity> getSegments()
+    public SegmentStore getSegments()
     {
         return segments;
     }
     
-    public List<Entity> getMoves()
+    public SegmentStore getMoves()
     {
         return moves;
     }
 
+    public SegmentVertexBuffer getSegmentVertexBuffer()
+    {
+        return segmentVertexBuffer;
+    }
+
+    public SegmentBounds getSegmentBounds()
+    {
+        return segmentBounds;
+    }
+
+    /**
+     * @return the merged segments, or null if they have not been built.
+     */
+    public SegmentLod getSegmentLod()
+    {
+        return segmentLod;
+    }
+
+    /**
+     * Build the merged segments drawn at the coarsest level of detail, once
+     * all the segments have been generated.
+     */
+    public void buildSegmentLod()
+    {
+        long startTime = System.nanoTime();
+        segmentLod = SegmentLod.fromSegments(segments, segmentBounds);
+        if (metrics != null)
+            metrics.addTime(LoadMetrics.Stage.GENERATE, System.nanoTime() - startTime);
+    }
+
+    /**
+     * Set the consumer of the batches of segments that are published as each
+     * layer is completed. The consumer is called on the loading thread.
+     */
+    public void setBatchConsumer(Consumer<SegmentBatch> batchConsumer)
+    {
+        this.batchConsumer = batchConsumer;
+    }
+
+    /**
+     * Set the metrics to which the sampled processing times are added.
+     */
+    public void setMetrics(LoadMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
     public Set<Integer> getToolSet()
     {
         // If the toolSet is empty when
@@ -225,10 +321,36 @@ public class GCodeLineProcessor implements GCodeConsumer
         
         segments.clear();
         moves.clear();
+        segmentVertexBuffer.clear();
+        segmentBounds.clear();
+        segmentLod = null;
+        nPublishedSegments = 0;
+        unpublishedLayers.clear();
+        nLinesSinceSample = 0;
     }
 
     @Override
     public void processLine(GCodeLine line)
+    {
+        if (metrics != null && ++nLinesSinceSample == LoadMetrics.SAMPLE_INTERVAL)
+        {
+            nLinesSinceSample = 0;
+            sampling = true;
+            generateTime = 0;
+            vertexBufferTime = 0;
+            long startTime = System.nanoTime();
+            dispatchLine(line);
+            long processTime = System.nanoTime() - startTime;
+            sampling = false;
+            metrics.addSampledTime(LoadMetrics.Stage.PROCESS, processTime - generateTime);
+            metrics.addSampledTime(LoadMetrics.Stage.GENERATE, generateTime - vertexBufferTime);
+            metrics.addSampledTime(LoadMetrics.Stage.VERTEX_BUFFER, vertexBufferTime);
+        }
+        else
+            dispatchLine(line);
+    }
+
+    private void dispatchLine(GCodeLine line)
     {
         currentLine = line.lineNumber;
         
@@ -323,6 +445,7 @@ public class GCodeLineProcessor implements GCodeConsumer
             }
  
             completeLayerDetails();
+            publishCompletedLayer();
             currentLayer = line.layerNumber;
             if (line.layerHeight > -Double.MAX_VALUE)
             {
@@ -539,6 +662,18 @@ public class GCodeLineProcessor implements GCodeConsumer
     }
 
     public void generateEntity()
+    {
+        if (sampling)
+        {
+            long startTime = System.nanoTime();
+            generateSegment();
+            generateTime += System.nanoTime() - startTime;
+        }
+        else
+            generateSegment();
+    }
+
+    private void generateSegment()
     {
         double deltaB = currentB - previousB;
         double deltaD = currentD - previousD;
@@ -550,20 +685,20 @@ public class GCodeLineProcessor implements GCodeConsumer
         if (isNozzleMove)
             typeSet.add(VALVE_MOVE_TYPE);
 
-        Vector3f direction = new Vector3f((float)(currentX - previousX), (float)(currentY - previousY), (float)(currentZ - previousZ));
+        direction.set((float)(currentX - previousX), (float)(currentY - previousY), (float)(currentZ - previousZ));
         float length = direction.length();
         if (length > MINIMUM_STEP)
         {
             direction.normalize();
-            Vector3f normal = new Vector3f(direction).cross(0.0F, 0.0F, 1.0F);
+            normal.set(direction).cross(0.0F, 0.0F, 1.0F);
             if (normal.length() < 0.1) // Close to vertical.
             {
-                Vector3f nx = new Vector3f(direction).cross(1.0F, 0.0F, 0.0F);
-                Vector3f ny =  new Vector3f(direction).cross(0.0F, 1.0F, 0.0F);
-                if (nx.length() >= ny.length())
-                    normal = nx;
+                normalX.set(direction).cross(1.0F, 0.0F, 0.0F);
+                normalY.set(direction).cross(0.0F, 1.0F, 0.0F);
+                if (normalX.length() >= normalY.length())
+                    normal.set(normalX);
                 else
-                    normal = ny;
+                    normal.set(normalY);
             }
             normal.normalize();
 
@@ -574,7 +709,7 @@ public class GCodeLineProcessor implements GCodeConsumer
                 // Calculate volume of filament to extrude.
                 double v = renderParameters.getFilamentFactorForTool(currentTool) * (deltaD >= deltaE ? deltaD : deltaE);
                 if (isNozzleMove)
-                    v -= renderParameters.getNozzleEjectVolumeForTool(currentTool) * deltaB;
+                    v -= getNozzleEjectVolume(currentTool) * deltaB;
 
                 if (v > 0) {
                     // Calculate cross sectional area of segment from volume.
@@ -609,34 +744,39 @@ public class GCodeLineProcessor implements GCodeConsumer
                 }
             }
 
-            Vector3f toPosition = new Vector3f((float)(currentX), (float)(currentY), (float)(currentZ));
-            Vector3f fromPosition = new Vector3f((float)(previousX), (float)(previousY), (float)(previousZ));
-            Vector3f entityPosition = VectorUtils.calculateCenterBetweenVectors(fromPosition, toPosition);
-            Entity entity = new Entity(null, entityPosition, direction, normal,
-                                       length, width, thickness,
-                                       currentLayer, currentLine, currentTool, !isExtrusion, null);
+            // Position of the segment is the centre point between the start and the end.
+            fromPosition.set((float)(previousX), (float)(previousY), (float)(previousZ));
+            segmentPosition.set((float)(currentX), (float)(currentY), (float)(currentZ))
+                           .sub(fromPosition)
+                           .mul(0.5f)
+                           .add(fromPosition);
             if (isExtrusion)
             {
+                int index = segments.addSegment(segmentPosition, direction, length,
+                                                currentLayer, currentLine, currentTool);
                 String t = (isNozzleMove ? VALVE_MOVE_TYPE : currentType);
-                entity.setType(t);
-                entity.setTypeIndex(renderParameters.getIndexForType(t));
-                Vector3f typeColour = configuration.getColourForType(t);
-                entity.setTypeColour(typeColour);
-                entity.setColour(typeColour);
-                entity.setDataValue(Entity.DATA_A, (float)currentA);
-                entity.setDataValue(Entity.DATA_B, (float)currentB);
-                entity.setDataValue(Entity.DATA_C, (float)currentC);
-                entity.setDataValue(Entity.DATA_D, (float)currentD);
-                entity.setDataValue(Entity.DATA_E, (float)currentE);
-                entity.setDataValue(Entity.DATA_F, (float)currentF);
-                segments.add(entity);
+                segments.setExtrusion(index, normal, width, thickness,
+                                      t, renderParameters.getIndexForType(t), configuration.getColourForType(t));
+                segments.setDataValue(index, Entity.DATA_A, (float)currentA);
+                segments.setDataValue(index, Entity.DATA_B, (float)currentB);
+                segments.setDataValue(index, Entity.DATA_C, (float)currentC);
+                segments.setDataValue(index, Entity.DATA_D, (float)currentD);
+                segments.setDataValue(index, Entity.DATA_E, (float)currentE);
+                segments.setDataValue(index, Entity.DATA_F, (float)currentF);
+                if (sampling)
+                {
+                    long startTime = System.nanoTime();
+                    segmentVertexBuffer.addSegment(segments, index);
+                    vertexBufferTime += System.nanoTime() - startTime;
+                }
+                else
+                    segmentVertexBuffer.addSegment(segments, index);
+                segmentBounds.addSegment(segments, index);
             }
             else
             {
-                entity.setColour(null);
-                entity.setTypeColour(null);
-                entity.setDataValues(null);
-                moves.add(entity);
+                moves.addSegment(segmentPosition, direction, length,
+                                 currentLayer, currentLine, currentTool);
             }
 
             previousX = currentX;
@@ -682,6 +822,49 @@ public class GCodeLineProcessor implements GCodeConsumer
             }        
     }
 
+    /**
+     * Restore the results of processing a file, read from a cache file,
+     * instead of processing the lines of the file.
+     */
+    void restore(SegmentStore segments, SegmentStore moves, Map<Integer, LayerDetails> layerMap,
+                 Set<Integer> toolSet, Set<String> typeSet, double[] minDataValues, double[] maxDataValues) {
+        reset();
+        this.segments = segments;
+        this.moves = moves;
+        this.layerMap.putAll(layerMap);
+        this.toolSet.addAll(toolSet);
+        this.typeSet.addAll(typeSet);
+        System.arraycopy(minDataValues, 0, this.minDataValues, 0, Entity.N_DATA_VALUES);
+        System.arraycopy(maxDataValues, 0, this.maxDataValues, 0, Entity.N_DATA_VALUES);
+        for (int index = 0; index < segments.size(); ++index)
+        {
+            segmentVertexBuffer.addSegment(segments, index);
+            segmentBounds.addSegment(segments, index);
+        }
+    }
+
+    private void publishCompletedLayer() {
+        if (batchConsumer != null && currentLayer != Entity.NULL_LAYER) {
+            LayerDetails details = layerMap.get(currentLayer);
+            unpublishedLayers.add(new LayerDetails(details.getLayerNumber(), details.getStartLine(), details.getEndLine(),
+                                                   details.getLayerHeight(), details.getLayerThickness()));
+            int nSegments = segments.size() - nPublishedSegments;
+            if (nSegments >= MINIMUM_BATCH_SEGMENTS) {
+                float[] dataValues = Arrays.copyOfRange(segments.getDataValues(),
+                                                        Entity.N_DATA_VALUES * nPublishedSegments,
+                                                        Entity.N_DATA_VALUES * segments.size());
+                batchConsumer.accept(new SegmentBatch(nPublishedSegments,
+                                                      nSegments,
+                                                      segmentVertexBuffer.getSlices(nPublishedSegments, nSegments),
+                                                      dataValues,
+                                                      unpublishedLayers,
+                                                      currentLine));
+                nPublishedSegments = segments.size();
+                unpublishedLayers = new ArrayList<>();
+            }
+        }
+    }
+
     @Override
     public void complete() {
         ++currentLine; // Step to one beyond the last line.
@@ -1,5 +1,8 @@
 package celuk.gcodeviewer.engine;
 
+import java.io.File;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import libertysystems.stenographer.Stenographer;
 import libertysystems.stenographer.StenographerFactory;
 import static org.lwjgl.glfw.GLFW.glfwPostEmptyEvent;
@@ -17,24 +20,80 @@ public class GCodeLoader extends Thread {
     private boolean loadOK = false;
     private boolean loadDone = false;
     private String gCodeFile;
+    private int nLoaderThreads;
+    // Batches of segments published while loading, for the render loop to display.
+    private final Queue<SegmentBatch> batchQueue = new ConcurrentLinkedQueue<>();
+    // Cache of processed files, or null if the cache is not used.
+    private final GCodeCache cache;
+    private final String cacheKey;
+    // Timings and counts of the load.
+    private final LoadMetrics metrics;
 
     public GCodeLoader(String gCodeFile, RenderParameters renderParameters, GCodeViewerConfiguration configuration)
     {
         this.setName("GCodeLoader");
         this.gCodeFile = gCodeFile;
-        this.processor = new GCodeProcessor();
+        this.processor = new GCodeProcessor(configuration.getUseFastParser());
+        // Files are only parsed in parallel with the fast parser. A thread count
+        // of zero or less means use all the available processors.
+        this.nLoaderThreads = configuration.getUseFastParser() ? configuration.getLoaderThreads() : 1;
+        if (this.nLoaderThreads <= 0)
+            this.nLoaderThreads = Runtime.getRuntime().availableProcessors();
         this.lineProcessor = new GCodeLineProcessor(renderParameters, configuration, this.processor.getSettings());
+        if (configuration.getProgressiveLoading())
+            this.lineProcessor.setBatchConsumer(this::publishBatch);
+        this.cache = GCodeCache.fromConfiguration(configuration);
+        this.cacheKey = GCodeCache.configurationKey(renderParameters, configuration);
+        this.metrics = new LoadMetrics(gCodeFile);
+        this.processor.setMetrics(this.metrics);
+        this.lineProcessor.setMetrics(this.metrics);
     }
 
     @Override
     public void run()
     {
         STENO.debug("Loading GCode file");
-        loadOK = processor.processFile(gCodeFile, lineProcessor);
+        long allocatedBytes = LoadMetrics.getThreadAllocatedBytes();
+        long cacheStartTime = System.nanoTime();
+        if (cache != null && cache.load(gCodeFile, cacheKey, processor, lineProcessor)) {
+            metrics.addTime(LoadMetrics.Stage.CACHE, System.nanoTime() - cacheStartTime);
+            metrics.setFromCache(true);
+            loadOK = true;
+        }
+        else {
+            metrics.addTime(LoadMetrics.Stage.CACHE, System.nanoTime() - cacheStartTime);
+            if (nLoaderThreads > 1)
+                loadOK = processor.processMappedFile(gCodeFile, lineProcessor, nLoaderThreads);
+            else
+                loadOK = processor.processFile(gCodeFile, lineProcessor);
+            if (loadOK && cache != null) {
+                cacheStartTime = System.nanoTime();
+                cache.save(gCodeFile, cacheKey, processor, lineProcessor);
+                metrics.addTime(LoadMetrics.Stage.CACHE, System.nanoTime() - cacheStartTime);
+            }
+        }
+        if (loadOK)
+            lineProcessor.buildSegmentLod();
+        metrics.addAllocatedBytes(LoadMetrics.getThreadAllocatedBytes() - allocatedBytes);
+        metrics.setCounts(processor.getLines().size(), new File(gCodeFile).length(),
+                          lineProcessor.getSegments().size(), lineProcessor.getMoves().size());
+        metrics.setSuccess(loadOK);
         glfwPostEmptyEvent(); // Wake up main thread.
         loadDone = true;
     }
     
+    private void publishBatch(SegmentBatch batch) {
+        batchQueue.offer(batch);
+        glfwPostEmptyEvent(); // Wake up main thread.
+    }
+
+    /**
+     * @return the next batch of segments published while loading, or null if there are none.
+     */
+    public SegmentBatch pollBatch() {
+        return batchQueue.poll();
+    }
+
     public GCodeProcessor getProcessor() {
         return processor;
     }
@@ -51,6 +110,10 @@ public class GCodeLoader extends Thread {
         return loadDone;
     }
 
+    public LoadMetrics getMetrics() {
+        return metrics;
+    }
+
     public String getFilePath() {
         return gCodeFile;
     }
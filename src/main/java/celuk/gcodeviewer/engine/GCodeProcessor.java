@@ -1,22 +1,27 @@
 package celuk.gcodeviewer.engine;
 
 import celuk.gcodeviewer.entities.Entity;
+import celuk.gcodeviewer.gcode.FastGCodeParser;
 import celuk.gcodeviewer.gcode.GCodeLine;
-import celuk.gcodeviewer.gcode.GCodeLineParser;
+import celuk.gcodeviewer.gcode.GCodeParser;
+import celuk.gcodeviewer.gcode.ParboiledGCodeParser;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import libertysystems.stenographer.Stenographer;
 import libertysystems.stenographer.StenographerFactory;
-import org.parboiled.Parboiled;
-import org.parboiled.errors.ErrorUtils;
-import org.parboiled.parserunners.ReportingParseRunner;
-import org.parboiled.support.ParsingResult;
 
 /**
  * Process a GCode file line by line.
@@ -30,11 +35,48 @@ public class GCodeProcessor {
     int numberOfBottomLayer = Entity.NULL_LAYER;
     int numberOfTopLayer = Entity.NULL_LAYER;
     
-    List<String> lines = new ArrayList<>();
+    // The text of the lines is only needed for display, so is read from the file on demand.
+    LineStore lines = new MappedLineStore();
     // Settings can be included in the GCode comments, and can be used to "tweak" the generated view.
     // For example, the infill width and thickness are used to correct the appearance of thick
     // infill layers.
     Map<String, Double> settingsMap = new HashMap<>(); // Settings read from the GCode comments.
+    
+    // Nominal size of the chunks when parsing a file in parallel.
+    static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+    // Number of chunks per thread that are parsed ahead of the chunk being replayed.
+    private static final int CHUNKS_IN_FLIGHT_PER_THREAD = 2;
+    private int nReparsedChunks = 0;
+
+    private final boolean useFastParser;
+    // If set, the time taken to read and parse the file is added to the metrics.
+    private LoadMetrics metrics = null;
+
+    public GCodeProcessor() {
+        this(false);
+    }
+
+    /**
+     * @param useFastParser if true, use the hand written FastGCodeParser, otherwise
+     *                      use the parboiled grammar.
+     */
+    public GCodeProcessor(boolean useFastParser) {
+        this.useFastParser = useFastParser;
+    }
+
+    /**
+     * Set the metrics to which the read and parse times are added.
+     */
+    public void setMetrics(LoadMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    GCodeParser createParser() {
+        if (useFastParser)
+            return new FastGCodeParser();
+        else
+            return new ParboiledGCodeParser();
+    }
         
     /**
      * Read G-Code file from the given file path passing each line to the consumer.
@@ -44,30 +86,37 @@ public class GCodeProcessor {
      */
     public boolean processFile(String filePath, GCodeConsumer consumer) {
         boolean success = false;
-        try {
-            FileReader fileReader = new FileReader(new File(filePath));
-            BufferedReader bufferedReader = new BufferedReader(fileReader);
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            // The line starts for the line store are recorded as the file is read.
+            OffsetLineReader lineReader = new OffsetLineReader(Channels.newInputStream(channel));
+            MappedLineStore.Builder lineStoreBuilder = new MappedLineStore.Builder(channel.size());
 
-            GCodeLineParser gCodeParser = Parboiled.createParser(GCodeLineParser.class);
+            GCodeParser gCodeParser = createParser();
             gCodeParser.setSettingsMap(settingsMap);
             
-            ReportingParseRunner runner = new ReportingParseRunner<>(gCodeParser.Line());
             consumer.reset();
             int lineNumber = -1;
-            for (String lineRead = bufferedReader.readLine(); lineRead != null; lineRead = bufferedReader.readLine()) {
+            while (true) {
+                // Only one line in SAMPLE_INTERVAL is timed, as timing every line is too slow.
+                boolean sampleLine = (metrics != null && (lineNumber + 1) % LoadMetrics.SAMPLE_INTERVAL == 0);
+                long readStartTime = (sampleLine ? System.nanoTime() : 0);
+                String lineRead = lineReader.readLine();
+                if (lineRead == null)
+                    break;
                 ++lineNumber;
+                lineStoreBuilder.addLineStart(lineReader.getLineStart());
+                long parseStartTime = (sampleLine ? System.nanoTime() : 0);
                 lineRead = lineRead.trim();
-                lines.add(lineRead);
                 if (!lineRead.isEmpty())
                 {
                     gCodeParser.resetLine();
-                    ParsingResult result = runner.run(lineRead);
-                    if (result.hasErrors() || !result.matched) {
-                        String errorReport = "Parsing failure on line " + lineNumber + ": ";
-                        if (result.hasErrors())
-                            errorReport += ErrorUtils.printParseErrors(result);
-                        else
-                        errorReport += "no match.";
+                    boolean parsed = gCodeParser.parse(lineRead);
+                    if (sampleLine) {
+                        metrics.addSampledTime(LoadMetrics.Stage.READ, parseStartTime - readStartTime);
+                        metrics.addSampledTime(LoadMetrics.Stage.TOKENIZE, System.nanoTime() - parseStartTime);
+                    }
+                    if (!parsed) {
+                        String errorReport = "Parsing failure on line " + lineNumber + ": " + gCodeParser.getErrorReport();
                         STENO.error(errorReport);
                         throw new RuntimeException(errorReport);
                     } else {
@@ -84,6 +133,7 @@ public class GCodeProcessor {
                     }
                 }
             }
+            setLines(lineStoreBuilder.build(channel));
             consumer.complete();
             STENO.info("Parsed " + Integer.toString(lineNumber) + " lines.");
             success = true;
@@ -95,6 +145,120 @@ public class GCodeProcessor {
         return success;
     }
 
+    /**
+     * Read G-Code file from the given file path passing each line to the consumer,
+     * parsing the file in parallel.
+     * 
+     * The file is memory mapped and split into chunks at line boundaries. The
+     * chunks are parsed in parallel with the FastGCodeParser, and the parsed lines
+     * are then passed to the consumer in file order, so the consumer sees exactly
+     * the same lines as it would from processFile.
+     * 
+     * @param filePath path to the file to be processed
+     * @param consumer consumer of the parsed lines
+     * @param nThreads number of threads used to parse the file
+     * @return boolean indicating success or failure.
+     */
+    public boolean processMappedFile(String filePath, GCodeConsumer consumer, int nThreads) {
+        return processMappedFile(filePath, consumer, nThreads, DEFAULT_CHUNK_SIZE);
+    }
+
+    boolean processMappedFile(String filePath, GCodeConsumer consumer, int nThreads, int chunkSize) {
+        boolean success = false;
+        ForkJoinPool pool = new ForkJoinPool(nThreads);
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            List<GCodeChunk> chunks = GCodeChunk.split(channel, chunkSize);
+            // Only a few chunks are parsed ahead of the one being replayed, so the
+            // parsed lines of the whole file are never held in memory at once.
+            int nChunksInFlight = CHUNKS_IN_FLIGHT_PER_THREAD * nThreads;
+            List<ForkJoinTask<GCodeChunk>> tasks = new ArrayList<>();
+            for (int chunkIndex = 0; chunkIndex < chunks.size() && chunkIndex < nChunksInFlight; ++chunkIndex)
+                tasks.add(submitChunk(pool, channel, chunks.get(chunkIndex)));
+
+            consumer.reset();
+            nReparsedChunks = 0;
+            // Holds the values carried over from one chunk to the next.
+            FastGCodeParser carried = new FastGCodeParser();
+            MappedLineStore.Builder lineStoreBuilder = new MappedLineStore.Builder(channel.size());
+            GCodeLine line = new GCodeLine();
+            int firstLineNumber = 0;
+            for (int chunkIndex = 0; chunkIndex < chunks.size(); ++chunkIndex) {
+                GCodeChunk chunk = tasks.get(chunkIndex).join();
+                tasks.set(chunkIndex, null);
+                if (chunkIndex + nChunksInFlight < chunks.size())
+                    tasks.add(submitChunk(pool, channel, chunks.get(chunkIndex + nChunksInFlight)));
+                // The chunk was parsed without knowing the values carried over from the
+                // previous chunks. A letter without a value, or a layer comment without a
+                // height, before the chunk sets its own value picks up the carried value,
+                // so parse it again if that gives a different result.
+                if (chunk.getParser().needsCarriedValues(carried)) {
+                    chunk.reparse(channel, carried);
+                    ++nReparsedChunks;
+                }
+                carried.updateCarriedValues(chunk.getParser());
+                if (metrics != null) {
+                    metrics.addTime(LoadMetrics.Stage.READ, chunk.getReadTime());
+                    metrics.addTime(LoadMetrics.Stage.TOKENIZE, chunk.getParseTime());
+                }
+
+                int failedLineIndex = chunk.getFailedLineIndex();
+                int nLinesRead = (failedLineIndex < 0 ? chunk.getNumberOfLines() : failedLineIndex + 1);
+                chunk.addLineStarts(lineStoreBuilder, nLinesRead);
+                for (int parsedIndex = 0; parsedIndex < chunk.getNumberOfParsedLines(); ++parsedIndex) {
+                    chunk.loadSettings(parsedIndex, settingsMap);
+                    chunk.loadLine(parsedIndex, firstLineNumber, line);
+                    if (line.layerNumber > Entity.NULL_LAYER) {
+                        if (numberOfTopLayer == Entity.NULL_LAYER || numberOfTopLayer < line.layerNumber)
+                            numberOfTopLayer = line.layerNumber;
+                        if (numberOfBottomLayer == Entity.NULL_LAYER || numberOfBottomLayer > line.layerNumber)
+                            numberOfBottomLayer = line.layerNumber;
+                    }
+                    consumer.processLine(line);
+                }
+                if (failedLineIndex >= 0) {
+                    String errorReport = "Parsing failure on line " + (firstLineNumber + failedLineIndex) + ": " + chunk.getErrorReport();
+                    STENO.error(errorReport);
+                    throw new RuntimeException(errorReport);
+                }
+                firstLineNumber += chunk.getNumberOfLines();
+                chunk.release();
+            }
+            setLines(lineStoreBuilder.build(channel));
+            consumer.complete();
+            STENO.info("Parsed " + Integer.toString(firstLineNumber - 1) + " lines.");
+            success = true;
+        } catch (IOException | UncheckedIOException ex) {
+            STENO.error("IO exception when attempting to parse file: " + filePath);
+            STENO.error(ex.toString());
+        } finally {
+            pool.shutdownNow();
+        }
+        
+        return success;
+    }
+
+    private ForkJoinTask<GCodeChunk> submitChunk(ForkJoinPool pool, FileChannel channel, GCodeChunk chunk) {
+        return pool.submit(() -> {
+            long allocatedBytes = (metrics != null ? LoadMetrics.getThreadAllocatedBytes() : 0);
+            try {
+                chunk.parse(channel);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            if (metrics != null)
+                metrics.addAllocatedBytes(LoadMetrics.getThreadAllocatedBytes() - allocatedBytes);
+            return chunk;
+        });
+    }
+
+    /**
+     * @return the number of chunks the last call to processMappedFile had to parse
+     *         again with the values carried over from the previous chunks.
+     */
+    int getNumberOfReparsedChunks() {
+        return nReparsedChunks;
+    }
+
     /**
      * Read G-Code file from the given file path, returning it a list of GCodeLines.
      * 
@@ -108,8 +272,7 @@ public class GCodeProcessor {
             FileReader fileReader = new FileReader(new File(filePath));
             BufferedReader bufferedReader = new BufferedReader(fileReader);
 
-            GCodeLineParser gCodeParser = Parboiled.createParser(GCodeLineParser.class);
-            ReportingParseRunner runner = new ReportingParseRunner<>(gCodeParser.Line());
+            GCodeParser gCodeParser = createParser();
             int lineNumber = -1;
             for (String lineRead = bufferedReader.readLine(); lineRead != null; lineRead = bufferedReader.readLine()) {
                 ++lineNumber;
@@ -117,13 +280,8 @@ public class GCodeProcessor {
                 if (!lineRead.isEmpty())
                 {
                     gCodeParser.resetLine();
-                    ParsingResult result = runner.run(lineRead);
-                    if (result.hasErrors() || !result.matched) {
-                        String errorReport = "Parsing failure on line " + lineNumber + ": ";
-                        if (result.hasErrors())
-                            errorReport += ErrorUtils.printParseErrors(result);
-                        else
-                        errorReport += "no match.";
+                    if (!gCodeParser.parse(lineRead)) {
+                        String errorReport = "Parsing failure on line " + lineNumber + ": " + gCodeParser.getErrorReport();
                         STENO.error(errorReport);
                         throw new RuntimeException(errorReport);
                     } else {
@@ -161,11 +319,19 @@ public class GCodeProcessor {
         return numberOfBottomLayer;
     }
 
-    public List<String> getLines()
+    public LineStore getLines()
     {
         return lines;
     }
 
+    // Replace the lines, closing the store they replace.
+    void setLines(LineStore lines)
+    {
+        if (this.lines != lines)
+            this.lines.close();
+        this.lines = lines;
+    }
+
     public Map<String, Double> getSettings()
     {
         return settingsMap;
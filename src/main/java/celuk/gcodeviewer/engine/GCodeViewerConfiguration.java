@@ -157,6 +157,36 @@ public class GCodeViewerConfiguration {
     private int animationFastFactor = 100;
     @JsonIgnore
     private boolean windowAlwaysOnTop = false;
+    @JsonIgnore
+    private boolean useFastParser = true;
+    @JsonIgnore
+    private int loaderThreads = 0;
+    @JsonIgnore
+    private boolean progressiveLoading = true;
+    @JsonIgnore
+    private boolean useCache = true;
+    @JsonIgnore
+    private String segmentRendering = "geometry";
+    @JsonIgnore
+    private int feedbackCacheLimitMB = 1024;
+    @JsonIgnore
+    private float lodLineWidthPixels = 1.0f;
+    @JsonIgnore
+    private float lodMergeWidthPixels = 0.25f;
+    @JsonIgnore
+    private boolean adaptiveQuality = true;
+    @JsonIgnore
+    private float targetFrameTimeMs = 16.0f;
+    @JsonIgnore
+    private int qualityRestoreFrames = 5;
+    @JsonIgnore
+    private int gpuMemoryBudgetMB = 1024;
+    @JsonIgnore
+    private boolean backgroundUpload = true;
+    @JsonIgnore
+    private String cacheDirectory = "";
+    @JsonIgnore
+    private int cacheSizeLimitMB = 4096;
     
     GCodeViewerConfiguration() {
     }
@@ -515,4 +545,154 @@ public class GCodeViewerConfiguration {
     public void setWindowAlwaysOnTop(boolean windowAlwaysOnTop) {
         this.windowAlwaysOnTop = windowAlwaysOnTop;
     }
+
+    @JsonProperty
+    public boolean getUseFastParser() {
+        return useFastParser;
+    }
+
+    @JsonProperty
+    public void setUseFastParser(boolean useFastParser) {
+        this.useFastParser = useFastParser;
+    }
+
+    @JsonProperty
+    public int getLoaderThreads() {
+        return loaderThreads;
+    }
+
+    @JsonProperty
+    public void setLoaderThreads(int loaderThreads) {
+        this.loaderThreads = loaderThreads;
+    }
+
+    @JsonProperty
+    public boolean getProgressiveLoading() {
+        return progressiveLoading;
+    }
+
+    @JsonProperty
+    public void setProgressiveLoading(boolean progressiveLoading) {
+        this.progressiveLoading = progressiveLoading;
+    }
+
+    @JsonProperty
+    public boolean getUseCache() {
+        return useCache;
+    }
+
+    @JsonProperty
+    public void setUseCache(boolean useCache) {
+        this.useCache = useCache;
+    }
+
+    @JsonProperty
+    public String getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    @JsonProperty
+    public void setCacheDirectory(String cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    @JsonProperty
+    public int getCacheSizeLimitMB() {
+        return cacheSizeLimitMB;
+    }
+
+    @JsonProperty
+    public void setCacheSizeLimitMB(int cacheSizeLimitMB) {
+        this.cacheSizeLimitMB = cacheSizeLimitMB;
+    }
+
+    @JsonProperty
+    public String getSegmentRendering() {
+        return segmentRendering;
+    }
+
+    @JsonProperty
+    public void setSegmentRendering(String segmentRendering) {
+        this.segmentRendering = segmentRendering;
+    }
+
+    @JsonProperty
+    public int getFeedbackCacheLimitMB() {
+        return feedbackCacheLimitMB;
+    }
+
+    @JsonProperty
+    public void setFeedbackCacheLimitMB(int feedbackCacheLimitMB) {
+        this.feedbackCacheLimitMB = feedbackCacheLimitMB;
+    }
+
+    @JsonProperty
+    public float getLodLineWidthPixels() {
+        return lodLineWidthPixels;
+    }
+
+    @JsonProperty
+    public void setLodLineWidthPixels(float lodLineWidthPixels) {
+        this.lodLineWidthPixels = lodLineWidthPixels;
+    }
+
+    @JsonProperty
+    public float getLodMergeWidthPixels() {
+        return lodMergeWidthPixels;
+    }
+
+    @JsonProperty
+    public void setLodMergeWidthPixels(float lodMergeWidthPixels) {
+        this.lodMergeWidthPixels = lodMergeWidthPixels;
+    }
+
+    @JsonProperty
+    public boolean getAdaptiveQuality() {
+        return adaptiveQuality;
+    }
+
+    @JsonProperty
+    public void setAdaptiveQuality(boolean adaptiveQuality) {
+        this.adaptiveQuality = adaptiveQuality;
+    }
+
+    @JsonProperty
+    public float getTargetFrameTimeMs() {
+        return targetFrameTimeMs;
+    }
+
+    @JsonProperty
+    public void setTargetFrameTimeMs(float targetFrameTimeMs) {
+        this.targetFrameTimeMs = targetFrameTimeMs;
+    }
+
+    @JsonProperty
+    public int getQualityRestoreFrames() {
+        return qualityRestoreFrames;
+    }
+
+    @JsonProperty
+    public void setQualityRestoreFrames(int qualityRestoreFrames) {
+        this.qualityRestoreFrames = qualityRestoreFrames;
+    }
+
+    @JsonProperty
+    public int getGpuMemoryBudgetMB() {
+        return gpuMemoryBudgetMB;
+    }
+
+    @JsonProperty
+    public void setGpuMemoryBudgetMB(int gpuMemoryBudgetMB) {
+        this.gpuMemoryBudgetMB = gpuMemoryBudgetMB;
+    }
+
+    @JsonProperty
+    public boolean getBackgroundUpload() {
+        return backgroundUpload;
+    }
+
+    @JsonProperty
+    public void setBackgroundUpload(boolean backgroundUpload) {
+        this.backgroundUpload = backgroundUpload;
+    }
 }
@@ -0,0 +1,81 @@
+package celuk.gcodeviewer.engine;
+
+/**
+ * Index from GCode line numbers to the vertices of an entity.
+ *
+ * Segments are generated in line order, so the line numbers of the segments
+ * are in ascending order, and the vertices of the segments in a range of lines
+ * can be found with a binary search. This allows the renderers to draw only the
+ * vertices of the visible lines, rather than drawing all the vertices and
+ * discarding the hidden ones in the shaders.
+ *
+ * @author Tony Aldhous
+ */
+public class LineIndex {
+
+    // Line number of each segment, in ascending order.
+    private final int[] lineNumbers;
+    private final int verticesPerSegment;
+
+    private LineIndex(int[] lineNumbers, int verticesPerSegment) {
+        this.lineNumbers = lineNumbers;
+        this.verticesPerSegment = verticesPerSegment;
+    }
+
+    /**
+     * Build an index of the segments in a store.
+     *
+     * @param segments store holding the segments, in the order of the vertices.
+     * @param verticesPerSegment number of vertices drawn for each segment.
+     * @return the index, or null if the segments are not in line order.
+     */
+    public static LineIndex fromSegments(SegmentStore segments, int verticesPerSegment) {
+        int nSegments = segments.size();
+        int[] lineNumbers = new int[nSegments];
+        for (int index = 0; index < nSegments; ++index) {
+            lineNumbers[index] = segments.getLineNumber(index);
+            if (index > 0 && lineNumbers[index] < lineNumbers[index - 1])
+                return null;
+        }
+        return new LineIndex(lineNumbers, verticesPerSegment);
+    }
+
+    public int getNumberOfSegments() {
+        return lineNumbers.length;
+    }
+
+    /**
+     * @return the index of the first segment with a line number greater than
+     *         or equal to the given line, or the number of segments if there is none.
+     */
+    int findFirstSegment(int lineNumber) {
+        int low = 0;
+        int high = lineNumbers.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (lineNumbers[middle] < lineNumber)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * @param bottomLine lowest visible line.
+     * @return the first vertex of the segments on or above the bottom line.
+     */
+    public int getFirstVertex(int bottomLine) {
+        return verticesPerSegment * findFirstSegment(bottomLine);
+    }
+
+    /**
+     * @param topLine highest visible line.
+     * @return the vertex after the last vertex of the segments on or below the top line.
+     */
+    public int getEndVertex(int topLine) {
+        if (topLine == Integer.MAX_VALUE)
+            return verticesPerSegment * lineNumbers.length;
+        return verticesPerSegment * findFirstSegment(topLine + 1);
+    }
+}
@@ -0,0 +1,25 @@
+package celuk.gcodeviewer.engine;
+
+/**
+ * Read only access to the text of the lines of a GCode file.
+ *
+ * @author Tony Aldhous
+ */
+public interface LineStore {
+    /**
+     * @return the number of lines, including empty lines.
+     */
+    public int size();
+
+    /**
+     * @param lineIndex index of the line, starting at zero.
+     * @return the text of the line, trimmed of leading and trailing white space.
+     */
+    public String get(int lineIndex);
+
+    /**
+     * Release any resources held by the store, such as a mapping of the file.
+     * After the store is closed, the lines read as empty.
+     */
+    public void close();
+}
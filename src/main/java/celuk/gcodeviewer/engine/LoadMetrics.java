@@ -0,0 +1,176 @@
+package celuk.gcodeviewer.engine;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Timings and counters of the stages of loading a GCode file.
+ *
+ * Stage times are summed over all the threads working on the stage, so the
+ * stages of a parallel load can add up to more than the elapsed time. The
+ * stages that run for every line (process, generate and vertex buffer) are
+ * timed on one line in SAMPLE_INTERVAL and scaled up, as timing every line
+ * would slow the load noticeably.
+ *
+ * The allocation is estimated from the bytes allocated by the threads doing
+ * the load, where the JVM supports measuring it.
+ *
+ * @author Tony Aldhous
+ */
+public class LoadMetrics {
+
+    public enum Stage {
+        READ("read"),
+        TOKENIZE("tokenize"),
+        PROCESS("process"),
+        GENERATE("generate"),
+        VERTEX_BUFFER("vertex_buffer"),
+        CACHE("cache"),
+        UPLOAD("upload");
+
+        private final String key;
+
+        Stage(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+
+    // Per line stages are timed on one line in this many.
+    public static final int SAMPLE_INTERVAL = 16;
+
+    private final String filePath;
+    private final long startTime = System.nanoTime();
+    private final AtomicLongArray stageTimes = new AtomicLongArray(Stage.values().length);
+    private final AtomicLong allocatedBytes = new AtomicLong(0);
+    private volatile long firstDisplayTime = 0;
+    private volatile long endTime = 0;
+    private volatile boolean fromCache = false;
+    private volatile boolean success = false;
+    private volatile long nLines = 0;
+    private volatile long nBytes = 0;
+    private volatile long nSegments = 0;
+    private volatile long nMoves = 0;
+
+    public LoadMetrics(String filePath) {
+        this.filePath = filePath;
+    }
+
+    public void addTime(Stage stage, long nanoseconds) {
+        stageTimes.addAndGet(stage.ordinal(), nanoseconds);
+    }
+
+    /**
+     * Add the time of a sampled stage, scaled up by the sample interval.
+     */
+    public void addSampledTime(Stage stage, long nanoseconds) {
+        stageTimes.addAndGet(stage.ordinal(), SAMPLE_INTERVAL * nanoseconds);
+    }
+
+    public long getTime(Stage stage) {
+        return stageTimes.get(stage.ordinal());
+    }
+
+    public void addAllocatedBytes(long bytes) {
+        if (bytes > 0)
+            allocatedBytes.addAndGet(bytes);
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    /**
+     * @return the number of bytes allocated by the current thread so far,
+     *         or zero if the JVM does not support measuring it.
+     */
+    public static long getThreadAllocatedBytes() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunThreadBean = (com.sun.management.ThreadMXBean)threadBean;
+            if (sunThreadBean.isThreadAllocatedMemorySupported() && sunThreadBean.isThreadAllocatedMemoryEnabled())
+                return sunThreadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    public void setCounts(long nLines, long nBytes, long nSegments, long nMoves) {
+        this.nLines = nLines;
+        this.nBytes = nBytes;
+        this.nSegments = nSegments;
+        this.nMoves = nMoves;
+    }
+
+    public void setFromCache(boolean fromCache) {
+        this.fromCache = fromCache;
+    }
+
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+
+    /**
+     * Record the time the first geometry was displayed, if it has not already been recorded.
+     */
+    public void markFirstDisplay() {
+        if (firstDisplayTime == 0)
+            firstDisplayTime = System.nanoTime();
+    }
+
+    /**
+     * Record the end of the load, when the geometry has been uploaded.
+     */
+    public void markEnd() {
+        endTime = System.nanoTime();
+    }
+
+    public boolean isComplete() {
+        return endTime != 0;
+    }
+
+    /**
+     * @return elapsed time of the load in nanoseconds, or so far if it is not complete.
+     */
+    public long getElapsedTime() {
+        return (endTime != 0 ? endTime : System.nanoTime()) - startTime;
+    }
+
+    private static String toMilliseconds(long nanoseconds) {
+        return String.format(Locale.UK, "%.1f", nanoseconds / 1.0e6);
+    }
+
+    /**
+     * @return a one line summary of the metrics, as space separated key=value pairs.
+     */
+    public String getSummary() {
+        long elapsedTime = getElapsedTime();
+        double elapsedSeconds = elapsedTime / 1.0e9;
+        StringBuilder summary = new StringBuilder();
+        summary.append("file=\"").append(filePath).append("\"")
+               .append(" status=").append(!isComplete() ? "loading" : (success ? "ok" : "failed"))
+               .append(" source=").append(fromCache ? "cache" : "parse")
+               .append(" lines=").append(nLines)
+               .append(" bytes=").append(nBytes)
+               .append(" segments=").append(nSegments)
+               .append(" moves=").append(nMoves)
+               .append(" elapsed_ms=").append(toMilliseconds(elapsedTime));
+        if (firstDisplayTime != 0)
+            summary.append(" first_display_ms=").append(toMilliseconds(firstDisplayTime - startTime));
+        for (Stage stage : Stage.values())
+            summary.append(" ").append(stage.getKey()).append("_ms=").append(toMilliseconds(getTime(stage)));
+        if (elapsedSeconds > 0.0) {
+            summary.append(" lines_per_sec=").append(Math.round(nLines / elapsedSeconds))
+                   .append(" bytes_per_sec=").append(Math.round(nBytes / elapsedSeconds));
+        }
+        summary.append(" allocated_bytes=").append(getAllocatedBytes());
+        if (nLines > 0)
+            summary.append(" allocated_bytes_per_line=").append(getAllocatedBytes() / nLines);
+        return summary.toString();
+    }
+}
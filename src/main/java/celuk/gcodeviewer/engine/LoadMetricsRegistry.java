@@ -0,0 +1,42 @@
+package celuk.gcodeviewer.engine;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Holds the metrics of the most recent loads, including the load in progress,
+ * so they can be queried with the stats command.
+ *
+ * @author Tony Aldhous
+ */
+public class LoadMetricsRegistry {
+
+    public static final int MAXIMUM_LOADS = 16;
+
+    private final Deque<LoadMetrics> loads = new ArrayDeque<>();
+
+    /**
+     * Add the metrics of a new load, discarding the oldest if the registry is full.
+     */
+    public synchronized void register(LoadMetrics metrics) {
+        if (loads.size() == MAXIMUM_LOADS)
+            loads.removeFirst();
+        loads.addLast(metrics);
+    }
+
+    /**
+     * @return the metrics of the most recent load, or null if there have been no loads.
+     */
+    public synchronized LoadMetrics getLatest() {
+        return loads.peekLast();
+    }
+
+    /**
+     * @return the metrics of the recent loads, oldest first.
+     */
+    public synchronized List<LoadMetrics> getRecent() {
+        return new ArrayList<>(loads);
+    }
+}
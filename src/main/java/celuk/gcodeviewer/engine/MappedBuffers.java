@@ -0,0 +1,65 @@
+package celuk.gcodeviewer.engine;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import libertysystems.stenographer.Stenographer;
+import libertysystems.stenographer.StenographerFactory;
+
+/**
+ * Releases memory mapped buffers without waiting for them to be garbage collected.
+ *
+ * A mapping holds the file open until the buffer is collected, which on Windows
+ * stops the file from being replaced or deleted. There is no public API to unmap
+ * a buffer in Java 11, so the cleaner is invoked through sun.misc.Unsafe. If that
+ * is not available, the mapping is left for the garbage collector to release.
+ *
+ * The buffer, and any views of it, must not be accessed once it has been unmapped.
+ *
+ * @author Tony Aldhous
+ */
+final class MappedBuffers {
+    private static final Stenographer STENO = StenographerFactory.getStenographer(MappedBuffers.class.getName());
+
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field unsafeField = unsafeClass.getDeclaredField("theUnsafe");
+            unsafeField.setAccessible(true);
+            unsafe = unsafeField.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        }
+        catch (ReflectiveOperationException | RuntimeException ex) {
+            STENO.warning("Mapped buffers will be released by the garbage collector: " + ex);
+            unsafe = null;
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private MappedBuffers() {
+    }
+
+    /**
+     * Unmap the given buffer, if possible.
+     *
+     * @param buffer buffer returned by FileChannel.map(), or null.
+     */
+    static void unmap(MappedByteBuffer buffer) {
+        if (buffer == null || INVOKE_CLEANER == null)
+            return;
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        }
+        catch (ReflectiveOperationException | RuntimeException ex) {
+            STENO.warning("Failed to unmap buffer: " + ex);
+        }
+    }
+}
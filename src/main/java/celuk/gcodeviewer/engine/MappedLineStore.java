@@ -0,0 +1,256 @@
+package celuk.gcodeviewer.engine;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import libertysystems.stenographer.Stenographer;
+import libertysystems.stenographer.StenographerFactory;
+
+/**
+ * LineStore that keeps the GCode file memory mapped, and only records the
+ * offset of the start of each line. The text of a line is decoded when it is
+ * requested, so only the lines that are actually displayed are held on the heap.
+ *
+ * Lines are terminated by "\n", "\r" or "\r\n", as for BufferedReader.readLine().
+ *
+ * The mapping is held until the store is closed, so the owner of the store must
+ * close it when the lines are replaced or unloaded.
+ *
+ * @author Tony Aldhous
+ */
+public class MappedLineStore implements LineStore {
+    private static final Stenographer STENO = StenographerFactory.getStenographer(MappedLineStore.class.getName());
+
+    // Files are mapped in segments, as a single mapping is limited to 2GB.
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    private MappedByteBuffer[] segments;
+    private boolean closed = false;
+    private final long fileSize;
+    private final int nLines;
+    // Offsets of the line starts are held as ints if the file is small enough.
+    private final int[] intLineStarts;
+    private final long[] longLineStarts;
+    private byte[] lineBuffer = new byte[256];
+
+    /**
+     * Create an empty store.
+     */
+    public MappedLineStore() {
+        segments = new MappedByteBuffer[0];
+        fileSize = 0;
+        nLines = 0;
+        intLineStarts = new int[0];
+        longLineStarts = null;
+    }
+
+    private MappedLineStore(FileChannel channel, Builder builder) throws IOException {
+        fileSize = builder.fileSize;
+        segments = mapSegments(channel, fileSize);
+        nLines = builder.nLines;
+        intLineStarts = (builder.intLineStarts != null ? Arrays.copyOf(builder.intLineStarts, nLines) : null);
+        longLineStarts = (builder.longLineStarts != null ? Arrays.copyOf(builder.longLineStarts, nLines) : null);
+    }
+
+    /**
+     * Map the given file and find the start of each line.
+     *
+     * @param filePath path of the file to map.
+     * @return store holding the lines of the file.
+     */
+    public static MappedLineStore open(String filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            Builder builder = new Builder(fileSize);
+            MappedByteBuffer[] segments = mapSegments(channel, fileSize);
+            try {
+                if (fileSize > 0)
+                    builder.addLineStart(0);
+                for (int segmentIndex = 0; segmentIndex < segments.length; ++segmentIndex) {
+                    MappedByteBuffer segment = segments[segmentIndex];
+                    long segmentStart = segmentIndex * SEGMENT_SIZE;
+                    int segmentLength = segment.limit();
+                    for (int i = 0; i < segmentLength; ++i) {
+                        byte b = segment.get(i);
+                        long nextLineStart = -1;
+                        if (b == '\n') {
+                            // The line following a "\r\n" pair was started at the '\r'.
+                            long position = segmentStart + i;
+                            if (position == 0 || byteAt(segments, position - 1) != '\r')
+                                nextLineStart = position + 1;
+                        }
+                        else if (b == '\r') {
+                            long position = segmentStart + i;
+                            if (position + 1 < fileSize && byteAt(segments, position + 1) == '\n')
+                                nextLineStart = position + 2;
+                            else
+                                nextLineStart = position + 1;
+                        }
+                        if (nextLineStart > 0 && nextLineStart < fileSize)
+                            builder.addLineStart(nextLineStart);
+                    }
+                }
+            }
+            finally {
+                for (MappedByteBuffer segment : segments)
+                    MappedBuffers.unmap(segment);
+            }
+            return builder.build(channel);
+        }
+    }
+
+    private static MappedByteBuffer[] mapSegments(FileChannel channel, long fileSize) throws IOException {
+        int nSegments = (int)((fileSize + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+        MappedByteBuffer[] segments = new MappedByteBuffer[nSegments];
+        for (int segmentIndex = 0; segmentIndex < nSegments; ++segmentIndex) {
+            long segmentStart = segmentIndex * SEGMENT_SIZE;
+            segments[segmentIndex] = channel.map(FileChannel.MapMode.READ_ONLY,
+                                                 segmentStart,
+                                                 Math.min(SEGMENT_SIZE, fileSize - segmentStart));
+        }
+        return segments;
+    }
+
+    private static byte byteAt(MappedByteBuffer[] segments, long position) {
+        return segments[(int)(position / SEGMENT_SIZE)].get((int)(position % SEGMENT_SIZE));
+    }
+
+    @Override
+    public int size() {
+        return nLines;
+    }
+
+    @Override
+    public synchronized String get(int lineIndex) {
+        if (lineIndex < 0 || lineIndex >= nLines)
+            throw new IndexOutOfBoundsException("Line index " + lineIndex + " out of range 0 to " + nLines);
+        if (closed)
+            return "";
+        long lineStart = getLineStart(lineIndex);
+        long lineEnd = (lineIndex + 1 < nLines ? getLineStart(lineIndex + 1) : fileSize);
+
+        try {
+            // Trim as for String.trim(), which also removes the line terminator.
+            while (lineStart < lineEnd && (byteAt(segments, lineStart) & 0xFF) <= ' ')
+                ++lineStart;
+            while (lineEnd > lineStart && (byteAt(segments, lineEnd - 1) & 0xFF) <= ' ')
+                --lineEnd;
+
+            int length = (int)(lineEnd - lineStart);
+            if (lineBuffer.length < length)
+                lineBuffer = new byte[Math.max(length, 2 * lineBuffer.length)];
+            for (int i = 0; i < length; ++i)
+                lineBuffer[i] = byteAt(segments, lineStart + i);
+            return new String(lineBuffer, 0, length, StandardCharsets.UTF_8);
+        }
+        catch (InternalError ex) {
+            // Thrown by the JVM when the mapped file has been truncated underneath the mapping.
+            STENO.warning("Failed to read line " + lineIndex + " from mapped file: " + ex);
+            return "";
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed)
+            return;
+        closed = true;
+        for (MappedByteBuffer segment : segments)
+            MappedBuffers.unmap(segment);
+        segments = new MappedByteBuffer[0];
+    }
+
+    /**
+     * Write the line starts to a cache file.
+     */
+    void writeLineStarts(CacheWriter out) throws IOException {
+        out.writeLong(fileSize);
+        out.writeInt(nLines);
+        out.writeBoolean(intLineStarts != null);
+        if (intLineStarts != null)
+            out.writeInts(intLineStarts, nLines);
+        else
+            out.writeLongs(longLineStarts, nLines);
+    }
+
+    /**
+     * Map the given file, using the line starts read from a cache file
+     * rather than scanning the file for them.
+     *
+     * @param filePath path of the file to map.
+     * @param in reader of the cache file.
+     * @return store holding the lines of the file.
+     */
+    static MappedLineStore open(String filePath, CacheReader in) throws IOException {
+        Builder builder = new Builder(in.readLong(), 0);
+        builder.nLines = in.readInt();
+        builder.intLineStarts = null;
+        builder.longLineStarts = null;
+        if (in.readBoolean()) {
+            builder.intLineStarts = new int[builder.nLines];
+            in.readInts(builder.intLineStarts, builder.nLines);
+        }
+        else {
+            builder.longLineStarts = new long[builder.nLines];
+            in.readLongs(builder.longLineStarts, builder.nLines);
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            if (channel.size() != builder.fileSize)
+                throw new IOException("Size of \"" + filePath + "\" does not match the cached line starts");
+            return builder.build(channel);
+        }
+    }
+
+    private long getLineStart(int lineIndex) {
+        return (intLineStarts != null ? intLineStarts[lineIndex] : longLineStarts[lineIndex]);
+    }
+
+    /**
+     * Accumulates the line starts of a file that is read in order.
+     */
+    static class Builder {
+        private final long fileSize;
+        private int nLines = 0;
+        private int[] intLineStarts = null;
+        private long[] longLineStarts = null;
+
+        Builder(long fileSize) {
+            // Roughly estimate 30 bytes per line.
+            this(fileSize, (int)Math.min(Math.max(fileSize / 30, 1024), Integer.MAX_VALUE - 8));
+        }
+
+        Builder(long fileSize, int capacity) {
+            this.fileSize = fileSize;
+            if (fileSize <= Integer.MAX_VALUE)
+                intLineStarts = new int[capacity];
+            else
+                longLineStarts = new long[capacity];
+        }
+
+        void addLineStart(long lineStart) {
+            if (intLineStarts != null) {
+                if (nLines == intLineStarts.length)
+                    intLineStarts = Arrays.copyOf(intLineStarts, 2 * nLines);
+                intLineStarts[nLines] = (int)lineStart;
+            }
+            else {
+                if (nLines == longLineStarts.length)
+                    longLineStarts = Arrays.copyOf(longLineStarts, 2 * nLines);
+                longLineStarts[nLines] = lineStart;
+            }
+            ++nLines;
+        }
+
+        /**
+         * @param channel channel of the file, which must be open.
+         * @return store holding the lines added to the builder.
+         */
+        MappedLineStore build(FileChannel channel) throws IOException {
+            return new MappedLineStore(channel, this);
+        }
+    }
+}
@@ -6,89 +6,124 @@ import static org.lwjgl.opengl.GL15.*;
 import static org.lwjgl.opengl.GL20.*;
 import static org.lwjgl.opengl.GL30.*;
 
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.function.Function;
-import org.joml.Vector3f;
 import org.lwjgl.BufferUtils;
 
 public class MoveLoader {
-    
+
+    private static final int POSITION_ATTRIBUTE = 0;
+    private static final int LAYER_AND_LINE_ATTRIBUTE = 1;
+
     private final List<RawEntity> moveEntities = new ArrayList<>();
-    
-    public RawEntity loadToVAO(List<Entity> moves) {
+
+    public RawEntity loadToVAO(SegmentStore moves) {
         RawEntity moveEntity = createVAO(2 * moves.size());
         moveEntities.add(moveEntity);
-        storeSegmentInAttributeList(moveEntity, 0, moves);
-        store2xInteger2InAttributeList(moveEntity, 1, moves, (Entity m) -> {
-                Integer[] i2 = new Integer[2];
-                int layerNumber = m.getLayer();
-                if (layerNumber == Entity.NULL_LAYER)
-                    layerNumber = m.getLineNumber();
-                i2[0] = layerNumber;
-                i2[1] = m.getLineNumber();
-                return i2;
-            });
+        storeInAttributeList(moveEntity, POSITION_ATTRIBUTE, createPositionData(moves));
+        storeInAttributeList(moveEntity, LAYER_AND_LINE_ATTRIBUTE, createLayerAndLineData(moves));
         unbindVAO();
+        moveEntity.setLineIndex(LineIndex.fromSegments(moves, 2));
         return moveEntity;
     }
-    
+
+    /**
+     * Start uploading the moves with the buffer uploader. The entity is built
+     * by the returned pending entity once the buffers have been uploaded.
+     */
+    public PendingEntity uploadToVAO(SegmentStore moves, BufferUploader uploader) {
+        int nVertices = 2 * moves.size();
+        LineIndex lineIndex = LineIndex.fromSegments(moves, 2);
+        List<BufferUploader.PendingBuffer> buffers = Arrays.asList(
+            uploader.upload(Collections.singletonList(createPositionData(moves))),
+            uploader.upload(Collections.singletonList(createLayerAndLineData(moves))));
+        return new PendingEntity(buffers, vboIds -> {
+            RawEntity moveEntity = createVAO(nVertices);
+            moveEntities.add(moveEntity);
+            bindAttributeList(moveEntity, POSITION_ATTRIBUTE, vboIds[0]);
+            bindAttributeList(moveEntity, LAYER_AND_LINE_ATTRIBUTE, vboIds[1]);
+            unbindVAO();
+            moveEntity.setLineIndex(lineIndex);
+            return moveEntity;
+        });
+    }
+
     public void cleanUp() {
         moveEntities.stream().forEach(moveEntity -> moveEntity.cleanup());
         moveEntities.clear();
     }
-    
+
     private RawEntity createVAO(int nVertices) {
         int vaoId = glGenVertexArrays();
         glBindVertexArray(vaoId);
         return new RawEntity(vaoId, nVertices);
     }
-    
-    private void storeSegmentInAttributeList(RawEntity moveEntity, int attributeNumber, List<Entity> moves) {
+
+    private void storeInAttributeList(RawEntity moveEntity, int attributeNumber, ByteBuffer data) {
         int vboId = glGenBuffers();
-        moveEntity.setVboId(attributeNumber, vboId);
         glBindBuffer(GL_ARRAY_BUFFER, vboId);
-        FloatBuffer floatBuffer = BufferUtils.createFloatBuffer(6 * moves.size());
-        moves.forEach(move -> {
-                Vector3f p = move.getPosition();
-                Vector3f d = move.getDirection();
-                d.mul(0.5f * move.getLength());
-                float halfLength = 0.5f * move.getLength();
-                Vector3f p1 = new Vector3f(p).sub(d);
-                Vector3f p2 = new Vector3f(p).add(d);
-                floatBuffer.put(p1.x());
-                floatBuffer.put(p1.y());
-                floatBuffer.put(p1.z());
-                floatBuffer.put(p2.x());
-                floatBuffer.put(p2.y());
-                floatBuffer.put(p2.z());
-            });
-        floatBuffer.flip();
-        glBufferData(GL_ARRAY_BUFFER, floatBuffer, GL_STATIC_DRAW);
-        glVertexAttribPointer(attributeNumber, 3, GL_FLOAT, false, 0, 0);
-        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glBufferData(GL_ARRAY_BUFFER, data, GL_STATIC_DRAW);
+        bindAttributeList(moveEntity, attributeNumber, vboId);
     }
 
-    private void store2xInteger2InAttributeList(RawEntity moveEntity, int attributeNumber, List<Entity> moves, Function<Entity, Integer[]> getInteger2) {
-        int vboId = glGenBuffers();
+    private void bindAttributeList(RawEntity moveEntity, int attributeNumber, int vboId) {
         moveEntity.setVboId(attributeNumber, vboId);
         glBindBuffer(GL_ARRAY_BUFFER, vboId);
-        FloatBuffer floatBuffer = BufferUtils.createFloatBuffer(4 * moves.size());
-        moves.forEach(move -> {
-                Integer[] i2 = getInteger2.apply(move);
-                // Store values twice - one for each vertex in the segment.
-                floatBuffer.put((float)i2[0]);
-                floatBuffer.put((float)i2[1]);
-                floatBuffer.put((float)i2[0]);
-                floatBuffer.put((float)i2[1]);
-            });
-        floatBuffer.flip();
-        glBufferData(GL_ARRAY_BUFFER, floatBuffer, GL_STATIC_DRAW);
-        glVertexAttribPointer(attributeNumber, 2, GL_FLOAT, false, 0, 0);
+        if (attributeNumber == LAYER_AND_LINE_ATTRIBUTE) {
+            // Integer attribute, so line numbers beyond the precision of a float are exact.
+            glVertexAttribIPointer(attributeNumber, 2, GL_INT, 0, 0);
+        }
+        else
+            glVertexAttribPointer(attributeNumber, 3, GL_FLOAT, false, 0, 0);
         glBindBuffer(GL_ARRAY_BUFFER, 0);
     }
 
+    private ByteBuffer createPositionData(SegmentStore moves) {
+        ByteBuffer data = BufferUtils.createByteBuffer(4 * 6 * moves.size());
+        FloatBuffer floatBuffer = data.asFloatBuffer();
+        float[] positions = moves.getPositions();
+        float[] directions = moves.getDirections();
+        for (int index = 0; index < moves.size(); ++index) {
+            // Start and end points are half the length either side of the centre.
+            float halfLength = 0.5f * moves.getLength(index);
+            float dx = halfLength * directions[3 * index];
+            float dy = halfLength * directions[3 * index + 1];
+            float dz = halfLength * directions[3 * index + 2];
+            float px = positions[3 * index];
+            float py = positions[3 * index + 1];
+            float pz = positions[3 * index + 2];
+            floatBuffer.put(px - dx);
+            floatBuffer.put(py - dy);
+            floatBuffer.put(pz - dz);
+            floatBuffer.put(px + dx);
+            floatBuffer.put(py + dy);
+            floatBuffer.put(pz + dz);
+        }
+        return data;
+    }
+
+    private ByteBuffer createLayerAndLineData(SegmentStore moves) {
+        ByteBuffer data = BufferUtils.createByteBuffer(4 * 4 * moves.size());
+        IntBuffer intBuffer = data.asIntBuffer();
+        for (int index = 0; index < moves.size(); ++index) {
+            int layerNumber = moves.getLayer(index);
+            if (layerNumber == Entity.NULL_LAYER)
+                layerNumber = moves.getLineNumber(index);
+            int lineNumber = moves.getLineNumber(index);
+            // Store values twice - one for each vertex in the segment.
+            intBuffer.put(layerNumber);
+            intBuffer.put(lineNumber);
+            intBuffer.put(layerNumber);
+            intBuffer.put(lineNumber);
+        }
+        return data;
+    }
+
     private void unbindVAO() {
         glBindVertexArray(0);
     }
@@ -0,0 +1,79 @@
+package celuk.gcodeviewer.engine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads the lines of a UTF-8 file, recording the offset in bytes of the start
+ * of each line, so the lines of a MappedLineStore can be found while the file
+ * is read rather than by scanning it again.
+ *
+ * Lines are terminated by "\n", "\r" or "\r\n", as for BufferedReader.readLine().
+ *
+ * @author Tony Aldhous
+ */
+class OffsetLineReader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferLength = 0;
+    private int bufferPosition = 0;
+    // Offset in the file of the start of the buffer.
+    private long bufferOffset = 0;
+    // Set after a '\r', so a following '\n' is skipped.
+    private boolean skipLineFeed = false;
+    private byte[] lineBuffer = new byte[256];
+    private long lineStart = 0;
+
+    OffsetLineReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * @return the next line, without the line terminator, or null at the end of the file.
+     */
+    String readLine() throws IOException {
+        int lineLength = 0;
+        boolean lineStarted = false;
+        while (true) {
+            if (bufferPosition == bufferLength) {
+                bufferOffset += bufferLength;
+                bufferPosition = 0;
+                bufferLength = Math.max(in.read(buffer, 0, BUFFER_SIZE), 0);
+                if (bufferLength == 0)
+                    return (lineStarted ? new String(lineBuffer, 0, lineLength, StandardCharsets.UTF_8) : null);
+            }
+            byte b = buffer[bufferPosition];
+            if (skipLineFeed) {
+                skipLineFeed = false;
+                if (b == '\n') {
+                    ++bufferPosition;
+                    continue;
+                }
+            }
+            if (!lineStarted) {
+                lineStarted = true;
+                lineStart = bufferOffset + bufferPosition;
+            }
+            ++bufferPosition;
+            if (b == '\n' || b == '\r') {
+                skipLineFeed = (b == '\r');
+                return new String(lineBuffer, 0, lineLength, StandardCharsets.UTF_8);
+            }
+            if (lineLength == lineBuffer.length)
+                lineBuffer = Arrays.copyOf(lineBuffer, 2 * lineLength);
+            lineBuffer[lineLength++] = b;
+        }
+    }
+
+    /**
+     * @return the offset in bytes of the start of the line last returned by readLine().
+     */
+    long getLineStart() {
+        return lineStart;
+    }
+}
@@ -0,0 +1,43 @@
+package celuk.gcodeviewer.engine;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * An entity whose buffers are being uploaded by the BufferUploader.
+ *
+ * Once every buffer has been uploaded, the entity is built on the main thread
+ * from the ids of the buffers, in the order they were given, as the vertex
+ * array of the entity cannot be shared between contexts.
+ *
+ * @author Tony Aldhous
+ */
+public class PendingEntity {
+
+    private final List<BufferUploader.PendingBuffer> buffers;
+    private final Function<int[], RawEntity> builder;
+
+    public PendingEntity(List<BufferUploader.PendingBuffer> buffers, Function<int[], RawEntity> builder) {
+        this.buffers = buffers;
+        this.builder = builder;
+    }
+
+    public boolean isComplete() {
+        return buffers.stream().allMatch(BufferUploader.PendingBuffer::isComplete);
+    }
+
+    /**
+     * Build the entity. The buffers must be complete.
+     */
+    public RawEntity build() {
+        int[] vboIds = buffers.stream().mapToInt(BufferUploader.PendingBuffer::getVboId).toArray();
+        return builder.apply(vboIds);
+    }
+
+    /**
+     * Delete the buffers, now or when they have been uploaded.
+     */
+    public void cancel() {
+        buffers.forEach(BufferUploader.PendingBuffer::cancel);
+    }
+}
@@ -0,0 +1,135 @@
+package celuk.gcodeviewer.engine;
+
+/**
+ * Adjusts the quality of the rendering to hold the frame time near a target
+ * while the view is moving, and restores full quality once it is still.
+ *
+ * The quality is lowered one level for each frame of a moving view that takes
+ * longer than the target, and raised one level for each frame that takes less
+ * than half the target. The levels are cumulative: the angles are skipped,
+ * then the moves, then the level of detail thresholds are raised, then every
+ * chunk is drawn as lines. Once the view has been still for the given number
+ * of frames, full quality is restored. While the quality is reduced, renders
+ * are requested so that the still frames are counted.
+ *
+ * @author Tony Aldhous
+ */
+public class QualityController {
+
+    public static final int FULL_QUALITY = 0;
+    public static final int SKIP_ANGLES = 1;
+    public static final int SKIP_MOVES = 2;
+    public static final int LOWER_DETAIL = 3;
+    public static final int LINES_ONLY = 4;
+
+    // Factor applied to the level of detail thresholds at the LOWER_DETAIL level.
+    public static final float DETAIL_SCALE = 4.0f;
+    // Thresholds scaled when the configured thresholds are disabled.
+    private static final float MINIMUM_LINE_WIDTH = 1.0f;
+    private static final float MINIMUM_MERGE_WIDTH = 0.25f;
+
+    private final boolean enabled;
+    private final double targetFrameTime;
+    private final int restoreFrames;
+
+    private int level = FULL_QUALITY;
+    private boolean viewMoving = false;
+    private int nStillFrames = 0;
+    private double frameTime = 0.0;
+
+    /**
+     * @param enabled false to always render at full quality.
+     * @param targetFrameTime target frame time in seconds.
+     * @param restoreFrames number of frames the view must be still before full quality is restored.
+     */
+    public QualityController(boolean enabled, double targetFrameTime, int restoreFrames) {
+        this.enabled = enabled;
+        this.targetFrameTime = targetFrameTime;
+        this.restoreFrames = restoreFrames;
+    }
+
+    public static QualityController fromConfiguration(GCodeViewerConfiguration configuration) {
+        return new QualityController(configuration.getAdaptiveQuality(),
+                                     0.001 * configuration.getTargetFrameTimeMs(),
+                                     configuration.getQualityRestoreFrames());
+    }
+
+    /**
+     * Start a frame.
+     *
+     * @param viewMoving true if the view has changed since the last frame.
+     */
+    public void startFrame(boolean viewMoving) {
+        this.viewMoving = viewMoving;
+        if (viewMoving)
+            nStillFrames = 0;
+        else if (level != FULL_QUALITY && ++nStillFrames >= restoreFrames)
+            level = FULL_QUALITY;
+    }
+
+    /**
+     * End a frame, adjusting the quality of the next frame.
+     *
+     * @param cpuTime time in seconds taken to submit the frame.
+     * @param gpuTime time in seconds taken by the GPU to draw a recent frame.
+     */
+    public void endFrame(double cpuTime, double gpuTime) {
+        frameTime = Math.max(cpuTime, gpuTime);
+        if (!enabled || !viewMoving)
+            return;
+        if (frameTime > targetFrameTime && level < LINES_ONLY)
+            ++level;
+        else if (frameTime < 0.5 * targetFrameTime && level > FULL_QUALITY)
+            --level;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * @return the longer of the CPU and GPU times of the last frame, in seconds.
+     */
+    public double getFrameTime() {
+        return frameTime;
+    }
+
+    /**
+     * @return true if another frame must be rendered to restore full quality.
+     */
+    public boolean isRenderRequired() {
+        return level != FULL_QUALITY;
+    }
+
+    public boolean getSkipAngles() {
+        return level >= SKIP_ANGLES;
+    }
+
+    public boolean getSkipMoves() {
+        return level >= SKIP_MOVES;
+    }
+
+    /**
+     * @param lineWidth configured line width threshold in pixels.
+     * @return the line width threshold for the current level.
+     */
+    public float getLodLineWidth(float lineWidth) {
+        if (level >= LINES_ONLY && viewMoving)
+            return Float.MAX_VALUE;
+        else if (level >= LOWER_DETAIL)
+            return DETAIL_SCALE * Math.max(lineWidth, MINIMUM_LINE_WIDTH);
+        else
+            return lineWidth;
+    }
+
+    /**
+     * @param mergeWidth configured merge width threshold in pixels.
+     * @return the merge width threshold for the current level.
+     */
+    public float getLodMergeWidth(float mergeWidth) {
+        if (level >= LOWER_DETAIL)
+            return DETAIL_SCALE * Math.max(mergeWidth, MINIMUM_MERGE_WIDTH);
+        else
+            return mergeWidth;
+    }
+}
@@ -8,6 +8,16 @@ public class RawEntity {
     private int vaoId;
     private final int vboAttributes[] = new int[N_VBO_ATTRIBUTES];
     private int vertexCount;
+    // Index from line numbers to vertices, or null if the vertices are not indexed.
+    private LineIndex lineIndex = null;
+    // Runs of segments with the same type and tool, or null if there are none.
+    private SegmentRuns segmentRuns = null;
+    // Bounds of chunks of segments, or null if there are none.
+    private SegmentBounds segmentBounds = null;
+    // Pages of segments resident in the VBOs, or null if every segment is resident.
+    private SegmentPageTable segmentPages = null;
+    // False while vertices are still being appended to the entity.
+    private boolean complete = true;
     
     public RawEntity(int vaoId, int vertexCount) {
         this.vaoId = vaoId;
@@ -39,6 +49,127 @@ public class RawEntity {
     public int getVertexCount() {
         return vertexCount;
     }
+
+    public void setVertexCount(int vertexCount) {
+        this.vertexCount = vertexCount;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public void setComplete(boolean complete) {
+        this.complete = complete;
+    }
+
+    public LineIndex getLineIndex() {
+        return lineIndex;
+    }
+
+    public void setLineIndex(LineIndex lineIndex) {
+        this.lineIndex = lineIndex;
+    }
+
+    public SegmentRuns getSegmentRuns() {
+        return segmentRuns;
+    }
+
+    public void setSegmentRuns(SegmentRuns segmentRuns) {
+        this.segmentRuns = segmentRuns;
+    }
+
+    public SegmentBounds getSegmentBounds() {
+        return segmentBounds;
+    }
+
+    public void setSegmentBounds(SegmentBounds segmentBounds) {
+        this.segmentBounds = segmentBounds;
+    }
+
+    public SegmentPageTable getSegmentPages() {
+        return segmentPages;
+    }
+
+    public void setSegmentPages(SegmentPageTable segmentPages) {
+        this.segmentPages = segmentPages;
+    }
+
+    /**
+     * @param bottomVisibleLine lowest visible line.
+     * @return the first vertex that can be visible, or zero if the vertices are not indexed.
+     */
+    public int getFirstVisibleVertex(int bottomVisibleLine) {
+        if (lineIndex != null)
+            return Math.min(lineIndex.getFirstVertex(bottomVisibleLine), vertexCount);
+        else
+            return 0;
+    }
+
+    /**
+     * @param topVisibleLine highest visible line.
+     * @return the vertex after the last vertex that can be visible, or the vertex count if the vertices are not indexed.
+     */
+    public int getEndVisibleVertex(int topVisibleLine) {
+        if (lineIndex != null)
+            return Math.min(lineIndex.getEndVertex(topVisibleLine), vertexCount);
+        else
+            return vertexCount;
+    }
+    
+    /**
+     * Fill a draw list with the vertices of the visible lines, taking only the
+     * chunks selected at the given levels of detail if the entity has segment
+     * bounds, and skipping the runs of hidden tools and types if the entity has
+     * segment runs. Types are only hidden when the segments are coloured by
+     * type, as in the segment shaders. If the entity is paged, only the chunks
+     * of resident pages are drawn, from the slots holding them.
+     *
+     * @param drawList list to fill.
+     * @param renderParameters parameters giving the visible lines, tools and types.
+     * @param chunkSelection levels of the chunks, or null if every chunk is drawn in full.
+     * @param levelFlags levels of detail to draw.
+     * @param verticesPerVertex number of vertices drawn for each vertex of the entity.
+     */
+    public void buildDrawList(DrawList drawList, RenderParameters renderParameters,
+                              ChunkSelection chunkSelection, int levelFlags, int verticesPerVertex) {
+        drawList.clear();
+        int firstVertex = getFirstVisibleVertex(renderParameters.getBottomVisibleLine());
+        int endVertex = getEndVisibleVertex(renderParameters.getTopVisibleLine());
+        if (chunkSelection != null &&
+            segmentBounds != null &&
+            segmentBounds.getNumberOfSegments() == vertexCount &&
+            segmentBounds.getNumberOfChunks() == chunkSelection.getNumberOfChunks()) {
+            for (int chunk = segmentBounds.findChunk(firstVertex);
+                 chunk < segmentBounds.getNumberOfChunks() && segmentBounds.getChunkStart(chunk) < endVertex;
+                 ++chunk) {
+                if ((chunkSelection.getLevel(chunk) & levelFlags) == 0)
+                    continue;
+                if (segmentPages != null) {
+                    int page = segmentPages.getPageOfChunk(chunk);
+                    if (segmentPages.getSlot(page) < 0)
+                        continue;
+                    drawList.setOffset(verticesPerVertex * (segmentPages.getSlotStart(page) - segmentPages.getPageStart(page)));
+                }
+                addShownVertices(drawList, renderParameters,
+                                 Math.max(segmentBounds.getChunkStart(chunk), firstVertex),
+                                 Math.min(segmentBounds.getChunkEnd(chunk), endVertex),
+                                 verticesPerVertex);
+            }
+        }
+        else if ((levelFlags & ChunkSelection.FULL) != 0 && segmentPages == null)
+            addShownVertices(drawList, renderParameters, firstVertex, endVertex, verticesPerVertex);
+    }
+
+    private void addShownVertices(DrawList drawList, RenderParameters renderParameters,
+                                  int firstVertex, int endVertex, int verticesPerVertex) {
+        if (segmentRuns != null) {
+            int showTypes = ((renderParameters.getShowFlags() & 2) == 2 ? renderParameters.getShowTypes() : -1);
+            segmentRuns.addShownSegments(drawList, firstVertex, endVertex,
+                                         renderParameters.getShowTools(), showTypes, verticesPerVertex);
+        }
+        else
+            drawList.add(verticesPerVertex * firstVertex, verticesPerVertex * (endVertex - firstVertex));
+    }
     
     public void cleanup() {
         glDeleteVertexArrays(vaoId);
@@ -52,5 +183,9 @@ public class RawEntity {
         // OpenGL errors occur without this, although I don't understand why.
         vaoId = 0;
         vertexCount = 0;
+        lineIndex = null;
+        segmentRuns = null;
+        segmentBounds = null;
+        segmentPages = null;
     }
 }
@@ -34,6 +34,12 @@ public class RenderParameters {
         WINDOW_SHOW
     }
 
+    public static enum SegmentRendering {
+        GEOMETRY_SHADER,
+        INSTANCED,
+        FEEDBACK_CACHE
+    }
+
     public static enum AnimationMode {
         PAUSE,
         FORWARD_PLAY,
@@ -43,6 +49,8 @@ public class RenderParameters {
     }
 
     public static int MAX_NUMBER_OF_TOOLS = 16;
+    // Smallest range of data values per palette colour that is spread over the palette.
+    private final static float MINIMUM_DATA_STEP = 0.0005f;
      
     private int indexOfTopLayer = 0;
     private int indexOfBottomLayer = 0;
@@ -59,6 +67,11 @@ public class RenderParameters {
     private boolean showAngles = false;
     private boolean showOnlySelected = false;
     private boolean showStylus = false;
+    private SegmentRendering segmentRendering = SegmentRendering.GEOMETRY_SHADER;
+    private long feedbackCacheLimit = 0;
+    private long gpuMemoryBudget = 0;
+    private float lodLineWidth = 0.0f;
+    private float lodMergeWidth = 0.0f;
     private AnimationMode animationMode = AnimationMode.PAUSE;
     private int showTools = 0xFFFF; 
     private ColourMode colourMode = ColourMode.COLOUR_AS_TYPE;
@@ -68,6 +81,10 @@ public class RenderParameters {
     private float stylusHeight = 0.0f;
     private List<Vector3f> toolColours = new ArrayList<>();
     private List<Vector3f> dataColourPalette = new ArrayList<>();
+    // Data value the segments are coloured by, and its range over the palette.
+    private int dataIndex = -1;
+    private double dataMinimum = 0.0;
+    private double dataMaximum = 0.0;
     private int showTypes = 0xFFFF; 
     private Map<String, Vector3f> typeColourMap = new HashMap<>();
     List<String> types = new ArrayList<>();
@@ -96,6 +113,9 @@ public class RenderParameters {
     // the second updates the GUI. Easy way to do this is it always set the render flag
     // to 2, and decrement by one when cleared.
     private int renderRequired = 2;
+    // The 3D scene is cached in a framebuffer, so it is only rendered again when
+    // something it shows has changed. Otherwise only the GUI is rendered over it.
+    private boolean sceneRenderRequired = true;
 
     RenderParameters(){
     }
@@ -113,6 +133,23 @@ public class RenderParameters {
         defaultNozzleEjectVolume = configuration.getDefaultNozzleEjectVolume();
         stylusHeight = configuration.getStylusHeight();
         stylusColour = configuration.getStylusColour();
+        switch (configuration.getSegmentRendering().toLowerCase()) {
+            case "instanced":
+                segmentRendering = SegmentRendering.INSTANCED;
+                break;
+
+            case "cached":
+                segmentRendering = SegmentRendering.FEEDBACK_CACHE;
+                break;
+
+            default:
+                segmentRendering = SegmentRendering.GEOMETRY_SHADER;
+                break;
+        }
+        feedbackCacheLimit = 1024L * 1024L * configuration.getFeedbackCacheLimitMB();
+        gpuMemoryBudget = 1024L * 1024L * configuration.getGpuMemoryBudgetMB();
+        lodLineWidth = configuration.getLodLineWidthPixels();
+        lodMergeWidth = configuration.getLodMergeWidthPixels();
     }
             
     public void setFromGUIConfiguration(GCodeViewerGUIConfiguration guiConfiguration) {
@@ -157,7 +194,7 @@ public class RenderParameters {
         topLayerToRender = 0;
         bottomLayerToRender = 0;
         frameTime = 0.0;
-        renderRequired = 2;
+        setSceneRenderRequired();
     }
 
     public Map<Integer, LayerDetails> getLayerMap() {
@@ -174,7 +211,7 @@ public class RenderParameters {
 
     public void setIndexOfTopLayer(int indexOfTopLayer) {
         this.indexOfTopLayer = indexOfTopLayer;
-        renderRequired = 2;
+        setSceneRenderRequired();
     }
 
     public int getIndexOfBottomLayer() {
@@ -183,7 +220,7 @@ public class RenderParameters {
 
     public void setIndexOfBottomLayer(int indexOfBottomLayer) {
         this.indexOfBottomLayer = indexOfBottomLayer;
-        renderRequired = 2;
+        setSceneRenderRequired();
     }
 
     public int getTopLayerToRender() {
@@ -202,7 +239,7 @@ public class RenderParameters {
                 if (details != null)
                     this.topVisibleLine =  details.getEndLine();
             }
-            renderRequired = 2;
+            setSceneRenderRequired();
         }
     }
 
@@ -222,7 +259,7 @@ public class RenderParameters {
                 if (details != null)
                     this.bottomVisibleLine =  details.getStartLine();
             }
-            renderRequired = 2;
+            setSceneRenderRequired();
         }
     }
 
@@ -240,7 +277,7 @@ public class RenderParameters {
 
     public void setNumberOfLines(int numberOfLines) {
         this.numberOfLines = numberOfLines;
-        renderRequired = 2;
+        setSceneRenderRequired();
     }
 
     public int getFirstSelectedLine() {
@@ -250,7 +287,7 @@ public class RenderParameters {
     public void setFirstSelectedLine(int firstSelectedLine) {
         if (this.firstSelectedLine != firstSelectedLine) {
             this.firstSelectedLine = firstSelectedLine;
-            renderRequired = 2;
+            setSceneRenderRequired();
         }
     }
 
@@ -261,13 +298,13 @@ public class RenderParameters {
     public void setLastSelectedLine(int lastSelectedLine) {
         if (this.lastSelectedLine != lastSelectedLine) {
             this.lastSelectedLine = lastSelectedLine;
-            renderRequired = 2;
+            setSceneRenderRequired();
         }
     }
 
     public void clearSelectedLines() {
         if (firstSelectedLine != lastSelectedLine)
-            renderRequired = 2;
+            setSceneRenderRequired();
         firstSelectedLine = 0;
         lastSelectedLine = 0;
     }
@@ -280,7 +317,7 @@ public class RenderParameters {
         if (this.topVisibleLine != topVisibleLine) {
             this.topVisibleLine = topVisibleLine;
             this.topLayerToRender = getLayerIndexForLine(this.topVisibleLine);
-            renderRequired = 2;
+            setSceneRenderRequired();
         }
     }
 
@@ -293,7 +330,7 @@ public class RenderParameters {
             this.bottomVisibleLine = bottomVisibleLine;
             this.bottomLayerToRender = getLayerIndexForLine(this.bottomVisibleLine);
 
-            renderRequired = 2;
+            setSceneRenderRequired();
         }
     }
 
@@ -302,7 +339,7 @@ public class RenderParameters {
         bottomVisibleLine = 0;
         this.topLayerToRender = indexOfTopLayer;
         this.bottomLayerToRender = indexOfBottomLayer;
-        renderRequired = 2;
+        setSceneRenderRequired();
     }
 
     public void setNoLinesVisible() {
@@ -310,7 +347,7 @@ public class RenderParameters {
         bottomVisibleLine = 0;
         this.topLayerToRender = indexOfBottomLayer;
         this.bottomLayerToRender = indexOfBottomLayer;
-        renderRequired = 2;
+        setSceneRenderRequired();
     }
 
     public boolean getShowAngles() {
@@ -320,7 +357,60 @@ public class RenderParameters {
     public void setShowAngles(boolean showAngles) {
         if (this.showAngles != showAngles) {
             this.showAngles = showAngles;
-            renderRequired = 2;
+            setSceneRenderRequired();
+        }
+    }
+
+    public SegmentRendering getSegmentRendering() {
+        return segmentRendering;
+    }
+
+    public void setSegmentRendering(SegmentRendering segmentRendering) {
+        if (this.segmentRendering != segmentRendering) {
+            this.segmentRendering = segmentRendering;
+            setSceneRenderRequired();
+        }
+    }
+
+    /**
+     * @return the maximum size in bytes of the transform feedback cache of the segment geometry.
+     */
+    public long getFeedbackCacheLimit() {
+        return feedbackCacheLimit;
+    }
+
+    /**
+     * @return the maximum size in bytes of the segment VBOs, or zero if there is no limit.
+     */
+    public long getGpuMemoryBudget() {
+        return gpuMemoryBudget;
+    }
+
+    /**
+     * @return the width in pixels below which segments are drawn as lines, or zero if they are always drawn as blocks.
+     */
+    public float getLodLineWidth() {
+        return lodLineWidth;
+    }
+
+    public void setLodLineWidth(float lodLineWidth) {
+        if (this.lodLineWidth != lodLineWidth) {
+            this.lodLineWidth = lodLineWidth;
+            setSceneRenderRequired();
+        }
+    }
+
+    /**
+     * @return the width in pixels below which segments are drawn as merged lines, or zero if they are never merged.
+     */
+    public float getLodMergeWidth() {
+        return lodMergeWidth;
+    }
+
+    public void setLodMergeWidth(float lodMergeWidth) {
+        if (this.lodMergeWidth != lodMergeWidth) {
+            this.lodMergeWidth = lodMergeWidth;
+            setSceneRenderRequired();
         }
     }
 
@@ -331,7 +421,7 @@ public class RenderParameters {
     public void setShowMoves(boolean showMoves) {
         if (this.showMoves != showMoves) {
             this.showMoves = showMoves;
-            renderRequired = 2;
+            setSceneRenderRequired();
         }
     }
 
@@ -342,7 +432,7 @@ public class RenderParameters {
     public void setShowOnlySelected(boolean showOnlySelected) {
         if (this.showOnlySelected != showOnlySelected) {
             this.showOnlySelected = showOnlySelected;
-            renderRequired = 2;
+            setSceneRenderRequired();
         }
     }
 
@@ -353,7 +443,7 @@ public class RenderParameters {
     public void setShowStylus(boolean showStylus) {
         if (this.showStylus != showStylus) {
             this.showStylus = showStylus;
-            renderRequired = 2;
+            setSceneRenderRequired();
         }
     }
 
@@ -364,7 +454,7 @@ public class RenderParameters {
     public void setAnimationMode(AnimationMode mode) {
         if (this.animationMode != mode) {
             this.animationMode = mode;
-            renderRequired = 2;
+            setSceneRenderRequired();
         }
     }
 
@@ -375,7 +465,7 @@ public class RenderParameters {
     public void setColourMode(ColourMode colourMode) {
         if (this.colourMode != colourMode) {
             this.colourMode = colourMode;
-            renderRequired = 2;
+            setSceneRenderRequired();
         }
     }
     
@@ -385,7 +475,7 @@ public class RenderParameters {
 
     public void setMoveColour(Vector3f moveColour) {
         this.moveColour = moveColour;
-        renderRequired = 2;
+        setSceneRenderRequired();
     }
     
     public Vector3f getSelectColour() {
@@ -394,7 +484,7 @@ public class RenderParameters {
 
     public void setSelectColour(Vector3f selectColour) {
         this.selectColour = selectColour;
-        renderRequired = 2;
+        setSceneRenderRequired();
     }
     
     public Vector3f getStylusColour() {
@@ -403,7 +493,7 @@ public class RenderParameters {
 
     public void setStylusColour(Vector3f stylusColour) {
         this.stylusColour = stylusColour;
-        renderRequired = 2;
+        setSceneRenderRequired();
     }
 
     public float getStylusHeight() {
@@ -412,7 +502,7 @@ public class RenderParameters {
 
     public void setStylusHeight(float stylusHeight) {
         this.stylusHeight = stylusHeight;
-        renderRequired = 2;
+        setSceneRenderRequired();
     }
   
     public List<Vector3f> getToolColours() {
@@ -421,7 +511,7 @@ public class RenderParameters {
 
     public void setToolColours(List<Vector3f> toolColours) {
         this.toolColours = toolColours;
-        renderRequired = 2;
+        setSceneRenderRequired();
     }
     
     public Vector3f getColourForTool(int toolNumber) {
@@ -439,7 +529,7 @@ public class RenderParameters {
             }
             toolColours.set(toolNumber, c);
         }
-        renderRequired = 2;
+        setSceneRenderRequired();
     }
 
     public Map<String, Vector3f> getTypeColourMap() {
@@ -461,7 +551,7 @@ public class RenderParameters {
             typeIndexMap.put(type, index);
             typeColours.add(typeColourMap.get(type));
         }
-        renderRequired = 2;
+        setSceneRenderRequired();
         
     }
     
@@ -482,7 +572,7 @@ public class RenderParameters {
 
     public void setColourForType(String type, Vector3f c) {
         typeColourMap.put(type, c);
-        renderRequired = 2;
+        setSceneRenderRequired();
     }
 
     public List<Vector3f> getTypeColours() {
@@ -495,7 +585,7 @@ public class RenderParameters {
 
     public void setToolFilamentFactors(List<Double> toolFilamentFactors) {
         this.toolFilamentFactors = toolFilamentFactors;
-        renderRequired = 2;
+        setSceneRenderRequired();
     }
     
     public double getFilamentFactorForTool(int toolNumber) {
@@ -513,7 +603,7 @@ public class RenderParameters {
             }
             toolFilamentFactors.set(toolNumber, filamentFactor);
         }
-        renderRequired = 2;
+        setSceneRenderRequired();
     }
 
     public List<Double> getToolNozzleEjectVolumes() {
@@ -522,7 +612,7 @@ public class RenderParameters {
 
     public void setToolNozzleEjectVolumes(List<Double> toolFilamentFactors) {
         this.toolFilamentFactors = toolFilamentFactors;
-        renderRequired = 2;
+        setSceneRenderRequired();
     }
     
     public double getNozzleEjectVolumeForTool(int toolNumber) {
@@ -540,7 +630,7 @@ public class RenderParameters {
             }
             toolNozzleEjectVolumes.set(toolNumber, nozzleEjectVolume);
         }
-        renderRequired = 2;
+        setSceneRenderRequired();
     }
 
     public List<Vector3f> getDataColourPalette() {
@@ -549,7 +639,7 @@ public class RenderParameters {
 
     public void setDataColourPalette(List<Vector3f> dataColourPalette) {
         this.dataColourPalette = dataColourPalette;
-        renderRequired = 2;
+        setSceneRenderRequired();
     }
 
     public Vector3f getDefaultColour() {
@@ -558,7 +648,61 @@ public class RenderParameters {
 
     public void setDefaultColour(Vector3f defaultColour) {
         this.defaultColour = defaultColour;
-        renderRequired = 2;
+        setSceneRenderRequired();
+    }
+
+    public int getDataIndex() {
+        return dataIndex;
+    }
+
+    public double getDataMinimum() {
+        return dataMinimum;
+    }
+
+    public double getDataMaximum() {
+        return dataMaximum;
+    }
+
+    /**
+     * Set the data value that the segments are coloured by when colouring as data.
+     *
+     * @param dataIndex index of the data value, or -1 to colour by type.
+     * @param dataMinimum minimum of the data value over all the segments.
+     * @param dataMaximum maximum of the data value over all the segments.
+     */
+    public void setDataColouring(int dataIndex, double dataMinimum, double dataMaximum) {
+        if (this.dataIndex != dataIndex ||
+            this.dataMinimum != dataMinimum ||
+            this.dataMaximum != dataMaximum) {
+            this.dataIndex = dataIndex;
+            this.dataMinimum = dataMinimum;
+            this.dataMaximum = dataMaximum;
+            setSceneRenderRequired();
+        }
+    }
+
+    /**
+     * @return the colours of the data palette texture, which is the default
+     *         colour alone if the data value has no range.
+     */
+    public List<Vector3f> getDataColours() {
+        if (dataColourPalette.isEmpty() || dataMinimum >= dataMaximum)
+            return Collections.singletonList(defaultColour);
+        else
+            return dataColourPalette;
+    }
+
+    /**
+     * @return the factor that maps the range of the data value to the palette,
+     *         or zero if every segment takes the first colour of the palette.
+     */
+    public float getDataScale() {
+        int nSteps = dataColourPalette.size();
+        double span = dataMaximum - dataMinimum;
+        if (nSteps > 1 && span / nSteps > MINIMUM_DATA_STEP)
+            return (float)(1.0 / span);
+        else
+            return 0.0f;
     }
     
     public int getShowFlags() {
@@ -591,7 +735,7 @@ public class RenderParameters {
     public void setShowTools(int showTools) {
         if (this.showTools != showTools) {
             this.showTools = showTools;
-            renderRequired = 2;
+            setSceneRenderRequired();
         }
     }
 
@@ -614,7 +758,7 @@ public class RenderParameters {
                     flags |= flag;
                 else
                     flags &= ~flag;
-                renderRequired = 2;
+                setSceneRenderRequired();
             }
         }
         return flags;
@@ -635,7 +779,7 @@ public class RenderParameters {
     public void setShowTypes(int showTypes) {
         if (this.showTypes != showTypes) {
             this.showTypes = showTypes;
-            renderRequired = 2;
+            setSceneRenderRequired();
         }
     }
 
@@ -658,29 +802,29 @@ public class RenderParameters {
     public void checkLimits() {
         if (bottomLayerToRender < indexOfBottomLayer) {
             bottomLayerToRender = indexOfBottomLayer;
-            renderRequired = 2;
+            setSceneRenderRequired();
         }
 
         if (topLayerToRender > indexOfTopLayer) {
             topLayerToRender = indexOfTopLayer;
-            renderRequired = 2;
+            setSceneRenderRequired();
         }
         if (topLayerToRender < bottomLayerToRender) {
             topLayerToRender = bottomLayerToRender;
-            renderRequired = 2;
+            setSceneRenderRequired();
         }
 
         if (firstSelectedLine < 0) {
             firstSelectedLine = 0;
-            renderRequired = 2;
+            setSceneRenderRequired();
         }
         if (lastSelectedLine > numberOfLines) {
             lastSelectedLine = numberOfLines;
-            renderRequired = 2;
+            setSceneRenderRequired();
         }
         if (lastSelectedLine < firstSelectedLine) {
             lastSelectedLine = firstSelectedLine;
-            renderRequired = 2;
+            setSceneRenderRequired();
         }
     }
 
@@ -691,7 +835,7 @@ public class RenderParameters {
     public void setDisplayWidth(int displayWidth) {
         if (this.displayWidth != displayWidth) {
             this.displayWidth = displayWidth;
-            renderRequired = 2;
+            setSceneRenderRequired();
         }
     }
 
@@ -703,7 +847,7 @@ public class RenderParameters {
         this.displayHeight = displayHeight;
         if (this.displayHeight != displayHeight) {
             this.displayHeight = displayHeight;
-            renderRequired = 2;
+            setSceneRenderRequired();
         }
     }
 
@@ -715,7 +859,7 @@ public class RenderParameters {
         
         if (this.windowWidth != windowWidth) {
             this.windowWidth = windowWidth;
-            renderRequired = 2;
+            setSceneRenderRequired();
         }
     }
 
@@ -726,7 +870,7 @@ public class RenderParameters {
     public void setWindowHeight(int windowHeight) {
         if (this.windowHeight != windowHeight) {
             this.windowHeight = windowHeight;
-            renderRequired = 2;
+            setSceneRenderRequired();
         }
     }
     
@@ -764,7 +908,7 @@ public class RenderParameters {
 
     public void setViewResetRequired() {
         viewResetRequired = true;
-        renderRequired = 2;
+        setSceneRenderRequired();
     }
 
     public void clearViewResetRequired() {
@@ -829,6 +973,19 @@ public class RenderParameters {
     public boolean getRenderRequired() {
         return renderRequired > 0;
     }
+
+    public void setSceneRenderRequired() {
+        sceneRenderRequired = true;
+        renderRequired = 2;
+    }
+
+    public void clearSceneRenderRequired() {
+        sceneRenderRequired = false;
+    }
+
+    public boolean getSceneRenderRequired() {
+        return sceneRenderRequired;
+    }
     
     public boolean isLayerMapEmpty() {
         return (layerMap == null || layerMap.isEmpty());
@@ -2,6 +2,7 @@ package celuk.gcodeviewer.engine;
 
 import celuk.gcodeviewer.comms.CommandHandler;
 import celuk.gcodeviewer.engine.renderers.MasterRenderer;
+import celuk.gcodeviewer.engine.renderers.SceneFramebuffer;
 import celuk.gcodeviewer.entities.Camera;
 import celuk.gcodeviewer.entities.CenterPoint;
 import celuk.gcodeviewer.entities.Entity;
@@ -12,8 +13,7 @@ import celuk.gcodeviewer.gui.GUIManager;
 import celuk.language.I18n;
 import java.io.File;
 import java.nio.IntBuffer;
-import java.util.Iterator;
-import java.util.List;
+import java.util.HashMap;
 import java.util.Map;
 import libertysystems.stenographer.Stenographer;
 import libertysystems.stenographer.StenographerFactory;
@@ -55,7 +55,6 @@ public class RenderingEngine {
     
     private static final double FPS_UPDATE_INTERVAL = 1.0; // 1 update per second.
     
-    private final static float MINIMUM_STEP = 0.0005f;
     private final static Stenographer STENO = StenographerFactory.getStenographer(
             RenderingEngine.class.getName());
     
@@ -69,10 +68,23 @@ public class RenderingEngine {
     private float printVolumeOffsetZ;
     
     private RenderParameters renderParameters = new RenderParameters();
-    private List<Entity> segments = null;
-    private List<Entity> moves = null;
+    private SegmentStore segments = null;
+    private SegmentStore moves = null;
+    private SegmentVertexBuffer segmentVertexBuffer = null;
+    private SegmentBounds segmentBounds = null;
+    private SegmentLod segmentLod = null;
+    // Entity that segments are appended to while a file is loading.
+    private RawEntity streamingEntity = null;
+    private Map<Integer, LayerDetails> streamingLayerMap = null;
+    private int nNullLayerSegments = 0;
     private Camera camera = null;
     private Light light = null;
+    private final QualityController qualityController;
+    private final SceneFramebuffer sceneFramebuffer = new SceneFramebuffer();
+    // Camera state at the last rendered frame, to detect when the view is moving.
+    private final Vector3f lastCameraPosition = new Vector3f();
+    private float lastCameraPitch = 0.0f;
+    private float lastCameraYaw = 0.0f;
 
     private final MasterRenderer masterRenderer;
     private final GUIManager guiManager;
@@ -83,6 +95,12 @@ public class RenderingEngine {
     private final SegmentLoader segmentLoader = new SegmentLoader();
     private final MoveLoader moveLoader = new MoveLoader();
     private final LineLoader lineLoader = new LineLoader();
+    // Uploads the buffers of loaded files in the background, or null to upload them on this thread.
+    private BufferUploader bufferUploader = null;
+    // Entities whose buffers are being uploaded.
+    private PendingEntity pendingSegmentEntity = null;
+    private PendingEntity pendingSegmentLodEntity = null;
+    private PendingEntity pendingMoveEntity = null;
     
     private final GCodeViewerConfiguration configuration;
     private final GCodeViewerGUIConfiguration guiConfiguration;
@@ -98,6 +116,9 @@ public class RenderingEngine {
     
     GCodeLoader fileLoader = null;
     String currentFilePath = null;
+    // Lines of the loaded file, which are closed when they are replaced.
+    private LineStore lines = null;
+    private final LoadMetricsRegistry loadMetricsRegistry = new LoadMetricsRegistry();
 
     private final double minDataValues[];
     private final double maxDataValues[];
@@ -134,6 +155,10 @@ public class RenderingEngine {
         commandHandler.setRenderingEngine(this);
  
         masterRenderer = new MasterRenderer(renderParameters);
+        qualityController = QualityController.fromConfiguration(configuration);
+        masterRenderer.setQualityController(qualityController);
+        if (configuration.getBackgroundUpload())
+            bufferUploader = BufferUploader.create(windowId);
         guiManager = new GUIManager(windowId, showAdvancedOptions, configuration.getAnimationFrameInterval(), configuration.getAnimationFrameStep(), configuration.getAnimationFastFactor(), renderParameters);
         guiManager.setFromGUIConfiguration(guiConfiguration);
         lineModel = null;
@@ -263,9 +288,14 @@ public class RenderingEngine {
             if (commandHandler.processCommands())
                 glfwSetWindowShouldClose(windowId, true);
             
+            if (fileLoader != null)
+                processSegmentBatches();
+
             if (fileLoader != null && fileLoader.loadFinished())
                 completeLoadingGCodeFile();
 
+            processPendingEntities();
+
             
             // Not sure if this is strictly necessary.
             // However, if nothing is changing, this loop becomes effectively a busy wait.
@@ -285,8 +315,14 @@ public class RenderingEngine {
         renderParameters.saveToGUIConfiguration(guiConfiguration);
         guiManager.saveToGUIConfiguration(guiConfiguration);
         commandHandler.stop();
+        cancelPendingEntities();
+        if (bufferUploader != null)
+            bufferUploader.cleanUp();
         masterRenderer.cleanUp();
+        sceneFramebuffer.cleanUp();
         guiManager.cleanUp();
+        if (lines != null)
+            lines.close();
         floorLoader.cleanUp();
         modelLoader.cleanUp();
         segmentLoader.cleanUp();
@@ -317,9 +353,23 @@ public class RenderingEngine {
 
         if (renderParameters.getViewResetRequired())
         {
-            PrintVolumeDetails printVolumeDetails = configuration.getPrintVolumeDetailsForType(printerType);
-            Vector3f centerPointStartPos = new Vector3f(printVolumeOffsetX + 0.5f * printVolumeWidth, printVolumeOffsetY + 0.5f * printVolumeDepth, printVolumeOffsetZ + 0.5f * printVolumeHeight);
-            camera.reset(centerPointStartPos, printVolumeDetails.getDefaultCameraDistance());
+            Vector3f modelMinimum = new Vector3f();
+            Vector3f modelMaximum = new Vector3f();
+            if (masterRenderer.getSegmentEntity() != null &&
+                segmentBounds != null &&
+                segmentBounds.getLayerBounds(renderParameters.getBottomLayerToRender(),
+                                             renderParameters.getTopLayerToRender(),
+                                             modelMinimum, modelMaximum)) {
+                // Fit the view to the bounding sphere of the layers being rendered.
+                Vector3f centerPointStartPos = new Vector3f(modelMinimum).add(modelMaximum).mul(0.5f);
+                float radius = 0.5f * modelMaximum.distance(modelMinimum);
+                camera.reset(centerPointStartPos, masterRenderer.getFitDistance(radius));
+            }
+            else {
+                PrintVolumeDetails printVolumeDetails = configuration.getPrintVolumeDetailsForType(printerType);
+                Vector3f centerPointStartPos = new Vector3f(printVolumeOffsetX + 0.5f * printVolumeWidth, printVolumeOffsetY + 0.5f * printVolumeDepth, printVolumeOffsetZ + 0.5f * printVolumeHeight);
+                camera.reset(centerPointStartPos, printVolumeDetails.getDefaultCameraDistance());
+            }
             renderParameters.clearViewResetRequired();
         }
         camera.move();
@@ -329,16 +379,48 @@ public class RenderingEngine {
 
         renderParameters.checkLimits();
 
+        // Upload the pages of segments wanted for the layers being rendered, if
+        // they do not all fit in the GPU memory budget, and render them once uploaded.
+        RawEntity segmentEntity = masterRenderer.getSegmentEntity();
+        if (segmentEntity != null &&
+            segmentEntity.getSegmentPages() != null &&
+            segmentLoader.updatePagedVAO(segmentEntity, segments, segmentVertexBuffer,
+                                         renderParameters.getBottomLayerToRender(),
+                                         renderParameters.getTopLayerToRender()))
+            renderParameters.setSceneRenderRequired();
+
         if (renderParameters.getRenderRequired())
         {
             frameRendered = true;
-            masterRenderer.render(camera, light);
+            boolean viewMoving = isViewMoving();
+            boolean sceneCached = sceneFramebuffer.resize(renderParameters.getDisplayWidth(),
+                                                          renderParameters.getDisplayHeight());
+            if (viewMoving ||
+                renderParameters.getSceneRenderRequired() ||
+                !sceneFramebuffer.isValid()) {
+                qualityController.startFrame(viewMoving);
+                if (sceneCached)
+                    sceneFramebuffer.bind();
+                // Time the submission only, as the swap waits for the vertical sync.
+                double renderStart = glfwGetTime();
+                masterRenderer.render(camera, light);
+                qualityController.endFrame(glfwGetTime() - renderStart, masterRenderer.getGpuFrameTime());
+                if (sceneCached)
+                    sceneFramebuffer.unbind();
+                renderParameters.clearSceneRenderRequired();
+            }
+            // Only the GUI has changed if the scene was not rendered.
+            if (sceneCached)
+                sceneFramebuffer.blitToWindow();
 
             guiManager.render();
 
             glfwSwapInterval(1);
             glfwSwapBuffers(windowId); // swap the color buffers
             renderParameters.clearRenderRequired();
+            // Keep rendering while the quality is reduced, so it is restored once the view is still.
+            if (qualityController.isRenderRequired())
+                renderParameters.setSceneRenderRequired();
             if (renderParameters.getUseResizeCursor())
                 glfwSetCursor(windowId, hResizeCursor);
             else
@@ -348,6 +430,19 @@ public class RenderingEngine {
         return frameRendered;
     }
 
+    /**
+     * @return true if the camera has moved since the last rendered frame.
+     */
+    private boolean isViewMoving() {
+        boolean moving = !camera.getPosition().equals(lastCameraPosition) ||
+                         camera.getPitch() != lastCameraPitch ||
+                         camera.getYaw() != lastCameraYaw;
+        lastCameraPosition.set(camera.getPosition());
+        lastCameraPitch = camera.getPitch();
+        lastCameraYaw = camera.getYaw();
+        return moving;
+    }
+
     private void createWindowResizeCallback() {
         glfwSetWindowSizeCallback(windowId, (window, width, height) -> {
 //            System.out.println("createWindowResizeCallback(" + Long.toHexString(window) + ", " + Integer.toString(width) + ", " + Integer.toString(height) + ")");
@@ -361,7 +456,7 @@ public class RenderingEngine {
         });
         glfwSetFramebufferSizeCallback(windowId, (window, width, height) -> {
 //            System.out.println("glfwSetFramebufferSizeCallback(" + Long.toHexString(window) + ", " + Integer.toString(width) + ", " + Integer.toString(height) + ")");
-            renderParameters.setRenderRequired();
+            renderParameters.setSceneRenderRequired();
             renderFrame();
         });
     }
@@ -369,10 +464,19 @@ public class RenderingEngine {
     public void startLoadingGCodeFile(String gCodeFile) {
         if (gCodeFile != null && !gCodeFile.isEmpty()) {
             fileLoader = new GCodeLoader(gCodeFile, renderParameters, configuration);
+            loadMetricsRegistry.register(fileLoader.getMetrics());
+            streamingEntity = null;
             fileLoader.start();
         }
     }
     
+    private void setLines(LineStore newLines) {
+        guiManager.setLines(newLines);
+        if (lines != null && lines != newLines)
+            lines.close();
+        lines = newLines;
+    }
+
     private int processNullLayer(int numberOfBottomLayer, Map<Integer, LayerDetails> layerMap) {
         // There may be a NULL layer that contains the lines before the first layer.
         // If so, assign it the layer number before the bottom, so it becomes
@@ -386,29 +490,24 @@ public class RenderingEngine {
             nullLayer.setLayerNumber(nbl);
             layerMap.put(nbl, nullLayer);
             
-            Iterator<Entity> entityIterator = segments.iterator();
-            while(entityIterator.hasNext()) {
-                Entity s = entityIterator.next();
-                if (s.getLayer() == Entity.NULL_LAYER)
-                    s.setLayer(nbl);
-                else
-                    break;
+            for (int index = 0; index < segments.size() && segments.getLayer(index) == Entity.NULL_LAYER; ++index) {
+                segments.setLayer(index, nbl);
+                segmentVertexBuffer.setLayer(index, nbl);
+                nNullLayerSegments = index + 1;
             }
+            segmentBounds.renumberLayer(Entity.NULL_LAYER, nbl);
+            if (segmentLod != null)
+                segmentLod.renumberLayer(Entity.NULL_LAYER, nbl);
 
-            entityIterator = moves.iterator();
-            while(entityIterator.hasNext()) {
-                Entity s = entityIterator.next();
-                if (s.getLayer() == Entity.NULL_LAYER)
-                    s.setLayer(nbl);
-                else
-                    break;
-            }
+            for (int index = 0; index < moves.size() && moves.getLayer(index) == Entity.NULL_LAYER; ++index)
+                moves.setLayer(index, nbl);
         }
         return nbl;
     }
 
     public void completeLoadingGCodeFile() {
         if (fileLoader != null && fileLoader.loadFinished()) {
+            LoadMetrics metrics = fileLoader.getMetrics();
             try {
                 if (fileLoader.loadSuccess())
                 {
@@ -417,19 +516,16 @@ public class RenderingEngine {
 
                     segments = lineProcessor.getSegments();
                     moves = lineProcessor.getMoves();
+                    segmentVertexBuffer = lineProcessor.getSegmentVertexBuffer();
+                    segmentBounds = lineProcessor.getSegmentBounds();
+                    segmentLod = lineProcessor.getSegmentLod();
                     for (int dataIndex = 0; dataIndex < Entity.N_DATA_VALUES; ++dataIndex)
                     {
                         minDataValues[dataIndex] = lineProcessor.getMinDataValue(dataIndex);
                         maxDataValues[dataIndex] = lineProcessor.getMaxDataValue(dataIndex);
                     }
-
-                    Map<String, Double> settingsMap = processor.getSettings();
-                    double ejectVolume = settingsMap.getOrDefault("nozzle0_ejectionvolume", -1.0);
-                    if (ejectVolume > 0.0)
-                        renderParameters.setNozzleEjectVolumeForTool(0, ejectVolume);
-                    ejectVolume = settingsMap.getOrDefault("nozzle1_ejectionvolume", -1.0);
-                    if (ejectVolume > 0.0)
-                        renderParameters.setNozzleEjectVolumeForTool(1, ejectVolume);
+                    if (renderParameters.getDataIndex() >= 0)
+                        colourSegmentsFromData(renderParameters.getDataIndex());
 
                     renderParameters.setNumberOfLines(processor.getLines().size());
                     renderParameters.setFirstSelectedLine(0);
@@ -452,7 +548,7 @@ public class RenderingEngine {
                     renderParameters.setBottomLayerToRender(renderParameters.getIndexOfBottomLayer());
                     guiManager.setToolSet(lineProcessor.getToolSet());
                     guiManager.setTypeSet(lineProcessor.getTypeSet());
-                    guiManager.setLines(processor.getLines());
+                    setLines(processor.getLines());
                     guiManager.setLayerMap(lineProcessor.getLayerMap());
                     currentFilePath = fileLoader.getFilePath();
                     
@@ -460,31 +556,117 @@ public class RenderingEngine {
                     File f = new File(currentFilePath);
                     glfwSetWindowTitle(windowId, I18n.t("window.titleWithFileName").replaceAll("#1", f.getName()));
                 }
+                else
+                    fileLoader.getProcessor().getLines().close();
             }
             catch (RuntimeException ex)
             {
                 renderParameters.clearLinesAndLayer();
                 STENO.error("Parsing error");
+                metrics.setSuccess(false);
             }
             fileLoader = null;
             
+            long uploadStartTime = System.nanoTime();
+            cancelPendingEntities();
             masterRenderer.clearEntities();
-            segmentLoader.cleanUp();
-            if (segments != null && segments.size() > 0) {
-                masterRenderer.processSegmentEntity(segmentLoader.loadToVAO(segments));           
+            if (streamingEntity != null &&
+                segments != null &&
+                segments.size() > 0 &&
+                SegmentLoader.fitsMemoryBudget(segments.size(), renderParameters.getGpuMemoryBudget())) {
+                // Segments have already been loaded as the file was read.
+                segmentLoader.completeStreamingVAO(streamingEntity, segments, segmentVertexBuffer, nNullLayerSegments);
+                streamingEntity.setSegmentBounds(segmentBounds);
+                masterRenderer.processSegmentEntity(streamingEntity);
+                loadSegmentLod();
             }
+            else {
+                segmentLoader.cleanUp();
+                if (segments != null && segments.size() > 0) {
+                    loadSegmentEntity();
+                    loadSegmentLod();
+                }
+            }
+            streamingEntity = null;
+            streamingLayerMap = null;
             moveLoader.cleanUp();
             if (moves != null && moves.size() > 0) {
-                masterRenderer.processMoveEntity(moveLoader.loadToVAO(moves));           
+                if (bufferUploader != null)
+                    pendingMoveEntity = moveLoader.uploadToVAO(moves, bufferUploader);
+                else
+                    masterRenderer.processMoveEntity(moveLoader.loadToVAO(moves));
             }
+            metrics.addTime(LoadMetrics.Stage.UPLOAD, System.nanoTime() - uploadStartTime);
+            metrics.markFirstDisplay();
+            metrics.markEnd();
+            STENO.info("Load metrics: " + metrics.getSummary());
         }
     }
     
+    private void processSegmentBatches() {
+        SegmentBatch batch = fileLoader.pollBatch();
+        if (batch == null)
+            return;
+
+        boolean firstBatch = (streamingEntity == null);
+        if (firstBatch) {
+            // First batch of a new file, so remove the previous one.
+            clearGCode();
+            segments = null;
+            moves = null;
+            nNullLayerSegments = 0;
+            streamingLayerMap = new HashMap<>();
+            renderParameters.setLayerMap(streamingLayerMap);
+            streamingEntity = segmentLoader.createStreamingVAO();
+            masterRenderer.processSegmentEntity(streamingEntity);
+        }
+
+        // Keep showing the top layer if it was showing before.
+        boolean showingTopLayer = streamingLayerMap.isEmpty() ||
+                                  renderParameters.getTopLayerToRender() == renderParameters.getIndexOfTopLayer();
+        int bottomLayer = Integer.MAX_VALUE;
+        int topLayer = Integer.MIN_VALUE;
+        for (LayerDetails details : streamingLayerMap.values()) {
+            bottomLayer = Math.min(bottomLayer, details.getLayerNumber());
+            topLayer = Math.max(topLayer, details.getLayerNumber());
+        }
+        long uploadStartTime = System.nanoTime();
+        while (batch != null) {
+            // Segments beyond the GPU memory budget are paged in when the file has been loaded.
+            if (segmentLoader.canAppendToVAO(batch, renderParameters.getGpuMemoryBudget()))
+                segmentLoader.appendToVAO(streamingEntity, batch);
+            for (LayerDetails details : batch.getCompletedLayers()) {
+                streamingLayerMap.put(details.getLayerNumber(), details);
+                bottomLayer = Math.min(bottomLayer, details.getLayerNumber());
+                topLayer = Math.max(topLayer, details.getLayerNumber());
+            }
+            renderParameters.setNumberOfLines(batch.getNumberOfLines());
+            batch = fileLoader.pollBatch();
+        }
+        fileLoader.getMetrics().addTime(LoadMetrics.Stage.UPLOAD, System.nanoTime() - uploadStartTime);
+        fileLoader.getMetrics().markFirstDisplay();
+
+        if (topLayer >= bottomLayer) {
+            renderParameters.setIndexOfBottomLayer(bottomLayer);
+            renderParameters.setIndexOfTopLayer(topLayer);
+            if (firstBatch)
+                renderParameters.setBottomVisibleLine(streamingLayerMap.get(bottomLayer).getStartLine());
+            if (showingTopLayer)
+                renderParameters.setTopVisibleLine(streamingLayerMap.get(topLayer).getEndLine());
+        }
+        renderParameters.setSceneRenderRequired();
+    }
+
+    public LoadMetricsRegistry getLoadMetricsRegistry() {
+        return loadMetricsRegistry;
+    }
+
     public String getCurrentFilePath() {
             return currentFilePath;
     }
 
     public void clearGCode() {
+        cancelPendingEntities();
         renderParameters.clearLinesAndLayer();
         masterRenderer.clearEntities();
         segmentLoader.cleanUp();
@@ -492,71 +674,112 @@ public class RenderingEngine {
     }
 
     public void reloadSegments() {
+        cancelPendingEntity(pendingSegmentEntity);
+        pendingSegmentEntity = null;
         masterRenderer.processSegmentEntity(null);
+        masterRenderer.processSegmentLodEntity(null);
         segmentLoader.cleanUp();
         if (segments != null && segments.size() > 0) {
-            masterRenderer.processSegmentEntity(segmentLoader.loadToVAO(segments));           
+            loadSegmentEntity();
+            loadSegmentLod();
         }
     }
-    
-    public void reloadSegmentColours() {
-        if (segments != null &&
-            segments.size() > 0 &&
-            masterRenderer.getSegmentEntity() != null) {
-            segmentLoader.reloadColours(masterRenderer.getSegmentEntity(), segments);
-            renderParameters.setRenderRequired();
+
+    private void loadSegmentEntity() {
+        long memoryBudget = renderParameters.getGpuMemoryBudget();
+        if (!SegmentLoader.fitsMemoryBudget(segments.size(), memoryBudget)) {
+            STENO.info("Segments exceed the GPU memory budget of " + Long.toString(memoryBudget) + " bytes, so are paged");
+            // The merged segments take their share of the budget first.
+            long pagedMemoryBudget = memoryBudget;
+            if (mergedSegmentsFitMemoryBudget())
+                pagedMemoryBudget -= SegmentLoader.memoryRequired(segmentLod.getNumberOfSegments());
+            masterRenderer.processSegmentEntity(segmentLoader.createPagedVAO(segments, segmentBounds, pagedMemoryBudget));
         }
-    }
-        
-    public void colourSegmentsFromType() {
-        if (segments != null && segments.size() > 0) {
-            segments.forEach(segment -> {
-                segment.setColour(segment.getTypeColour());
-            });
+        else if (bufferUploader != null)
+            pendingSegmentEntity = segmentLoader.uploadToVAO(segments, segmentVertexBuffer, bufferUploader);
+        else {
+            RawEntity segmentEntity = segmentLoader.loadToVAO(segments, segmentVertexBuffer);
+            segmentEntity.setSegmentBounds(segmentBounds);
+            masterRenderer.processSegmentEntity(segmentEntity);
         }
     }
-    
-    public void colourSegmentsFromData(int dataIndex) {
-        
-        List<Vector3f> colourPalette = renderParameters.getDataColourPalette();
-        if (dataIndex >= 0 &&
-            dataIndex < Entity.N_DATA_VALUES &&
-            colourPalette.size() > 0 &&
-            minDataValues[dataIndex] < maxDataValues[dataIndex])
-        {
-            double minValue = minDataValues[dataIndex];
-            double maxValue = maxDataValues[dataIndex];
-            int nSteps = colourPalette.size();
-            double span = maxValue - minValue;
-            double step = span / nSteps;
-            if (colourPalette.size() > 1 && step > MINIMUM_STEP) {
-                segments.forEach(segment -> {
-                    //System.out.println("Data[" + Integer.toString(dataIndex) + "] = " + Float.toString(segment.getDataValue(dataIndex)));
-                    double index = (segment.getDataValue(dataIndex) - minValue) / step;
-                    Vector3f segmentColour;
-                    if (index < 1.0)
-                        segmentColour = colourPalette.get(0);
-                    else if (index >= nSteps)
-                        segmentColour = colourPalette.get(nSteps - 1);
-                    else
-                        segmentColour = colourPalette.get((int)index);
-                    segment.setColour(segmentColour);
-                });
-            }
+
+    private boolean mergedSegmentsFitMemoryBudget() {
+        return segmentLod != null &&
+               SegmentLoader.mergedSegmentsFitMemoryBudget(segments.size(), segmentLod.getNumberOfSegments(),
+                                                           renderParameters.getGpuMemoryBudget());
+    }
+
+    private void loadSegmentLod() {
+        cancelPendingEntity(pendingSegmentLodEntity);
+        pendingSegmentLodEntity = null;
+        masterRenderer.processSegmentLodEntity(null);
+        if (segmentLod != null && segmentLod.getNumberOfSegments() > 0) {
+            // If the merged segments are not loaded, the distant chunks are drawn as lines from the segments.
+            if (!mergedSegmentsFitMemoryBudget())
+                STENO.info("Merged segments do not fit in the GPU memory budget, so are not loaded");
+            else if (bufferUploader != null)
+                pendingSegmentLodEntity = segmentLoader.uploadToVAO(segmentLod.getMergedSegments(),
+                                                                    segmentLod.getVertexBuffer(),
+                                                                    bufferUploader);
             else {
-                Vector3f segmentColour = colourPalette.get(0);
-                segments.forEach(segment -> {
-                   segment.setColour(segmentColour);
-                });
+                RawEntity segmentLodEntity = segmentLoader.loadToVAO(segmentLod.getMergedSegments(), segmentLod.getVertexBuffer());
+                segmentLodEntity.setSegmentBounds(segmentLod.getBounds());
+                masterRenderer.processSegmentLodEntity(segmentLodEntity);
             }
         }
-        else {
-            Vector3f defaultColour = renderParameters.getDefaultColour();
-            segments.forEach(segment -> {
-               segment.setColour(defaultColour);
-            });
+    }
+
+    /**
+     * Hand the entities whose buffers have been uploaded in the background to the renderer.
+     */
+    private void processPendingEntities() {
+        if (pendingSegmentEntity != null && pendingSegmentEntity.isComplete()) {
+            RawEntity segmentEntity = pendingSegmentEntity.build();
+            segmentEntity.setSegmentBounds(segmentBounds);
+            masterRenderer.processSegmentEntity(segmentEntity);
+            pendingSegmentEntity = null;
+            renderParameters.setSceneRenderRequired();
+        }
+        if (pendingSegmentLodEntity != null && pendingSegmentLodEntity.isComplete()) {
+            RawEntity segmentLodEntity = pendingSegmentLodEntity.build();
+            segmentLodEntity.setSegmentBounds(segmentLod.getBounds());
+            masterRenderer.processSegmentLodEntity(segmentLodEntity);
+            pendingSegmentLodEntity = null;
+            renderParameters.setSceneRenderRequired();
+        }
+        if (pendingMoveEntity != null && pendingMoveEntity.isComplete()) {
+            masterRenderer.processMoveEntity(pendingMoveEntity.build());
+            pendingMoveEntity = null;
+            renderParameters.setSceneRenderRequired();
         }
     }
+
+    private void cancelPendingEntities() {
+        cancelPendingEntity(pendingSegmentEntity);
+        cancelPendingEntity(pendingSegmentLodEntity);
+        cancelPendingEntity(pendingMoveEntity);
+        pendingSegmentEntity = null;
+        pendingSegmentLodEntity = null;
+        pendingMoveEntity = null;
+    }
+
+    private void cancelPendingEntity(PendingEntity pendingEntity) {
+        if (pendingEntity != null)
+            pendingEntity.cancel();
+    }
+    
+    /**
+     * Colour the segments by a data value. The colours are looked up from the
+     * data palette in the segment shaders, so only the range of the data value
+     * is set here.
+     */
+    public void colourSegmentsFromData(int dataIndex) {
+        if (dataIndex >= 0 && dataIndex < Entity.N_DATA_VALUES)
+            renderParameters.setDataColouring(dataIndex, minDataValues[dataIndex], maxDataValues[dataIndex]);
+        else // No range, so the segments take the default colour.
+            renderParameters.setDataColouring(Entity.DATA_A, 0.0, 0.0);
+    }
     
     public void setPrinterType(String printerType) {
         // Camera is null during initialisation, so this is a
@@ -584,7 +807,7 @@ public class RenderingEngine {
             masterRenderer.processCentrePoint(centerPoint);
             masterRenderer.processPrintVolume(printVolume);
 
-            renderParameters.setRenderRequired();
+            renderParameters.setSceneRenderRequired();
         }
     }
 
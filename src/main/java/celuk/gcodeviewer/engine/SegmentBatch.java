@@ -0,0 +1,58 @@
+package celuk.gcodeviewer.engine;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * A batch of segments published by the line processor while a file is
+ * still loading, so the render loop can display the layers that have been
+ * completed so far.
+ *
+ * A batch holds its own copy of the data values and layer details, and slices of
+ * the vertex buffer pages that are not changed once written, so it can be
+ * handed from the loader thread to the render thread without locking.
+ *
+ * @author Tony Aldhous
+ */
+public class SegmentBatch {
+    private final int firstSegment;
+    private final int nSegments;
+    private final List<ByteBuffer> vertexData;
+    private final float[] dataValues;
+    private final List<LayerDetails> completedLayers;
+    private final int numberOfLines;
+
+    public SegmentBatch(int firstSegment, int nSegments, List<ByteBuffer> vertexData, float[] dataValues,
+                        List<LayerDetails> completedLayers, int numberOfLines) {
+        this.firstSegment = firstSegment;
+        this.nSegments = nSegments;
+        this.vertexData = vertexData;
+        this.dataValues = dataValues;
+        this.completedLayers = completedLayers;
+        this.numberOfLines = numberOfLines;
+    }
+
+    public int getFirstSegment() {
+        return firstSegment;
+    }
+
+    public int getNumberOfSegments() {
+        return nSegments;
+    }
+
+    public List<ByteBuffer> getVertexData() {
+        return vertexData;
+    }
+
+    public float[] getDataValues() {
+        return dataValues;
+    }
+
+    public List<LayerDetails> getCompletedLayers() {
+        return completedLayers;
+    }
+
+    public int getNumberOfLines() {
+        return numberOfLines;
+    }
+}
@@ -0,0 +1,184 @@
+package celuk.gcodeviewer.engine;
+
+import java.util.Arrays;
+import org.joml.FrustumIntersection;
+import org.joml.Vector3f;
+
+/**
+ * Axis aligned bounding boxes of chunks of consecutive segments.
+ *
+ * A chunk holds up to CHUNK_SEGMENTS segments from a single layer, so the
+ * boxes of the chunks are tight around the parts of each layer. The boxes
+ * are built as the segments are generated, and are used to draw only the
+ * chunks inside the view frustum, to choose the level of detail of each
+ * chunk, and to fit the view to the model.
+ *
+ * @author Tony Aldhous
+ */
+public class SegmentBounds {
+
+    public static final int CHUNK_SEGMENTS = 1024;
+    private static final int INITIAL_CAPACITY = 256;
+
+    private int nChunks = 0;
+    private int nSegments = 0;
+    // First segment of each chunk.
+    private int[] chunkStarts = new int[INITIAL_CAPACITY];
+    private int[] chunkLayers = new int[INITIAL_CAPACITY];
+    // Widest segment of each chunk.
+    private float[] chunkWidths = new float[INITIAL_CAPACITY];
+    // Minimum x, y, z followed by maximum x, y, z of each chunk.
+    private float[] bounds = new float[6 * INITIAL_CAPACITY];
+
+    public void clear() {
+        nChunks = 0;
+        nSegments = 0;
+    }
+
+    public int getNumberOfChunks() {
+        return nChunks;
+    }
+
+    public int getNumberOfSegments() {
+        return nSegments;
+    }
+
+    public int getChunkStart(int chunk) {
+        return chunkStarts[chunk];
+    }
+
+    public int getChunkEnd(int chunk) {
+        return (chunk + 1 < nChunks ? chunkStarts[chunk + 1] : nSegments);
+    }
+
+    public int getChunkLayer(int chunk) {
+        return chunkLayers[chunk];
+    }
+
+    public float getChunkWidth(int chunk) {
+        return chunkWidths[chunk];
+    }
+
+    /**
+     * Add the bounds of a segment, which must be the next segment in the store.
+     */
+    public void addSegment(SegmentStore segments, int index) {
+        addSegment(segments, index, false);
+    }
+
+    /**
+     * Add the bounds of a segment, which must be the next segment in the store.
+     *
+     * @param startChunk true to start a new chunk with the segment.
+     */
+    public void addSegment(SegmentStore segments, int index, boolean startChunk) {
+        int layer = segments.getLayer(index);
+        if (nChunks == 0 ||
+            startChunk ||
+            layer != chunkLayers[nChunks - 1] ||
+            nSegments - chunkStarts[nChunks - 1] >= CHUNK_SEGMENTS) {
+            if (nChunks == chunkStarts.length) {
+                chunkStarts = Arrays.copyOf(chunkStarts, 2 * nChunks);
+                chunkLayers = Arrays.copyOf(chunkLayers, 2 * nChunks);
+                chunkWidths = Arrays.copyOf(chunkWidths, 2 * nChunks);
+                bounds = Arrays.copyOf(bounds, 12 * nChunks);
+            }
+            chunkStarts[nChunks] = nSegments;
+            chunkLayers[nChunks] = layer;
+            chunkWidths[nChunks] = 0.0f;
+            int b = 6 * nChunks;
+            Arrays.fill(bounds, b, b + 3, Float.MAX_VALUE);
+            Arrays.fill(bounds, b + 3, b + 6, -Float.MAX_VALUE);
+            ++nChunks;
+        }
+
+        // The block drawn for the segment lies below its centre line, and the
+        // pyramids on its ends extend beyond its end points by up to half its
+        // width, so it is inside the box of the end points expanded by the larger
+        // of the width and the thickness.
+        float[] positions = segments.getPositions();
+        float[] directions = segments.getDirections();
+        float halfLength = 0.5f * segments.getLength(index);
+        float margin = Math.max(segments.getWidth(index), segments.getThickness(index));
+        int b = 6 * (nChunks - 1);
+        chunkWidths[nChunks - 1] = Math.max(chunkWidths[nChunks - 1], segments.getWidth(index));
+        for (int axis = 0; axis < 3; ++axis) {
+            float offset = Math.abs(halfLength * directions[3 * index + axis]) + margin;
+            float position = positions[3 * index + axis];
+            bounds[b + axis] = Math.min(bounds[b + axis], position - offset);
+            bounds[b + 3 + axis] = Math.max(bounds[b + 3 + axis], position + offset);
+        }
+        ++nSegments;
+    }
+
+    /**
+     * Change the layer of the chunks in one layer to another layer.
+     */
+    public void renumberLayer(int fromLayer, int toLayer) {
+        for (int chunk = 0; chunk < nChunks; ++chunk) {
+            if (chunkLayers[chunk] == fromLayer)
+                chunkLayers[chunk] = toLayer;
+        }
+    }
+
+    /**
+     * @return the index of the chunk holding the given segment.
+     */
+    public int findChunk(int segment) {
+        int low = 0;
+        int high = nChunks;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (getChunkEnd(middle) <= segment)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    public boolean isChunkVisible(int chunk, FrustumIntersection frustum) {
+        int b = 6 * chunk;
+        return frustum.testAab(bounds[b], bounds[b + 1], bounds[b + 2],
+                               bounds[b + 3], bounds[b + 4], bounds[b + 5]);
+    }
+
+    /**
+     * @return the distance from a point to the box of a chunk, which is zero if the point is inside it.
+     */
+    public float getChunkDistance(int chunk, Vector3f point) {
+        int b = 6 * chunk;
+        float dx = Math.max(Math.max(bounds[b] - point.x, point.x - bounds[b + 3]), 0.0f);
+        float dy = Math.max(Math.max(bounds[b + 1] - point.y, point.y - bounds[b + 4]), 0.0f);
+        float dz = Math.max(Math.max(bounds[b + 2] - point.z, point.z - bounds[b + 5]), 0.0f);
+        return (float)Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * Find the bounding box of the segments in a range of layers.
+     *
+     * @param bottomLayer lowest layer.
+     * @param topLayer highest layer.
+     * @param minimum set to the minimum corner of the box.
+     * @param maximum set to the maximum corner of the box.
+     * @return false if there are no segments in the layers.
+     */
+    public boolean getLayerBounds(int bottomLayer, int topLayer, Vector3f minimum, Vector3f maximum) {
+        minimum.set(Float.MAX_VALUE);
+        maximum.set(-Float.MAX_VALUE);
+        boolean found = false;
+        for (int chunk = 0; chunk < nChunks; ++chunk) {
+            if (chunkLayers[chunk] >= bottomLayer && chunkLayers[chunk] <= topLayer) {
+                int b = 6 * chunk;
+                minimum.set(Math.min(minimum.x, bounds[b]),
+                            Math.min(minimum.y, bounds[b + 1]),
+                            Math.min(minimum.z, bounds[b + 2]));
+                maximum.set(Math.max(maximum.x, bounds[b + 3]),
+                            Math.max(maximum.y, bounds[b + 4]),
+                            Math.max(maximum.z, bounds[b + 5]));
+                found = true;
+            }
+        }
+        return found;
+    }
+}
@@ -1,88 +1,295 @@
 package celuk.gcodeviewer.engine;
 
-import celuk.gcodeviewer.entities.Entity;
 import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.opengl.GL15.*;
 import static org.lwjgl.opengl.GL20.*;
 import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL31.*;
+import static org.lwjgl.opengl.GL33.*;
 
+import celuk.gcodeviewer.entities.Entity;
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
-import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.function.Function;
 import org.lwjgl.BufferUtils;
-import org.joml.Vector3f;
-import org.joml.Vector4f;
 
 public class SegmentLoader {
     
-    private static final int POSITION_ATTRIBUTE = 0;
-    private static final int DIRECTION_ATTRIBUTE = 1;
-    private static final int NORMAL_ATTRIBUTE = 2;
-    private static final int DIMENSION_ATTRIBUTE = 3;
-    private static final int COLOUR_ATTRIBUTE = 4;
-    private static final int ATTRIBUTES_ATTRIBUTE = 5;
-    private static final int ANGLE_ATTRIBUTE = 6;
+    public static final int POSITION_ATTRIBUTE = 0;
+    public static final int DIRECTION_ATTRIBUTE = 1;
+    public static final int NORMAL_ATTRIBUTE = 2;
+    public static final int DIMENSION_ATTRIBUTE = 3;
+    // Data values A, B and C of each segment, which share a VBO with D, E and F.
+    public static final int DATA_ABC_ATTRIBUTE = 4;
+    public static final int ATTRIBUTES_ATTRIBUTE = 5;
+    public static final int ANGLE_ATTRIBUTE = 6;
+    public static final int DATA_DEF_ATTRIBUTE = 7;
+
+    private static final int BYTES_PER_DATA = 4 * Entity.N_DATA_VALUES;
+    private static final int INITIAL_STREAMING_CAPACITY = 4 * SegmentVertexBuffer.SEGMENTS_PER_PAGE;
+    // Maximum number of pages uploaded to a paged entity in each update.
+    private static final int PAGES_PER_UPDATE = 4;
 
     private final List<RawEntity> segmentEntities = new ArrayList<>();
+    // Number of segments the VBOs of the streaming entity can hold.
+    private int streamingCapacity = 0;
+    // Data values of a page, staged for upload to a paged entity.
+    private FloatBuffer pageDataValues = null;
+
+    /**
+     * @param nSegments number of segments.
+     * @param memoryBudget maximum size in bytes of the VBOs, or zero if there is no limit.
+     * @return true if the VBOs of the segments fit in the memory budget.
+     */
+    public static boolean fitsMemoryBudget(long nSegments, long memoryBudget) {
+        return memoryBudget <= 0 || memoryRequired(nSegments) <= memoryBudget;
+    }
+
+    /**
+     * @param nSegments number of segments.
+     * @return the size in bytes of the VBOs of the segments.
+     */
+    public static long memoryRequired(long nSegments) {
+        return nSegments * (SegmentVertexBuffer.BYTES_PER_SEGMENT + BYTES_PER_DATA);
+    }
 
-    public RawEntity loadToVAO(List<Entity> segments) {
+    /**
+     * The merged segments of the level of detail share the memory budget with
+     * the segments. If the segments fit, the merged segments are only loaded if
+     * they fit alongside them. If the segments are paged, the merged segments are
+     * only loaded if they take no more than half the budget, and the pages are
+     * given the rest. Otherwise the distant chunks are drawn from the segments.
+     *
+     * @param nSegments number of segments.
+     * @param nMergedSegments number of merged segments.
+     * @param memoryBudget maximum size in bytes of the VBOs, or zero if there is no limit.
+     * @return true if the merged segments should be loaded.
+     */
+    public static boolean mergedSegmentsFitMemoryBudget(long nSegments, long nMergedSegments, long memoryBudget) {
+        if (fitsMemoryBudget(nSegments, memoryBudget))
+            return fitsMemoryBudget(nSegments + nMergedSegments, memoryBudget);
+        else
+            return fitsMemoryBudget(2 * nMergedSegments, memoryBudget);
+    }
+
+    public RawEntity loadToVAO(SegmentStore segments, SegmentVertexBuffer vertexBuffer) {
         RawEntity segmentEntity = createVAO(segments.size());
         segmentEntities.add(segmentEntity);
-        storeVector3InAttributeList(segmentEntity, POSITION_ATTRIBUTE, segments, Entity::getPosition);
-        storeVector4InAttributeList(segmentEntity, DIRECTION_ATTRIBUTE, segments, (Entity s) -> {
-                Vector3f d = s.getDirection();
-                Vector4f d4 = new Vector4f(d.x(), d.y(), d.z(), 1.0f);
-                return d4;
-            });
-        storeVector4InAttributeList(segmentEntity, NORMAL_ATTRIBUTE, segments, (Entity s) -> {
-                Vector3f n = s.getNormal();
-                Vector4f n4 = new Vector4f(n.x(), n.y(), n.z(), 1.0f);
-                return n4;
-            });
-        storeVector4InAttributeList(segmentEntity, DIMENSION_ATTRIBUTE, segments, (Entity s) -> {
-                int layerNumber = s.getLayer();
-                if (layerNumber == Entity.NULL_LAYER)
-                    layerNumber = s.getLineNumber();
-                Vector4f v = new Vector4f(s.getLength(), s.getWidth(), s.getThickness(), 1.0f);
-                return v;
-            });
-        storeVector3InAttributeList(segmentEntity, COLOUR_ATTRIBUTE, segments, Entity::getColour);
-        storeVector4InAttributeList(segmentEntity, ATTRIBUTES_ATTRIBUTE, segments, (Entity s) -> {
-                int layerNumber = s.getLayer();
-                if (layerNumber == Entity.NULL_LAYER)
-                    layerNumber = s.getLineNumber();
-                Vector4f v = new Vector4f(s.getTypeIndex(), layerNumber, s.getLineNumber(), s.getToolNumber());
-                return v;
-            });
-        storeVector4InAttributeList(segmentEntity, ANGLE_ATTRIBUTE, segments, (Entity s) -> {
-                float b = 0.01745329252f * s.getDataValue(Entity.DATA_B); // B in radians.
-                float c = 0.01745329252f * s.getDataValue(Entity.DATA_C); // C in radians.
-                Vector4f v = new Vector4f((float)Math.cos(b), (float)Math.sin(b), (float)Math.cos(c), (float)Math.sin(c));
-                return v;
-            });
+        storeInterleavedAttributes(segmentEntity, vertexBuffer);
+        storeDataValues(segmentEntity, segments.getDataValues(), segments.size());
         unbindVAO();
+        segmentEntity.setLineIndex(LineIndex.fromSegments(segments, 1));
+        segmentEntity.setSegmentRuns(SegmentRuns.fromSegments(segments));
         return segmentEntity;
     }
-    
-    public void reloadColours(RawEntity segmentEntity, List<Entity> segments) {
-        FloatBuffer floatBuffer = BufferUtils.createFloatBuffer(3 * segments.size());
-        segments.forEach(segment -> {
-                Vector3f v = segment.getColour();
-                floatBuffer.put(v.x());
-                floatBuffer.put(v.y());
-                floatBuffer.put(v.z());
-            });
-        floatBuffer.flip();
+
+    /**
+     * Start uploading the segments with the buffer uploader. The entity is built
+     * by the returned pending entity once the buffers have been uploaded.
+     */
+    public PendingEntity uploadToVAO(SegmentStore segments, SegmentVertexBuffer vertexBuffer, BufferUploader uploader) {
+        int nSegments = segments.size();
+        LineIndex lineIndex = LineIndex.fromSegments(segments, 1);
+        SegmentRuns segmentRuns = SegmentRuns.fromSegments(segments);
+        List<BufferUploader.PendingBuffer> buffers = Arrays.asList(
+            uploader.upload(vertexBuffer.getSlices(0, nSegments)),
+            uploader.upload(Collections.singletonList(createDataValues(segments.getDataValues(), nSegments))));
+        return new PendingEntity(buffers, vboIds -> {
+            RawEntity segmentEntity = createVAO(nSegments);
+            segmentEntities.add(segmentEntity);
+            segmentEntity.setVboId(POSITION_ATTRIBUTE, vboIds[0]);
+            glBindBuffer(GL_ARRAY_BUFFER, vboIds[0]);
+            setInterleavedAttributePointers();
+            segmentEntity.setVboId(DATA_ABC_ATTRIBUTE, vboIds[1]);
+            glBindBuffer(GL_ARRAY_BUFFER, vboIds[1]);
+            setDataAttributePointers(0L);
+            glBindBuffer(GL_ARRAY_BUFFER, 0);
+            unbindVAO();
+            segmentEntity.setLineIndex(lineIndex);
+            segmentEntity.setSegmentRuns(segmentRuns);
+            return segmentEntity;
+        });
+    }
+
+    /**
+     * Create an empty entity, with VBOs reserved for segments that are
+     * appended while the file is loading.
+     */
+    public RawEntity createStreamingVAO() {
+        RawEntity segmentEntity = createVAO(0);
+        segmentEntity.setComplete(false);
+        segmentEntities.add(segmentEntity);
+        streamingCapacity = INITIAL_STREAMING_CAPACITY;
+        reserveStreamingBuffers(segmentEntity, 0);
+        unbindVAO();
+        return segmentEntity;
+    }
+
+    /**
+     * @return true if the VBOs of the streaming entity fit in the memory budget
+     * after the batch has been appended.
+     */
+    public boolean canAppendToVAO(SegmentBatch batch, long memoryBudget) {
+        int nSegments = batch.getFirstSegment() + batch.getNumberOfSegments();
+        long capacity = Math.max(streamingCapacity, 1);
+        while (nSegments > capacity)
+            capacity *= 2;
+        return fitsMemoryBudget(capacity, memoryBudget);
+    }
+
+    /**
+     * Append a batch of segments to the streaming entity, growing its VBOs if required.
+     */
+    public void appendToVAO(RawEntity segmentEntity, SegmentBatch batch) {
+        int nSegments = batch.getFirstSegment() + batch.getNumberOfSegments();
         glBindVertexArray(segmentEntity.getVaoId());
+        if (nSegments > streamingCapacity) {
+            while (nSegments > streamingCapacity)
+                streamingCapacity *= 2;
+            reserveStreamingBuffers(segmentEntity, segmentEntity.getVertexCount());
+        }
+
+        glBindBuffer(GL_ARRAY_BUFFER, segmentEntity.getVboId(POSITION_ATTRIBUTE));
+        long offset = (long)batch.getFirstSegment() * SegmentVertexBuffer.BYTES_PER_SEGMENT;
+        for (ByteBuffer slice : batch.getVertexData()) {
+            glBufferSubData(GL_ARRAY_BUFFER, offset, slice);
+            offset += slice.limit();
+        }
+        glBindBuffer(GL_ARRAY_BUFFER, segmentEntity.getVboId(DATA_ABC_ATTRIBUTE));
+        glBufferSubData(GL_ARRAY_BUFFER, (long)batch.getFirstSegment() * BYTES_PER_DATA, batch.getDataValues());
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        unbindVAO();
+        segmentEntity.setVertexCount(nSegments);
+    }
+
+    /**
+     * Complete the streaming entity when the file has been loaded, by appending
+     * the segments that were not published in a batch, and uploading again the
+     * leading segments whose layer was changed after they were published.
+     *
+     * @param segmentEntity the streaming entity.
+     * @param segments all the segments.
+     * @param vertexBuffer the vertex data of all the segments.
+     * @param nChangedSegments number of leading segments to upload again.
+     */
+    public void completeStreamingVAO(RawEntity segmentEntity, SegmentStore segments,
+                                     SegmentVertexBuffer vertexBuffer, int nChangedSegments) {
+        int nStreamedSegments = segmentEntity.getVertexCount();
+        int nSegments = segments.size();
+        if (nSegments > nStreamedSegments) {
+            float[] dataValues = new float[Entity.N_DATA_VALUES * (nSegments - nStreamedSegments)];
+            System.arraycopy(segments.getDataValues(), Entity.N_DATA_VALUES * nStreamedSegments, dataValues, 0, dataValues.length);
+            appendToVAO(segmentEntity, new SegmentBatch(nStreamedSegments,
+                                                        nSegments - nStreamedSegments,
+                                                        vertexBuffer.getSlices(nStreamedSegments, nSegments - nStreamedSegments),
+                                                        dataValues,
+                                                        null,
+                                                        0));
+        }
+        int nChanged = Math.min(nChangedSegments, nStreamedSegments);
+        if (nChanged > 0) {
+            glBindBuffer(GL_ARRAY_BUFFER, segmentEntity.getVboId(POSITION_ATTRIBUTE));
+            long offset = 0;
+            for (ByteBuffer slice : vertexBuffer.getSlices(0, nChanged)) {
+                glBufferSubData(GL_ARRAY_BUFFER, offset, slice);
+                offset += slice.limit();
+            }
+            glBindBuffer(GL_ARRAY_BUFFER, 0);
+        }
+        segmentEntity.setLineIndex(LineIndex.fromSegments(segments, 1));
+        segmentEntity.setSegmentRuns(SegmentRuns.fromSegments(segments));
+        segmentEntity.setComplete(true);
+    }
+
+    /**
+     * Create an entity for segments that do not fit in the memory budget. Its VBOs
+     * hold as many pages of segments as fit in the budget, and the pages are
+     * uploaded by updatePagedVAO as the layers being rendered change.
+     *
+     * @param segments all the segments.
+     * @param bounds bounds of the chunks of the segments.
+     * @param memoryBudget maximum size in bytes of the VBOs.
+     */
+    public RawEntity createPagedVAO(SegmentStore segments, SegmentBounds bounds, long memoryBudget) {
+        long bytesPerPage = (long)SegmentPageTable.PAGE_SEGMENTS * (SegmentVertexBuffer.BYTES_PER_SEGMENT + BYTES_PER_DATA);
+        SegmentPageTable pageTable = new SegmentPageTable(bounds, (int)Math.min(memoryBudget / bytesPerPage, Integer.MAX_VALUE));
+        long nSlotSegments = (long)pageTable.getNumberOfSlots() * pageTable.getPageSegments();
+
+        RawEntity segmentEntity = createVAO(segments.size());
+        segmentEntities.add(segmentEntity);
         int vboId = glGenBuffers();
+        segmentEntity.setVboId(POSITION_ATTRIBUTE, vboId);
         glBindBuffer(GL_ARRAY_BUFFER, vboId);
-        glBufferData(GL_ARRAY_BUFFER, floatBuffer, GL_STATIC_DRAW);
-        glVertexAttribPointer(COLOUR_ATTRIBUTE, 3, GL_FLOAT, false, 0, 0);
+        glBufferData(GL_ARRAY_BUFFER, nSlotSegments * SegmentVertexBuffer.BYTES_PER_SEGMENT, GL_DYNAMIC_DRAW);
+        setInterleavedAttributePointers();
+        int dataVboId = glGenBuffers();
+        segmentEntity.setVboId(DATA_ABC_ATTRIBUTE, dataVboId);
+        glBindBuffer(GL_ARRAY_BUFFER, dataVboId);
+        glBufferData(GL_ARRAY_BUFFER, nSlotSegments * BYTES_PER_DATA, GL_DYNAMIC_DRAW);
+        setDataAttributePointers(0L);
         glBindBuffer(GL_ARRAY_BUFFER, 0);
-        segmentEntity.setVboId(COLOUR_ATTRIBUTE, vboId);
-        glBindVertexArray(0);
+        unbindVAO();
+
+        segmentEntity.setLineIndex(LineIndex.fromSegments(segments, 1));
+        segmentEntity.setSegmentRuns(SegmentRuns.fromSegments(segments));
+        segmentEntity.setSegmentBounds(bounds);
+        segmentEntity.setSegmentPages(pageTable);
+        return segmentEntity;
+    }
+
+    /**
+     * Upload the pages of a paged entity wanted for the layers being rendered.
+     * Only a few pages are uploaded in each call, so a large move of the layer
+     * range does not stall a frame; the remaining pages are uploaded by the
+     * following calls, and the chunks of a page are drawn once it is resident.
+     *
+     * @param segmentEntity the paged entity.
+     * @param segments all the segments.
+     * @param vertexBuffer the vertex data of all the segments.
+     * @param bottomLayer lowest layer being rendered.
+     * @param topLayer highest layer being rendered.
+     * @return true if any pages were uploaded.
+     */
+    public boolean updatePagedVAO(RawEntity segmentEntity, SegmentStore segments, SegmentVertexBuffer vertexBuffer,
+                                  int bottomLayer, int topLayer) {
+        SegmentPageTable pageTable = segmentEntity.getSegmentPages();
+        pageTable.setRenderedLayers(bottomLayer, topLayer);
+        int nUploaded = 0;
+        int page = pageTable.nextPageToLoad();
+        while (page >= 0 && nUploaded < PAGES_PER_UPDATE && pageTable.makeResident(page) >= 0) {
+            uploadPage(segmentEntity, pageTable, page, segments, vertexBuffer);
+            ++nUploaded;
+            page = pageTable.nextPageToLoad();
+        }
+        return nUploaded > 0;
+    }
+
+    /**
+     * Point the segment attributes of a segment entity at the given first segment,
+     * and set whether they advance per vertex or per instance. The VAO of the
+     * entity must be bound.
+     *
+     * Instanced rendering draws a range of segments by pointing the attributes at
+     * the first segment of the range, as the first instance cannot be set
+     * in OpenGL 3.3. The attributes must be reset with a first segment of zero
+     * and perInstance false after drawing.
+     *
+     * @param segmentEntity the segment entity.
+     * @param firstSegment index of the segment read for the first vertex or instance.
+     * @param perInstance if true the attributes advance per instance, otherwise per vertex.
+     */
+    public static void setSegmentAttributePointers(RawEntity segmentEntity, int firstSegment, boolean perInstance) {
+        glBindBuffer(GL_ARRAY_BUFFER, segmentEntity.getVboId(POSITION_ATTRIBUTE));
+        setInterleavedAttributePointers((long)firstSegment * SegmentVertexBuffer.BYTES_PER_SEGMENT);
+        glBindBuffer(GL_ARRAY_BUFFER, segmentEntity.getVboId(DATA_ABC_ATTRIBUTE));
+        setDataAttributePointers((long)firstSegment * BYTES_PER_DATA);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        int divisor = (perInstance ? 1 : 0);
+        for (int attributeNumber = POSITION_ATTRIBUTE; attributeNumber <= DATA_DEF_ATTRIBUTE; ++attributeNumber)
+            glVertexAttribDivisor(attributeNumber, divisor);
     }
 
     public void cleanUp() {
@@ -96,67 +303,115 @@ public class SegmentLoader {
         return new RawEntity(vaoId, nVertices);
     }
     
-    private void storeVector3InAttributeList(RawEntity segmentEntity, int attributeNumber, List<Entity> segments, Function<Entity, Vector3f> getVector3) {
+    private void storeDataValues(RawEntity segmentEntity, float[] dataValues, int nSegments) {
+        // The data values are only used to colour the segments, which is done
+        // in the shaders, so they are uploaded once and never changed.
         int vboId = glGenBuffers();
-        segmentEntity.setVboId(attributeNumber, vboId);
+        segmentEntity.setVboId(DATA_ABC_ATTRIBUTE, vboId);
         glBindBuffer(GL_ARRAY_BUFFER, vboId);
-        FloatBuffer floatBuffer = BufferUtils.createFloatBuffer(3 * segments.size());
-        segments.forEach(segment -> {
-                Vector3f v = getVector3.apply(segment);
-                floatBuffer.put(v.x());
-                floatBuffer.put(v.y());
-                floatBuffer.put(v.z());
-            });
-        floatBuffer.flip();
-        glBufferData(GL_ARRAY_BUFFER, floatBuffer, GL_STATIC_DRAW);
-        glVertexAttribPointer(attributeNumber, 3, GL_FLOAT, false, 0, 0);
+        glBufferData(GL_ARRAY_BUFFER, createDataValues(dataValues, nSegments), GL_STATIC_DRAW);
+        setDataAttributePointers(0L);
         glBindBuffer(GL_ARRAY_BUFFER, 0);
     }
 
-    private void storeVector4InAttributeList(RawEntity segmentEntity, int attributeNumber, List<Entity> segments, Function<Entity, Vector4f> getVector4) {
+    private ByteBuffer createDataValues(float[] dataValues, int nSegments) {
+        ByteBuffer data = BufferUtils.createByteBuffer(BYTES_PER_DATA * nSegments);
+        data.asFloatBuffer().put(dataValues, 0, Entity.N_DATA_VALUES * nSegments);
+        return data;
+    }
+
+    private void storeInterleavedAttributes(RawEntity segmentEntity, SegmentVertexBuffer vertexBuffer) {
+        // All the attributes except the data values share one VBO, which is allocated
+        // once and filled from the pages of the vertex buffer.
         int vboId = glGenBuffers();
-        segmentEntity.setVboId(attributeNumber, vboId);
+        segmentEntity.setVboId(POSITION_ATTRIBUTE, vboId);
         glBindBuffer(GL_ARRAY_BUFFER, vboId);
-        FloatBuffer floatBuffer = BufferUtils.createFloatBuffer(4 * segments.size());
-        segments.forEach(segment -> {
-                Vector4f v = getVector4.apply(segment);
-                floatBuffer.put(v.x());
-                floatBuffer.put(v.y());
-                floatBuffer.put(v.z());
-                floatBuffer.put(v.w());
-            });
-        floatBuffer.flip();
-        glBufferData(GL_ARRAY_BUFFER, floatBuffer, GL_STATIC_DRAW);
-        glVertexAttribPointer(attributeNumber, 4, GL_FLOAT, false, 0, 0);
+        glBufferData(GL_ARRAY_BUFFER, (long)vertexBuffer.size() * SegmentVertexBuffer.BYTES_PER_SEGMENT, GL_STATIC_DRAW);
+        long pageOffset = 0;
+        for (int pageIndex = 0; pageIndex < vertexBuffer.getNumberOfPages(); ++pageIndex) {
+            ByteBuffer page = vertexBuffer.getPage(pageIndex);
+            glBufferSubData(GL_ARRAY_BUFFER, pageOffset, page);
+            pageOffset += page.limit();
+        }
+        setInterleavedAttributePointers();
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    private void uploadPage(RawEntity segmentEntity, SegmentPageTable pageTable, int page,
+                            SegmentStore segments, SegmentVertexBuffer vertexBuffer) {
+        int firstSegment = pageTable.getPageStart(page);
+        int nSegments = pageTable.getPageEnd(page) - firstSegment;
+        long slotStart = pageTable.getSlotStart(page);
+
+        glBindBuffer(GL_ARRAY_BUFFER, segmentEntity.getVboId(POSITION_ATTRIBUTE));
+        long offset = slotStart * SegmentVertexBuffer.BYTES_PER_SEGMENT;
+        for (ByteBuffer slice : vertexBuffer.getSlices(firstSegment, nSegments)) {
+            glBufferSubData(GL_ARRAY_BUFFER, offset, slice);
+            offset += slice.limit();
+        }
+
+        int nDataValues = Entity.N_DATA_VALUES * nSegments;
+        if (pageDataValues == null || pageDataValues.capacity() < nDataValues)
+            pageDataValues = BufferUtils.createFloatBuffer(Entity.N_DATA_VALUES * pageTable.getPageSegments());
+        pageDataValues.clear();
+        pageDataValues.put(segments.getDataValues(), Entity.N_DATA_VALUES * firstSegment, nDataValues);
+        pageDataValues.flip();
+        glBindBuffer(GL_ARRAY_BUFFER, segmentEntity.getVboId(DATA_ABC_ATTRIBUTE));
+        glBufferSubData(GL_ARRAY_BUFFER, slotStart * BYTES_PER_DATA, pageDataValues);
         glBindBuffer(GL_ARRAY_BUFFER, 0);
     }
 
-    private void storeInteger4InAttributeList(RawEntity segmentEntity, int attributeNumber, List<Entity> segments, Function<Entity, Integer[]> getInteger4) {
+    private void reserveStreamingBuffers(RawEntity segmentEntity, int nSegmentsToKeep) {
+        // The VAO must be bound. New buffers of the streaming capacity are created,
+        // and the segments already loaded are copied to them on the GPU.
+        int stride = SegmentVertexBuffer.BYTES_PER_SEGMENT;
         int vboId = glGenBuffers();
-        segmentEntity.setVboId(attributeNumber, vboId);
         glBindBuffer(GL_ARRAY_BUFFER, vboId);
-        FloatBuffer floatBuffer = BufferUtils.createFloatBuffer(4 * segments.size());
-//        IntBuffer intBuffer = BufferUtils.createIntBuffer(4 * entities.size());
-        segments.forEach(segment -> {
-                Integer[] i4 = getInteger4.apply(segment);                
-                floatBuffer.put((float)i4[0]);
-                floatBuffer.put((float)i4[1]);
-                floatBuffer.put((float)i4[2]);
-                floatBuffer.put((float)i4[3]);
-//                intBuffer.put(i4[0]);
-//                intBuffer.put(i4[1]);
-//                intBuffer.put(i4[2]);
-//                intBuffer.put(i4[3]);
-            });
-        floatBuffer.flip();
-        glBufferData(GL_ARRAY_BUFFER, floatBuffer, GL_STATIC_DRAW);
-        glVertexAttribPointer(attributeNumber, 4, GL_FLOAT, false, 0, 0);
-//        intBuffer.flip();
-//        glBufferData(GL_ARRAY_BUFFER, intBuffer, GL_STATIC_DRAW);
-//        glVertexAttribIPointer(attributeNumber, 4, GL_INT, 32, 0);
+        glBufferData(GL_ARRAY_BUFFER, (long)streamingCapacity * stride, GL_STATIC_DRAW);
+        copyBuffer(segmentEntity.getVboId(POSITION_ATTRIBUTE), vboId, (long)nSegmentsToKeep * stride);
+        glBindBuffer(GL_ARRAY_BUFFER, vboId);
+        setInterleavedAttributePointers();
+        segmentEntity.setVboId(POSITION_ATTRIBUTE, vboId);
+
+        int dataVboId = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, dataVboId);
+        glBufferData(GL_ARRAY_BUFFER, (long)streamingCapacity * BYTES_PER_DATA, GL_STATIC_DRAW);
+        copyBuffer(segmentEntity.getVboId(DATA_ABC_ATTRIBUTE), dataVboId, (long)nSegmentsToKeep * BYTES_PER_DATA);
+        glBindBuffer(GL_ARRAY_BUFFER, dataVboId);
+        setDataAttributePointers(0L);
+        segmentEntity.setVboId(DATA_ABC_ATTRIBUTE, dataVboId);
         glBindBuffer(GL_ARRAY_BUFFER, 0);
     }
 
+    private static void setInterleavedAttributePointers() {
+        setInterleavedAttributePointers(0L);
+    }
+
+    private static void setInterleavedAttributePointers(long baseOffset) {
+        int stride = SegmentVertexBuffer.BYTES_PER_SEGMENT;
+        glVertexAttribPointer(POSITION_ATTRIBUTE, 3, GL_FLOAT, false, stride, baseOffset + SegmentVertexBuffer.POSITION_OFFSET);
+        glVertexAttribPointer(DIRECTION_ATTRIBUTE, 2, GL_SHORT, true, stride, baseOffset + SegmentVertexBuffer.DIRECTION_OFFSET);
+        glVertexAttribPointer(NORMAL_ATTRIBUTE, 2, GL_SHORT, true, stride, baseOffset + SegmentVertexBuffer.NORMAL_OFFSET);
+        glVertexAttribPointer(DIMENSION_ATTRIBUTE, 4, GL_HALF_FLOAT, false, stride, baseOffset + SegmentVertexBuffer.DIMENSION_OFFSET);
+        glVertexAttribIPointer(ATTRIBUTES_ATTRIBUTE, 3, GL_INT, stride, baseOffset + SegmentVertexBuffer.ATTRIBUTES_OFFSET);
+        glVertexAttribPointer(ANGLE_ATTRIBUTE, 4, GL_SHORT, true, stride, baseOffset + SegmentVertexBuffer.ANGLE_OFFSET);
+    }
+
+    private static void setDataAttributePointers(long baseOffset) {
+        glVertexAttribPointer(DATA_ABC_ATTRIBUTE, 3, GL_FLOAT, false, BYTES_PER_DATA, baseOffset);
+        glVertexAttribPointer(DATA_DEF_ATTRIBUTE, 3, GL_FLOAT, false, BYTES_PER_DATA, baseOffset + 12);
+    }
+
+    private void copyBuffer(int fromVboId, int toVboId, long size) {
+        if (fromVboId != 0 && size > 0) {
+            glBindBuffer(GL_COPY_READ_BUFFER, fromVboId);
+            glBindBuffer(GL_COPY_WRITE_BUFFER, toVboId);
+            glCopyBufferSubData(GL_COPY_READ_BUFFER, GL_COPY_WRITE_BUFFER, 0, 0, size);
+            glBindBuffer(GL_COPY_READ_BUFFER, 0);
+            glBindBuffer(GL_COPY_WRITE_BUFFER, 0);
+        }
+    }
+
     private void unbindVAO() {
         glBindVertexArray(0);
     }
@@ -0,0 +1,192 @@
+package celuk.gcodeviewer.engine;
+
+import celuk.gcodeviewer.entities.Entity;
+import org.joml.Vector3f;
+
+/**
+ * Coarse level of detail of the segments, in which runs of consecutive
+ * segments that lie on a straight line, to within a tolerance, are merged
+ * into a single segment. It is drawn as lines, for chunks that are so far
+ * from the camera that the segments are much narrower than a pixel.
+ *
+ * Segments are only merged within a chunk, and only with segments of the same
+ * type and tool, so the merged segments have the same chunks, in the same
+ * order, as the original segments, and can be drawn with the same chunk
+ * selection and the same type and tool runs. Each merged segment takes the
+ * line number and data values of its first segment, so the chunks holding
+ * the first and last visible lines are drawn from the original segments.
+ *
+ * @author Tony Aldhous
+ */
+public class SegmentLod {
+
+    // Maximum distance of the joints between the merged segments from the merged segment.
+    public static final float MERGE_TOLERANCE = 0.2f;
+    public static final int MAXIMUM_MERGED_SEGMENTS = 64;
+
+    private final SegmentStore mergedSegments = new SegmentStore(true);
+    private final SegmentVertexBuffer mergedVertexBuffer = new SegmentVertexBuffer();
+    private final SegmentBounds mergedBounds = new SegmentBounds();
+    // Index of the first original segment of each merged segment.
+    private int[] firstSegments = new int[0];
+
+    private SegmentLod() {
+    }
+
+    /**
+     * Merge the segments of a store.
+     *
+     * @param segments store holding the segments.
+     * @param bounds bounds of the chunks of the segments.
+     * @return the merged segments.
+     */
+    public static SegmentLod fromSegments(SegmentStore segments, SegmentBounds bounds) {
+        SegmentLod lod = new SegmentLod();
+        lod.firstSegments = new int[segments.size()];
+        Vector3f runStart = new Vector3f();
+        Vector3f runEnd = new Vector3f();
+        Vector3f point = new Vector3f();
+        for (int chunk = 0; chunk < bounds.getNumberOfChunks(); ++chunk) {
+            int chunkEnd = Math.min(bounds.getChunkEnd(chunk), segments.size());
+            int first = bounds.getChunkStart(chunk);
+            while (first < chunkEnd) {
+                getStart(segments, first, runStart);
+                int end = first + 1;
+                while (end < chunkEnd &&
+                       end - first < MAXIMUM_MERGED_SEGMENTS &&
+                       canMerge(segments, first, end, runStart, runEnd, point))
+                    ++end;
+                lod.addMergedSegment(segments, first, end, first == bounds.getChunkStart(chunk));
+                first = end;
+            }
+        }
+        return lod;
+    }
+
+    public int getNumberOfSegments() {
+        return mergedSegments.size();
+    }
+
+    public SegmentStore getMergedSegments() {
+        return mergedSegments;
+    }
+
+    public SegmentVertexBuffer getVertexBuffer() {
+        return mergedVertexBuffer;
+    }
+
+    public SegmentBounds getBounds() {
+        return mergedBounds;
+    }
+
+    /**
+     * @return the index of the first original segment of a merged segment.
+     */
+    public int getFirstSegment(int index) {
+        return firstSegments[index];
+    }
+
+    /**
+     * Change the layer of the merged segments in one layer to another layer.
+     */
+    public void renumberLayer(int fromLayer, int toLayer) {
+        for (int index = 0; index < mergedSegments.size(); ++index) {
+            if (mergedSegments.getLayer(index) == fromLayer) {
+                mergedSegments.setLayer(index, toLayer);
+                mergedVertexBuffer.setLayer(index, toLayer);
+            }
+        }
+        mergedBounds.renumberLayer(fromLayer, toLayer);
+    }
+
+    private static void getStart(SegmentStore segments, int index, Vector3f start) {
+        getPoint(segments, index, -0.5f, start);
+    }
+
+    private static void getEnd(SegmentStore segments, int index, Vector3f end) {
+        getPoint(segments, index, 0.5f, end);
+    }
+
+    private static void getPoint(SegmentStore segments, int index, float fraction, Vector3f point) {
+        float[] positions = segments.getPositions();
+        float[] directions = segments.getDirections();
+        float offset = fraction * segments.getLength(index);
+        point.set(positions[3 * index] + offset * directions[3 * index],
+                  positions[3 * index + 1] + offset * directions[3 * index + 1],
+                  positions[3 * index + 2] + offset * directions[3 * index + 2]);
+    }
+
+    /**
+     * @return true if the segments from first to next inclusive can be merged,
+     *         given that the segments from first to next - 1 can be merged.
+     */
+    private static boolean canMerge(SegmentStore segments, int first, int next,
+                                    Vector3f runStart, Vector3f runEnd, Vector3f point) {
+        if (segments.getTypeIndex(next) != segments.getTypeIndex(first) ||
+            segments.getToolNumber(next) != segments.getToolNumber(first))
+            return false;
+
+        // The next segment must start where the previous segment ends.
+        getEnd(segments, next - 1, runEnd);
+        getStart(segments, next, point);
+        if (point.distance(runEnd) > MERGE_TOLERANCE)
+            return false;
+
+        // Every joint must lie close to the merged segment.
+        getEnd(segments, next, runEnd);
+        for (int index = first; index < next; ++index) {
+            getEnd(segments, index, point);
+            if (getDistanceFromLine(point, runStart, runEnd) > MERGE_TOLERANCE)
+                return false;
+        }
+        return true;
+    }
+
+    static float getDistanceFromLine(Vector3f point, Vector3f start, Vector3f end) {
+        float lengthSquared = start.distanceSquared(end);
+        if (lengthSquared == 0.0f)
+            return point.distance(start);
+        float t = ((point.x - start.x) * (end.x - start.x) +
+                   (point.y - start.y) * (end.y - start.y) +
+                   (point.z - start.z) * (end.z - start.z)) / lengthSquared;
+        t = Math.max(0.0f, Math.min(1.0f, t));
+        return point.distance(start.x + t * (end.x - start.x),
+                              start.y + t * (end.y - start.y),
+                              start.z + t * (end.z - start.z));
+    }
+
+    private void addMergedSegment(SegmentStore segments, int first, int end, boolean startChunk) {
+        Vector3f start = new Vector3f();
+        Vector3f finish = new Vector3f();
+        getStart(segments, first, start);
+        getEnd(segments, end - 1, finish);
+        Vector3f direction = new Vector3f(finish).sub(start);
+        float length = direction.length();
+        if (length > 0.0f)
+            direction.div(length);
+        else
+            direction.set(segments.getDirections()[3 * first],
+                          segments.getDirections()[3 * first + 1],
+                          segments.getDirections()[3 * first + 2]);
+        Vector3f position = new Vector3f(start).add(finish).mul(0.5f);
+        float width = 0.0f;
+        for (int index = first; index < end; ++index)
+            width = Math.max(width, segments.getWidth(index));
+
+        int index = mergedSegments.addSegment(position, direction, length,
+                                              segments.getLayer(first),
+                                              segments.getLineNumber(first),
+                                              segments.getToolNumber(first));
+        float[] normals = segments.getNormals();
+        mergedSegments.setExtrusion(index,
+                                    new Vector3f(normals[3 * first], normals[3 * first + 1], normals[3 * first + 2]),
+                                    width, segments.getThickness(first),
+                                    segments.getType(first), segments.getTypeIndex(first),
+                                    segments.getTypeColour(first));
+        for (int dataIndex = 0; dataIndex < Entity.N_DATA_VALUES; ++dataIndex)
+            mergedSegments.setDataValue(index, dataIndex, segments.getDataValue(first, dataIndex));
+        mergedVertexBuffer.addSegment(mergedSegments, index);
+        mergedBounds.addSegment(mergedSegments, index, startChunk);
+        firstSegments[index] = first;
+    }
+}
@@ -0,0 +1,91 @@
+package celuk.gcodeviewer.engine;
+
+/**
+ * The mesh drawn for each segment by instanced rendering. It is the same
+ * block as is generated by segmentGeometryShader.txt: a prism with a diamond
+ * cross section, with the segment position at the top of the diamond, and a
+ * pyramid on each end.
+ *
+ * Each vertex has a corner and a normal, which are expressed in the frame of
+ * the segment, so the same mesh serves for every segment. The corner holds
+ * multiples of half the segment length, half the pyramid length, half the
+ * width and half the thickness, which are applied along the direction, the
+ * direction, the normal and the bi-normal respectively. The normal holds
+ * multiples of the direction, the normal and the bi-normal.
+ *
+ * @author Tony Aldhous
+ */
+public class SegmentMesh {
+
+    public static final int FLOATS_PER_VERTEX = 7;
+    public static final int BYTES_PER_VERTEX = 4 * FLOATS_PER_VERTEX;
+    public static final int CORNER_OFFSET = 0;
+    public static final int NORMAL_OFFSET = 16;
+
+    // Corners of the block. P1 to P4 are at the start of the segment, P5 to P8 at the end.
+    private static final float[] P1 = {-1.0f, 0.0f, 0.0f, -2.0f};
+    private static final float[] P2 = {-1.0f, 0.0f, 1.0f, -1.0f};
+    private static final float[] P3 = {-1.0f, 0.0f, 0.0f, 0.0f};
+    private static final float[] P4 = {-1.0f, 0.0f, -1.0f, -1.0f};
+    private static final float[] P5 = {1.0f, 0.0f, 0.0f, -2.0f};
+    private static final float[] P6 = {1.0f, 0.0f, 1.0f, -1.0f};
+    private static final float[] P7 = {1.0f, 0.0f, 0.0f, 0.0f};
+    private static final float[] P8 = {1.0f, 0.0f, -1.0f, -1.0f};
+    // Tips of the end pyramids.
+    private static final float[] PP1 = {-1.0f, -1.0f, 0.0f, -1.0f};
+    private static final float[] PP2 = {1.0f, 1.0f, 0.0f, -1.0f};
+
+    // Normals.
+    private static final float[] D = {1.0f, 0.0f, 0.0f};
+    private static final float[] MINUS_D = {-1.0f, 0.0f, 0.0f};
+    private static final float[] N = {0.0f, 1.0f, 0.0f};
+    private static final float[] MINUS_N = {0.0f, -1.0f, 0.0f};
+    private static final float[] B = {0.0f, 0.0f, 1.0f};
+    private static final float[] MINUS_B = {0.0f, 0.0f, -1.0f};
+
+    // Triangles as corner, normal pairs, in the order of the geometry shader.
+    private static final float[][] TRIANGLES = {
+        // Start pyramid.
+        PP1, MINUS_D, P1, MINUS_B, P2, N,
+        PP1, MINUS_D, P2, N, P3, B,
+        PP1, MINUS_D, P3, B, P4, MINUS_N,
+        PP1, MINUS_D, P4, MINUS_N, P1, MINUS_B,
+        // Side 1.
+        P1, MINUS_B, P5, MINUS_B, P6, N,
+        P1, MINUS_B, P6, N, P2, N,
+        // Side 2.
+        P2, N, P6, N, P7, B,
+        P2, N, P7, B, P3, B,
+        // Side 3.
+        P3, B, P7, B, P8, MINUS_N,
+        P3, B, P8, MINUS_N, P4, MINUS_N,
+        // Side 4.
+        P4, MINUS_N, P8, MINUS_N, P5, MINUS_B,
+        P4, MINUS_N, P5, MINUS_B, P1, MINUS_B,
+        // End pyramid.
+        PP2, D, P6, N, P5, MINUS_B,
+        PP2, D, P5, MINUS_B, P8, MINUS_N,
+        PP2, D, P8, MINUS_N, P7, B,
+        PP2, D, P7, B, P6, N
+    };
+
+    public static final int VERTEX_COUNT = TRIANGLES.length / 2;
+
+    private SegmentMesh() {
+    }
+
+    /**
+     * @return the vertices of the mesh, as triangles, each vertex being the
+     *         four floats of the corner followed by the three floats of the normal.
+     */
+    public static float[] getVertices() {
+        float[] vertices = new float[FLOATS_PER_VERTEX * VERTEX_COUNT];
+        int v = 0;
+        for (int index = 0; index < TRIANGLES.length; index += 2) {
+            System.arraycopy(TRIANGLES[index], 0, vertices, v, 4);
+            System.arraycopy(TRIANGLES[index + 1], 0, vertices, v + 4, 3);
+            v += FLOATS_PER_VERTEX;
+        }
+        return vertices;
+    }
+}
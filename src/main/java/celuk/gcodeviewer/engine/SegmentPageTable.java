@@ -0,0 +1,216 @@
+package celuk.gcodeviewer.engine;
+
+import java.util.Arrays;
+
+/**
+ * Pages of segments held on the GPU when all the segments do not fit in the
+ * GPU memory budget.
+ *
+ * The segments are split into pages of whole chunks, in the order of the
+ * segments, so each page covers a range of layers. The GPU holds a fixed
+ * number of page slots. The pages of the layers being rendered, and their
+ * neighbours, are given slots, evicting the pages that were wanted least
+ * recently. The chunks of pages without a slot are not drawn.
+ *
+ * This class only keeps the table of pages and slots. The pages are uploaded
+ * to their slots by the SegmentLoader.
+ *
+ * @author Tony Aldhous
+ */
+public class SegmentPageTable {
+
+    public static final int PAGE_SEGMENTS = SegmentVertexBuffer.SEGMENTS_PER_PAGE;
+    // Number of pages above and below the rendered layers that are kept resident.
+    public static final int NEIGHBOUR_PAGES = 1;
+
+    private final int pageSegments;
+    private final int nPages;
+    private final int nSlots;
+    // First segment of each page, followed by the number of segments.
+    private final int[] pageStarts;
+    private final int[] pageBottomLayers;
+    private final int[] pageTopLayers;
+    private final int[] chunkPages;
+    // Slot of each page, or -1 if the page is not resident.
+    private final int[] pageSlots;
+    // Page in each slot, or -1 if the slot is free.
+    private final int[] slotPages;
+    private final long[] pageWantedStamps;
+    private long wantedStamp = 0;
+    // Pages wanted for the rendered layers, in order of priority.
+    private final int[] wantedPages;
+    private int nWantedPages = 0;
+    private int wantedBottomLayer = Integer.MAX_VALUE;
+    private int wantedTopLayer = Integer.MIN_VALUE;
+
+    public SegmentPageTable(SegmentBounds bounds, int nSlots) {
+        this(bounds, nSlots, PAGE_SEGMENTS);
+    }
+
+    SegmentPageTable(SegmentBounds bounds, int nSlots, int pageSegments) {
+        this.pageSegments = pageSegments;
+        this.nSlots = Math.max(nSlots, 1);
+
+        int nChunks = bounds.getNumberOfChunks();
+        int[] starts = new int[nChunks + 1];
+        int[] bottomLayers = new int[nChunks];
+        int[] topLayers = new int[nChunks];
+        chunkPages = new int[nChunks];
+        int page = -1;
+        for (int chunk = 0; chunk < nChunks; ++chunk) {
+            int layer = bounds.getChunkLayer(chunk);
+            if (page < 0 || bounds.getChunkEnd(chunk) - starts[page] > pageSegments) {
+                ++page;
+                starts[page] = bounds.getChunkStart(chunk);
+                bottomLayers[page] = layer;
+                topLayers[page] = layer;
+            }
+            else {
+                bottomLayers[page] = Math.min(bottomLayers[page], layer);
+                topLayers[page] = Math.max(topLayers[page], layer);
+            }
+            chunkPages[chunk] = page;
+        }
+        nPages = page + 1;
+        starts[nPages] = bounds.getNumberOfSegments();
+        pageStarts = Arrays.copyOf(starts, nPages + 1);
+        pageBottomLayers = Arrays.copyOf(bottomLayers, nPages);
+        pageTopLayers = Arrays.copyOf(topLayers, nPages);
+
+        pageSlots = new int[nPages];
+        Arrays.fill(pageSlots, -1);
+        slotPages = new int[this.nSlots];
+        Arrays.fill(slotPages, -1);
+        pageWantedStamps = new long[nPages];
+        wantedPages = new int[Math.min(nPages, this.nSlots)];
+    }
+
+    public int getPageSegments() {
+        return pageSegments;
+    }
+
+    public int getNumberOfPages() {
+        return nPages;
+    }
+
+    public int getNumberOfSlots() {
+        return nSlots;
+    }
+
+    public int getPageStart(int page) {
+        return pageStarts[page];
+    }
+
+    public int getPageEnd(int page) {
+        return pageStarts[page + 1];
+    }
+
+    public int getPageOfChunk(int chunk) {
+        return chunkPages[chunk];
+    }
+
+    /**
+     * @return the slot holding the page, or -1 if the page is not resident.
+     */
+    public int getSlot(int page) {
+        return pageSlots[page];
+    }
+
+    /**
+     * @return the segment in the slots of the first segment of the page, or -1 if the page is not resident.
+     */
+    public int getSlotStart(int page) {
+        return (pageSlots[page] < 0 ? -1 : pageSlots[page] * pageSegments);
+    }
+
+    /**
+     * Choose the pages wanted for the given range of layers. The pages of the
+     * layers are wanted from the top down, as the top layer is the one most
+     * often looked at, followed by the neighbouring pages. No more pages are
+     * wanted than there are slots.
+     */
+    public void setRenderedLayers(int bottomLayer, int topLayer) {
+        if (bottomLayer == wantedBottomLayer && topLayer == wantedTopLayer)
+            return;
+        wantedBottomLayer = bottomLayer;
+        wantedTopLayer = topLayer;
+        ++wantedStamp;
+        nWantedPages = 0;
+
+        int lowestPage = -1;
+        int highestPage = -1;
+        for (int page = nPages - 1; page >= 0; --page) {
+            if (pageTopLayers[page] >= bottomLayer && pageBottomLayers[page] <= topLayer) {
+                addWantedPage(page);
+                if (highestPage < 0)
+                    highestPage = page;
+                lowestPage = page;
+            }
+        }
+        if (highestPage >= 0) {
+            for (int neighbour = 1; neighbour <= NEIGHBOUR_PAGES; ++neighbour) {
+                if (highestPage + neighbour < nPages)
+                    addWantedPage(highestPage + neighbour);
+                if (lowestPage - neighbour >= 0)
+                    addWantedPage(lowestPage - neighbour);
+            }
+        }
+    }
+
+    /**
+     * @return the wanted page of highest priority that is not resident, or -1 if all the wanted pages are resident.
+     */
+    public int nextPageToLoad() {
+        for (int index = 0; index < nWantedPages; ++index) {
+            if (pageSlots[wantedPages[index]] < 0)
+                return wantedPages[index];
+        }
+        return -1;
+    }
+
+    /**
+     * Give a slot to a page, taking a free slot if there is one, otherwise
+     * evicting the resident page that was wanted least recently. A page that
+     * is wanted is never evicted.
+     *
+     * @return the slot given to the page, or -1 if there is no slot for it.
+     */
+    public int makeResident(int page) {
+        if (pageSlots[page] >= 0)
+            return pageSlots[page];
+        int slot = -1;
+        for (int s = 0; s < nSlots; ++s) {
+            int residentPage = slotPages[s];
+            if (residentPage < 0) {
+                slot = s;
+                break;
+            }
+            if (pageWantedStamps[residentPage] < wantedStamp &&
+                (slot < 0 || pageWantedStamps[residentPage] < pageWantedStamps[slotPages[slot]]))
+                slot = s;
+        }
+        if (slot >= 0) {
+            if (slotPages[slot] >= 0)
+                pageSlots[slotPages[slot]] = -1;
+            slotPages[slot] = page;
+            pageSlots[page] = slot;
+        }
+        return slot;
+    }
+
+    /**
+     * Mark every page as not resident, as when the slots have been deleted.
+     */
+    public void evictAll() {
+        Arrays.fill(pageSlots, -1);
+        Arrays.fill(slotPages, -1);
+    }
+
+    private void addWantedPage(int page) {
+        if (nWantedPages < wantedPages.length) {
+            wantedPages[nWantedPages] = page;
+            ++nWantedPages;
+            pageWantedStamps[page] = wantedStamp;
+        }
+    }
+}
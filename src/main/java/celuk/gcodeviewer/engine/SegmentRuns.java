@@ -0,0 +1,113 @@
+package celuk.gcodeviewer.engine;
+
+import java.util.Arrays;
+
+/**
+ * Runs of consecutive segments with the same type and tool.
+ *
+ * Segments are generated in line order, and within a layer the segments of a
+ * type, such as the walls or the infill, are generally printed together with
+ * one tool, so the segments fall into a fairly small number of runs. When a
+ * type or a tool is hidden, the renderers use the runs to build a draw list
+ * that skips the hidden segments, rather than drawing every segment and
+ * discarding the hidden ones in the shaders. The segments stay in line order,
+ * so the line index still applies.
+ *
+ * @author Tony Aldhous
+ */
+public class SegmentRuns {
+
+    // First segment of each run, followed by the number of segments.
+    private final int[] runStarts;
+    private final int[] runTypes;
+    private final int[] runTools;
+
+    private SegmentRuns(int[] runStarts, int[] runTypes, int[] runTools) {
+        this.runStarts = runStarts;
+        this.runTypes = runTypes;
+        this.runTools = runTools;
+    }
+
+    /**
+     * Build the runs of the segments in a store.
+     *
+     * @param segments store holding the segments, in the order of the vertices.
+     * @return the runs of the segments.
+     */
+    public static SegmentRuns fromSegments(SegmentStore segments) {
+        int nSegments = segments.size();
+        int nRuns = 0;
+        int[] runStarts = new int[16];
+        int[] runTypes = new int[16];
+        int[] runTools = new int[16];
+        for (int index = 0; index < nSegments; ++index) {
+            int type = segments.getTypeIndex(index);
+            int tool = segments.getToolNumber(index);
+            if (nRuns == 0 || type != runTypes[nRuns - 1] || tool != runTools[nRuns - 1]) {
+                if (nRuns == runTypes.length) {
+                    runStarts = Arrays.copyOf(runStarts, 2 * nRuns);
+                    runTypes = Arrays.copyOf(runTypes, 2 * nRuns);
+                    runTools = Arrays.copyOf(runTools, 2 * nRuns);
+                }
+                runStarts[nRuns] = index;
+                runTypes[nRuns] = type;
+                runTools[nRuns] = tool;
+                ++nRuns;
+            }
+        }
+        runStarts = Arrays.copyOf(runStarts, nRuns + 1);
+        runStarts[nRuns] = nSegments;
+        return new SegmentRuns(runStarts,
+                               Arrays.copyOf(runTypes, nRuns),
+                               Arrays.copyOf(runTools, nRuns));
+    }
+
+    public int getNumberOfRuns() {
+        return runTypes.length;
+    }
+
+    public int getNumberOfSegments() {
+        return runStarts[runTypes.length];
+    }
+
+    /**
+     * @return the index of the run holding the given segment.
+     */
+    int findRun(int segment) {
+        int low = 0;
+        int high = runTypes.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (runStarts[middle + 1] <= segment)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Add the shown segments in a range to a draw list. The flags are the
+     * same as the showTools and showTypes uniforms of the segment shaders.
+     *
+     * @param drawList list to which the ranges of vertices are added.
+     * @param firstSegment first segment of the range.
+     * @param endSegment segment after the last segment of the range.
+     * @param showTools bit n set if tool n is shown.
+     * @param showTypes bit n set if type n is shown, or -1 if all types are shown.
+     * @param verticesPerSegment number of vertices drawn for each segment.
+     */
+    public void addShownSegments(DrawList drawList, int firstSegment, int endSegment,
+                                 int showTools, int showTypes, int verticesPerSegment) {
+        endSegment = Math.min(endSegment, getNumberOfSegments());
+        for (int run = findRun(firstSegment); run < runTypes.length && runStarts[run] < endSegment; ++run) {
+            int toolFlag = 1 << runTools[run];
+            int typeFlag = 1 << runTypes[run];
+            if ((showTools & toolFlag) == toolFlag && (showTypes & typeFlag) == typeFlag) {
+                int start = Math.max(runStarts[run], firstSegment);
+                int end = Math.min(runStarts[run + 1], endSegment);
+                drawList.add(verticesPerSegment * start, verticesPerSegment * (end - start));
+            }
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package celuk.gcodeviewer.engine;
+
+import celuk.gcodeviewer.entities.Entity;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import org.joml.Vector3f;
+
+/**
+ * Columnar store of the segments generated from a GCode file.
+ *
+ * Each attribute of the segments is held in a growable primitive array,
+ * rather than in an Entity object per segment. Vector attributes are held
+ * as consecutive x, y, z values. The arrays are accessed directly by the
+ * loaders in this package, so they are only valid up to size() elements.
+ *
+ * Extrusions have all the attributes. Moves only have the position,
+ * direction, length, layer, line and tool, as they are drawn as plain lines.
+ *
+ * @author Tony Aldhous
+ */
+public class SegmentStore {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final boolean isExtrusionStore;
+    private int nSegments = 0;
+    private int capacity = 0;
+
+    private float[] positions;
+    private float[] directions;
+    private float[] lengths;
+    private int[] layers;
+    private int[] lineNumbers;
+    private int[] toolNumbers;
+
+    // Extrusion attributes.
+    private float[] normals;
+    private float[] widths;
+    private float[] thicknesses;
+    private int[] types;
+    private float[] dataValues;
+
+    // The types are held as an index into these lists.
+    private final List<String> typeNames = new ArrayList<>();
+    private final List<Integer> typeIndices = new ArrayList<>();
+    private final List<Vector3f> typeColours = new ArrayList<>();
+    private String lastType = null;
+    private int lastTypeId = -1;
+
+    /**
+     * @param isExtrusionStore if true, store all the attributes of extrusions,
+     *                         otherwise only store the attributes of moves.
+     */
+    public SegmentStore(boolean isExtrusionStore) {
+        this.isExtrusionStore = isExtrusionStore;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int newCapacity) {
+        capacity = newCapacity;
+        positions = new float[3 * capacity];
+        directions = new float[3 * capacity];
+        lengths = new float[capacity];
+        layers = new int[capacity];
+        lineNumbers = new int[capacity];
+        toolNumbers = new int[capacity];
+        if (isExtrusionStore) {
+            normals = new float[3 * capacity];
+            widths = new float[capacity];
+            thicknesses = new float[capacity];
+            types = new int[capacity];
+            dataValues = new float[Entity.N_DATA_VALUES * capacity];
+        }
+    }
+
+    private SegmentStore(boolean isExtrusionStore, int nSegments) {
+        this.isExtrusionStore = isExtrusionStore;
+        this.nSegments = nSegments;
+        allocate(Math.max(nSegments, INITIAL_CAPACITY));
+    }
+
+    private void grow() {
+        capacity = 2 * capacity;
+        positions = Arrays.copyOf(positions, 3 * capacity);
+        directions = Arrays.copyOf(directions, 3 * capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        layers = Arrays.copyOf(layers, capacity);
+        lineNumbers = Arrays.copyOf(lineNumbers, capacity);
+        toolNumbers = Arrays.copyOf(toolNumbers, capacity);
+        if (isExtrusionStore) {
+            normals = Arrays.copyOf(normals, 3 * capacity);
+            widths = Arrays.copyOf(widths, capacity);
+            thicknesses = Arrays.copyOf(thicknesses, capacity);
+            types = Arrays.copyOf(types, capacity);
+            dataValues = Arrays.copyOf(dataValues, Entity.N_DATA_VALUES * capacity);
+        }
+    }
+
+    public int size() {
+        return nSegments;
+    }
+
+    public boolean isEmpty() {
+        return nSegments == 0;
+    }
+
+    public boolean isExtrusionStore() {
+        return isExtrusionStore;
+    }
+
+    public void clear() {
+        nSegments = 0;
+        typeNames.clear();
+        typeIndices.clear();
+        typeColours.clear();
+        lastType = null;
+        lastTypeId = -1;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Add a segment.
+     *
+     * @return the index of the new segment.
+     */
+    public int addSegment(Vector3f position, Vector3f direction, float length,
+                          int layer, int lineNumber, int toolNumber) {
+        if (nSegments == capacity)
+            grow();
+        int index = nSegments;
+        setVector(positions, index, position);
+        setVector(directions, index, direction);
+        lengths[index] = length;
+        layers[index] = layer;
+        lineNumbers[index] = lineNumber;
+        toolNumbers[index] = toolNumber;
+        ++nSegments;
+        return index;
+    }
+
+    /**
+     * Set the extrusion attributes of the given segment. The colour of the
+     * type is recorded along with the type.
+     */
+    public void setExtrusion(int index, Vector3f normal, float width, float thickness,
+                             String type, int typeIndex, Vector3f typeColour) {
+        setVector(normals, index, normal);
+        widths[index] = width;
+        thicknesses[index] = thickness;
+        // Consecutive segments usually have the same type.
+        if (type != lastType) {
+            lastTypeId = typeNames.indexOf(type);
+            if (lastTypeId < 0) {
+                lastTypeId = typeNames.size();
+                typeNames.add(type);
+                typeIndices.add(Math.max(typeIndex, 0));
+                typeColours.add(typeColour);
+            }
+            lastType = type;
+        }
+        types[index] = lastTypeId;
+    }
+
+    public void setDataValue(int index, int dataIndex, float value) {
+        dataValues[Entity.N_DATA_VALUES * index + dataIndex] = value;
+    }
+
+    private static void setVector(float[] column, int index, Vector3f v) {
+        column[3 * index] = v.x();
+        column[3 * index + 1] = v.y();
+        column[3 * index + 2] = v.z();
+    }
+
+    public int getLayer(int index) {
+        return layers[index];
+    }
+
+    public void setLayer(int index, int layer) {
+        layers[index] = layer;
+    }
+
+    public int getLineNumber(int index) {
+        return lineNumbers[index];
+    }
+
+    public int getToolNumber(int index) {
+        return toolNumbers[index];
+    }
+
+    public float getLength(int index) {
+        return lengths[index];
+    }
+
+    public float getWidth(int index) {
+        return widths[index];
+    }
+
+    public float getThickness(int index) {
+        return thicknesses[index];
+    }
+
+    public String getType(int index) {
+        return typeNames.get(types[index]);
+    }
+
+    /**
+     * @return the index of the type of the segment. Segments with no type, or
+     *         a type that has no index, are given type 0, so they are drawn and
+     *         shown in the same way by the runs, the vertex buffer and the LOD.
+     */
+    public int getTypeIndex(int index) {
+        return typeIndices.get(types[index]);
+    }
+
+    Vector3f getTypeColour(int index) {
+        return typeColours.get(types[index]);
+    }
+
+    public float getDataValue(int index, int dataIndex) {
+        return dataValues[Entity.N_DATA_VALUES * index + dataIndex];
+    }
+
+    // Direct access to the columns for the loaders.
+    float[] getPositions() {
+        return positions;
+    }
+
+    float[] getDirections() {
+        return directions;
+    }
+
+    float[] getNormals() {
+        return normals;
+    }
+
+    float[] getDataValues() {
+        return dataValues;
+    }
+
+    /**
+     * Write the segments to a cache file. Only the names of the types are
+     * written, as their indices and colours depend on the configuration.
+     */
+    void writeTo(CacheWriter out) throws IOException {
+        out.writeBoolean(isExtrusionStore);
+        out.writeInt(nSegments);
+        out.writeFloats(positions, 3 * nSegments);
+        out.writeFloats(directions, 3 * nSegments);
+        out.writeFloats(lengths, nSegments);
+        out.writeInts(layers, nSegments);
+        out.writeInts(lineNumbers, nSegments);
+        out.writeInts(toolNumbers, nSegments);
+        if (isExtrusionStore) {
+            out.writeFloats(normals, 3 * nSegments);
+            out.writeFloats(widths, nSegments);
+            out.writeFloats(thicknesses, nSegments);
+            out.writeInts(types, nSegments);
+            out.writeFloats(dataValues, Entity.N_DATA_VALUES * nSegments);
+            out.writeInt(typeNames.size());
+            for (String typeName : typeNames)
+                out.writeString(typeName);
+        }
+    }
+
+    /**
+     * Read segments written by writeTo. The index and colour of each type are
+     * looked up again, so they follow the current configuration.
+     *
+     * @param in reader of the cache file.
+     * @param typeIndexer gives the index of a type.
+     * @param typeColourer gives the colour of a type.
+     * @return store holding the segments.
+     */
+    static SegmentStore readFrom(CacheReader in, ToIntFunction<String> typeIndexer, Function<String, Vector3f> typeColourer) {
+        boolean isExtrusionStore = in.readBoolean();
+        int nSegments = in.readInt();
+        SegmentStore store = new SegmentStore(isExtrusionStore, nSegments);
+        in.readFloats(store.positions, 3 * nSegments);
+        in.readFloats(store.directions, 3 * nSegments);
+        in.readFloats(store.lengths, nSegments);
+        in.readInts(store.layers, nSegments);
+        in.readInts(store.lineNumbers, nSegments);
+        in.readInts(store.toolNumbers, nSegments);
+        if (isExtrusionStore) {
+            in.readFloats(store.normals, 3 * nSegments);
+            in.readFloats(store.widths, nSegments);
+            in.readFloats(store.thicknesses, nSegments);
+            in.readInts(store.types, nSegments);
+            in.readFloats(store.dataValues, Entity.N_DATA_VALUES * nSegments);
+            int nTypes = in.readInt();
+            for (int typeId = 0; typeId < nTypes; ++typeId) {
+                String typeName = in.readString();
+                store.typeNames.add(typeName);
+                store.typeIndices.add(Math.max(typeIndexer.applyAsInt(typeName), 0));
+                store.typeColours.add(typeColourer.apply(typeName));
+            }
+        }
+        return store;
+    }
+}
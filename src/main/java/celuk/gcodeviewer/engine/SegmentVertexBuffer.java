@@ -0,0 +1,230 @@
+package celuk.gcodeviewer.engine;
+
+import celuk.gcodeviewer.entities.Entity;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import org.lwjgl.BufferUtils;
+
+/**
+ * Interleaved vertex data of the segments, laid out exactly as the segment VBO.
+ *
+ * The line processor appends each segment as it is generated, so the data
+ * can be uploaded with a single pass over the buffers when loading is complete.
+ * The data is held in direct buffers of a fixed number of segments, so it never
+ * has to be copied to grow.
+ *
+ * The data values are not included, as they are only read to colour the
+ * segments by data. They are held in a separate VBO.
+ *
+ * Each segment has the following attributes:
+ *     position   3 floats  x, y, z
+ *     direction  2 shorts  octahedral encoding of x, y, z
+ *     normal     2 shorts  octahedral encoding of x, y, z
+ *     dimensions 4 halfs   length, width, thickness, 1
+ *     attributes 3 ints    type index + (tool << TYPE_BITS), layer, line
+ *     angles     4 shorts  cos(B), sin(B), cos(C), sin(C)
+ *
+ * The shorts are normalized to the range -1 to 1, and the unit vectors are
+ * decoded by the segment vertex shaders. The attributes are integers, so line
+ * numbers beyond the 24 bit precision of a float are compared exactly with
+ * the visible and selected lines.
+ *
+ * @author Tony Aldhous
+ */
+public class SegmentVertexBuffer {
+
+    public static final int WORDS_PER_SEGMENT = 12;
+    public static final int BYTES_PER_SEGMENT = 4 * WORDS_PER_SEGMENT;
+    public static final int POSITION_OFFSET = 0;
+    public static final int DIRECTION_OFFSET = 12;
+    public static final int NORMAL_OFFSET = 16;
+    public static final int DIMENSION_OFFSET = 20;
+    public static final int ATTRIBUTES_OFFSET = 28;
+    public static final int ANGLE_OFFSET = 40;
+    // Number of bits of the type index in the first attribute, below the tool number.
+    public static final int TYPE_BITS = 8;
+    private static final int TYPE_MASK = (1 << TYPE_BITS) - 1;
+
+    static final int SEGMENTS_PER_PAGE = 65536;
+    private static final float DEGREES_TO_RADIANS = 0.01745329252f;
+    private static final short HALF_FLOAT_ONE = 0x3c00;
+
+    private final List<ByteBuffer> pages = new ArrayList<>();
+    private int nSegments = 0;
+
+    public int size() {
+        return nSegments;
+    }
+
+    public void clear() {
+        pages.clear();
+        nSegments = 0;
+    }
+
+    /**
+     * Append the segment with the given index in the store, which must be the
+     * next segment, i.e. the segment with index size().
+     *
+     * @param segments store holding the segment.
+     * @param index index of the segment in the store.
+     */
+    public void addSegment(SegmentStore segments, int index) {
+        int offsetInPage = nSegments % SEGMENTS_PER_PAGE;
+        if (offsetInPage == 0)
+            pages.add(BufferUtils.createByteBuffer(SEGMENTS_PER_PAGE * BYTES_PER_SEGMENT));
+        ByteBuffer page = pages.get(pages.size() - 1);
+        int p = offsetInPage * BYTES_PER_SEGMENT;
+
+        float[] positions = segments.getPositions();
+        float[] directions = segments.getDirections();
+        float[] normals = segments.getNormals();
+        int v = 3 * index;
+        page.putFloat(p, positions[v]);
+        page.putFloat(p + 4, positions[v + 1]);
+        page.putFloat(p + 8, positions[v + 2]);
+
+        p += DIRECTION_OFFSET;
+        putOctahedral(page, p, directions[v], directions[v + 1], directions[v + 2]);
+
+        p += NORMAL_OFFSET - DIRECTION_OFFSET;
+        putOctahedral(page, p, normals[v], normals[v + 1], normals[v + 2]);
+
+        p += DIMENSION_OFFSET - NORMAL_OFFSET;
+        page.putShort(p, toHalfFloat(segments.getLength(index)));
+        page.putShort(p + 2, toHalfFloat(segments.getWidth(index)));
+        page.putShort(p + 4, toHalfFloat(segments.getThickness(index)));
+        page.putShort(p + 6, HALF_FLOAT_ONE);
+
+        p += ATTRIBUTES_OFFSET - DIMENSION_OFFSET;
+        int layerNumber = segments.getLayer(index);
+        if (layerNumber == Entity.NULL_LAYER)
+            layerNumber = segments.getLineNumber(index);
+        page.putInt(p, packTypeAndTool(segments.getTypeIndex(index), segments.getToolNumber(index)));
+        page.putInt(p + 4, layerNumber);
+        page.putInt(p + 8, segments.getLineNumber(index));
+
+        p += ANGLE_OFFSET - ATTRIBUTES_OFFSET;
+        float angleB = DEGREES_TO_RADIANS * segments.getDataValue(index, Entity.DATA_B);
+        float angleC = DEGREES_TO_RADIANS * segments.getDataValue(index, Entity.DATA_C);
+        page.putShort(p, toNormalizedShort((float)Math.cos(angleB)));
+        page.putShort(p + 2, toNormalizedShort((float)Math.sin(angleB)));
+        page.putShort(p + 4, toNormalizedShort((float)Math.cos(angleC)));
+        page.putShort(p + 6, toNormalizedShort((float)Math.sin(angleC)));
+
+        ++nSegments;
+    }
+
+    /**
+     * Pack the type index and tool number into one int. A segment of an unknown
+     * type has a type index of -1, and is drawn as type 0, so the index is
+     * clamped before it is masked, otherwise it would overwrite the tool number.
+     */
+    static int packTypeAndTool(int typeIndex, int toolNumber) {
+        return (Math.max(typeIndex, 0) & TYPE_MASK) | (toolNumber << TYPE_BITS);
+    }
+
+    /**
+     * Put a unit vector as the two normalized shorts of its octahedral encoding.
+     * The vector is projected onto the octahedron |x| + |y| + |z| = 1, and the
+     * lower half of the octahedron is folded over the upper half, so the vector
+     * is given by the x and y of the projection to within 1/32767. A zero
+     * vector is put as (0, 0).
+     */
+    static void putOctahedral(ByteBuffer buffer, int p, float x, float y, float z) {
+        float sum = Math.abs(x) + Math.abs(y) + Math.abs(z);
+        float u = 0.0f;
+        float v = 0.0f;
+        if (sum > 0.0f) {
+            u = x / sum;
+            v = y / sum;
+            if (z < 0.0f) {
+                float foldedU = (1.0f - Math.abs(v)) * (u >= 0.0f ? 1.0f : -1.0f);
+                v = (1.0f - Math.abs(u)) * (v >= 0.0f ? 1.0f : -1.0f);
+                u = foldedU;
+            }
+        }
+        buffer.putShort(p, toNormalizedShort(u));
+        buffer.putShort(p + 2, toNormalizedShort(v));
+    }
+
+    /**
+     * @return the value, clamped to the range -1 to 1, as a short normalized to that range.
+     */
+    static short toNormalizedShort(float value) {
+        return (short)Math.round(32767.0f * Math.max(-1.0f, Math.min(1.0f, value)));
+    }
+
+    /**
+     * Convert a float to a half float, rounding to the nearest value. Values
+     * too large for a half float are clamped to the largest half float, and
+     * values too small for a normalized half float are flushed to zero, which
+     * is ample for the dimensions of a segment.
+     */
+    static short toHalfFloat(float value) {
+        int bits = Float.floatToIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        // Round the mantissa to 10 bits; a carry increments the exponent.
+        int magnitude = (bits & 0x7fffffff) + 0x1000;
+        if (magnitude >= 0x47800000)
+            return (short)(sign | 0x7bff);
+        if (magnitude < 0x38800000)
+            return (short)sign;
+        // Rebias the exponent from 127 to 15.
+        return (short)(sign | ((magnitude - 0x38000000) >>> 13));
+    }
+
+    /**
+     * Change the layer number of a segment.
+     *
+     * @param index index of the segment.
+     * @param layerNumber new layer number.
+     */
+    public void setLayer(int index, int layerNumber) {
+        ByteBuffer page = pages.get(index / SEGMENTS_PER_PAGE);
+        int p = (index % SEGMENTS_PER_PAGE) * BYTES_PER_SEGMENT + ATTRIBUTES_OFFSET + 4;
+        page.putInt(p, layerNumber);
+    }
+
+    public int getNumberOfPages() {
+        return pages.size();
+    }
+
+    /**
+     * @param pageIndex index of the page.
+     * @return buffer holding the segments of the page, from position zero to the limit.
+     */
+    public ByteBuffer getPage(int pageIndex) {
+        int nSegmentsInPage = Math.min(SEGMENTS_PER_PAGE, nSegments - pageIndex * SEGMENTS_PER_PAGE);
+        ByteBuffer page = pages.get(pageIndex).duplicate().order(ByteOrder.nativeOrder());
+        page.position(0);
+        page.limit(nSegmentsInPage * BYTES_PER_SEGMENT);
+        return page;
+    }
+
+    /**
+     * Get the data of a range of segments, as slices of the pages. The slices
+     * share the data of the pages, which is never moved, so they can be handed
+     * to another thread while more segments are added.
+     *
+     * @param firstIndex index of the first segment.
+     * @param count number of segments.
+     * @return buffers holding the segments, each from position zero to the limit.
+     */
+    public List<ByteBuffer> getSlices(int firstIndex, int count) {
+        List<ByteBuffer> slices = new ArrayList<>();
+        int index = firstIndex;
+        int endIndex = firstIndex + count;
+        while (index < endIndex) {
+            int offsetInPage = index % SEGMENTS_PER_PAGE;
+            int nSegmentsInSlice = Math.min(SEGMENTS_PER_PAGE - offsetInPage, endIndex - index);
+            ByteBuffer slice = pages.get(index / SEGMENTS_PER_PAGE).duplicate().order(ByteOrder.nativeOrder());
+            slice.position(offsetInPage * BYTES_PER_SEGMENT);
+            slice.limit((offsetInPage + nSegmentsInSlice) * BYTES_PER_SEGMENT);
+            slices.add(slice.slice().order(ByteOrder.nativeOrder()));
+            index += nSegmentsInSlice;
+        }
+        return slices;
+    }
+}
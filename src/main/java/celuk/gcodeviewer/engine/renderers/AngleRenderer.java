@@ -1,56 +1,39 @@
 package celuk.gcodeviewer.engine.renderers;
 
+import celuk.gcodeviewer.engine.ChunkSelection;
+import celuk.gcodeviewer.engine.DrawList;
 import celuk.gcodeviewer.engine.RawEntity;
 import celuk.gcodeviewer.engine.RenderParameters;
-import celuk.gcodeviewer.entities.Camera;
-import celuk.gcodeviewer.entities.Light;
 import celuk.gcodeviewer.shaders.AngleShader;
-import org.joml.Matrix4f;
 import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL14.*;
 import static org.lwjgl.opengl.GL20.*;
 import static org.lwjgl.opengl.GL30.*;
 
 public class AngleRenderer {
    
     private final AngleShader shader;
-    private Matrix4f projectionMatrix;
+    private final DrawList drawList = new DrawList();
     
-    public AngleRenderer(AngleShader shader, Matrix4f projectionMatrix) {
+    public AngleRenderer(AngleShader shader) {
         this.shader = shader;
-        this.projectionMatrix = projectionMatrix;
     }
     
     public void render(RawEntity rawEntity,
-                       Camera camera,
-                       Light light,
-                       RenderParameters renderParameters) {
+                       RenderParameters renderParameters,
+                       ChunkSelection chunkSelection) {
         if (rawEntity != null) {
             shader.start();
-            shader.setProjectionMatrix(projectionMatrix);
-            shader.setViewMatrix(camera);
-            shader.loadCompositeMatrix();
-            shader.loadLight(light);
-            shader.loadVisibleLimits(renderParameters.getTopVisibleLine(),
-                                     renderParameters.getBottomVisibleLine());
-            shader.loadSelectionLimits(renderParameters.getFirstSelectedLine(),
-                                       renderParameters.getLastSelectedLine());
-            shader.loadShowFlags(renderParameters.getShowFlags());
-            shader.loadShowTools(renderParameters.getShowTools());
-            shader.loadShowTypes(renderParameters.getShowTypes());
-            shader.loadToolColours(renderParameters.getToolColours());
-            shader.loadTypeColours(renderParameters.getTypeColours());
-            shader.loadSelectColour(renderParameters.getSelectColour());
             bindRawModel(rawEntity);
-            glDrawArrays(GL_POINTS, 0, rawEntity.getVertexCount());
+            // Only draw the vertices of the visible lines, tools and types.
+            rawEntity.buildDrawList(drawList, renderParameters, chunkSelection, ChunkSelection.FULL, 1);
+            if (!drawList.isEmpty())
+                glMultiDrawArrays(GL_POINTS, drawList.getFirsts(), drawList.getCounts());
             unbindRawModel();
             shader.stop();
         }
     }
     
-    public void setProjectionMatrix(Matrix4f projectionMatrix) {
-        this.projectionMatrix = projectionMatrix;
-    }
-    
     public void bindRawModel(RawEntity rawEntity) {
         glBindVertexArray(rawEntity.getVaoId());
         glEnableVertexAttribArray(0);
@@ -60,6 +43,7 @@ public class AngleRenderer {
         glEnableVertexAttribArray(4);
         glEnableVertexAttribArray(5);
         glEnableVertexAttribArray(6);
+        glEnableVertexAttribArray(7);
     }
     
     public void unbindRawModel() {
@@ -70,6 +54,7 @@ public class AngleRenderer {
         glDisableVertexAttribArray(4);
         glDisableVertexAttribArray(5);
         glDisableVertexAttribArray(6);
+        glDisableVertexAttribArray(7);
         glBindVertexArray(0);
     }
 }
@@ -0,0 +1,192 @@
+package celuk.gcodeviewer.engine.renderers;
+
+import celuk.gcodeviewer.engine.ChunkSelection;
+import celuk.gcodeviewer.engine.DrawList;
+import celuk.gcodeviewer.engine.RawEntity;
+import celuk.gcodeviewer.engine.RenderParameters;
+import celuk.gcodeviewer.engine.SegmentLoader;
+import celuk.gcodeviewer.engine.SegmentMesh;
+import celuk.gcodeviewer.engine.SegmentVertexBuffer;
+import celuk.gcodeviewer.shaders.CachedSegmentShader;
+import celuk.gcodeviewer.shaders.SegmentCaptureShader;
+import libertysystems.stenographer.Stenographer;
+import libertysystems.stenographer.StenographerFactory;
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL13.*;
+import static org.lwjgl.opengl.GL14.*;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL31.*;
+
+/**
+ * Renders the segments from a cache of their triangles.
+ *
+ * The geometry of the segments does not change once they are loaded, so it is
+ * expanded once into a static VBO of triangles with transform feedback, and
+ * each frame draws the triangles with a plain vertex and fragment shader. The
+ * colour and visibility of each segment, which do change, are calculated from
+ * the segment VBO and the data VBO, bound as buffer textures.
+ *
+ * The cache takes 48 vertices per segment, so it is only built if it fits in
+ * the configured limit. If it cannot be built, render() returns false, and
+ * the segments must be drawn by another renderer.
+ *
+ * @author Tony Aldhous
+ */
+public class CachedSegmentRenderer {
+    private final static Stenographer STENO = StenographerFactory.getStenographer(CachedSegmentRenderer.class.getName());
+
+    private final CachedSegmentShader shader;
+    private final SegmentCaptureShader captureShader;
+    private final InstancedSegmentRenderer instancedRenderer;
+    private final DrawList drawList = new DrawList();
+
+    // Entity that is cached, and whether the cache could not be built for it.
+    private RawEntity cachedEntity = null;
+    private boolean cacheUnavailable = false;
+    private int cacheVaoId = 0;
+    private int cacheVboId = 0;
+    private int segmentTextureId = 0;
+    private int dataValuesTextureId = 0;
+
+    public CachedSegmentRenderer(CachedSegmentShader shader,
+                                 SegmentCaptureShader captureShader,
+                                 InstancedSegmentRenderer instancedRenderer) {
+        this.shader = shader;
+        this.captureShader = captureShader;
+        this.instancedRenderer = instancedRenderer;
+    }
+
+    /**
+     * Render the segments from the cache, building it first if required.
+     *
+     * @return true if the segments were rendered, false if the cache is not available.
+     */
+    public boolean render(RawEntity rawEntity,
+                          RenderParameters renderParameters,
+                          ChunkSelection chunkSelection) {
+        if (rawEntity != cachedEntity) {
+            clearCache();
+            cachedEntity = rawEntity;
+        }
+        if (rawEntity == null || cacheUnavailable)
+            return false;
+        if (cacheVaoId == 0) {
+            // Segments are still being added while the file is loading,
+            // or only some of the segments are resident.
+            if (!rawEntity.isComplete() || rawEntity.getSegmentPages() != null)
+                return false;
+            if (!buildCache(rawEntity, renderParameters.getFeedbackCacheLimit())) {
+                cacheUnavailable = true;
+                return false;
+            }
+        }
+
+        // Only draw the triangles of the visible lines, tools and types.
+        rawEntity.buildDrawList(drawList, renderParameters, chunkSelection, ChunkSelection.FULL, SegmentMesh.VERTEX_COUNT);
+        if (drawList.isEmpty())
+            return true;
+
+        shader.start();
+        glActiveTexture(GL_TEXTURE0 + CachedSegmentShader.SEGMENT_DATA_TEXTURE_UNIT);
+        glBindTexture(GL_TEXTURE_BUFFER, segmentTextureId);
+        glActiveTexture(GL_TEXTURE0 + CachedSegmentShader.SEGMENT_DATA_VALUES_TEXTURE_UNIT);
+        glBindTexture(GL_TEXTURE_BUFFER, dataValuesTextureId);
+        glBindVertexArray(cacheVaoId);
+        glEnableVertexAttribArray(0);
+        glEnableVertexAttribArray(1);
+        glEnableVertexAttribArray(2);
+        glMultiDrawArrays(GL_TRIANGLES, drawList.getFirsts(), drawList.getCounts());
+        glDisableVertexAttribArray(0);
+        glDisableVertexAttribArray(1);
+        glDisableVertexAttribArray(2);
+        glBindVertexArray(0);
+        glBindTexture(GL_TEXTURE_BUFFER, 0);
+        glActiveTexture(GL_TEXTURE0 + CachedSegmentShader.SEGMENT_DATA_TEXTURE_UNIT);
+        glBindTexture(GL_TEXTURE_BUFFER, 0);
+        shader.stop();
+        return true;
+    }
+
+    /**
+     * Delete the cache, which is rebuilt when it is next rendered.
+     */
+    public void clearCache() {
+        if (cacheVaoId != 0)
+            glDeleteVertexArrays(cacheVaoId);
+        if (cacheVboId != 0)
+            glDeleteBuffers(cacheVboId);
+        if (segmentTextureId != 0)
+            glDeleteTextures(segmentTextureId);
+        if (dataValuesTextureId != 0)
+            glDeleteTextures(dataValuesTextureId);
+        cacheVaoId = 0;
+        cacheVboId = 0;
+        segmentTextureId = 0;
+        dataValuesTextureId = 0;
+        cachedEntity = null;
+        cacheUnavailable = false;
+    }
+
+    public void cleanUp() {
+        clearCache();
+    }
+
+    private boolean buildCache(RawEntity rawEntity, long cacheLimit) {
+        int nSegments = rawEntity.getVertexCount();
+        long nVertices = (long)SegmentMesh.VERTEX_COUNT * nSegments;
+        long cacheSize = nVertices * SegmentCaptureShader.BYTES_PER_CAPTURED_VERTEX;
+        long nSegmentTexels = (long)SegmentVertexBuffer.WORDS_PER_SEGMENT * nSegments;
+        if (nSegments == 0)
+            return false;
+        if (cacheSize > cacheLimit || nVertices > Integer.MAX_VALUE) {
+            STENO.info("Segment cache of " + Long.toString(cacheSize) + " bytes exceeds the limit of " + Long.toString(cacheLimit) + " bytes");
+            return false;
+        }
+        if (nSegmentTexels > glGetInteger(GL_MAX_TEXTURE_BUFFER_SIZE)) {
+            STENO.info("Segment data of " + Long.toString(nSegmentTexels) + " words exceeds the maximum texture buffer size");
+            return false;
+        }
+
+        cacheVboId = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, cacheVboId);
+        glBufferData(GL_ARRAY_BUFFER, cacheSize, GL_STATIC_COPY);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+
+        // Expand the segments into the cache, without drawing anything.
+        captureShader.start();
+        glEnable(GL_RASTERIZER_DISCARD);
+        instancedRenderer.bindRawModel(rawEntity, 0);
+        glBindBufferBase(GL_TRANSFORM_FEEDBACK_BUFFER, 0, cacheVboId);
+        glBeginTransformFeedback(GL_TRIANGLES);
+        glDrawArraysInstanced(GL_TRIANGLES, 0, SegmentMesh.VERTEX_COUNT, nSegments);
+        glEndTransformFeedback();
+        glBindBufferBase(GL_TRANSFORM_FEEDBACK_BUFFER, 0, 0);
+        instancedRenderer.unbindRawModel(rawEntity);
+        glDisable(GL_RASTERIZER_DISCARD);
+        captureShader.stop();
+
+        cacheVaoId = glGenVertexArrays();
+        glBindVertexArray(cacheVaoId);
+        glBindBuffer(GL_ARRAY_BUFFER, cacheVboId);
+        int stride = SegmentCaptureShader.BYTES_PER_CAPTURED_VERTEX;
+        glVertexAttribPointer(0, 3, GL_FLOAT, false, stride, SegmentCaptureShader.CAPTURED_POSITION_OFFSET);
+        glVertexAttribPointer(1, 3, GL_FLOAT, false, stride, SegmentCaptureShader.CAPTURED_NORMAL_OFFSET);
+        glVertexAttribIPointer(2, 1, GL_INT, stride, SegmentCaptureShader.CAPTURED_SEGMENT_OFFSET);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glBindVertexArray(0);
+
+        segmentTextureId = glGenTextures();
+        glBindTexture(GL_TEXTURE_BUFFER, segmentTextureId);
+        // Only the integer attributes are read from the segment VBO.
+        glTexBuffer(GL_TEXTURE_BUFFER, GL_R32I, rawEntity.getVboId(SegmentLoader.POSITION_ATTRIBUTE));
+        dataValuesTextureId = glGenTextures();
+        glBindTexture(GL_TEXTURE_BUFFER, dataValuesTextureId);
+        glTexBuffer(GL_TEXTURE_BUFFER, GL_R32F, rawEntity.getVboId(SegmentLoader.DATA_ABC_ATTRIBUTE));
+        glBindTexture(GL_TEXTURE_BUFFER, 0);
+
+        STENO.debug("Cached " + Long.toString(nVertices) + " segment vertices in " + Long.toString(cacheSize) + " bytes");
+        return true;
+    }
+}
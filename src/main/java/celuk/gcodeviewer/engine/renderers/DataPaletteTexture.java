@@ -0,0 +1,66 @@
+package celuk.gcodeviewer.engine.renderers;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.joml.Vector3f;
+import org.lwjgl.BufferUtils;
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.*;
+import static org.lwjgl.opengl.GL13.*;
+import static org.lwjgl.opengl.GL30.*;
+
+/**
+ * One dimensional texture holding the colours of the data palette, which the
+ * segment shaders look up to colour the segments by a data value.
+ *
+ * The texture is sampled with nearest filtering, so each colour covers an
+ * equal part of the range of the data value. It is only uploaded again when
+ * the colours change.
+ *
+ * @author Tony Aldhous
+ */
+public class DataPaletteTexture {
+
+    private int textureId = 0;
+    private final List<Vector3f> colours = new ArrayList<>();
+
+    /**
+     * Upload the colours to the texture, if they have changed.
+     */
+    public void update(List<Vector3f> paletteColours) {
+        if (textureId != 0 && colours.equals(paletteColours))
+            return;
+
+        colours.clear();
+        paletteColours.forEach(colour -> colours.add(new Vector3f(colour)));
+        FloatBuffer texels = BufferUtils.createFloatBuffer(3 * colours.size());
+        colours.forEach(colour -> texels.put(colour.x).put(colour.y).put(colour.z));
+        texels.flip();
+
+        if (textureId == 0)
+            textureId = glGenTextures();
+        glBindTexture(GL_TEXTURE_1D, textureId);
+        glTexParameteri(GL_TEXTURE_1D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_1D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_1D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        glTexImage1D(GL_TEXTURE_1D, 0, GL_RGB32F, colours.size(), 0, GL_RGB, GL_FLOAT, texels);
+        glBindTexture(GL_TEXTURE_1D, 0);
+    }
+
+    /**
+     * Bind the texture to the given texture unit, leaving texture unit 0 active.
+     */
+    public void bind(int textureUnit) {
+        glActiveTexture(GL_TEXTURE0 + textureUnit);
+        glBindTexture(GL_TEXTURE_1D, textureId);
+        glActiveTexture(GL_TEXTURE0);
+    }
+
+    public void cleanUp() {
+        if (textureId != 0)
+            glDeleteTextures(textureId);
+        textureId = 0;
+        colours.clear();
+    }
+}
@@ -2,6 +2,7 @@ package celuk.gcodeviewer.engine.renderers;
 
 import celuk.gcodeviewer.engine.GCodeViewerGUIConfiguration;
 import celuk.gcodeviewer.engine.LayerDetails;
+import celuk.gcodeviewer.engine.LineStore;
 import celuk.gcodeviewer.engine.RenderParameters;
 import celuk.gcodeviewer.gui.GCVControlPanel;
 import celuk.gcodeviewer.gui.GCVGCodePanel;
@@ -12,6 +13,7 @@ import static org.lwjgl.system.MemoryStack.stackPush;
 import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.opengl.GL15.*;
 import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL32.*;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
@@ -22,6 +24,7 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
 import org.lwjgl.nuklear.NkAllocator;
+import org.lwjgl.BufferUtils;
 import org.lwjgl.nuklear.NkBuffer;
 import org.lwjgl.nuklear.NkContext;
 import org.lwjgl.nuklear.NkConvertConfig;
@@ -61,9 +64,15 @@ public class GUIRenderer {
     public static final int GUI_CONTROL_PANEL_X = 5;
     public static final int GUI_CONTROL_PANEL_Y = 5;
 
-    private static final int MAX_VERTEX_BUFFER  = 512 * 1024;
+    private static final int VERTEX_SIZE = 20;
+    // Whole vertices, so each region of the ring starts on a vertex.
+    private static final int MAX_VERTICES = (512 * 1024) / VERTEX_SIZE;
+    private static final int MAX_VERTEX_BUFFER  = MAX_VERTICES * VERTEX_SIZE;
     private static final int MAX_ELEMENT_BUFFER = 128 * 1024;
     private static final int BUFFER_INITIAL_SIZE = 4 * 1024;
+    // Number of regions in the ring of vertex and element buffers.
+    private static final int RING_REGIONS = 3;
+    private static final long FENCE_TIMEOUT_NS = 100000000L;
     
     private static final NkDrawVertexLayoutElement.Buffer VERTEX_LAYOUT;
     
@@ -90,6 +99,32 @@ public class GUIRenderer {
     
     private final NkBuffer cmds = NkBuffer.create();
 
+    // Region of the ring holding the current draw commands, and the fence
+    // placed after the last draw from each region.
+    private int ringRegion = 0;
+    private final long[] regionFences = new long[RING_REGIONS];
+    // Nuklear commands of the last conversion, and the draw commands converted from them.
+    private ByteBuffer previousCommands = null;
+    private final List<DrawCommand> drawCommands = new ArrayList<>();
+
+    private static class DrawCommand {
+        final int elementCount;
+        final int textureId;
+        final float clipX;
+        final float clipY;
+        final float clipW;
+        final float clipH;
+
+        DrawCommand(NkDrawCommand cmd) {
+            elementCount = cmd.elem_count();
+            textureId = cmd.texture().id();
+            clipX = cmd.clip_rect().x();
+            clipY = cmd.clip_rect().y();
+            clipW = cmd.clip_rect().w();
+            clipH = cmd.clip_rect().h();
+        }
+    }
+
     private final GCVControlPanel controlPanel;
     private final GCVSliderPanel sliderPanel;
     private final GCVGCodePanel gCodePanel;
@@ -106,6 +141,17 @@ public class GUIRenderer {
         gCodePanel = new GCVGCodePanel();
         this.guiShader.createVAOandVBO();
         nk_buffer_init(cmds, ALLOCATOR, BUFFER_INITIAL_SIZE);
+
+        // Allocate the ring once. Each frame writes to its own region, so the
+        // buffers are never orphaned.
+        glBindVertexArray(guiShader.getVao());
+        glBindBuffer(GL_ARRAY_BUFFER, guiShader.getVbo());
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, guiShader.getEbo());
+        glBufferData(GL_ARRAY_BUFFER, RING_REGIONS * MAX_VERTEX_BUFFER, GL_STREAM_DRAW);
+        glBufferData(GL_ELEMENT_ARRAY_BUFFER, RING_REGIONS * MAX_ELEMENT_BUFFER, GL_STREAM_DRAW);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glBindVertexArray(0);
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
     }
     
     public void setFromGUIConfiguration(GCodeViewerGUIConfiguration guiConfiguration) {
@@ -149,7 +195,7 @@ public class GUIRenderer {
         controlPanel.setTypeList(typeList);
     }
 
-    public void setLines(List<String> lines) {
+    public void setLines(LineStore lines) {
         gCodePanel.setLines(lines);
     }
 
@@ -183,25 +229,90 @@ public class GUIRenderer {
         glEnable(GL_SCISSOR_TEST);
         glActiveTexture(GL_TEXTURE0);
         
-        // convert from command queue into draw list and draw to screen
         loadProjectionMatrix();
-        // allocate vertex and element buffer
         glBindVertexArray(guiShader.getVao());
-        glBindBuffer(GL_ARRAY_BUFFER, guiShader.getVbo());
-        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, guiShader.getEbo());
 
-        glBufferData(GL_ARRAY_BUFFER, MAX_VERTEX_BUFFER, GL_STREAM_DRAW);
-        glBufferData(GL_ELEMENT_ARRAY_BUFFER, MAX_ELEMENT_BUFFER, GL_STREAM_DRAW);
+        // Only convert the commands into draw lists when they have changed
+        // since the last conversion.
+        if (commandsChanged())
+            convertCommands();
+
+        // iterate over and execute each draw command
+        float fb_scale_x = (float)renderParameters.getDisplayWidth() / (float)renderParameters.getWindowWidth();
+        float fb_scale_y = (float)renderParameters.getDisplayHeight() / (float)renderParameters.getWindowHeight();
+
+        long offset = (long)ringRegion * MAX_ELEMENT_BUFFER;
+        int baseVertex = ringRegion * MAX_VERTICES;
+        for (DrawCommand cmd : drawCommands) {
+            glBindTexture(GL_TEXTURE_2D, cmd.textureId);
+            glScissor(
+                (int)(cmd.clipX * fb_scale_x),
+                (int)((renderParameters.getWindowHeight() - (int)(cmd.clipY + cmd.clipH)) * fb_scale_y),
+                (int)(cmd.clipW * fb_scale_x),
+                (int)(cmd.clipH * fb_scale_y)
+            );
+            glDrawElementsBaseVertex(GL_TRIANGLES, cmd.elementCount, GL_UNSIGNED_SHORT, offset, baseVertex);
+            glBindTexture(GL_TEXTURE_2D, 0);
+            offset += cmd.elementCount * 2;
+        }
+        // The region must not be written again until these draws have completed.
+        if (regionFences[ringRegion] != 0)
+            glDeleteSync(regionFences[ringRegion]);
+        regionFences[ringRegion] = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        nk_clear(nkContext);
+
+        // default OpenGL state
+        glBindVertexArray(0);
+        glDisable(GL_BLEND);
+        glDisable(GL_SCISSOR_TEST);
+    }
+
+    /**
+     * Compare the Nuklear commands laid out for this frame with those of the
+     * last conversion, keeping a copy of them if they have changed.
+     */
+    private boolean commandsChanged() {
+        NkBuffer memory = nkContext.memory();
+        int allocated = (int)memory.allocated();
+        ByteBuffer commands = memory.memory().ptr();
+        commands.limit(allocated);
+        if (previousCommands != null && previousCommands.equals(commands))
+            return false;
+        if (previousCommands == null || previousCommands.capacity() < allocated)
+            previousCommands = BufferUtils.createByteBuffer(Math.max(allocated, BUFFER_INITIAL_SIZE));
+        previousCommands.clear();
+        previousCommands.put(commands);
+        previousCommands.flip();
+        return true;
+    }
+
+    /**
+     * Convert the Nuklear commands into the next region of the ring of vertex
+     * and element buffers. The region is mapped unsynchronized, after waiting
+     * for the fence placed after it was last drawn.
+     */
+    private void convertCommands() {
+        ringRegion = (ringRegion + 1) % RING_REGIONS;
+        waitForRegion(ringRegion);
 
-        // load draw vertices & elements directly into vertex + element buffer
-        ByteBuffer vertices = Objects.requireNonNull(glMapBuffer(GL_ARRAY_BUFFER, GL_WRITE_ONLY, MAX_VERTEX_BUFFER, null));
-        ByteBuffer elements = Objects.requireNonNull(glMapBuffer(GL_ELEMENT_ARRAY_BUFFER, GL_WRITE_ONLY, MAX_ELEMENT_BUFFER, null));
+        glBindBuffer(GL_ARRAY_BUFFER, guiShader.getVbo());
+        int access = GL_MAP_WRITE_BIT | GL_MAP_INVALIDATE_RANGE_BIT | GL_MAP_UNSYNCHRONIZED_BIT;
+        ByteBuffer vertices = Objects.requireNonNull(glMapBufferRange(GL_ARRAY_BUFFER,
+                                                                      (long)ringRegion * MAX_VERTEX_BUFFER,
+                                                                      MAX_VERTEX_BUFFER,
+                                                                      access,
+                                                                      null));
+        ByteBuffer elements = Objects.requireNonNull(glMapBufferRange(GL_ELEMENT_ARRAY_BUFFER,
+                                                                      (long)ringRegion * MAX_ELEMENT_BUFFER,
+                                                                      MAX_ELEMENT_BUFFER,
+                                                                      access,
+                                                                      null));
         
         try (MemoryStack stack = stackPush()) {
             // fill convert configuration
             NkConvertConfig config = NkConvertConfig.callocStack(stack)
                 .vertex_layout(VERTEX_LAYOUT)
-                .vertex_size(20)
+                .vertex_size(VERTEX_SIZE)
                 .vertex_alignment(4)
                 .null_texture(guiShader.getNullTexture())
                 .circle_segment_count(22)
@@ -221,41 +332,34 @@ public class GUIRenderer {
         }
         glUnmapBuffer(GL_ELEMENT_ARRAY_BUFFER);
         glUnmapBuffer(GL_ARRAY_BUFFER);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
 
-        // iterate over and execute each draw command
-        float fb_scale_x = (float)renderParameters.getDisplayWidth() / (float)renderParameters.getWindowWidth();
-        float fb_scale_y = (float)renderParameters.getDisplayHeight() / (float)renderParameters.getWindowHeight();
-
-        long offset = 0;
-        long commandIndex = -1;
+        drawCommands.clear();
         for (NkDrawCommand cmd = nk__draw_begin(nkContext, cmds); cmd != null; cmd = nk__draw_next(cmd, cmds, nkContext)) {
-            ++commandIndex;
-            if (cmd.elem_count() == 0) {
-                continue;
-            }
-            glBindTexture(GL_TEXTURE_2D, cmd.texture().id());
-            glScissor(
-                (int)(cmd.clip_rect().x() * fb_scale_x),
-                (int)((renderParameters.getWindowHeight() - (int)(cmd.clip_rect().y() + cmd.clip_rect().h())) * fb_scale_y),
-                (int)(cmd.clip_rect().w() * fb_scale_x),
-                (int)(cmd.clip_rect().h() * fb_scale_y)
-            );
-            glDrawElements(GL_TRIANGLES, cmd.elem_count(), GL_UNSIGNED_SHORT, offset);
-            glBindTexture(GL_TEXTURE_2D, 0);
-            offset += cmd.elem_count() * 2;
+            if (cmd.elem_count() > 0)
+                drawCommands.add(new DrawCommand(cmd));
         }
-        nk_clear(nkContext);
         nk_buffer_clear(cmds);
+    }
 
-        // default OpenGL state
-        glBindBuffer(GL_ARRAY_BUFFER, 0);
-        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
-        glBindVertexArray(0);
-        glDisable(GL_BLEND);
-        glDisable(GL_SCISSOR_TEST);
+    private void waitForRegion(int region) {
+        long fence = regionFences[region];
+        if (fence != 0) {
+            int result = glClientWaitSync(fence, GL_SYNC_FLUSH_COMMANDS_BIT, FENCE_TIMEOUT_NS);
+            while (result == GL_TIMEOUT_EXPIRED)
+                result = glClientWaitSync(fence, 0, FENCE_TIMEOUT_NS);
+            glDeleteSync(fence);
+            regionFences[region] = 0;
+        }
     }
     
     public void cleanUp() {
+        for (int region = 0; region < RING_REGIONS; ++region) {
+            if (regionFences[region] != 0) {
+                glDeleteSync(regionFences[region]);
+                regionFences[region] = 0;
+            }
+        }
         nk_buffer_free(cmds);
     }
     
@@ -0,0 +1,64 @@
+package celuk.gcodeviewer.engine.renderers;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL33.*;
+
+/**
+ * Measures the time the GPU takes to draw a frame with timer queries.
+ *
+ * The result of a query is only available some frames after it is issued,
+ * so a ring of queries is kept in flight, and the time of the most recent
+ * completed query is reported. Results are never waited for, so the timer
+ * does not stall the pipeline.
+ *
+ * @author Tony Aldhous
+ */
+public class GpuTimer {
+
+    private static final int N_QUERIES = 4;
+
+    private final int[] queryIds = new int[N_QUERIES];
+    private final boolean[] queryIssued = new boolean[N_QUERIES];
+    private int nextQuery = 0;
+    private boolean timing = false;
+    private double time = 0.0;
+
+    public GpuTimer() {
+        glGenQueries(queryIds);
+    }
+
+    public void begin() {
+        glBeginQuery(GL_TIME_ELAPSED, queryIds[nextQuery]);
+        timing = true;
+    }
+
+    public void end() {
+        if (!timing)
+            return;
+        glEndQuery(GL_TIME_ELAPSED);
+        timing = false;
+        queryIssued[nextQuery] = true;
+        nextQuery = (nextQuery + 1) % N_QUERIES;
+
+        // Read the completed queries, oldest first.
+        for (int index = 0; index < N_QUERIES; ++index) {
+            int query = (nextQuery + index) % N_QUERIES;
+            if (queryIssued[query] &&
+                glGetQueryObjecti(queryIds[query], GL_QUERY_RESULT_AVAILABLE) == GL_TRUE) {
+                time = 1.0e-9 * glGetQueryObjecti64(queryIds[query], GL_QUERY_RESULT);
+                queryIssued[query] = false;
+            }
+        }
+    }
+
+    /**
+     * @return the time in seconds taken by the GPU to draw the most recent completed frame.
+     */
+    public double getTime() {
+        return time;
+    }
+
+    public void cleanUp() {
+        glDeleteQueries(queryIds);
+    }
+}
@@ -0,0 +1,92 @@
+package celuk.gcodeviewer.engine.renderers;
+
+import celuk.gcodeviewer.engine.ChunkSelection;
+import celuk.gcodeviewer.engine.DrawList;
+import celuk.gcodeviewer.engine.RawEntity;
+import celuk.gcodeviewer.engine.RenderParameters;
+import celuk.gcodeviewer.engine.SegmentLoader;
+import celuk.gcodeviewer.engine.SegmentMesh;
+import celuk.gcodeviewer.shaders.InstancedSegmentShader;
+import java.nio.FloatBuffer;
+import org.lwjgl.BufferUtils;
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL31.*;
+
+/**
+ * Renders the segments by drawing an instance of the segment mesh for each
+ * segment, using the segment VBO as per instance attributes. It draws the
+ * same image as the SegmentRenderer, but without a geometry shader, which is
+ * slow on some GPUs and drivers.
+ *
+ * @author Tony Aldhous
+ */
+public class InstancedSegmentRenderer {
+
+    private final InstancedSegmentShader shader;
+    private final int meshVboId;
+    private final DrawList drawList = new DrawList();
+
+    public InstancedSegmentRenderer(InstancedSegmentShader shader) {
+        this.shader = shader;
+
+        float[] meshVertices = SegmentMesh.getVertices();
+        FloatBuffer meshBuffer = BufferUtils.createFloatBuffer(meshVertices.length);
+        meshBuffer.put(meshVertices);
+        meshBuffer.flip();
+        meshVboId = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, meshVboId);
+        glBufferData(GL_ARRAY_BUFFER, meshBuffer, GL_STATIC_DRAW);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    public void render(RawEntity rawEntity,
+                       RenderParameters renderParameters,
+                       ChunkSelection chunkSelection) {
+        if (rawEntity != null) {
+            // Only draw the segments of the visible lines, tools and types.
+            rawEntity.buildDrawList(drawList, renderParameters, chunkSelection, ChunkSelection.FULL, 1);
+            if (drawList.isEmpty())
+                return;
+
+            shader.start();
+            // There is no base instance in OpenGL 3.3, so each range is drawn
+            // by offsetting the per instance attributes to its first segment.
+            bindRawModel(rawEntity, drawList.getFirst(0));
+            for (int range = 0; range < drawList.size(); ++range) {
+                if (range > 0)
+                    SegmentLoader.setSegmentAttributePointers(rawEntity, drawList.getFirst(range), true);
+                glDrawArraysInstanced(GL_TRIANGLES, 0, SegmentMesh.VERTEX_COUNT, drawList.getCount(range));
+            }
+            unbindRawModel(rawEntity);
+            shader.stop();
+        }
+    }
+
+    public void cleanUp() {
+        glDeleteBuffers(meshVboId);
+    }
+
+    void bindRawModel(RawEntity rawEntity, int firstSegment) {
+        glBindVertexArray(rawEntity.getVaoId());
+        SegmentLoader.setSegmentAttributePointers(rawEntity, firstSegment, true);
+        glBindBuffer(GL_ARRAY_BUFFER, meshVboId);
+        glVertexAttribPointer(InstancedSegmentShader.CORNER_ATTRIBUTE, 4, GL_FLOAT, false,
+                              SegmentMesh.BYTES_PER_VERTEX, SegmentMesh.CORNER_OFFSET);
+        glVertexAttribPointer(InstancedSegmentShader.CORNER_NORMAL_ATTRIBUTE, 3, GL_FLOAT, false,
+                              SegmentMesh.BYTES_PER_VERTEX, SegmentMesh.NORMAL_OFFSET);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        for (int attributeNumber = 0; attributeNumber <= InstancedSegmentShader.CORNER_NORMAL_ATTRIBUTE; ++attributeNumber)
+            glEnableVertexAttribArray(attributeNumber);
+    }
+
+    void unbindRawModel(RawEntity rawEntity) {
+        for (int attributeNumber = 0; attributeNumber <= InstancedSegmentShader.CORNER_NORMAL_ATTRIBUTE; ++attributeNumber)
+            glDisableVertexAttribArray(attributeNumber);
+        // Restore the attributes used by the other segment renderers.
+        SegmentLoader.setSegmentAttributePointers(rawEntity, 0, false);
+        glBindVertexArray(0);
+    }
+}
@@ -1,12 +1,7 @@
 package celuk.gcodeviewer.engine.renderers;
 
 import celuk.gcodeviewer.engine.RawEntity;
-import celuk.gcodeviewer.engine.RenderParameters;
-import celuk.gcodeviewer.entities.Camera;
-import celuk.gcodeviewer.entities.Light;
 import celuk.gcodeviewer.shaders.LineShader;
-import org.joml.Matrix4f;
-import org.joml.Vector3f;
 import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.opengl.GL20.*;
 import static org.lwjgl.opengl.GL30.*;
@@ -14,25 +9,15 @@ import static org.lwjgl.opengl.GL30.*;
 public class LineRenderer {
    
     private final LineShader shader;
-    private Matrix4f projectionMatrix;
     
-    public LineRenderer(LineShader shader, Matrix4f projectionMatrix) {
+    public LineRenderer(LineShader shader) {
         this.shader = shader;
-        this.projectionMatrix = projectionMatrix;
     }
     
-    public void prepare(Camera camera,
-                        Light light,
-                        RenderParameters renderParameters) {
+    public void prepare() {
         MasterRenderer.checkErrors();
         shader.start();
         MasterRenderer.checkErrors();
-        shader.setProjectionMatrix(projectionMatrix);
-        MasterRenderer.checkErrors();
-        shader.setViewMatrix(camera);
-        MasterRenderer.checkErrors();
-        shader.loadCompositeMatrix();
-        MasterRenderer.checkErrors();
     }
     
     public void render(RawEntity rawEntity) {
@@ -51,10 +36,6 @@ public class LineRenderer {
         MasterRenderer.checkErrors();
     }
 
-    public void setProjectionMatrix(Matrix4f projectionMatrix) {
-        this.projectionMatrix = projectionMatrix;
-    }
-    
     public void bindRawModel(RawEntity rawEntity) {
         glBindVertexArray(rawEntity.getVaoId());
         glEnableVertexAttribArray(0);
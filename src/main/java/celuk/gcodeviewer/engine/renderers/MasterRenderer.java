@@ -1,9 +1,12 @@
 package celuk.gcodeviewer.engine.renderers;
 
+import celuk.gcodeviewer.engine.ChunkSelection;
+import celuk.gcodeviewer.engine.QualityController;
 import celuk.gcodeviewer.engine.RawEntity;
 import celuk.gcodeviewer.engine.RawModel;
 import celuk.gcodeviewer.engine.RenderParameters;
 import celuk.gcodeviewer.engine.RenderingEngine;
+import celuk.gcodeviewer.engine.SegmentBounds;
 import celuk.gcodeviewer.shaders.AngleShader;
 import celuk.gcodeviewer.entities.Camera;
 import celuk.gcodeviewer.entities.CenterPoint;
@@ -13,10 +16,14 @@ import celuk.gcodeviewer.entities.Light;
 import celuk.gcodeviewer.entities.LineEntity;
 import celuk.gcodeviewer.entities.PrintVolume;
 import celuk.gcodeviewer.shaders.SegmentShader;
+import celuk.gcodeviewer.shaders.CachedSegmentShader;
 import celuk.gcodeviewer.shaders.FloorShader;
+import celuk.gcodeviewer.shaders.InstancedSegmentShader;
 import celuk.gcodeviewer.shaders.LineModelShader;
 import celuk.gcodeviewer.shaders.LineShader;
 import celuk.gcodeviewer.shaders.MoveShader;
+import celuk.gcodeviewer.shaders.SegmentCaptureShader;
+import celuk.gcodeviewer.shaders.SegmentLineShader;
 import celuk.gcodeviewer.utils.MatrixUtils;
 import java.text.DecimalFormat;
 //import celuk.gcodeviewer.shaders.StaticShader;
@@ -24,6 +31,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import org.joml.FrustumIntersection;
 import org.joml.Matrix4f;
 import org.joml.Vector2f;
 import org.joml.Vector3f;
@@ -45,6 +53,16 @@ public class MasterRenderer {
     private final SegmentShader segmentShader = new SegmentShader();
     private final SegmentRenderer segmentRenderer;
 
+    private final SegmentLineShader segmentLineShader = new SegmentLineShader();
+    private final SegmentRenderer segmentLineRenderer;
+
+    private final InstancedSegmentShader instancedSegmentShader = new InstancedSegmentShader();
+    private final InstancedSegmentRenderer instancedSegmentRenderer;
+
+    private final CachedSegmentShader cachedSegmentShader = new CachedSegmentShader();
+    private final SegmentCaptureShader segmentCaptureShader = new SegmentCaptureShader();
+    private final CachedSegmentRenderer cachedSegmentRenderer;
+
     private final MoveShader moveShader = new MoveShader();
     private final MoveRenderer moveRenderer;
 
@@ -58,6 +76,8 @@ public class MasterRenderer {
     private final FloorRenderer floorRenderer;
     
     private RawEntity segmentEntity = null;
+    // Merged segments drawn at the coarsest level of detail.
+    private RawEntity segmentLodEntity = null;
     private RawEntity moveEntity = null;
     private RawEntity printVolumeEntity = null;
     private final Map<RawModel, List<Entity>> entities = new HashMap<>();
@@ -66,17 +86,27 @@ public class MasterRenderer {
     private CenterPoint centrePoint;
     
     private Matrix4f projectionMatrix;
+    private final FrustumIntersection frustum = new FrustumIntersection();
+    private final ChunkSelection chunkSelection = new ChunkSelection();
+    private final GpuTimer gpuTimer = new GpuTimer();
+    private final DataPaletteTexture dataPaletteTexture = new DataPaletteTexture();
+    private final SharedUniformBuffers sharedUniformBuffers = new SharedUniformBuffers();
+    private QualityController qualityController = null;
 
     private RenderParameters renderParameters;
     
     public MasterRenderer(RenderParameters renderParameters) {
         createProjectionMatrix(renderParameters.getWindowWidth(), renderParameters.getWindowHeight());
 //        this.staticEntityRenderer = new StaticRenderer(staticShader, projectionMatrix);
-        this.angleRenderer = new AngleRenderer(angleShader, projectionMatrix);
-        this.segmentRenderer = new SegmentRenderer(segmentShader, projectionMatrix);
-        this.moveRenderer = new MoveRenderer(moveShader, projectionMatrix);
+        this.angleRenderer = new AngleRenderer(angleShader);
+        this.segmentRenderer = new SegmentRenderer(segmentShader);
+        this.segmentLineRenderer = new SegmentRenderer(segmentLineShader);
+        this.instancedSegmentRenderer = new InstancedSegmentRenderer(instancedSegmentShader);
+        this.cachedSegmentRenderer = new CachedSegmentRenderer(cachedSegmentShader, segmentCaptureShader,
+                                                               instancedSegmentRenderer);
+        this.moveRenderer = new MoveRenderer(moveShader);
         this.lineModelRenderer = new LineModelRenderer(lineModelShader, projectionMatrix);
-        this.lineRenderer = new LineRenderer(lineShader, projectionMatrix);
+        this.lineRenderer = new LineRenderer(lineShader);
         this.floorRenderer = new FloorRenderer(floorShader, projectionMatrix);
         this.renderParameters = renderParameters;
         glEnable(GL_CULL_FACE);
@@ -91,8 +121,25 @@ public class MasterRenderer {
         this.renderParameters = renderParameters;
     }
 
+    public QualityController getQualityController() {
+        return qualityController;
+    }
+
+    public void setQualityController(QualityController qualityController) {
+        this.qualityController = qualityController;
+    }
+
+    /**
+     * @return the time in seconds taken by the GPU to render the most recent completed frame.
+     */
+    public double getGpuFrameTime() {
+        return gpuTimer.getTime();
+    }
+
     public void render(Camera camera, Light light) {   
+        gpuTimer.begin();
         prepare();
+        sharedUniformBuffers.update(projectionMatrix, camera, light, renderParameters);
         
 //        staticShader.start();
 //        staticShader.loadLight(light);
@@ -114,19 +161,49 @@ public class MasterRenderer {
         }
 
         if (printVolumeEntity != null) {
-            lineRenderer.prepare(camera, light, renderParameters);
+            lineRenderer.prepare();
             lineRenderer.render(printVolumeEntity);
             lineRenderer.finish();
         }
 
         if (segmentEntity != null) {
-            segmentRenderer.render(segmentEntity, camera, light, renderParameters);
-            if (renderParameters.getShowAngles())
-                angleRenderer.render(segmentEntity, camera, light, renderParameters);
+            dataPaletteTexture.update(renderParameters.getDataColours());
+            dataPaletteTexture.bind(SegmentShader.DATA_PALETTE_TEXTURE_UNIT);
+            selectChunks(camera);
+            switch (renderParameters.getSegmentRendering()) {
+                case INSTANCED:
+                    instancedSegmentRenderer.render(segmentEntity, renderParameters, chunkSelection);
+                    break;
+
+                case FEEDBACK_CACHE:
+                    // Fall back to the geometry shader if the segments cannot be cached.
+                    if (!cachedSegmentRenderer.render(segmentEntity, renderParameters, chunkSelection))
+                        segmentRenderer.render(segmentEntity, renderParameters, chunkSelection);
+                    break;
+
+                default:
+                    segmentRenderer.render(segmentEntity, renderParameters, chunkSelection);
+                    break;
+            }
+            // Draw the distant chunks as lines, from the merged segments if there are any.
+            if (chunkSelection.hasLevel(ChunkSelection.LINES | ChunkSelection.MERGED)) {
+                if (segmentLodEntity != null) {
+                    segmentLineRenderer.render(segmentEntity, renderParameters, chunkSelection, ChunkSelection.LINES);
+                    segmentLineRenderer.render(segmentLodEntity, renderParameters, chunkSelection, ChunkSelection.MERGED);
+                }
+                else
+                    segmentLineRenderer.render(segmentEntity, renderParameters, chunkSelection,
+                                               ChunkSelection.LINES | ChunkSelection.MERGED);
+            }
+            if (renderParameters.getShowAngles() &&
+                (qualityController == null || !qualityController.getSkipAngles()))
+                angleRenderer.render(segmentEntity, renderParameters, chunkSelection);
         }
         
-        if (moveEntity != null && (renderParameters.getShowMoves() || renderParameters.getShowStylus())) {
-            moveRenderer.render(moveEntity, camera, light, renderParameters);
+        if (moveEntity != null &&
+            (renderParameters.getShowMoves() || renderParameters.getShowStylus()) &&
+            (qualityController == null || !qualityController.getSkipMoves())) {
+            moveRenderer.render(moveEntity, renderParameters);
         }
 
         if (floor != null) {
@@ -143,6 +220,7 @@ public class MasterRenderer {
         //debugPV(new Vector4f(210.0f, 150.0f, 0.0f, 1.0f), camera);
         //debugPV(new Vector4f(0.0f, 150.0f, 0.0f, 1.0f), camera);
         //debugPV(new Vector4f(105.0f, 75.0f, 50.0f, 1.0f), camera);
+        gpuTimer.end();
         checkErrors();
     }
     
@@ -174,6 +252,14 @@ public class MasterRenderer {
     public RawEntity getSegmentEntity() {
         return segmentEntity;
     }
+
+    public void processSegmentLodEntity(RawEntity segmentLodEntity) {
+        this.segmentLodEntity = segmentLodEntity;
+    }
+
+    public RawEntity getSegmentLodEntity() {
+        return segmentLodEntity;
+    }
     
     public void processMoveEntity(RawEntity moveEntity) {
         this.moveEntity = moveEntity;
@@ -197,6 +283,8 @@ public class MasterRenderer {
     
     public void clearEntities() {
         this.segmentEntity = null;
+        this.segmentLodEntity = null;
+        cachedSegmentRenderer.clearCache();
         this.moveEntity = null;
         entities.clear();
         lineEntities.clear();
@@ -208,6 +296,15 @@ public class MasterRenderer {
         lineModelShader.cleanUp();
         lineShader.cleanUp();
         segmentShader.cleanUp();
+        segmentLineShader.cleanUp();
+        instancedSegmentShader.cleanUp();
+        instancedSegmentRenderer.cleanUp();
+        cachedSegmentRenderer.cleanUp();
+        cachedSegmentShader.cleanUp();
+        segmentCaptureShader.cleanUp();
+        gpuTimer.cleanUp();
+        dataPaletteTexture.cleanUp();
+        sharedUniformBuffers.cleanUp();
     }
     
     private void prepare() {
@@ -240,16 +337,52 @@ public class MasterRenderer {
         projectionMatrix.m33(0.0f);
     }
     
+    /**
+     * Selects the level of detail of each chunk of segments, culling the
+     * chunks outside the view frustum.
+     */
+    private void selectChunks(Camera camera) {
+        SegmentBounds segmentBounds = segmentEntity.getSegmentBounds();
+        if (segmentBounds != null) {
+            frustum.set(new Matrix4f(projectionMatrix).mul(MatrixUtils.createViewMatrix(camera)));
+            // Size in pixels of a unit length at unit distance from the camera.
+            float pixelScale = 0.5f * projectionMatrix.m11() * renderParameters.getDisplayHeight();
+            float lineWidth = renderParameters.getLodLineWidth();
+            float mergeWidth = renderParameters.getLodMergeWidth();
+            if (qualityController != null) {
+                lineWidth = qualityController.getLodLineWidth(lineWidth);
+                mergeWidth = qualityController.getLodMergeWidth(mergeWidth);
+            }
+            chunkSelection.select(segmentBounds, frustum, camera.getPosition(), pixelScale,
+                                  lineWidth, mergeWidth);
+            if (segmentLodEntity != null)
+                chunkSelection.unmergeVisibleEnds(segmentBounds,
+                                                  segmentEntity.getFirstVisibleVertex(renderParameters.getBottomVisibleLine()),
+                                                  segmentEntity.getEndVisibleVertex(renderParameters.getTopVisibleLine()));
+        }
+        else
+            chunkSelection.clear();
+    }
+
+    /**
+     * Calculates the distance from a sphere at which the whole sphere fits
+     * in the view of the current projection matrix.
+     * 
+     * @param radius radius of the sphere.
+     * @return distance of the camera from the centre of the sphere.
+     */
+    public float getFitDistance(float radius) {
+        // The half angle of the narrower side of the view.
+        double halfAngle = Math.atan(1.0 / Math.max(projectionMatrix.m00(), projectionMatrix.m11()));
+        return (float)Math.max(radius / Math.sin(halfAngle), NEAR_PLANE + radius);
+    }
+    
     /**
      * Re-loads the projection matrix into the renderer's respective shaders.
      */
     public final void reloadProjectionMatrix() {
 //        staticEntityRenderer.loadProjectionMatrix(projectionMatrix);
         lineModelRenderer.loadProjectionMatrix(projectionMatrix);
-        lineRenderer.setProjectionMatrix(projectionMatrix);
-        segmentRenderer.setProjectionMatrix(projectionMatrix);
-        angleRenderer.setProjectionMatrix(projectionMatrix);
-        moveRenderer.setProjectionMatrix(projectionMatrix);
         floorRenderer.loadProjectionMatrix(projectionMatrix);
     }
 
@@ -0,0 +1,113 @@
+package celuk.gcodeviewer.engine.renderers;
+
+import libertysystems.stenographer.Stenographer;
+import libertysystems.stenographer.StenographerFactory;
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL30.*;
+
+/**
+ * Offscreen framebuffer holding the last rendered 3D scene.
+ *
+ * When only the GUI has changed, the scene is copied from this framebuffer
+ * to the window with a single blit, instead of being rendered again. The
+ * framebuffer is recreated when the size of the display changes.
+ *
+ * @author Tony Aldhous
+ */
+public class SceneFramebuffer {
+
+    private final static Stenographer STENO = StenographerFactory.getStenographer(SceneFramebuffer.class.getName());
+
+    private int framebufferId = 0;
+    private int colourBufferId = 0;
+    private int depthBufferId = 0;
+    private int width = 0;
+    private int height = 0;
+    private boolean complete = false;
+    // True when the framebuffer holds a scene of the current size.
+    private boolean valid = false;
+
+    /**
+     * Create the buffers for the given size, unless they already have that size.
+     *
+     * @return true if the framebuffer can be used.
+     */
+    public boolean resize(int width, int height) {
+        if (framebufferId != 0 && width == this.width && height == this.height)
+            return complete;
+
+        cleanUp();
+        this.width = width;
+        this.height = height;
+        if (width <= 0 || height <= 0)
+            return false;
+
+        colourBufferId = glGenRenderbuffers();
+        glBindRenderbuffer(GL_RENDERBUFFER, colourBufferId);
+        glRenderbufferStorage(GL_RENDERBUFFER, GL_RGBA8, width, height);
+        depthBufferId = glGenRenderbuffers();
+        glBindRenderbuffer(GL_RENDERBUFFER, depthBufferId);
+        glRenderbufferStorage(GL_RENDERBUFFER, GL_DEPTH_COMPONENT24, width, height);
+        glBindRenderbuffer(GL_RENDERBUFFER, 0);
+
+        framebufferId = glGenFramebuffers();
+        glBindFramebuffer(GL_FRAMEBUFFER, framebufferId);
+        glFramebufferRenderbuffer(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_RENDERBUFFER, colourBufferId);
+        glFramebufferRenderbuffer(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, GL_RENDERBUFFER, depthBufferId);
+        int status = glCheckFramebufferStatus(GL_FRAMEBUFFER);
+        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+        complete = (status == GL_FRAMEBUFFER_COMPLETE);
+        if (!complete)
+            STENO.error("Scene framebuffer is incomplete - status = " + Integer.toHexString(status));
+        return complete;
+    }
+
+    /**
+     * @return true if the framebuffer holds the last rendered scene.
+     */
+    public boolean isValid() {
+        return complete && valid;
+    }
+
+    public void invalidate() {
+        valid = false;
+    }
+
+    /**
+     * Direct rendering to the framebuffer.
+     */
+    public void bind() {
+        glBindFramebuffer(GL_FRAMEBUFFER, framebufferId);
+    }
+
+    /**
+     * Direct rendering back to the window, marking the framebuffer as holding the scene.
+     */
+    public void unbind() {
+        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+        valid = true;
+    }
+
+    /**
+     * Copy the scene to the window.
+     */
+    public void blitToWindow() {
+        glBindFramebuffer(GL_READ_FRAMEBUFFER, framebufferId);
+        glBindFramebuffer(GL_DRAW_FRAMEBUFFER, 0);
+        glBlitFramebuffer(0, 0, width, height, 0, 0, width, height, GL_COLOR_BUFFER_BIT, GL_NEAREST);
+        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+    }
+
+    public void cleanUp() {
+        if (framebufferId != 0) {
+            glDeleteFramebuffers(framebufferId);
+            glDeleteRenderbuffers(colourBufferId);
+            glDeleteRenderbuffers(depthBufferId);
+            framebufferId = 0;
+            colourBufferId = 0;
+            depthBufferId = 0;
+        }
+        complete = false;
+        valid = false;
+    }
+}
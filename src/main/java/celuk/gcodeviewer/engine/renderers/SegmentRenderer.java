@@ -1,61 +1,50 @@
 package celuk.gcodeviewer.engine.renderers;
 
+import celuk.gcodeviewer.engine.ChunkSelection;
+import celuk.gcodeviewer.engine.DrawList;
 import celuk.gcodeviewer.engine.RawEntity;
 import celuk.gcodeviewer.engine.RenderParameters;
-import celuk.gcodeviewer.entities.Camera;
 import celuk.gcodeviewer.entities.Entity;
-import celuk.gcodeviewer.entities.Light;
 import celuk.gcodeviewer.shaders.SegmentShader;
-import celuk.gcodeviewer.utils.MatrixUtils;
-import java.util.List;
-import java.util.Map;
-import org.joml.Matrix4f;
-import org.joml.Vector3f;
 import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL14.*;
 import static org.lwjgl.opengl.GL20.*;
 import static org.lwjgl.opengl.GL30.*;
 
 public class SegmentRenderer {
    
     private final SegmentShader shader;
-    private Matrix4f projectionMatrix;
+    private final DrawList drawList = new DrawList();
     
-    public SegmentRenderer(SegmentShader shader, Matrix4f projectionMatrix) {
+    public SegmentRenderer(SegmentShader shader) {
         this.shader = shader;
-        this.projectionMatrix = projectionMatrix;
     }
     
     public void render(RawEntity rawEntity,
-                       Camera camera,
-                       Light light,
-                       RenderParameters renderParameters) {
+                       RenderParameters renderParameters,
+                       ChunkSelection chunkSelection) {
+        render(rawEntity, renderParameters, chunkSelection, ChunkSelection.FULL);
+    }
+
+    /**
+     * Render the chunks of segments selected at the given levels of detail.
+     */
+    public void render(RawEntity rawEntity,
+                       RenderParameters renderParameters,
+                       ChunkSelection chunkSelection,
+                       int levelFlags) {
         if (rawEntity != null) {
             shader.start();
-            shader.setProjectionMatrix(projectionMatrix);
-            shader.setViewMatrix(camera);
-            shader.loadCompositeMatrix();
-            shader.loadLight(light);
-            shader.loadVisibleLimits(renderParameters.getTopVisibleLine(),
-                                     renderParameters.getBottomVisibleLine());
-            shader.loadSelectionLimits(renderParameters.getFirstSelectedLine(),
-                                       renderParameters.getLastSelectedLine());
-            shader.loadShowFlags(renderParameters.getShowFlags());
-            shader.loadShowTools(renderParameters.getShowTools());
-            shader.loadShowTypes(renderParameters.getShowTypes());
-            shader.loadToolColours(renderParameters.getToolColours());
-            shader.loadTypeColours(renderParameters.getTypeColours());
-            shader.loadSelectColour(renderParameters.getSelectColour());
             bindRawModel(rawEntity);
-            glDrawArrays(GL_POINTS, 0, rawEntity.getVertexCount());
+            // Only draw the vertices of the visible lines, tools and types.
+            rawEntity.buildDrawList(drawList, renderParameters, chunkSelection, levelFlags, 1);
+            if (!drawList.isEmpty())
+                glMultiDrawArrays(GL_POINTS, drawList.getFirsts(), drawList.getCounts());
             unbindRawModel();
             shader.stop();
         }
     }
     
-    public void setProjectionMatrix(Matrix4f projectionMatrix) {
-        this.projectionMatrix = projectionMatrix;
-    }
-    
     public void bindRawModel(RawEntity rawEntity) {
         glBindVertexArray(rawEntity.getVaoId());
         glEnableVertexAttribArray(0);
@@ -65,6 +54,7 @@ public class SegmentRenderer {
         glEnableVertexAttribArray(4);
         glEnableVertexAttribArray(5);
         glEnableVertexAttribArray(6);
+        glEnableVertexAttribArray(7);
     }
     
     public void unbindRawModel() {
@@ -75,6 +65,7 @@ public class SegmentRenderer {
         glDisableVertexAttribArray(4);
         glDisableVertexAttribArray(5);
         glDisableVertexAttribArray(6);
+        glDisableVertexAttribArray(7);
         glBindVertexArray(0);
     }
 }
@@ -0,0 +1,166 @@
+package celuk.gcodeviewer.engine.renderers;
+
+import celuk.gcodeviewer.engine.RenderParameters;
+import celuk.gcodeviewer.entities.Camera;
+import celuk.gcodeviewer.entities.Light;
+import celuk.gcodeviewer.shaders.ShaderProgram;
+import celuk.gcodeviewer.utils.MatrixUtils;
+import java.nio.ByteBuffer;
+import java.util.List;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.lwjgl.BufferUtils;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL31.*;
+
+/**
+ * Uniform buffers holding the state shared by the shader programs, in the
+ * std140 layout of the CameraState and ViewState uniform blocks.
+ *
+ * The camera block holds the composite matrix and the light. The view block
+ * holds the visibility, selection and colours of the segments and moves. Each
+ * frame the state is packed and compared with the state last uploaded, and a
+ * buffer is only uploaded again when its state has changed. The buffers stay
+ * bound to the binding points of their blocks, so the programs never load
+ * these uniforms themselves.
+ *
+ * @author Tony Aldhous
+ */
+public class SharedUniformBuffers {
+
+    private static final int MAX_COLOURS = 16;
+
+    // Offsets in bytes of the members of the CameraState block.
+    private static final int COMPOSITE_MATRIX_OFFSET = 0;
+    private static final int LIGHT_POSITION_OFFSET = 64;
+    private static final int LIGHT_COLOUR_OFFSET = 80;
+    private static final int CAMERA_STATE_SIZE = 96;
+
+    // Offsets in bytes of the members of the ViewState block.
+    private static final int TOOL_COLOURS_OFFSET = 0;
+    private static final int TYPE_COLOURS_OFFSET = 256;
+    private static final int SELECT_COLOUR_OFFSET = 512;
+    private static final int FIRST_SELECTED_LINE_OFFSET = 524;
+    private static final int MOVE_COLOUR_OFFSET = 528;
+    private static final int LAST_SELECTED_LINE_OFFSET = 540;
+    private static final int STYLUS_COLOUR_OFFSET = 544;
+    private static final int TOP_VISIBLE_LINE_OFFSET = 556;
+    private static final int DATA_MASK_ABC_OFFSET = 560;
+    private static final int BOTTOM_VISIBLE_LINE_OFFSET = 572;
+    private static final int DATA_MASK_DEF_OFFSET = 576;
+    private static final int SHOW_FLAGS_OFFSET = 588;
+    private static final int SHOW_TOOLS_OFFSET = 592;
+    private static final int SHOW_TYPES_OFFSET = 596;
+    private static final int DATA_INDEX_OFFSET = 600;
+    private static final int DATA_MINIMUM_OFFSET = 604;
+    private static final int DATA_SCALE_OFFSET = 608;
+    private static final int STYLUS_HEIGHT_OFFSET = 612;
+    private static final int VIEW_STATE_SIZE = 624;
+
+    private final int cameraBufferId;
+    private final int viewBufferId;
+    private final ByteBuffer cameraState = BufferUtils.createByteBuffer(CAMERA_STATE_SIZE);
+    private final ByteBuffer uploadedCameraState = BufferUtils.createByteBuffer(CAMERA_STATE_SIZE);
+    private final ByteBuffer viewState = BufferUtils.createByteBuffer(VIEW_STATE_SIZE);
+    private final ByteBuffer uploadedViewState = BufferUtils.createByteBuffer(VIEW_STATE_SIZE);
+    private boolean uploaded = false;
+    private final Matrix4f compositeMatrix = new Matrix4f();
+
+    public SharedUniformBuffers() {
+        cameraBufferId = createBuffer(ShaderProgram.CAMERA_STATE_BINDING, CAMERA_STATE_SIZE);
+        viewBufferId = createBuffer(ShaderProgram.VIEW_STATE_BINDING, VIEW_STATE_SIZE);
+    }
+
+    /**
+     * Upload the state for the frame to the buffers whose state has changed.
+     */
+    public void update(Matrix4f projectionMatrix, Camera camera, Light light, RenderParameters renderParameters) {
+        compositeMatrix.set(projectionMatrix).mul(MatrixUtils.createViewMatrix(camera));
+        compositeMatrix.get(COMPOSITE_MATRIX_OFFSET, cameraState);
+        putVector3(cameraState, LIGHT_POSITION_OFFSET, light.getPosition());
+        putVector3(cameraState, LIGHT_COLOUR_OFFSET, light.getColour());
+
+        putColours(viewState, TOOL_COLOURS_OFFSET, renderParameters.getToolColours());
+        putColours(viewState, TYPE_COLOURS_OFFSET, renderParameters.getTypeColours());
+        putVector3(viewState, SELECT_COLOUR_OFFSET, renderParameters.getSelectColour());
+        putVector3(viewState, MOVE_COLOUR_OFFSET, renderParameters.getMoveColour());
+        putVector3(viewState, STYLUS_COLOUR_OFFSET, renderParameters.getStylusColour());
+        viewState.putInt(FIRST_SELECTED_LINE_OFFSET, renderParameters.getFirstSelectedLine());
+        viewState.putInt(LAST_SELECTED_LINE_OFFSET, renderParameters.getLastSelectedLine());
+        viewState.putInt(TOP_VISIBLE_LINE_OFFSET, renderParameters.getTopVisibleLine());
+        viewState.putInt(BOTTOM_VISIBLE_LINE_OFFSET, renderParameters.getBottomVisibleLine());
+        viewState.putInt(SHOW_FLAGS_OFFSET, renderParameters.getShowFlags());
+        viewState.putInt(SHOW_TOOLS_OFFSET, renderParameters.getShowTools());
+        viewState.putInt(SHOW_TYPES_OFFSET, renderParameters.getShowTypes());
+        viewState.putFloat(STYLUS_HEIGHT_OFFSET, renderParameters.getStylusHeight());
+        putDataColouring(renderParameters.getDataIndex(),
+                         (float)renderParameters.getDataMinimum(),
+                         renderParameters.getDataScale());
+
+        if (!uploaded || !cameraState.equals(uploadedCameraState))
+            upload(cameraBufferId, cameraState, uploadedCameraState);
+        if (!uploaded || !viewState.equals(uploadedViewState))
+            upload(viewBufferId, viewState, uploadedViewState);
+        uploaded = true;
+    }
+
+    public void cleanUp() {
+        glDeleteBuffers(cameraBufferId);
+        glDeleteBuffers(viewBufferId);
+    }
+
+    private int createBuffer(int binding, int size) {
+        int bufferId = glGenBuffers();
+        glBindBuffer(GL_UNIFORM_BUFFER, bufferId);
+        glBufferData(GL_UNIFORM_BUFFER, size, GL_DYNAMIC_DRAW);
+        glBindBuffer(GL_UNIFORM_BUFFER, 0);
+        glBindBufferBase(GL_UNIFORM_BUFFER, binding, bufferId);
+        return bufferId;
+    }
+
+    private void upload(int bufferId, ByteBuffer state, ByteBuffer uploadedState) {
+        glBindBuffer(GL_UNIFORM_BUFFER, bufferId);
+        glBufferSubData(GL_UNIFORM_BUFFER, 0, state);
+        glBindBuffer(GL_UNIFORM_BUFFER, 0);
+        uploadedState.clear();
+        uploadedState.put(state.duplicate());
+        uploadedState.clear();
+    }
+
+    /**
+     * The data value to colour by is selected in the shaders by masks,
+     * which are mapped to the palette by (value - minimum) * scale.
+     */
+    private void putDataColouring(int dataIndex, float minimum, float scale) {
+        for (int component = 0; component < 3; ++component) {
+            viewState.putFloat(DATA_MASK_ABC_OFFSET + 4 * component, (dataIndex == component ? 1.0f : 0.0f));
+            viewState.putFloat(DATA_MASK_DEF_OFFSET + 4 * component, (dataIndex == component + 3 ? 1.0f : 0.0f));
+        }
+        viewState.putInt(DATA_INDEX_OFFSET, dataIndex);
+        viewState.putFloat(DATA_MINIMUM_OFFSET, minimum);
+        viewState.putFloat(DATA_SCALE_OFFSET, scale);
+    }
+
+    private static void putVector3(ByteBuffer state, int offset, Vector3f vector) {
+        state.putFloat(offset, vector.x);
+        state.putFloat(offset + 4, vector.y);
+        state.putFloat(offset + 8, vector.z);
+    }
+
+    private static void putColours(ByteBuffer state, int offset, List<Vector3f> colours) {
+        for (int index = 0; index < MAX_COLOURS; ++index) {
+            int p = offset + 16 * index;
+            if (index < colours.size()) {
+                putVector3(state, p, colours.get(index));
+                state.putFloat(p + 12, 1.0f);
+            }
+            else {
+                state.putFloat(p, 0.0f);
+                state.putFloat(p + 4, 0.0f);
+                state.putFloat(p + 8, 0.0f);
+                state.putFloat(p + 12, 0.0f);
+            }
+        }
+    }
+}
@@ -99,7 +99,7 @@ public class Camera {
             else {
                 distanceFromCenter -= yoffset * getSensitivityModifier() * MOUSE_ZOOM_SENSITIVITY;
             }
-            guiManager.setRenderRequired();
+            guiManager.setSceneRenderRequired();
         });
         
         glfwSetMouseButtonCallback(window, (window, mouseButton, action, mods) -> {
@@ -122,14 +122,14 @@ public class Camera {
                     previousXPosition = xpos;
                     previousYPosition = ypos;
                     centerPoint.setRendered(true);
-                    guiManager.setRenderRequired();
+                    guiManager.setSceneRenderRequired();
                 }
                 if((mouseButton == GLFW_MOUSE_BUTTON_1 ||
                     mouseButton == GLFW_MOUSE_BUTTON_2) &&
                     action == GLFW_RELEASE) {
                     dragging = false;
                     centerPoint.setRendered(false);
-                    guiManager.setRenderRequired();
+                    guiManager.setSceneRenderRequired();
                 }
             }
         });
@@ -188,7 +188,7 @@ public class Camera {
 
                 previousXPosition = xpos;
                 previousYPosition = ypos;
-                guiManager.setRenderRequired();
+                guiManager.setSceneRenderRequired();
             }
         });
     }
@@ -0,0 +1,519 @@
+package celuk.gcodeviewer.gcode;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Hand written GCodeParser that scans the line directly.
+ *
+ * It implements the same grammar as GCodeLineParser, rule for rule, but
+ * without the overhead of the parboiled rule matching. Numbers are converted
+ * in place, so no strings are created when parsing command lines. Strings are only
+ * created for comments, types and settings, which are relatively rare in
+ * sliced GCode.
+ *
+ * The parboiled parser is the reference for the grammar. Any change to the
+ * grammar should be made there first, and then copied here.
+ *
+ * @author Tony Aldhous
+ */
+public class FastGCodeParser implements GCodeParser {
+
+    private static final int MAX_EXACT_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {
+        1.0e0, 1.0e1, 1.0e2, 1.0e3, 1.0e4, 1.0e5, 1.0e6, 1.0e7, 1.0e8, 1.0e9, 1.0e10,
+        1.0e11, 1.0e12, 1.0e13, 1.0e14, 1.0e15, 1.0e16, 1.0e17, 1.0e18, 1.0e19, 1.0e20,
+        1.0e21, 1.0e22
+    };
+    private static final byte NON_ASCII = (byte)0x80;
+    private static final int FAIL = -1;
+
+    private final GCodeLine line = new GCodeLine();
+    private Map<String, Double> settingsMap = null;
+    private String errorReport = "";
+
+    // The line being parsed. When parsing a String, the characters are copied
+    // into the scratch buffer, and the string is used to extract the comments.
+    private byte[] buffer = null;
+    private int end = 0;
+    private String sourceText = null;
+    private byte[] scratchBuffer = new byte[256];
+
+    // Value of the most recently converted number.
+    private double numberValue = 0.0;
+
+    // The parboiled Vars keep their values from one line to the next, so
+    // a letter without a value, or a layer comment without a height, picks
+    // up the last value seen on any earlier line. The same is done here.
+    private boolean commandValueSet = false;
+    private double commandValue = 0.0;
+    private boolean heightSet = false;
+    private double height = 0.0;
+
+    // Used when a file is parsed in chunks, to detect lines that picked up
+    // values from before the start of the chunk.
+    private boolean commandValueSetHere = false;
+    private boolean heightSetHere = false;
+    private boolean carriedCommandValueUsed = false;
+    private boolean carriedHeightUsed = false;
+
+    @Override
+    public GCodeLine getLine() {
+        return line;
+    }
+
+    @Override
+    public void resetLine() {
+        line.reset();
+    }
+
+    @Override
+    public Map<String, Double> getSettingsMap() {
+        return settingsMap;
+    }
+
+    @Override
+    public void setSettingsMap(Map<String, Double> settingsMap) {
+        this.settingsMap = settingsMap;
+    }
+
+    /**
+     * Forget the values carried over from previously parsed lines, as if
+     * parsing were starting at the beginning of the file.
+     */
+    public void resetCarriedValues() {
+        commandValueSet = false;
+        commandValue = 0.0;
+        heightSet = false;
+        height = 0.0;
+        commandValueSetHere = false;
+        heightSetHere = false;
+        carriedCommandValueUsed = false;
+        carriedHeightUsed = false;
+    }
+
+    /**
+     * Take the carried over values from the parser that parsed the lines
+     * before this one.
+     * 
+     * @param previous parser holding the values carried over from earlier lines.
+     */
+    public void inheritCarriedValues(FastGCodeParser previous) {
+        resetCarriedValues();
+        commandValueSet = previous.commandValueSet;
+        commandValue = previous.commandValue;
+        heightSet = previous.heightSet;
+        height = previous.height;
+    }
+
+    /**
+     * Update the carried over values with any values set by the given
+     * parser since it was last reset, so this parser holds the values
+     * that are carried over to the lines after those parsed by the given parser.
+     * 
+     * @param next parser for the lines following those parsed by this one.
+     */
+    public void updateCarriedValues(FastGCodeParser next) {
+        if (next.commandValueSetHere) {
+            commandValueSet = true;
+            commandValue = next.commandValue;
+        }
+        if (next.heightSetHere) {
+            heightSet = true;
+            height = next.height;
+        }
+    }
+
+    /**
+     * Check if the lines parsed since the carried values were reset would have
+     * been parsed differently with the given carried values. This is only the
+     * case if a line used a value before it was set since the reset, and the
+     * given parser holds a value for it, as otherwise the value is unset either way.
+     * 
+     * @param carried parser holding the values carried over from earlier lines.
+     * @return true if the lines need to be parsed again with the carried values.
+     */
+    public boolean needsCarriedValues(FastGCodeParser carried) {
+        return (carriedCommandValueUsed && carried.commandValueSet)
+               || (carriedHeightUsed && carried.heightSet);
+    }
+
+    @Override
+    public String getErrorReport() {
+        return errorReport;
+    }
+
+    @Override
+    public boolean parse(String lineText) {
+        int length = lineText.length();
+        if (scratchBuffer.length < length)
+            scratchBuffer = new byte[Math.max(length, 2 * scratchBuffer.length)];
+        for (int i = 0; i < length; ++i) {
+            char c = lineText.charAt(i);
+            // Only ASCII characters are significant to the grammar.
+            scratchBuffer[i] = (c < 0x80 ? (byte)c : NON_ASCII);
+        }
+        sourceText = lineText;
+        boolean matched = parseLine(scratchBuffer, 0, length);
+        sourceText = null;
+        return matched;
+    }
+
+    @Override
+    public boolean parse(byte[] buffer, int start, int end) {
+        sourceText = null;
+        return parseLine(buffer, start, end);
+    }
+
+    private boolean parseLine(byte[] lineBuffer, int start, int lineEnd) {
+        this.buffer = lineBuffer;
+        this.end = lineEnd;
+        errorReport = "";
+        boolean matched = (command(start) != FAIL ||
+                           typeComment(start) != FAIL ||
+                           layerComment(start) != FAIL ||
+                           settingsComment(start) != FAIL ||
+                           comment(start) != FAIL ||
+                           equalsComment(start) != FAIL);
+        if (!matched)
+            errorReport = "no match.";
+        this.buffer = null;
+        return matched;
+    }
+
+    // A M or G command e.g. G0 F12000 X88.302 Y42.421 Z1.020
+    private int command(int p) {
+        if (p >= end)
+            return FAIL;
+        byte commandLetter = buffer[p];
+        if (commandLetter != 'G' && commandLetter != 'M' && commandLetter != 'T')
+            return FAIL;
+        p = spaces(p + 1);
+        int numberStart = p;
+        p = digits(p);
+        if (p == numberStart)
+            return FAIL;
+        int commandNumber = parseInteger(numberStart, p);
+        p = spaces(p);
+
+        while (p < end && buffer[p] >= 'A' && buffer[p] <= 'Z') {
+            char key = (char)buffer[p];
+            p = spaces(p + 1);
+            int numberEnd = floatingPointNumber(p);
+            if (numberEnd != FAIL) {
+                commandValue = numberValue;
+                commandValueSet = true;
+                commandValueSetHere = true;
+                p = spaces(numberEnd);
+            }
+            else if (!commandValueSetHere)
+                carriedCommandValueUsed = true;
+            line.setValue(key, commandValueSet ? commandValue : Double.NaN);
+        }
+
+        int q = partialBComment(p);
+        if (q == FAIL)
+            q = comment(p);
+        if (q != FAIL)
+            p = q;
+
+        line.commandLetter = (char)commandLetter;
+        line.commandNumber = commandNumber;
+        return p;
+    }
+
+    // Comment specifying a type.
+    // ;TYPE:FILL\n
+    private int typeComment(int p) {
+        p = spaces(p);
+        if (!isChar(p, ';'))
+            return FAIL;
+        p = spaces(p + 1);
+        p = ignoreCase(p, "TYPE");
+        if (p == FAIL)
+            return FAIL;
+        p = spaces(p);
+        if (!isChar(p, ':'))
+            return FAIL;
+        p = spaces(p + 1);
+        int typeStart = p;
+        while (p < end && (isLetter(buffer[p]) || buffer[p] == '-'))
+            ++p;
+        if (p == typeStart)
+            return FAIL;
+        line.type = extractType(typeStart, p);
+        return p;
+    }
+
+    // Comment specifying a layer.
+    // ;LAYER:34 height:1.47
+    private int layerComment(int p) {
+        p = spaces(p);
+        if (!isChar(p, ';'))
+            return FAIL;
+        p = spaces(p + 1);
+        p = ignoreCase(p, "LAYER");
+        if (p == FAIL)
+            return FAIL;
+        p = spaces(p);
+        if (isChar(p, ':'))
+            p = spaces(p + 1);
+        int layerStart = p;
+        if (isChar(p, '+') || isChar(p, '-'))
+            p = spaces(p + 1);
+        int digitsStart = p;
+        p = digits(p);
+        if (p == digitsStart)
+            return FAIL;
+        int layerNumber = parseInteger(digitsStart, p);
+        if (buffer[layerStart] == '-')
+            layerNumber = -layerNumber;
+
+        int q = spaces(p);
+        q = ignoreCase(q, "HEIGHT");
+        if (q != FAIL) {
+            q = spaces(q);
+            if (isChar(q, ':'))
+                q = spaces(q + 1);
+            q = positiveFloatingPointNumber(q);
+            if (q != FAIL) {
+                height = numberValue;
+                heightSet = true;
+                heightSetHere = true;
+                p = q;
+            }
+        }
+        if (!heightSetHere)
+            carriedHeightUsed = true;
+
+        line.layerNumber = layerNumber;
+        if (heightSet)
+            line.layerHeight = height;
+        line.comment = extractTrimmed(p, end);
+        return end;
+    }
+
+    // Comment specifying a partial open, with the original B value.
+    // ;PARTIAL OPEN B0.102
+    private int partialBComment(int p) {
+        p = spaces(p);
+        if (!isChar(p, ';'))
+            return FAIL;
+        p = spaces(p + 1);
+        p = ignoreCase(p, "PARTIAL");
+        if (p == FAIL || !isChar(p, ' '))
+            return FAIL;
+        p = spaces(p);
+        p = ignoreCase(p, "OPEN");
+        if (p == FAIL)
+            return FAIL;
+        p = spaces(p);
+        p = ignoreCase(p, "B");
+        if (p == FAIL)
+            return FAIL;
+        p = spaces(p);
+        int numberStart = p;
+        p = positiveFloatingPointNumber(p);
+        if (p == FAIL)
+            return FAIL;
+        line.setValue('b', numberValue);
+        line.comment = extractTrimmed(numberStart, p);
+        return p;
+    }
+
+    // Comment specifying a setting.
+    // ;# infillLayerThickness = 0.3
+    private int settingsComment(int p) {
+        p = spaces(p);
+        if (!isChar(p, ';') || !isChar(p + 1, '#'))
+            return FAIL;
+        p = spaces(p + 2);
+        int identifierStart = p;
+        p = identifier(p);
+        if (p == FAIL)
+            return FAIL;
+        int identifierEnd = p;
+        p = spaces(p);
+        if (!isChar(p, '='))
+            return FAIL;
+        p = spaces(p + 1);
+        int numberStart = p;
+        p = positiveFloatingPointNumber(p);
+        if (p == FAIL)
+            return FAIL;
+        line.comment = extractTrimmed(numberStart, p);
+        if (settingsMap != null)
+            settingsMap.put(extract(identifierStart, identifierEnd), numberValue);
+        return p;
+    }
+
+    // Comment element.
+    // ;Blah blah blah\n
+    private int comment(int p) {
+        p = spaces(p);
+        if (!isChar(p, ';'))
+            return FAIL;
+        line.comment = extractTrimmed(p + 1, end);
+        return end;
+    }
+
+    // Comment element.
+    // =Blah blah blah\n
+    private int equalsComment(int p) {
+        p = spaces(p);
+        if (!isChar(p, '=') && !isChar(p, '<'))
+            return FAIL;
+        line.comment = extractTrimmed(p + 1, end);
+        return end;
+    }
+
+    private int identifier(int p) {
+        if (p >= end || !isLetter(buffer[p]))
+            return FAIL;
+        int q = p + 1;
+        while (q < end && (isLetter(buffer[q]) || isDigit(buffer[q]) || buffer[q] == '-' || buffer[q] == '_'))
+            ++q;
+        // Identifier is a letter followed by one or more letters, digits, '-' or '_'.
+        return (q > p + 1 ? q : FAIL);
+    }
+
+    private int floatingPointNumber(int p) {
+        boolean negative = false;
+        int q = p;
+        if (isChar(q, '+') || isChar(q, '-')) {
+            negative = (buffer[q] == '-');
+            q = spaces(q + 1);
+        }
+        q = unsignedFloatingPointNumber(q);
+        if (q != FAIL && negative)
+            numberValue = -numberValue;
+        return q;
+    }
+
+    private int positiveFloatingPointNumber(int p) {
+        int q = p;
+        if (isChar(q, '+'))
+            q = spaces(q + 1);
+        return unsignedFloatingPointNumber(q);
+    }
+
+    // Unsigned double e.g. 123, 1.23 or .123
+    // The value is left in numberValue.
+    private int unsignedFloatingPointNumber(int p) {
+        int integerEnd = digits(p);
+        int q = integerEnd;
+        int fractionEnd = q;
+        if (isChar(q, '.')) {
+            fractionEnd = digits(q + 1);
+            if (fractionEnd == q + 1) // No digits after the point.
+                fractionEnd = q;
+        }
+        if (integerEnd == p && fractionEnd == q)
+            return FAIL;
+        numberValue = convertNumber(p, integerEnd, fractionEnd);
+        return fractionEnd;
+    }
+
+    // Convert the digits between start and integerEnd, and between integerEnd + 1 and fractionEnd.
+    private double convertNumber(int start, int integerEnd, int fractionEnd) {
+        long mantissa = 0;
+        int significantDigits = 0;
+        for (int i = start; i < integerEnd; ++i) {
+            if (significantDigits > 0 || buffer[i] != '0')
+                ++significantDigits;
+            mantissa = 10 * mantissa + (buffer[i] - '0');
+        }
+        int fractionDigits = 0;
+        for (int i = integerEnd + 1; i < fractionEnd; ++i) {
+            if (significantDigits > 0 || buffer[i] != '0')
+                ++significantDigits;
+            mantissa = 10 * mantissa + (buffer[i] - '0');
+            ++fractionDigits;
+        }
+        if (significantDigits <= MAX_EXACT_DIGITS && fractionDigits < POWERS_OF_TEN.length) {
+            // Both the mantissa and the power of ten are exactly representable as doubles,
+            // so the division is correctly rounded, giving the same result as Double.valueOf().
+            return mantissa / POWERS_OF_TEN[fractionDigits];
+        }
+        return Double.parseDouble(extract(start, fractionEnd));
+    }
+
+    private int parseInteger(int start, int digitsEnd) {
+        long value = 0;
+        for (int i = start; i < digitsEnd; ++i) {
+            value = 10 * value + (buffer[i] - '0');
+            if (value > Integer.MAX_VALUE)
+                throw new NumberFormatException("Integer value too large: " + extract(start, digitsEnd));
+        }
+        return (int)value;
+    }
+
+    private int digits(int p) {
+        while (p < end && isDigit(buffer[p]))
+            ++p;
+        return p;
+    }
+
+    private int spaces(int p) {
+        while (p < end && buffer[p] == ' ')
+            ++p;
+        return p;
+    }
+
+    private boolean isChar(int p, char c) {
+        return (p < end && buffer[p] == c);
+    }
+
+    private int ignoreCase(int p, String upperCaseWord) {
+        int length = upperCaseWord.length();
+        if (p + length > end)
+            return FAIL;
+        for (int i = 0; i < length; ++i) {
+            byte b = buffer[p + i];
+            if (b >= 'a' && b <= 'z')
+                b -= ('a' - 'A');
+            if (b != upperCaseWord.charAt(i))
+                return FAIL;
+        }
+        return p + length;
+    }
+
+    private static boolean isDigit(byte b) {
+        return (b >= '0' && b <= '9');
+    }
+
+    private static boolean isLetter(byte b) {
+        return ((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z'));
+    }
+
+    private String extractType(int start, int typeEnd) {
+        // Types are repeated many times in a file, so reuse the current
+        // type string if it has not changed.
+        String currentType = line.type;
+        int length = typeEnd - start;
+        if (currentType.length() == length) {
+            boolean same = true;
+            for (int i = 0; same && i < length; ++i)
+                same = (currentType.charAt(i) == buffer[start + i]);
+            if (same)
+                return currentType;
+        }
+        return extract(start, typeEnd);
+    }
+
+    private String extractTrimmed(int start, int textEnd) {
+        while (start < textEnd && (buffer[start] & 0xFF) <= ' ')
+            ++start;
+        while (textEnd > start && (buffer[textEnd - 1] & 0xFF) <= ' ')
+            --textEnd;
+        return extract(start, textEnd);
+    }
+
+    private String extract(int start, int textEnd) {
+        if (start >= textEnd)
+            return "";
+        if (sourceText != null)
+            return sourceText.substring(start, textEnd);
+        return new String(buffer, start, textEnd - start, StandardCharsets.UTF_8);
+    }
+}
@@ -1,8 +1,11 @@
-
 package celuk.gcodeviewer.gcode;
 
-import java.util.HashMap;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 /**
  *
@@ -10,6 +13,12 @@ import java.util.Map;
  */
 public class GCodeLine {
     public static int NULL_NUMBER = -9999;
+    
+    // Values are held in a slot per letter, upper case letters first, then
+    // lower case letters (e.g. 'b' from a partial open comment). A bit is
+    // set in valueMask for each slot that holds a value.
+    private static final int N_VALUE_SLOTS = 52;
+
     public char commandLetter = '!';
     public int commandNumber = -1;
     public int lineNumber = NULL_NUMBER;
@@ -17,7 +26,9 @@ public class GCodeLine {
     public double layerHeight = -Double.MAX_VALUE;
     public String type = "";
     public String comment = "";
-    public Map<Character, Double> valueMap = new HashMap<>();
+    private final double[] values = new double[N_VALUE_SLOTS];
+    private long valueMask = 0L;
+    public final Map<Character, Double> valueMap = new ValueMapView();
     
     public void reset()
     {
@@ -27,31 +38,187 @@ public class GCodeLine {
         layerNumber = NULL_NUMBER;
         layerHeight = -Double.MAX_VALUE;
         comment = "";
-        valueMap.clear();
+        valueMask = 0L;
     }
     
     public void setValue(char c, double v)
     {
-        valueMap.put(c, v);
+        int slot = slotFor(c);
+        if (slot < 0)
+            throw new IllegalArgumentException("GCode value letter must be A-Z or a-z - \"" + c + "\"");
+        values[slot] = v;
+        valueMask |= (1L << slot);
     }
 
     public boolean isValueSet(char c)
     {
-        return valueMap.containsKey(c);
+        int slot = slotFor(c);
+        return slot >= 0 && (valueMask & (1L << slot)) != 0L;
     }
 
     public double getValue(char c, double defaultValue)
     {
-        return valueMap.getOrDefault(c, defaultValue);
+        int slot = slotFor(c);
+        if (slot >= 0 && (valueMask & (1L << slot)) != 0L)
+            return values[slot];
+        else
+            return defaultValue;
     }
     
     public boolean hasNoValues()
     {
-        return valueMap.isEmpty();
+        return valueMask == 0L;
     }
     
+    public int getValueCount()
+    {
+        return Long.bitCount(valueMask);
+    }
+
+    /**
+     * Copy the letters and values that are set into the given arrays, in slot order.
+     * 
+     * @param letters array to receive the letters.
+     * @param valuesOut array to receive the values.
+     * @param offset index in the arrays of the first letter and value.
+     * @return the number of values copied.
+     */
+    public int copyValues(char[] letters, double[] valuesOut, int offset)
+    {
+        int index = offset;
+        for (long remaining = valueMask; remaining != 0L; remaining &= remaining - 1)
+        {
+            int slot = Long.numberOfTrailingZeros(remaining);
+            letters[index] = letterFor(slot);
+            valuesOut[index] = values[slot];
+            ++index;
+        }
+        return index - offset;
+    }
+
+    /**
+     * Returns a live map view of the values. It is provided for compatibility;
+     * the map boxes every key and value, so should not be used when processing
+     * lines.
+     */
     public Map<Character, Double> getValueMap()
     {
         return valueMap;
     }
+
+    private static int slotFor(char c)
+    {
+        if (c >= 'A' && c <= 'Z')
+            return c - 'A';
+        else if (c >= 'a' && c <= 'z')
+            return 26 + c - 'a';
+        else
+            return -1;
+    }
+
+    private static char letterFor(int slot)
+    {
+        return (char)(slot < 26 ? 'A' + slot : 'a' + slot - 26);
+    }
+
+    private class ValueMapView extends AbstractMap<Character, Double>
+    {
+        @Override
+        public int size()
+        {
+            return Long.bitCount(valueMask);
+        }
+
+        @Override
+        public boolean isEmpty()
+        {
+            return valueMask == 0L;
+        }
+
+        @Override
+        public boolean containsKey(Object key)
+        {
+            return (key instanceof Character) && isValueSet((Character)key);
+        }
+
+        @Override
+        public Double get(Object key)
+        {
+            if (containsKey(key))
+                return values[slotFor((Character)key)];
+            else
+                return null;
+        }
+
+        @Override
+        public Double put(Character key, Double value)
+        {
+            Double previous = get(key);
+            setValue(key, value);
+            return previous;
+        }
+
+        @Override
+        public Double remove(Object key)
+        {
+            Double previous = get(key);
+            if (previous != null)
+                valueMask &= ~(1L << slotFor((Character)key));
+            return previous;
+        }
+
+        @Override
+        public void clear()
+        {
+            valueMask = 0L;
+        }
+
+        @Override
+        public Set<Map.Entry<Character, Double>> entrySet()
+        {
+            return new AbstractSet<Map.Entry<Character, Double>>()
+            {
+                @Override
+                public int size()
+                {
+                    return ValueMapView.this.size();
+                }
+
+                @Override
+                public Iterator<Map.Entry<Character, Double>> iterator()
+                {
+                    return new Iterator<Map.Entry<Character, Double>>()
+                    {
+                        private long remaining = valueMask;
+                        private int lastSlot = -1;
+
+                        @Override
+                        public boolean hasNext()
+                        {
+                            return remaining != 0L;
+                        }
+
+                        @Override
+                        public Map.Entry<Character, Double> next()
+                        {
+                            if (remaining == 0L)
+                                throw new NoSuchElementException();
+                            lastSlot = Long.numberOfTrailingZeros(remaining);
+                            remaining &= remaining - 1;
+                            return new SimpleImmutableEntry<>(letterFor(lastSlot), values[lastSlot]);
+                        }
+
+                        @Override
+                        public void remove()
+                        {
+                            if (lastSlot < 0)
+                                throw new IllegalStateException();
+                            valueMask &= ~(1L << lastSlot);
+                            lastSlot = -1;
+                        }
+                    };
+                }
+            };
+        }
+    }
 }
@@ -0,0 +1,43 @@
+package celuk.gcodeviewer.gcode;
+
+import java.util.Map;
+
+/**
+ * Parses a single line of GCode into a GCodeLine.
+ *
+ * The same GCodeLine object is reused for every line, so it must be copied
+ * by the caller if it is to be retained. Lines are expected to be trimmed
+ * of leading and trailing white space.
+ *
+ * @author Tony Aldhous
+ */
+public interface GCodeParser {
+    public GCodeLine getLine();
+    public void resetLine();
+    public Map<String, Double> getSettingsMap();
+    public void setSettingsMap(Map<String, Double> settingsMap);
+
+    /**
+     * Parse the given line of text.
+     *
+     * @param lineText the trimmed line to parse.
+     * @return true if the line was matched, false otherwise.
+     */
+    public boolean parse(String lineText);
+
+    /**
+     * Parse the line held in the given byte buffer between start (inclusive)
+     * and end (exclusive). The bytes are assumed to be UTF-8.
+     *
+     * @param buffer buffer containing the trimmed line.
+     * @param start index of the first byte of the line.
+     * @param end index one beyond the last byte of the line.
+     * @return true if the line was matched, false otherwise.
+     */
+    public boolean parse(byte[] buffer, int start, int end);
+
+    /**
+     * @return description of the last parse failure, or an empty string.
+     */
+    public String getErrorReport();
+}
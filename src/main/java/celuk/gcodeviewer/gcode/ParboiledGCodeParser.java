@@ -0,0 +1,77 @@
+package celuk.gcodeviewer.gcode;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import org.parboiled.Parboiled;
+import org.parboiled.errors.ErrorUtils;
+import org.parboiled.parserunners.ReportingParseRunner;
+import org.parboiled.support.ParsingResult;
+
+/**
+ * GCodeParser that uses the parboiled grammar in GCodeLineParser.
+ *
+ * This is the reference implementation of the GCode grammar. It is
+ * slow, but easy to read and modify, so other parsers are checked
+ * against it.
+ *
+ * @author Tony Aldhous
+ */
+public class ParboiledGCodeParser implements GCodeParser {
+
+    private final GCodeLineParser gCodeParser;
+    private ReportingParseRunner runner;
+    private String errorReport = "";
+
+    public ParboiledGCodeParser() {
+        gCodeParser = Parboiled.createParser(GCodeLineParser.class);
+        runner = new ReportingParseRunner<>(gCodeParser.Line());
+    }
+
+    @Override
+    public GCodeLine getLine() {
+        return gCodeParser.getLine();
+    }
+
+    @Override
+    public void resetLine() {
+        gCodeParser.resetLine();
+    }
+
+    @Override
+    public Map<String, Double> getSettingsMap() {
+        return gCodeParser.getSettingsMap();
+    }
+
+    @Override
+    public void setSettingsMap(Map<String, Double> settingsMap) {
+        gCodeParser.setSettingsMap(settingsMap);
+    }
+
+    @Override
+    public boolean parse(String lineText) {
+        ParsingResult result = runner.run(lineText);
+        if (result.hasErrors()) {
+            errorReport = ErrorUtils.printParseErrors(result);
+            // The runner accumulates errors, so would fail every following
+            // line unless it is replaced.
+            runner = new ReportingParseRunner<>(gCodeParser.Line());
+            return false;
+        }
+        else if (!result.matched) {
+            errorReport = "no match.";
+            return false;
+        }
+        errorReport = "";
+        return true;
+    }
+
+    @Override
+    public boolean parse(byte[] buffer, int start, int end) {
+        return parse(new String(buffer, start, end - start, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public String getErrorReport() {
+        return errorReport;
+    }
+}
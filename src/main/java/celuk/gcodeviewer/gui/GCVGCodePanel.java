@@ -1,6 +1,7 @@
 package celuk.gcodeviewer.gui;
 
 import celuk.gcodeviewer.engine.LayerDetails;
+import celuk.gcodeviewer.engine.LineStore;
 import celuk.gcodeviewer.engine.RenderParameters;
 import static celuk.gcodeviewer.engine.renderers.GUIRenderer.GUI_GCODE_PANEL_X;
 import static celuk.gcodeviewer.gui.GCVControlPanel.GUI_CONTROL_PANEL_WIDTH;
@@ -56,7 +57,7 @@ public class GCVGCodePanel extends GCVPanel {
     private float resizeBarAnchorX = 0.0f;
     private float expandedPanelWidth = GUI_GCODE_PANEL_WIDTH;
     
-    private List<String> lines = null;
+    private LineStore lines = null;
     private Map<Integer, LayerDetails> layerMap = null;
     private List<Integer> layerList = null;
     private int totalNumberOfLines = 0;
@@ -92,7 +93,7 @@ public class GCVGCodePanel extends GCVPanel {
         showLineNumbersMsg = I18n.t(showLineNumbersMsg);
     }
     
-    public void setLines(List<String> lines) {
+    public void setLines(LineStore lines) {
         linesReloaded = true;
         this.lines = lines;
     }
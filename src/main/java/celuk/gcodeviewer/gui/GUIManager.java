@@ -2,6 +2,7 @@ package celuk.gcodeviewer.gui;
 
 import celuk.gcodeviewer.engine.GCodeViewerGUIConfiguration;
 import celuk.gcodeviewer.engine.LayerDetails;
+import celuk.gcodeviewer.engine.LineStore;
 import celuk.gcodeviewer.engine.RenderParameters;
 import static org.lwjgl.nuklear.Nuklear.*;
 import static org.lwjgl.opengl.GL11.*;
@@ -28,7 +29,6 @@ import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -389,7 +389,7 @@ public class GUIManager {
         guiRenderer.setTypeSet(typeSet);
     }
 
-    public void setLines(List<String> lines) {
+    public void setLines(LineStore lines) {
         guiRenderer.setLines(lines);
     }
 
@@ -697,6 +697,10 @@ public void render() {
     public void setRenderRequired() {
         renderParameters.setRenderRequired();
     }
+
+    public void setSceneRenderRequired() {
+        renderParameters.setSceneRenderRequired();
+    }
     
     /**
      * Reads the specified resource and returns the raw data as a ByteBuffer.
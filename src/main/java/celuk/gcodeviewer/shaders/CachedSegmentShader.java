@@ -0,0 +1,46 @@
+package celuk.gcodeviewer.shaders;
+
+import static celuk.gcodeviewer.shaders.ShaderProgram.SHADER_DIRECTORY;
+
+/**
+ * Segment shader that draws the triangles captured by the SegmentCaptureShader.
+ * It uses the same uniform blocks as the SegmentShader, and reads the attributes and
+ * data values of the segments from buffer textures.
+ *
+ * @author Tony Aldhous
+ */
+public class CachedSegmentShader extends SegmentShader {
+    private static final String VERTEX_FILE = SHADER_DIRECTORY + "segmentCachedVertexShader.txt";
+    private static final String FRAGMENT_FILE = SHADER_DIRECTORY + "segmentFragmentShader.txt";
+
+    public static final int SEGMENT_DATA_TEXTURE_UNIT = 0;
+    public static final int SEGMENT_DATA_VALUES_TEXTURE_UNIT = 1;
+
+    private int location_segmentData;
+    private int location_segmentDataValues;
+
+    public CachedSegmentShader() {
+        super(VERTEX_FILE, null, FRAGMENT_FILE);
+    }
+
+    @Override
+    protected void bindAttributes() {
+        super.bindAttribute(0, "position");
+        super.bindAttribute(1, "normal");
+        super.bindAttribute(2, "segment");
+    }
+
+    @Override
+    protected void getAllUniformLocations() {
+        super.getAllUniformLocations();
+        location_segmentData = super.getUniformLocation("segmentData");
+        location_segmentDataValues = super.getUniformLocation("segmentDataValues");
+    }
+
+    @Override
+    protected void connectTextureUnits() {
+        super.connectTextureUnits();
+        super.loadInt(location_segmentData, SEGMENT_DATA_TEXTURE_UNIT);
+        super.loadInt(location_segmentDataValues, SEGMENT_DATA_VALUES_TEXTURE_UNIT);
+    }
+}
@@ -0,0 +1,29 @@
+package celuk.gcodeviewer.shaders;
+
+import static celuk.gcodeviewer.shaders.ShaderProgram.SHADER_DIRECTORY;
+
+/**
+ * Segment shader that draws each segment as an instance of a prism mesh,
+ * rather than expanding it in a geometry shader. It has the same uniforms
+ * and uses the same fragment shader as the SegmentShader.
+ *
+ * @author Tony Aldhous
+ */
+public class InstancedSegmentShader extends SegmentShader {
+    private static final String VERTEX_FILE = SHADER_DIRECTORY + "segmentInstancedVertexShader.txt";
+    private static final String FRAGMENT_FILE = SHADER_DIRECTORY + "segmentFragmentShader.txt";
+
+    public static final int CORNER_ATTRIBUTE = 8;
+    public static final int CORNER_NORMAL_ATTRIBUTE = 9;
+
+    public InstancedSegmentShader() {
+        super(VERTEX_FILE, null, FRAGMENT_FILE);
+    }
+
+    @Override
+    protected void bindAttributes() {
+        super.bindAttributes();
+        super.bindAttribute(CORNER_ATTRIBUTE, "corner");
+        super.bindAttribute(CORNER_NORMAL_ATTRIBUTE, "cornerNormal");
+    }
+}
@@ -0,0 +1,47 @@
+package celuk.gcodeviewer.shaders;
+
+import static celuk.gcodeviewer.shaders.ShaderProgram.SHADER_DIRECTORY;
+import static org.lwjgl.opengl.GL30.*;
+
+/**
+ * Shader that expands the segments into triangles in world coordinates,
+ * for capture by transform feedback. It has no fragment shader, as
+ * rasterization is discarded while capturing.
+ *
+ * Each captured vertex has a position, a normal and the index of its segment.
+ *
+ * @author Tony Aldhous
+ */
+public class SegmentCaptureShader extends ShaderProgram {
+    private static final String VERTEX_FILE = SHADER_DIRECTORY + "segmentCaptureVertexShader.txt";
+
+    public static final int FLOATS_PER_CAPTURED_VERTEX = 7;
+    public static final int BYTES_PER_CAPTURED_VERTEX = 4 * FLOATS_PER_CAPTURED_VERTEX;
+    public static final int CAPTURED_POSITION_OFFSET = 0;
+    public static final int CAPTURED_NORMAL_OFFSET = 12;
+    public static final int CAPTURED_SEGMENT_OFFSET = 24;
+
+    public SegmentCaptureShader() {
+        super(VERTEX_FILE, null, null);
+    }
+
+    @Override
+    protected void bindAttributes() {
+        super.bindAttribute(0, "position");
+        super.bindAttribute(1, "direction");
+        super.bindAttribute(2, "normal");
+        super.bindAttribute(3, "dimensions");
+        super.bindAttribute(InstancedSegmentShader.CORNER_ATTRIBUTE, "corner");
+        super.bindAttribute(InstancedSegmentShader.CORNER_NORMAL_ATTRIBUTE, "cornerNormal");
+    }
+
+    @Override
+    protected void bindOutputs() {
+        glTransformFeedbackVaryings(programId, new CharSequence[] {"tfPosition", "tfNormal", "tfSegment"},
+                                    GL_INTERLEAVED_ATTRIBS);
+    }
+
+    @Override
+    protected void getAllUniformLocations() {
+    }
+}
@@ -0,0 +1,20 @@
+package celuk.gcodeviewer.shaders;
+
+import static celuk.gcodeviewer.shaders.ShaderProgram.SHADER_DIRECTORY;
+
+/**
+ * Segment shader that draws each segment as a line, rather than a block, for
+ * the lower levels of detail. It has the same vertex shader and uniforms as
+ * the SegmentShader, so the segments are coloured and hidden in the same way.
+ *
+ * @author Tony Aldhous
+ */
+public class SegmentLineShader extends SegmentShader {
+    private static final String VERTEX_FILE = SHADER_DIRECTORY + "segmentVertexShader.txt";
+    private static final String GEOMETRY_FILE = SHADER_DIRECTORY + "segmentLineGeometryShader.txt";
+    private static final String FRAGMENT_FILE = SHADER_DIRECTORY + "segmentLineFragmentShader.txt";
+
+    public SegmentLineShader() {
+        super(VERTEX_FILE, GEOMETRY_FILE, FRAGMENT_FILE);
+    }
+}
@@ -2,13 +2,13 @@ package celuk.gcodeviewer.shaders;
 
 import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL31.*;
 import static org.lwjgl.opengl.GL32.*;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.FloatBuffer;
-import java.util.List;
 import org.lwjgl.BufferUtils;
 import org.joml.Vector3f;
 import org.joml.Matrix4f;
@@ -16,10 +16,14 @@ import org.joml.Vector4f;
 
 public abstract class ShaderProgram {
     
-    private static final int MAX_UNIFORM_VECTOR = 16;
     private static final FloatBuffer MATRIX_BUFFER = BufferUtils.createFloatBuffer(16);
-    private static final FloatBuffer UNIFORM_VECTOR_BUFFER = BufferUtils.createFloatBuffer(MAX_UNIFORM_VECTOR * 4);
     protected static final String SHADER_DIRECTORY = "/resources/";
+
+    // Uniform blocks shared by the programs, and the binding points of their buffers.
+    public static final String CAMERA_STATE_BLOCK = "CameraState";
+    public static final int CAMERA_STATE_BINDING = 0;
+    public static final String VIEW_STATE_BLOCK = "ViewState";
+    public static final int VIEW_STATE_BINDING = 1;
     
     protected final int programId;
     private final int vertexShaderId;
@@ -37,14 +41,20 @@ public abstract class ShaderProgram {
         }
         else
             geometryShaderId = -1;
-        fragmentShaderId = loadShader(fragmentFile, GL_FRAGMENT_SHADER);
+        // A program that only captures vertices with transform feedback has no fragment shader.
+        if (fragmentFile != null)
+            fragmentShaderId = loadShader(fragmentFile, GL_FRAGMENT_SHADER);
+        else
+            fragmentShaderId = -1;
         programId = glCreateProgram();
         glAttachShader(programId, vertexShaderId);
         if (geometryShaderId != -1) {
             glAttachShader(programId, geometryShaderId);
         }
-        glAttachShader(programId, fragmentShaderId);
+        if (fragmentShaderId != -1)
+            glAttachShader(programId, fragmentShaderId);
         bindAttributes();
+        bindOutputs();
         glLinkProgram(programId);
         if(glGetProgrami(programId, GL_LINK_STATUS) == GL_FALSE) {
             System.err.println(glGetProgramInfoLog(programId, 1024));
@@ -59,12 +69,37 @@ public abstract class ShaderProgram {
         }
         glBindVertexArray(0);
         glDeleteVertexArrays(validateVAO);
+        bindUniformBlock(CAMERA_STATE_BLOCK, CAMERA_STATE_BINDING);
+        bindUniformBlock(VIEW_STATE_BLOCK, VIEW_STATE_BINDING);
         getAllUniformLocations();
+        glUseProgram(programId);
+        connectTextureUnits();
+        glUseProgram(0);
     }
     
     protected abstract void getAllUniformLocations();
     
     protected abstract void bindAttributes();
+
+    /**
+     * Called before the program is linked, to specify the outputs captured by
+     * transform feedback. Most programs do not capture any.
+     */
+    protected void bindOutputs() {
+    }
+
+    /**
+     * Called once the program is linked and in use, to connect the sampler
+     * uniforms to their texture units, which do not change.
+     */
+    protected void connectTextureUnits() {
+    }
+
+    private void bindUniformBlock(String blockName, int binding) {
+        int blockIndex = glGetUniformBlockIndex(programId, blockName);
+        if (blockIndex != GL_INVALID_INDEX)
+            glUniformBlockBinding(programId, blockIndex, binding);
+    }
     
     protected int getUniformLocation(String uniformName) {
         return glGetUniformLocation(programId, uniformName);
@@ -83,11 +118,13 @@ public abstract class ShaderProgram {
         glDetachShader(programId, vertexShaderId);
         if (geometryShaderId != -1)
             glDetachShader(programId, geometryShaderId);            
-        glDetachShader(programId, fragmentShaderId);
+        if (fragmentShaderId != -1)
+            glDetachShader(programId, fragmentShaderId);
         glDeleteShader(vertexShaderId);
         if (geometryShaderId != -1)
             glDeleteShader(geometryShaderId);            
-        glDeleteShader(fragmentShaderId);
+        if (fragmentShaderId != -1)
+            glDeleteShader(fragmentShaderId);
         glDeleteProgram(programId);        
     }
     
@@ -111,30 +148,6 @@ public abstract class ShaderProgram {
         glUniform4f(location, vector.x, vector.y, vector.z, vector.w);
     }
 
-    protected void loadVector3ArraytoUVector4(int location, List<Vector3f> vl) {
-        UNIFORM_VECTOR_BUFFER.clear();
-        for (int i = 0; i < MAX_UNIFORM_VECTOR; ++i)
-        {
-            if (i < vl.size())
-            {
-                Vector3f v4 = vl.get(i);
-                UNIFORM_VECTOR_BUFFER.put(v4.x());
-                UNIFORM_VECTOR_BUFFER.put(v4.y());
-                UNIFORM_VECTOR_BUFFER.put(v4.z());
-                UNIFORM_VECTOR_BUFFER.put(1.0f);
-            }
-            else
-            {
-                UNIFORM_VECTOR_BUFFER.put(0.0f);
-                UNIFORM_VECTOR_BUFFER.put(0.0f);
-                UNIFORM_VECTOR_BUFFER.put(0.0f);
-                UNIFORM_VECTOR_BUFFER.put(0.0f);
-            }
-        }
-        UNIFORM_VECTOR_BUFFER.flip();
-        glUniform4fv(location, UNIFORM_VECTOR_BUFFER);
-    }
-
     protected void loadBoolean(int location, boolean value) {
         float toLoad = 0;
         if(value) {
@@ -0,0 +1,182 @@
+package celuk.gcodeviewer.engine;
+
+import celuk.gcodeviewer.entities.Entity;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tony Aldhous
+ */
+public class GCodeCacheTest {
+
+    private File writeTestFile(int nLayers) throws IOException {
+        StringBuilder gCode = new StringBuilder();
+        gCode.append(";# infillLayerThickness = 0.3\n");
+        gCode.append("G90\nM83\nG1 X1 Y1 E0.1\n");
+        for (int layer = 0; layer < nLayers; ++layer) {
+            gCode.append(";LAYER:").append(layer).append("\n");
+            gCode.append(";TYPE:").append(layer % 2 == 0 ? "FILL" : "WALL-OUTER").append("\n");
+            gCode.append("G0 Z").append(0.3 * (layer + 1)).append("\n");
+            for (int move = 0; move < 20; ++move) {
+                gCode.append("G1 X").append(move % 2 == 0 ? 10 : 20).append(" Y").append(move).append(" E0.01\n");
+                if (move == 10)
+                    gCode.append("T1\nG0 X5 Y5\n");
+            }
+        }
+        File testFile = File.createTempFile("GCodeCacheTest", ".gcode");
+        testFile.deleteOnExit();
+        Files.write(testFile.toPath(), gCode.toString().getBytes(StandardCharsets.UTF_8));
+        return testFile;
+    }
+
+    private GCodeLineProcessor createLineProcessor(GCodeProcessor processor) {
+        return new GCodeLineProcessor(new RenderParameters(), new GCodeViewerConfiguration(), processor.getSettings());
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        Path cacheDirectory = Files.createTempDirectory("GCodeCacheTest");
+        cacheDirectory.toFile().deleteOnExit();
+        GCodeCache cache = new GCodeCache(cacheDirectory, 1024L * 1024L * 1024L);
+        File testFile = writeTestFile(10);
+        String gCodeFile = testFile.getPath();
+
+        GCodeProcessor processor = new GCodeProcessor(true);
+        GCodeLineProcessor lineProcessor = createLineProcessor(processor);
+        assertFalse(cache.load(gCodeFile, "key", processor, lineProcessor));
+        assertTrue(processor.processFile(gCodeFile, lineProcessor));
+        cache.save(gCodeFile, "key", processor, lineProcessor);
+        cache.getCachePath(gCodeFile).toFile().deleteOnExit();
+
+        // A different configuration does not use the cache.
+        GCodeProcessor cachedProcessor = new GCodeProcessor(true);
+        GCodeLineProcessor cachedLineProcessor = createLineProcessor(cachedProcessor);
+        assertFalse(cache.load(gCodeFile, "other key", cachedProcessor, cachedLineProcessor));
+
+        assertTrue(cache.load(gCodeFile, "key", cachedProcessor, cachedLineProcessor));
+        assertEquals(processor.getSettings(), cachedProcessor.getSettings());
+        assertEquals(processor.getNumberOfBottomLayer(), cachedProcessor.getNumberOfBottomLayer());
+        assertEquals(processor.getNumberOfTopLayer(), cachedProcessor.getNumberOfTopLayer());
+        assertEquals(processor.getLines().size(), cachedProcessor.getLines().size());
+        for (int lineIndex = 0; lineIndex < processor.getLines().size(); ++lineIndex)
+            assertEquals(processor.getLines().get(lineIndex), cachedProcessor.getLines().get(lineIndex));
+        assertEquals(lineProcessor.getToolSet(), cachedLineProcessor.getToolSet());
+        assertEquals(lineProcessor.getTypeSet(), cachedLineProcessor.getTypeSet());
+        assertEquals(lineProcessor.getLayerMap().keySet(), cachedLineProcessor.getLayerMap().keySet());
+        assertEquals(lineProcessor.getLayerMap().get(5).getEndLine(), cachedLineProcessor.getLayerMap().get(5).getEndLine());
+        for (int dataIndex = 0; dataIndex < Entity.N_DATA_VALUES; ++dataIndex)
+            assertEquals(lineProcessor.getMaxDataValue(dataIndex), cachedLineProcessor.getMaxDataValue(dataIndex), 0.0);
+
+        SegmentStore segments = lineProcessor.getSegments();
+        SegmentStore cachedSegments = cachedLineProcessor.getSegments();
+        assertEquals(segments.size(), cachedSegments.size());
+        int n = segments.size();
+        assertArrayEquals(Arrays.copyOf(segments.getPositions(), 3 * n),
+                          Arrays.copyOf(cachedSegments.getPositions(), 3 * n), 0.0f);
+        for (int index = 0; index < n; ++index) {
+            assertEquals(segments.getType(index), cachedSegments.getType(index));
+            assertEquals(segments.getTypeColour(index), cachedSegments.getTypeColour(index));
+            assertEquals(segments.getLineNumber(index), cachedSegments.getLineNumber(index));
+            assertEquals(segments.getWidth(index), cachedSegments.getWidth(index), 0.0);
+        }
+        assertEquals(lineProcessor.getMoves().size(), cachedLineProcessor.getMoves().size());
+        assertEquals(segments.size(), cachedLineProcessor.getSegmentVertexBuffer().size());
+
+        // The GCode file is mapped by the line stores, so close them before changing it.
+        processor.getLines().close();
+        cachedProcessor.getLines().close();
+
+        // Changing the end of the file invalidates the cache, even if the size
+        // and modification time are the same.
+        byte[] contents = Files.readAllBytes(testFile.toPath());
+        FileTime lastModifiedTime = Files.getLastModifiedTime(testFile.toPath());
+        contents[contents.length - 2] = (byte)'2';
+        Files.write(testFile.toPath(), contents);
+        Files.setLastModifiedTime(testFile.toPath(), lastModifiedTime);
+        GCodeProcessor editedProcessor = new GCodeProcessor(true);
+        assertFalse(cache.load(gCodeFile, "key", editedProcessor, createLineProcessor(editedProcessor)));
+
+        // Changing the file invalidates the cache.
+        Files.write(testFile.toPath(), "G1 X1 Y1 E0.1\n".getBytes(StandardCharsets.UTF_8));
+        GCodeProcessor changedProcessor = new GCodeProcessor(true);
+        assertFalse(cache.load(gCodeFile, "key", changedProcessor, createLineProcessor(changedProcessor)));
+    }
+
+    @Test
+    public void testEjectionVolumeSetting() throws IOException {
+        Path cacheDirectory = Files.createTempDirectory("GCodeCacheTest");
+        cacheDirectory.toFile().deleteOnExit();
+        GCodeCache cache = new GCodeCache(cacheDirectory, 1024L * 1024L * 1024L);
+        File testFile = File.createTempFile("GCodeCacheTest", ".gcode");
+        testFile.deleteOnExit();
+        Files.write(testFile.toPath(), (";# nozzle0_ejectionvolume = 0.2\n"
+                                        + "G90\nM83\n;LAYER:0\n;TYPE:FILL\nG0 Z0.3\n"
+                                        + "G1 X10 Y0 E0.5 B1\nG1 X20 Y0 E0.5\n").getBytes(StandardCharsets.UTF_8));
+        String gCodeFile = testFile.getPath();
+
+        // The same render parameters are used for both loads, as they are by the rendering engine.
+        RenderParameters renderParameters = new RenderParameters();
+        GCodeViewerConfiguration configuration = new GCodeViewerConfiguration();
+        configuration.setHasNozzleValves(true);
+
+        GCodeProcessor processor = new GCodeProcessor(true);
+        GCodeLineProcessor lineProcessor = new GCodeLineProcessor(renderParameters, configuration, processor.getSettings());
+        String key = GCodeCache.configurationKey(renderParameters, configuration);
+        assertFalse(cache.load(gCodeFile, key, processor, lineProcessor));
+        assertTrue(processor.processFile(gCodeFile, lineProcessor));
+        cache.save(gCodeFile, key, processor, lineProcessor);
+        cache.getCachePath(gCodeFile).toFile().deleteOnExit();
+        assertEquals(0.2, processor.getSettings().get("nozzle0_ejectionvolume"), 0.0);
+
+        // Opening the file again uses the cache.
+        GCodeProcessor cachedProcessor = new GCodeProcessor(true);
+        GCodeLineProcessor cachedLineProcessor = new GCodeLineProcessor(renderParameters, configuration, cachedProcessor.getSettings());
+        assertTrue(cache.load(gCodeFile, GCodeCache.configurationKey(renderParameters, configuration),
+                              cachedProcessor, cachedLineProcessor));
+        SegmentStore segments = lineProcessor.getSegments();
+        assertEquals(segments.size(), cachedLineProcessor.getSegments().size());
+        for (int index = 0; index < segments.size(); ++index)
+            assertEquals(segments.getWidth(index), cachedLineProcessor.getSegments().getWidth(index), 0.0);
+
+        processor.getLines().close();
+        cachedProcessor.getLines().close();
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        Path cacheDirectory = Files.createTempDirectory("GCodeCacheTest");
+        cacheDirectory.toFile().deleteOnExit();
+        GCodeCache unlimitedCache = new GCodeCache(cacheDirectory, Long.MAX_VALUE);
+
+        File[] testFiles = new File[3];
+        for (int fileIndex = 0; fileIndex < testFiles.length; ++fileIndex) {
+            testFiles[fileIndex] = writeTestFile(5 + fileIndex);
+            GCodeProcessor processor = new GCodeProcessor(true);
+            GCodeLineProcessor lineProcessor = createLineProcessor(processor);
+            assertTrue(processor.processFile(testFiles[fileIndex].getPath(), lineProcessor));
+            unlimitedCache.save(testFiles[fileIndex].getPath(), "key", processor, lineProcessor);
+            Path cachePath = unlimitedCache.getCachePath(testFiles[fileIndex].getPath());
+            cachePath.toFile().deleteOnExit();
+            Files.setLastModifiedTime(cachePath, FileTime.fromMillis(1000000L * (fileIndex + 1)));
+        }
+        long secondAndThirdSize = Files.size(unlimitedCache.getCachePath(testFiles[1].getPath()))
+                                  + Files.size(unlimitedCache.getCachePath(testFiles[2].getPath()));
+
+        // The least recently used file is evicted first.
+        new GCodeCache(cacheDirectory, secondAndThirdSize).evict();
+        assertFalse(Files.exists(unlimitedCache.getCachePath(testFiles[0].getPath())));
+        assertTrue(Files.exists(unlimitedCache.getCachePath(testFiles[1].getPath())));
+        assertTrue(Files.exists(unlimitedCache.getCachePath(testFiles[2].getPath())));
+    }
+}
@@ -0,0 +1,72 @@
+package celuk.gcodeviewer.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import celuk.gcodeviewer.entities.Entity;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tony Aldhous
+ */
+public class GCodeLineProcessorTest {
+
+    @Test
+    public void testSegmentBatches() throws IOException {
+        StringBuilder gCode = new StringBuilder();
+        gCode.append("G90\nM83\nG1 X1 Y1 E0.1\n");
+        int nLayers = 40;
+        int nMovesPerLayer = 500;
+        for (int layer = 0; layer < nLayers; ++layer) {
+            gCode.append(";LAYER:").append(layer).append("\n");
+            gCode.append(";TYPE:WALL-OUTER\n");
+            gCode.append("G0 Z").append(0.3 * (layer + 1)).append("\n");
+            for (int move = 0; move < nMovesPerLayer; ++move)
+                gCode.append("G1 X").append(move % 2 == 0 ? 10 : 20).append(" Y").append(move).append(" E0.01\n");
+        }
+        File testFile = File.createTempFile("GCodeLineProcessorTest", ".gcode");
+        testFile.deleteOnExit();
+        Files.write(testFile.toPath(), gCode.toString().getBytes(StandardCharsets.UTF_8));
+
+        GCodeProcessor processor = new GCodeProcessor(true);
+        GCodeLineProcessor lineProcessor = new GCodeLineProcessor(new RenderParameters(),
+                                                                  new GCodeViewerConfiguration(),
+                                                                  processor.getSettings());
+        List<SegmentBatch> batches = new ArrayList<>();
+        lineProcessor.setBatchConsumer(batches::add);
+        assertTrue(processor.processFile(testFile.getPath(), lineProcessor));
+
+        // Batches are contiguous, and hold the completed layers in order.
+        assertTrue(batches.size() > 1);
+        int nextSegment = 0;
+        int nextLayer = 0;
+        for (SegmentBatch batch : batches) {
+            assertEquals(nextSegment, batch.getFirstSegment());
+            int nBytes = 0;
+            for (ByteBuffer slice : batch.getVertexData())
+                nBytes += slice.limit();
+            assertEquals(batch.getNumberOfSegments() * SegmentVertexBuffer.BYTES_PER_SEGMENT, nBytes);
+            assertEquals(Entity.N_DATA_VALUES * batch.getNumberOfSegments(), batch.getDataValues().length);
+            for (LayerDetails details : batch.getCompletedLayers())
+                assertEquals(nextLayer++, details.getLayerNumber());
+            nextSegment += batch.getNumberOfSegments();
+        }
+        assertTrue(nextSegment <= lineProcessor.getSegments().size());
+        assertTrue(nextLayer < nLayers);
+
+        // The vertex data of the last batch matches the vertex buffer.
+        SegmentBatch lastBatch = batches.get(batches.size() - 1);
+        int index = lastBatch.getFirstSegment() + lastBatch.getNumberOfSegments() - 1;
+        ByteBuffer slice = lastBatch.getVertexData().get(lastBatch.getVertexData().size() - 1);
+        int lineNumber = slice.getInt(slice.limit() - SegmentVertexBuffer.BYTES_PER_SEGMENT
+                                      + SegmentVertexBuffer.ATTRIBUTES_OFFSET + 8);
+        assertEquals(lineProcessor.getSegments().getLineNumber(index), lineNumber);
+    }
+}
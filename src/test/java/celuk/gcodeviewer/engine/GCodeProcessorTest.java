@@ -0,0 +1,190 @@
+package celuk.gcodeviewer.engine;
+
+import celuk.gcodeviewer.gcode.GCodeLine;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+/**
+ * Checks that parsing a file in parallel gives the same results as parsing it line by line.
+ *
+ * @author Tony Aldhous
+ */
+public class GCodeProcessorTest {
+
+    private static class RecordingConsumer implements GCodeConsumer {
+        Map<String, Double> settingsMap;
+        List<String> records = new ArrayList<>();
+        int nResets = 0;
+        int nCompletes = 0;
+
+        RecordingConsumer(Map<String, Double> settingsMap) {
+            this.settingsMap = settingsMap;
+        }
+
+        @Override
+        public void reset() {
+            ++nResets;
+        }
+
+        @Override
+        public void processLine(GCodeLine line) {
+            records.add(line.lineNumber + " " + line.commandLetter + line.commandNumber
+                        + " " + line.getValueMap()
+                        + " L" + line.layerNumber + " H" + line.layerHeight
+                        + " T" + line.type + " C" + line.comment
+                        + " S" + settingsMap);
+        }
+
+        @Override
+        public void complete() {
+            ++nCompletes;
+        }
+    }
+
+    private File writeTestFile() throws IOException {
+        StringBuilder gCode = new StringBuilder();
+        gCode.append(";Generated with Cura_SteamEngine Robox 1.5\r\n");
+        gCode.append(";# infillLayerThickness = 0.3\n");
+        gCode.append(";# fillExtrusionWidth_mm = 0.5\n");
+        gCode.append("\n   \n");
+        gCode.append("G28 X Y Z\r");
+        gCode.append("G90\n");
+        gCode.append("M83\n");
+        for (int layer = 0; layer < 20; ++layer) {
+            gCode.append(";LAYER:").append(layer);
+            if (layer > 5)
+                gCode.append(" height:").append(0.3 * (layer + 1));
+            gCode.append("\n");
+            gCode.append(";TYPE:").append(layer % 3 == 0 ? "FILL" : "WALL-OUTER").append("\n");
+            if (layer == 10)
+                gCode.append(";# infillLayerThickness = 0.6\n");
+            for (int move = 0; move < 10; ++move) {
+                gCode.append("  G1 X").append(10.0 + move).append(" Y").append(20.5 - move)
+                     .append(" E0.0").append(move + 1).append("   \n");
+                // Values carried over from the previous line.
+                gCode.append("G1 X Y\r\n");
+                if (move == 5)
+                    gCode.append("T").append(layer % 2).append(" ; tool change\n");
+            }
+            gCode.append("G0 F12000 Z").append(0.3 * (layer + 2)).append("\n");
+            gCode.append("G1 B0.3 ;PARTIAL OPEN B0.102\n");
+        }
+        gCode.append("M104 S0");
+
+        File testFile = File.createTempFile("GCodeProcessorTest", ".gcode");
+        testFile.deleteOnExit();
+        Files.write(testFile.toPath(), gCode.toString().getBytes(StandardCharsets.UTF_8));
+        return testFile;
+    }
+
+    private List<String> toList(LineStore lineStore) {
+        List<String> lineList = new ArrayList<>();
+        for (int lineIndex = 0; lineIndex < lineStore.size(); ++lineIndex)
+            lineList.add(lineStore.get(lineIndex));
+        return lineList;
+    }
+
+    private File writeTempFile(String contents) throws IOException {
+        File tempFile = File.createTempFile("GCodeProcessorTest", ".gcode");
+        tempFile.deleteOnExit();
+        Files.write(tempFile.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        return tempFile;
+    }
+
+    // Check the lines found by scanning the mapped file, and the lines found while reading it.
+    private void checkLineStores(String gCode, String[] expectedLines) throws IOException {
+        File testFile = writeTempFile(gCode);
+
+        MappedLineStore scannedLines = MappedLineStore.open(testFile.getPath());
+        assertEquals(Arrays.asList(expectedLines), toList(scannedLines));
+        scannedLines.close();
+
+        try (FileChannel channel = FileChannel.open(testFile.toPath(), StandardOpenOption.READ)) {
+            OffsetLineReader lineReader = new OffsetLineReader(Channels.newInputStream(channel));
+            MappedLineStore.Builder builder = new MappedLineStore.Builder(channel.size());
+            for (String line = lineReader.readLine(); line != null; line = lineReader.readLine())
+                builder.addLineStart(lineReader.getLineStart());
+            MappedLineStore readLines = builder.build(channel);
+            assertEquals(Arrays.asList(expectedLines), toList(readLines));
+            readLines.close();
+        }
+    }
+
+    @Test
+    public void testMappedLineStore() throws IOException {
+        String gCode = "  G1 X10 \r\n\n;comment\r\rG0\u00e9 \r\n \nM104 S0";
+        String[] expectedLines = { "G1 X10", "", ";comment", "", "G0\u00e9", "", "M104 S0" };
+        checkLineStores(gCode, expectedLines);
+        checkLineStores(gCode + "\n", expectedLines);
+        checkLineStores("", new String[0]);
+    }
+
+    @Test
+    public void testClosedLineStore() throws IOException {
+        MappedLineStore lines = MappedLineStore.open(writeTempFile("G90\nM83\n").getPath());
+        assertEquals("M83", lines.get(1));
+        lines.close();
+        assertEquals(2, lines.size());
+        assertEquals("", lines.get(1));
+        lines.close();
+    }
+
+    @Test
+    public void testProcessMappedFile() throws IOException {
+        File testFile = writeTestFile();
+
+        GCodeProcessor referenceProcessor = new GCodeProcessor(false);
+        RecordingConsumer referenceConsumer = new RecordingConsumer(referenceProcessor.getSettings());
+        assertTrue(referenceProcessor.processFile(testFile.getPath(), referenceConsumer));
+
+        // Small chunks, so the chunk boundaries fall in all sorts of places.
+        for (int chunkSize : new int[] { 1, 7, 64, 1000, GCodeProcessor.DEFAULT_CHUNK_SIZE }) {
+            GCodeProcessor processor = new GCodeProcessor(true);
+            RecordingConsumer consumer = new RecordingConsumer(processor.getSettings());
+            assertTrue(processor.processMappedFile(testFile.getPath(), consumer, 4, chunkSize));
+            assertEquals(1, consumer.nResets);
+            assertEquals(1, consumer.nCompletes);
+            assertEquals(referenceConsumer.records, consumer.records);
+            assertEquals(toList(referenceProcessor.getLines()), toList(processor.getLines()));
+            assertEquals(referenceProcessor.getSettings(), processor.getSettings());
+            assertEquals(referenceProcessor.getNumberOfBottomLayer(), processor.getNumberOfBottomLayer());
+            assertEquals(referenceProcessor.getNumberOfTopLayer(), processor.getNumberOfTopLayer());
+        }
+    }
+
+    @Test
+    public void testNoReparseWithoutLayerHeights() throws IOException {
+        // As written by Cura, where the layer comments never have a height.
+        StringBuilder gCode = new StringBuilder();
+        for (int layer = 0; layer < 50; ++layer) {
+            gCode.append(";LAYER:").append(layer).append("\n");
+            for (int move = 0; move < 10; ++move)
+                gCode.append("G1 X").append(10.0 + move).append(" Y").append(20.5 - move).append(" E0.1\n");
+        }
+        File testFile = File.createTempFile("GCodeProcessorTest", ".gcode");
+        testFile.deleteOnExit();
+        Files.write(testFile.toPath(), gCode.toString().getBytes(StandardCharsets.UTF_8));
+
+        GCodeProcessor referenceProcessor = new GCodeProcessor(false);
+        RecordingConsumer referenceConsumer = new RecordingConsumer(referenceProcessor.getSettings());
+        assertTrue(referenceProcessor.processFile(testFile.getPath(), referenceConsumer));
+
+        GCodeProcessor processor = new GCodeProcessor(true);
+        RecordingConsumer consumer = new RecordingConsumer(processor.getSettings());
+        assertTrue(processor.processMappedFile(testFile.getPath(), consumer, 4, 256));
+        assertEquals(referenceConsumer.records, consumer.records);
+        assertEquals(0, processor.getNumberOfReparsedChunks());
+    }
+}
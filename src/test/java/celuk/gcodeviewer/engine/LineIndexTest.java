@@ -0,0 +1,62 @@
+package celuk.gcodeviewer.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.joml.Vector3f;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tony Aldhous
+ */
+public class LineIndexTest {
+
+    private SegmentStore createStore(int[] lineNumbers) {
+        SegmentStore store = new SegmentStore(false);
+        for (int lineNumber : lineNumbers)
+            store.addSegment(new Vector3f(), new Vector3f(1.0f, 0.0f, 0.0f), 1.0f, 0, lineNumber, 0);
+        return store;
+    }
+
+    @Test
+    public void testVisibleRange() {
+        // Lines 12 and 20 have two segments, and several lines have none.
+        LineIndex index = LineIndex.fromSegments(createStore(new int[] {3, 5, 12, 12, 13, 20, 20, 25}), 2);
+        assertEquals(8, index.getNumberOfSegments());
+
+        assertEquals(0, index.getFirstVertex(0));
+        assertEquals(16, index.getEndVertex(Integer.MAX_VALUE));
+        assertEquals(16, index.getEndVertex(25));
+
+        // Lines 12 to 20 inclusive.
+        assertEquals(4, index.getFirstVertex(12));
+        assertEquals(14, index.getEndVertex(20));
+
+        // Lines between segments.
+        assertEquals(4, index.getFirstVertex(6));
+        assertEquals(10, index.getEndVertex(19));
+
+        // Empty ranges.
+        assertEquals(16, index.getFirstVertex(26));
+        assertEquals(0, index.getEndVertex(2));
+        assertEquals(index.getFirstVertex(14), index.getEndVertex(19));
+    }
+
+    @Test
+    public void testEntityLimits() {
+        RawEntity entity = new RawEntity(0, 5);
+        assertEquals(0, entity.getFirstVisibleVertex(100));
+        assertEquals(5, entity.getEndVisibleVertex(0));
+
+        // The limits are clamped to the vertex count.
+        entity.setLineIndex(LineIndex.fromSegments(createStore(new int[] {1, 2, 3, 4, 5, 6, 7, 8}), 1));
+        assertEquals(1, entity.getFirstVisibleVertex(2));
+        assertEquals(3, entity.getEndVisibleVertex(3));
+        assertEquals(5, entity.getEndVisibleVertex(7));
+    }
+
+    @Test
+    public void testUnorderedSegments() {
+        assertNull(LineIndex.fromSegments(createStore(new int[] {1, 4, 3}), 1));
+    }
+}
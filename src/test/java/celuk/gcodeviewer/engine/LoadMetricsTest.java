@@ -0,0 +1,99 @@
+package celuk.gcodeviewer.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tony Aldhous
+ */
+public class LoadMetricsTest {
+
+    private File writeTestFile() throws IOException {
+        StringBuilder gCode = new StringBuilder();
+        gCode.append("G90\nM83\n");
+        for (int layer = 0; layer < 10; ++layer) {
+            gCode.append(";LAYER:").append(layer).append("\n");
+            gCode.append(";TYPE:WALL-OUTER\n");
+            gCode.append("G0 Z").append(0.3 * (layer + 1)).append("\n");
+            for (int move = 0; move < 200; ++move)
+                gCode.append("G1 X").append(move % 2 == 0 ? 10 : 20).append(" Y").append(move).append(" E0.01\n");
+        }
+        File testFile = File.createTempFile("LoadMetricsTest", ".gcode");
+        testFile.deleteOnExit();
+        Files.write(testFile.toPath(), gCode.toString().getBytes(StandardCharsets.UTF_8));
+        return testFile;
+    }
+
+    private void checkStageTimes(boolean parallel) throws IOException {
+        File testFile = writeTestFile();
+        LoadMetrics metrics = new LoadMetrics(testFile.getPath());
+        GCodeProcessor processor = new GCodeProcessor(true);
+        GCodeLineProcessor lineProcessor = new GCodeLineProcessor(new RenderParameters(),
+                                                                  new GCodeViewerConfiguration(),
+                                                                  processor.getSettings());
+        processor.setMetrics(metrics);
+        lineProcessor.setMetrics(metrics);
+        if (parallel)
+            assertTrue(processor.processMappedFile(testFile.getPath(), lineProcessor, 2, 4096));
+        else
+            assertTrue(processor.processFile(testFile.getPath(), lineProcessor));
+
+        assertTrue(metrics.getTime(LoadMetrics.Stage.READ) > 0);
+        assertTrue(metrics.getTime(LoadMetrics.Stage.TOKENIZE) > 0);
+        assertTrue(metrics.getTime(LoadMetrics.Stage.PROCESS) > 0);
+        assertTrue(metrics.getTime(LoadMetrics.Stage.GENERATE) > 0);
+        assertTrue(metrics.getTime(LoadMetrics.Stage.VERTEX_BUFFER) > 0);
+        assertEquals(0, metrics.getTime(LoadMetrics.Stage.UPLOAD));
+    }
+
+    @Test
+    public void testSerialStageTimes() throws IOException {
+        checkStageTimes(false);
+    }
+
+    @Test
+    public void testParallelStageTimes() throws IOException {
+        checkStageTimes(true);
+    }
+
+    @Test
+    public void testSummary() {
+        LoadMetrics metrics = new LoadMetrics("test.gcode");
+        metrics.addTime(LoadMetrics.Stage.READ, 2500000);
+        metrics.addSampledTime(LoadMetrics.Stage.PROCESS, 1000000);
+        metrics.addAllocatedBytes(8000);
+        metrics.setCounts(100, 5000, 80, 20);
+        assertTrue(metrics.getSummary().contains(" status=loading"));
+
+        metrics.setSuccess(true);
+        metrics.markEnd();
+        String summary = metrics.getSummary();
+        assertTrue(summary.startsWith("file=\"test.gcode\" status=ok source=parse lines=100 bytes=5000 segments=80 moves=20 "));
+        assertTrue(summary.contains(" read_ms=2.5 "));
+        assertTrue(summary.contains(" process_ms=" + LoadMetrics.SAMPLE_INTERVAL + ".0 "));
+        assertTrue(summary.contains(" allocated_bytes=8000 allocated_bytes_per_line=80"));
+        assertFalse(summary.contains("first_display_ms"));
+    }
+
+    @Test
+    public void testRegistry() {
+        LoadMetricsRegistry registry = new LoadMetricsRegistry();
+        assertNull(registry.getLatest());
+        LoadMetrics latest = null;
+        for (int index = 0; index < LoadMetricsRegistry.MAXIMUM_LOADS + 4; ++index) {
+            latest = new LoadMetrics("test" + index + ".gcode");
+            registry.register(latest);
+        }
+        assertEquals(latest, registry.getLatest());
+        assertEquals(LoadMetricsRegistry.MAXIMUM_LOADS, registry.getRecent().size());
+        assertTrue(registry.getRecent().get(0).getSummary().startsWith("file=\"test4.gcode\""));
+    }
+}
@@ -0,0 +1,73 @@
+package celuk.gcodeviewer.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tony Aldhous
+ */
+public class QualityControllerTest {
+
+    private static final double TARGET = 0.016;
+
+    private void frame(QualityController controller, boolean viewMoving, double cpuTime, double gpuTime) {
+        controller.startFrame(viewMoving);
+        controller.endFrame(cpuTime, gpuTime);
+    }
+
+    @Test
+    public void testQualityLoweredWhileMoving() {
+        QualityController controller = new QualityController(true, TARGET, 3);
+        frame(controller, true, 0.005, 0.020);
+        assertEquals(QualityController.SKIP_ANGLES, controller.getLevel());
+        assertEquals(0.020, controller.getFrameTime(), 1.0e-9);
+        assertTrue(controller.getSkipAngles());
+        assertFalse(controller.getSkipMoves());
+        frame(controller, true, 0.030, 0.0);
+        assertTrue(controller.getSkipMoves());
+        assertEquals(1.0f, controller.getLodLineWidth(1.0f), 0.0f);
+        frame(controller, true, 0.030, 0.0);
+        assertEquals(QualityController.DETAIL_SCALE, controller.getLodLineWidth(0.0f), 0.0f);
+        assertEquals(QualityController.DETAIL_SCALE * 0.5f, controller.getLodMergeWidth(0.5f), 0.0f);
+        frame(controller, true, 0.030, 0.0);
+        frame(controller, true, 0.030, 0.0);
+        assertEquals(QualityController.LINES_ONLY, controller.getLevel());
+        assertEquals(Float.MAX_VALUE, controller.getLodLineWidth(1.0f), 0.0f);
+
+        // A fast frame raises the quality one level; a frame near the target leaves it.
+        frame(controller, true, 0.005, 0.0);
+        assertEquals(QualityController.LOWER_DETAIL, controller.getLevel());
+        frame(controller, true, 0.012, 0.0);
+        assertEquals(QualityController.LOWER_DETAIL, controller.getLevel());
+    }
+
+    @Test
+    public void testFullQualityRestoredWhenStill() {
+        QualityController controller = new QualityController(true, TARGET, 3);
+        frame(controller, true, 0.030, 0.0);
+        frame(controller, true, 0.030, 0.0);
+        assertTrue(controller.isRenderRequired());
+
+        // Slow frames of a still view do not lower the quality further.
+        frame(controller, false, 0.030, 0.0);
+        frame(controller, false, 0.030, 0.0);
+        assertEquals(QualityController.SKIP_MOVES, controller.getLevel());
+        assertTrue(controller.isRenderRequired());
+        frame(controller, false, 0.030, 0.0);
+        assertEquals(QualityController.FULL_QUALITY, controller.getLevel());
+        assertFalse(controller.isRenderRequired());
+        assertFalse(controller.getSkipAngles());
+        assertEquals(0.5f, controller.getLodLineWidth(0.5f), 0.0f);
+    }
+
+    @Test
+    public void testDisabled() {
+        QualityController controller = new QualityController(false, TARGET, 3);
+        frame(controller, true, 0.100, 0.100);
+        assertEquals(QualityController.FULL_QUALITY, controller.getLevel());
+        assertFalse(controller.isRenderRequired());
+    }
+}
@@ -0,0 +1,76 @@
+package celuk.gcodeviewer.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.util.Arrays;
+import org.joml.Vector3f;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tony Aldhous
+ */
+public class RenderParametersTest {
+
+    private RenderParameters renderedParameters() {
+        RenderParameters renderParameters = new RenderParameters();
+        renderParameters.clearSceneRenderRequired();
+        renderParameters.clearRenderRequired();
+        renderParameters.clearRenderRequired();
+        return renderParameters;
+    }
+
+    @Test
+    public void testGuiChangeDoesNotRequireScene() {
+        RenderParameters renderParameters = renderedParameters();
+        assertFalse(renderParameters.getRenderRequired());
+
+        renderParameters.setRenderRequired();
+        renderParameters.setFrameTime(0.01);
+        assertTrue(renderParameters.getRenderRequired());
+        assertFalse(renderParameters.getSceneRenderRequired());
+    }
+
+    @Test
+    public void testSceneChangeRequiresScene() {
+        RenderParameters renderParameters = renderedParameters();
+        renderParameters.setShowMoves(!renderParameters.getShowMoves());
+        assertTrue(renderParameters.getRenderRequired());
+        assertTrue(renderParameters.getSceneRenderRequired());
+
+        // The scene is rendered once, while the GUI is rendered twice.
+        renderParameters.clearSceneRenderRequired();
+        renderParameters.clearRenderRequired();
+        assertFalse(renderParameters.getSceneRenderRequired());
+        assertTrue(renderParameters.getRenderRequired());
+    }
+
+    @Test
+    public void testDataColouring() {
+        RenderParameters renderParameters = renderedParameters();
+        Vector3f defaultColour = new Vector3f(0.5f, 0.5f, 0.5f);
+        renderParameters.setDefaultColour(defaultColour);
+        renderParameters.setDataColourPalette(Arrays.asList(new Vector3f(0.0f, 0.0f, 1.0f),
+                                                            new Vector3f(0.0f, 1.0f, 0.0f),
+                                                            new Vector3f(1.0f, 0.0f, 0.0f),
+                                                            new Vector3f(1.0f, 1.0f, 1.0f)));
+        assertEquals(-1, renderParameters.getDataIndex());
+
+        renderParameters.clearSceneRenderRequired();
+        renderParameters.setDataColouring(4, 10.0, 30.0);
+        assertTrue(renderParameters.getSceneRenderRequired());
+        assertEquals(4, renderParameters.getDataColours().size());
+        assertEquals(0.05f, renderParameters.getDataScale(), 1.0e-6f);
+
+        // A range too small to spread over the palette takes its first colour.
+        renderParameters.setDataColouring(4, 10.0, 10.001);
+        assertEquals(4, renderParameters.getDataColours().size());
+        assertEquals(0.0f, renderParameters.getDataScale(), 0.0f);
+
+        // No range takes the default colour.
+        renderParameters.setDataColouring(4, 10.0, 10.0);
+        assertEquals(Arrays.asList(defaultColour), renderParameters.getDataColours());
+        assertEquals(0.0f, renderParameters.getDataScale(), 0.0f);
+    }
+}
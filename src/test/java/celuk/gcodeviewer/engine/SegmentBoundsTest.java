@@ -0,0 +1,104 @@
+package celuk.gcodeviewer.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tony Aldhous
+ */
+public class SegmentBoundsTest {
+
+    // Adds a segment along X from x to x + 2, at the given height.
+    private void addSegment(SegmentStore store, SegmentBounds bounds, float x, float z, int layer) {
+        int index = store.addSegment(new Vector3f(x + 1.0f, 0.0f, z), new Vector3f(1.0f, 0.0f, 0.0f), 2.0f, layer, store.size(), 0);
+        store.setExtrusion(index, new Vector3f(0.0f, 1.0f, 0.0f), 0.4f, 0.2f, "WALL-OUTER", 0, new Vector3f());
+        bounds.addSegment(store, index);
+    }
+
+    @Test
+    public void testChunksAndLayerBounds() {
+        SegmentStore store = new SegmentStore(true);
+        SegmentBounds bounds = new SegmentBounds();
+        for (int index = 0; index < SegmentBounds.CHUNK_SEGMENTS + 10; ++index)
+            addSegment(store, bounds, 0.0f, 0.2f, 0);
+        addSegment(store, bounds, 100.0f, 0.4f, 1);
+
+        // Layer 0 is split into two chunks, and layer 1 has its own chunk.
+        assertEquals(3, bounds.getNumberOfChunks());
+        assertEquals(SegmentBounds.CHUNK_SEGMENTS, bounds.getChunkEnd(0));
+        assertEquals(SegmentBounds.CHUNK_SEGMENTS + 10, bounds.getChunkStart(2));
+        assertEquals(1, bounds.getChunkLayer(2));
+        assertEquals(0, bounds.findChunk(0));
+        assertEquals(1, bounds.findChunk(SegmentBounds.CHUNK_SEGMENTS));
+        assertEquals(2, bounds.findChunk(SegmentBounds.CHUNK_SEGMENTS + 10));
+
+        // The boxes are expanded by the larger of the width and the thickness.
+        Vector3f minimum = new Vector3f();
+        Vector3f maximum = new Vector3f();
+        assertTrue(bounds.getLayerBounds(0, 0, minimum, maximum));
+        assertEquals(-0.4f, minimum.x, 1.0e-5f);
+        assertEquals(2.4f, maximum.x, 1.0e-5f);
+        assertEquals(-0.4f, minimum.y, 1.0e-5f);
+        assertEquals(0.6f, maximum.z, 1.0e-5f);
+        assertTrue(bounds.getLayerBounds(0, 1, minimum, maximum));
+        assertEquals(102.4f, maximum.x, 1.0e-5f);
+        assertFalse(bounds.getLayerBounds(2, 5, minimum, maximum));
+
+        bounds.renumberLayer(1, 4);
+        assertTrue(bounds.getLayerBounds(2, 5, minimum, maximum));
+        assertEquals(99.6f, minimum.x, 1.0e-5f);
+    }
+
+    @Test
+    public void testFrustumCulling() {
+        SegmentStore store = new SegmentStore(true);
+        SegmentBounds bounds = new SegmentBounds();
+        addSegment(store, bounds, 0.0f, 0.2f, 0);
+        addSegment(store, bounds, 100.0f, 0.2f, 1);
+
+        // Camera at (1, 0, 10) looking down at the first segment.
+        Matrix4f viewProjection = new Matrix4f().perspective((float)Math.toRadians(40.0), 1.0f, 0.1f, 100.0f)
+                                                .lookAt(1.0f, 0.0f, 10.0f, 1.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f);
+        FrustumIntersection frustum = new FrustumIntersection(viewProjection);
+        assertTrue(bounds.isChunkVisible(0, frustum));
+        assertFalse(bounds.isChunkVisible(1, frustum));
+    }
+
+    @Test
+    public void testUnmergeVisibleEnds() {
+        SegmentStore store = new SegmentStore(true);
+        SegmentBounds bounds = new SegmentBounds();
+        for (int layer = 0; layer < 4; ++layer)
+            addSegment(store, bounds, 0.0f, 0.2f * (layer + 1), layer);
+
+        // Camera far above the segments, so every chunk is merged.
+        Matrix4f viewProjection = new Matrix4f().perspective((float)Math.toRadians(40.0), 1.0f, 0.1f, 1000.0f)
+                                                .lookAt(1.0f, 0.0f, 500.0f, 1.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f);
+        FrustumIntersection frustum = new FrustumIntersection(viewProjection);
+        ChunkSelection selection = new ChunkSelection();
+        selection.select(bounds, frustum, new Vector3f(1.0f, 0.0f, 500.0f), 1.0f, 1.0f, 1.0f);
+        assertEquals(ChunkSelection.MERGED, selection.getLevel(0));
+        assertFalse(selection.hasLevel(ChunkSelection.LINES));
+
+        // The chunks holding the first and last visible segments are drawn from the original segments.
+        selection.unmergeVisibleEnds(bounds, 1, 3);
+        assertEquals(ChunkSelection.MERGED, selection.getLevel(0));
+        assertEquals(ChunkSelection.LINES, selection.getLevel(1));
+        assertEquals(ChunkSelection.LINES, selection.getLevel(2));
+        assertEquals(ChunkSelection.MERGED, selection.getLevel(3));
+        assertTrue(selection.hasLevel(ChunkSelection.LINES));
+
+        // Nothing changes when no segment is visible.
+        selection.unmergeVisibleEnds(bounds, 4, 4);
+        assertEquals(ChunkSelection.MERGED, selection.getLevel(3));
+
+        selection.unmergeVisibleEnds(bounds, 0, 4);
+        assertFalse(selection.hasLevel(ChunkSelection.MERGED));
+    }
+}
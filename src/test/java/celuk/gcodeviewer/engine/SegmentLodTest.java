@@ -0,0 +1,144 @@
+package celuk.gcodeviewer.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tony Aldhous
+ */
+public class SegmentLodTest {
+
+    private SegmentStore segments;
+    private SegmentBounds bounds;
+    private final Vector3f lastPoint = new Vector3f();
+
+    private void start(float x, float y) {
+        segments = new SegmentStore(true);
+        bounds = new SegmentBounds();
+        lastPoint.set(x, y, 0.2f);
+    }
+
+    // Adds a segment from the end of the previous segment to the given point.
+    private void lineTo(float x, float y, String type, int tool) {
+        Vector3f end = new Vector3f(x, y, 0.2f);
+        Vector3f direction = new Vector3f(end).sub(lastPoint);
+        float length = direction.length();
+        direction.normalize();
+        Vector3f position = new Vector3f(lastPoint).add(end).mul(0.5f);
+        int index = segments.addSegment(position, direction, length, 0, segments.size() + 1, tool);
+        segments.setExtrusion(index, new Vector3f(0.0f, 0.0f, 1.0f), 0.4f, 0.2f, type, (type.equals("FILL") ? 1 : 0), new Vector3f());
+        bounds.addSegment(segments, index);
+        lastPoint.set(end);
+    }
+
+    @Test
+    public void testMergeCollinearSegments() {
+        start(0.0f, 0.0f);
+        // A straight line in 10 steps, with a small wobble within the tolerance.
+        for (int step = 1; step <= 10; ++step)
+            lineTo(step, (step % 2) * 0.05f, "WALL", 0);
+        // A corner.
+        lineTo(10.0f, 5.0f, "WALL", 0);
+        lineTo(10.0f, 10.0f, "WALL", 0);
+        // A change of type, then of tool.
+        lineTo(10.0f, 15.0f, "FILL", 0);
+        lineTo(10.0f, 20.0f, "FILL", 1);
+
+        SegmentLod lod = SegmentLod.fromSegments(segments, bounds);
+        assertEquals(4, lod.getNumberOfSegments());
+        SegmentStore merged = lod.getMergedSegments();
+        assertEquals(0, lod.getFirstSegment(0));
+        assertEquals(10.0f, merged.getLength(0), 0.01f);
+        assertEquals(1, merged.getLineNumber(0));
+        assertEquals(10, lod.getFirstSegment(1));
+        assertEquals(10.0f, merged.getLength(1), 0.01f);
+        assertEquals(12, lod.getFirstSegment(2));
+        assertEquals("FILL", merged.getType(2));
+        assertEquals(13, lod.getFirstSegment(3));
+        assertEquals(1, merged.getToolNumber(3));
+
+        // The merged segments have the same chunks as the original segments.
+        assertEquals(bounds.getNumberOfChunks(), lod.getBounds().getNumberOfChunks());
+        assertEquals(lod.getNumberOfSegments(), lod.getBounds().getNumberOfSegments());
+    }
+
+    @Test
+    public void testMergeStopsAtChunks() {
+        start(0.0f, 0.0f);
+        for (int step = 1; step <= SegmentBounds.CHUNK_SEGMENTS + 1; ++step)
+            lineTo(0.1f * step, 0.0f, "WALL", 0);
+
+        SegmentLod lod = SegmentLod.fromSegments(segments, bounds);
+        assertEquals(2, bounds.getNumberOfChunks());
+        assertEquals(2, lod.getBounds().getNumberOfChunks());
+        // Each chunk is merged in runs of up to the maximum number of segments.
+        int nFirstChunk = SegmentBounds.CHUNK_SEGMENTS / SegmentLod.MAXIMUM_MERGED_SEGMENTS;
+        assertEquals(nFirstChunk + 1, lod.getNumberOfSegments());
+        assertEquals(nFirstChunk, lod.getBounds().getChunkStart(1));
+        assertEquals(SegmentBounds.CHUNK_SEGMENTS, lod.getFirstSegment(nFirstChunk));
+    }
+
+    @Test
+    public void testDistanceFromLine() {
+        Vector3f start = new Vector3f(0.0f, 0.0f, 0.0f);
+        Vector3f end = new Vector3f(10.0f, 0.0f, 0.0f);
+        assertEquals(1.0f, SegmentLod.getDistanceFromLine(new Vector3f(5.0f, 1.0f, 0.0f), start, end), 1.0e-5f);
+        assertEquals(2.0f, SegmentLod.getDistanceFromLine(new Vector3f(12.0f, 0.0f, 0.0f), start, end), 1.0e-5f);
+        assertEquals(5.0f, SegmentLod.getDistanceFromLine(new Vector3f(3.0f, 4.0f, 0.0f), start, start), 1.0e-5f);
+    }
+
+    @Test
+    public void testChunkSelection() {
+        start(0.0f, 0.0f);
+        lineTo(1.0f, 0.0f, "WALL", 0);
+        // Each layer is a separate chunk.
+        int index = segments.addSegment(new Vector3f(0.5f, 0.0f, -20.0f), new Vector3f(1.0f, 0.0f, 0.0f), 1.0f, 1, 2, 0);
+        segments.setExtrusion(index, new Vector3f(0.0f, 0.0f, 1.0f), 0.4f, 0.2f, "WALL", 4, new Vector3f());
+        bounds.addSegment(segments, index);
+        index = segments.addSegment(new Vector3f(0.5f, 0.0f, -200.0f), new Vector3f(1.0f, 0.0f, 0.0f), 1.0f, 2, 3, 0);
+        segments.setExtrusion(index, new Vector3f(0.0f, 0.0f, 1.0f), 0.4f, 0.2f, "WALL", 4, new Vector3f());
+        bounds.addSegment(segments, index);
+        index = segments.addSegment(new Vector3f(500.0f, 0.0f, 0.0f), new Vector3f(1.0f, 0.0f, 0.0f), 1.0f, 3, 4, 0);
+        segments.setExtrusion(index, new Vector3f(0.0f, 0.0f, 1.0f), 0.4f, 0.2f, "WALL", 4, new Vector3f());
+        bounds.addSegment(segments, index);
+
+        // Camera at z = 10 looking down the z axis.
+        Vector3f eye = new Vector3f(0.5f, 0.0f, 10.0f);
+        Matrix4f viewProjection = new Matrix4f().perspective((float)Math.toRadians(40.0), 1.0f, 0.1f, 1000.0f)
+                                                .lookAt(eye.x, eye.y, eye.z, 0.5f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f);
+        FrustumIntersection frustum = new FrustumIntersection(viewProjection);
+        ChunkSelection selection = new ChunkSelection();
+
+        // The segments are 0.4 wide: 4 pixels at 10, 1.3 pixels at 30, 0.19 pixels at 210.
+        selection.select(bounds, frustum, eye, 100.0f, 2.0f, 0.5f);
+        assertEquals(4, selection.getNumberOfChunks());
+        assertEquals(ChunkSelection.FULL, selection.getLevel(0));
+        assertEquals(ChunkSelection.LINES, selection.getLevel(1));
+        assertEquals(ChunkSelection.MERGED, selection.getLevel(2));
+        assertEquals(ChunkSelection.CULLED, selection.getLevel(3));
+        assertTrue(selection.hasLevel(ChunkSelection.LINES));
+
+        // Zero thresholds disable the lower levels.
+        selection.select(bounds, frustum, eye, 100.0f, 0.0f, 0.0f);
+        assertEquals(ChunkSelection.FULL, selection.getLevel(2));
+        assertFalse(selection.hasLevel(ChunkSelection.LINES | ChunkSelection.MERGED));
+
+        // The draw list of an entity only includes the chunks at the requested levels.
+        RawEntity entity = new RawEntity(0, segments.size());
+        entity.setSegmentBounds(bounds);
+        RenderParameters renderParameters = new RenderParameters();
+        renderParameters.setTopVisibleLine(Integer.MAX_VALUE);
+        selection.select(bounds, frustum, eye, 100.0f, 2.0f, 0.5f);
+        DrawList drawList = new DrawList();
+        entity.buildDrawList(drawList, renderParameters, selection, ChunkSelection.LINES | ChunkSelection.MERGED, 1);
+        assertEquals(1, drawList.size());
+        assertEquals(1, drawList.getFirst(0));
+        assertEquals(2, drawList.getCount(0));
+    }
+}
@@ -0,0 +1,56 @@
+package celuk.gcodeviewer.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.joml.Vector3f;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tony Aldhous
+ */
+public class SegmentMeshTest {
+
+    // Position of a mesh vertex, calculated as in segmentInstancedVertexShader.txt.
+    private Vector3f getPosition(float[] vertices, int vertexIndex, Vector3f d, Vector3f n, Vector3f b,
+                                 float length, float width, float thickness) {
+        int v = SegmentMesh.FLOATS_PER_VERTEX * vertexIndex;
+        float pyramidLength = Math.min(length, width);
+        return new Vector3f(d).mul(vertices[v] * length + vertices[v + 1] * pyramidLength)
+                              .add(new Vector3f(n).mul(vertices[v + 2] * width))
+                              .add(new Vector3f(b).mul(vertices[v + 3] * thickness))
+                              .mul(0.5f);
+    }
+
+    @Test
+    public void testMeshIsClosedAndFacesOutwards() {
+        float[] vertices = SegmentMesh.getVertices();
+        assertEquals(48, SegmentMesh.VERTEX_COUNT);
+        assertEquals(SegmentMesh.FLOATS_PER_VERTEX * SegmentMesh.VERTEX_COUNT, vertices.length);
+
+        Vector3f d = new Vector3f(1.0f, 0.0f, 0.0f);
+        Vector3f n = new Vector3f(0.0f, 0.0f, 1.0f);
+        Vector3f b = new Vector3f(n).cross(d).normalize();
+        float length = 4.0f;
+        float width = 0.4f;
+        float thickness = 0.2f;
+        // The block is convex, and its centre is half the thickness below the position.
+        Vector3f centre = new Vector3f(b).mul(-0.5f * thickness);
+
+        for (int triangle = 0; triangle < SegmentMesh.VERTEX_COUNT / 3; ++triangle) {
+            Vector3f p0 = getPosition(vertices, 3 * triangle, d, n, b, length, width, thickness);
+            Vector3f p1 = getPosition(vertices, 3 * triangle + 1, d, n, b, length, width, thickness);
+            Vector3f p2 = getPosition(vertices, 3 * triangle + 2, d, n, b, length, width, thickness);
+            Vector3f faceNormal = new Vector3f(p1).sub(p0).cross(new Vector3f(p2).sub(p0));
+            Vector3f outwards = new Vector3f(p0).add(p1).add(p2).div(3.0f).sub(centre);
+            // Front faces are counter-clockwise, as culling removes the back faces.
+            assertTrue("Triangle " + triangle + " faces inwards", faceNormal.dot(outwards) > 0.0f);
+
+            // The normals of the vertices are unit vectors along the axes of the segment.
+            for (int vertex = 0; vertex < 3; ++vertex) {
+                int v = SegmentMesh.FLOATS_PER_VERTEX * (3 * triangle + vertex) + 4;
+                assertEquals(1.0f, Math.abs(vertices[v]) + Math.abs(vertices[v + 1]) + Math.abs(vertices[v + 2]), 0.0f);
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package celuk.gcodeviewer.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.joml.Vector3f;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tony Aldhous
+ */
+public class SegmentPageTableTest {
+
+    private static final int SEGMENTS_PER_LAYER = 1000;
+    private static final int N_LAYERS = 10;
+
+    // Ten layers of one chunk each, in pages of two layers.
+    private SegmentPageTable createPageTable(int nSlots) {
+        SegmentStore store = new SegmentStore(true);
+        SegmentBounds bounds = new SegmentBounds();
+        for (int layer = 0; layer < N_LAYERS; ++layer) {
+            for (int segment = 0; segment < SEGMENTS_PER_LAYER; ++segment) {
+                int index = store.addSegment(new Vector3f(segment, 0.0f, 0.2f * layer), new Vector3f(1.0f, 0.0f, 0.0f), 1.0f,
+                                             layer, store.size(), 0);
+                store.setExtrusion(index, new Vector3f(0.0f, 1.0f, 0.0f), 0.4f, 0.2f, "WALL-OUTER", 0, new Vector3f());
+                bounds.addSegment(store, index);
+            }
+        }
+        return new SegmentPageTable(bounds, nSlots, 2 * SEGMENTS_PER_LAYER + 48);
+    }
+
+    private void loadWantedPages(SegmentPageTable pageTable) {
+        for (int page = pageTable.nextPageToLoad(); page >= 0; page = pageTable.nextPageToLoad())
+            assertTrue(pageTable.makeResident(page) >= 0);
+    }
+
+    @Test
+    public void testPages() {
+        SegmentPageTable pageTable = createPageTable(3);
+        assertEquals(5, pageTable.getNumberOfPages());
+        assertEquals(2 * SEGMENTS_PER_LAYER, pageTable.getPageStart(1));
+        assertEquals(4 * SEGMENTS_PER_LAYER, pageTable.getPageEnd(1));
+        assertEquals(N_LAYERS * SEGMENTS_PER_LAYER, pageTable.getPageEnd(4));
+        assertEquals(2, pageTable.getPageOfChunk(5));
+        assertEquals(-1, pageTable.getSlot(0));
+    }
+
+    @Test
+    public void testResidency() {
+        SegmentPageTable pageTable = createPageTable(3);
+
+        // Only the top pages of all the layers fit in the slots.
+        pageTable.setRenderedLayers(0, N_LAYERS - 1);
+        assertEquals(4, pageTable.nextPageToLoad());
+        loadWantedPages(pageTable);
+        assertEquals(0, pageTable.getSlot(4));
+        assertEquals(1, pageTable.getSlot(3));
+        assertEquals(2, pageTable.getSlot(2));
+        assertEquals(-1, pageTable.getSlot(1));
+
+        // The bottom page and its neighbour replace the least recently wanted pages.
+        pageTable.setRenderedLayers(0, 1);
+        loadWantedPages(pageTable);
+        assertEquals(0, pageTable.getSlot(0));
+        assertEquals(1, pageTable.getSlot(1));
+        assertEquals(2, pageTable.getSlot(2));
+        assertEquals(-1, pageTable.getSlot(4));
+        assertEquals(SEGMENTS_PER_LAYER * 2 + 48, pageTable.getSlotStart(1));
+
+        // Pages still wanted are kept.
+        pageTable.setRenderedLayers(4, 5);
+        assertEquals(3, pageTable.nextPageToLoad());
+        loadWantedPages(pageTable);
+        assertEquals(0, pageTable.getSlot(3));
+        assertEquals(1, pageTable.getSlot(1));
+        assertEquals(2, pageTable.getSlot(2));
+
+        pageTable.evictAll();
+        assertEquals(-1, pageTable.getSlot(2));
+    }
+}
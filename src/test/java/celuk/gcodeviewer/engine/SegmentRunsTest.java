@@ -0,0 +1,137 @@
+package celuk.gcodeviewer.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.joml.Vector3f;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tony Aldhous
+ */
+public class SegmentRunsTest {
+
+    private static final String[] TYPES = {"WALL-OUTER", "FILL", "SUPPORT"};
+
+    // Each segment is given as a type index and a tool number, on consecutive lines.
+    private SegmentStore createStore(int[][] segments) {
+        SegmentStore store = new SegmentStore(true);
+        int lineNumber = 1;
+        for (int[] segment : segments) {
+            int index = store.addSegment(new Vector3f(), new Vector3f(1.0f, 0.0f, 0.0f), 1.0f, 0, lineNumber++, segment[1]);
+            store.setExtrusion(index, new Vector3f(0.0f, 1.0f, 0.0f), 0.4f, 0.2f,
+                               TYPES[segment[0]], segment[0], new Vector3f());
+        }
+        return store;
+    }
+
+    private SegmentStore createMixedStore() {
+        // Runs: 0-1 (wall, T0), 2-4 (fill, T0), 5-6 (support, T1), 7 (wall, T1), 8-9 (wall, T0).
+        return createStore(new int[][] {
+            {0, 0}, {0, 0}, {1, 0}, {1, 0}, {1, 0}, {2, 1}, {2, 1}, {0, 1}, {0, 0}, {0, 0}
+        });
+    }
+
+    @Test
+    public void testRuns() {
+        SegmentRuns runs = SegmentRuns.fromSegments(createMixedStore());
+        assertEquals(5, runs.getNumberOfRuns());
+        assertEquals(10, runs.getNumberOfSegments());
+        assertEquals(0, runs.findRun(0));
+        assertEquals(0, runs.findRun(1));
+        assertEquals(1, runs.findRun(2));
+        assertEquals(3, runs.findRun(7));
+        assertEquals(4, runs.findRun(9));
+
+        assertEquals(0, SegmentRuns.fromSegments(createStore(new int[][] {})).getNumberOfRuns());
+    }
+
+    @Test
+    public void testAllShown() {
+        SegmentRuns runs = SegmentRuns.fromSegments(createMixedStore());
+        DrawList drawList = new DrawList();
+
+        // Adjacent runs are merged into a single draw.
+        runs.addShownSegments(drawList, 0, 10, -1, -1, 1);
+        assertEquals(1, drawList.size());
+        assertEquals(0, drawList.getFirst(0));
+        assertEquals(10, drawList.getCount(0));
+
+        // The range is clipped to the visible segments.
+        drawList.clear();
+        runs.addShownSegments(drawList, 3, 6, -1, -1, 48);
+        assertEquals(1, drawList.size());
+        assertEquals(3 * 48, drawList.getFirst(0));
+        assertEquals(3 * 48, drawList.getCount(0));
+    }
+
+    @Test
+    public void testHiddenTypesAndTools() {
+        SegmentRuns runs = SegmentRuns.fromSegments(createMixedStore());
+        DrawList drawList = new DrawList();
+
+        // Only support.
+        runs.addShownSegments(drawList, 0, 10, -1, 1 << 2, 1);
+        assertEquals(1, drawList.size());
+        assertEquals(5, drawList.getFirst(0));
+        assertEquals(2, drawList.getCount(0));
+
+        // Hide tool 1.
+        drawList.clear();
+        runs.addShownSegments(drawList, 0, 10, 1, -1, 1);
+        assertEquals(2, drawList.size());
+        assertEquals(0, drawList.getFirst(0));
+        assertEquals(5, drawList.getCount(0));
+        assertEquals(8, drawList.getFirst(1));
+        assertEquals(2, drawList.getCount(1));
+
+        // Hide fill, in a range that starts and ends part way through runs.
+        drawList.clear();
+        runs.addShownSegments(drawList, 1, 9, -1, ~(1 << 1), 1);
+        assertEquals(2, drawList.size());
+        assertEquals(1, drawList.getFirst(0));
+        assertEquals(1, drawList.getCount(0));
+        assertEquals(5, drawList.getFirst(1));
+        assertEquals(4, drawList.getCount(1));
+
+        // Hide everything.
+        drawList.clear();
+        runs.addShownSegments(drawList, 0, 10, 0, -1, 1);
+        assertTrue(drawList.isEmpty());
+    }
+
+    @Test
+    public void testUntypedRun() {
+        // Segments before the first type comment have a type index of -1, and are drawn as type 0.
+        SegmentStore store = new SegmentStore(true);
+        for (int lineNumber = 1; lineNumber <= 4; ++lineNumber) {
+            int index = store.addSegment(new Vector3f(), new Vector3f(1.0f, 0.0f, 0.0f), 1.0f, 0, lineNumber, 1);
+            if (lineNumber <= 2)
+                store.setExtrusion(index, new Vector3f(0.0f, 1.0f, 0.0f), 0.4f, 0.2f, "", -1, new Vector3f());
+            else
+                store.setExtrusion(index, new Vector3f(0.0f, 1.0f, 0.0f), 0.4f, 0.2f, "FILL", 1, new Vector3f());
+        }
+        SegmentRuns runs = SegmentRuns.fromSegments(store);
+        assertEquals(2, runs.getNumberOfRuns());
+
+        DrawList drawList = new DrawList();
+        runs.addShownSegments(drawList, 0, 4, -1, 0xFFFF, 1);
+        assertEquals(1, drawList.size());
+        assertEquals(0, drawList.getFirst(0));
+        assertEquals(4, drawList.getCount(0));
+    }
+
+    @Test
+    public void testDrawListGrows() {
+        DrawList drawList = new DrawList();
+        for (int range = 0; range < 1000; ++range)
+            drawList.add(2 * range, 1);
+        assertEquals(1000, drawList.size());
+        assertEquals(1000, drawList.getFirsts().remaining());
+        assertEquals(1998, drawList.getFirst(999));
+
+        // Adding after the buffers have been read.
+        drawList.add(2000, 1);
+        assertEquals(1001, drawList.getCounts().remaining());
+    }
+}
@@ -0,0 +1,55 @@
+package celuk.gcodeviewer.engine;
+
+import celuk.gcodeviewer.entities.Entity;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.joml.Vector3f;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tony Aldhous
+ */
+public class SegmentStoreTest {
+    @Test
+    public void testSegmentStore() {
+        SegmentStore store = new SegmentStore(true);
+        Vector3f fillColour = new Vector3f(1.0f, 0.0f, 0.0f);
+        Vector3f wallColour = new Vector3f(0.0f, 1.0f, 0.0f);
+        Vector3f normal = new Vector3f(0.0f, 1.0f, 0.0f);
+
+        // Add enough segments to make the store grow.
+        int nSegments = 5000;
+        for (int i = 0; i < nSegments; ++i) {
+            int index = store.addSegment(new Vector3f(i, 2.0f * i, 0.3f), new Vector3f(1.0f, 0.0f, 0.0f), 0.5f + i,
+                                         i / 100, i + 10, i % 2);
+            assertEquals(i, index);
+            if (i % 3 == 0)
+                store.setExtrusion(index, normal, 0.4f, 0.2f, "FILL", 3, fillColour);
+            else
+                store.setExtrusion(index, normal, 0.4f, 0.2f, "WALL-OUTER", 7, wallColour);
+            store.setDataValue(index, Entity.DATA_E, 0.01f * i);
+        }
+        assertEquals(nSegments, store.size());
+
+        int i = 4321;
+        assertEquals(i, store.getPositions()[3 * i], 0.0);
+        assertEquals(2.0f * i, store.getPositions()[3 * i + 1], 0.0);
+        assertEquals(0.5f + i, store.getLength(i), 0.0);
+        assertEquals(i / 100, store.getLayer(i));
+        assertEquals(i + 10, store.getLineNumber(i));
+        assertEquals(i % 2, store.getToolNumber(i));
+        assertEquals("WALL-OUTER", store.getType(i));
+        assertEquals(7, store.getTypeIndex(i));
+        assertEquals("FILL", store.getType(i - 1));
+        assertEquals(3, store.getTypeIndex(i - 1));
+        assertEquals(0.01f * i, store.getDataValue(i, Entity.DATA_E), 0.0);
+        assertEquals(0.0f, store.getDataValue(i, Entity.DATA_B), 0.0);
+
+        assertEquals(wallColour, store.getTypeColour(i));
+        assertEquals(fillColour, store.getTypeColour(i - 1));
+
+        store.clear();
+        assertTrue(store.isEmpty());
+    }
+}
@@ -0,0 +1,115 @@
+package celuk.gcodeviewer.engine;
+
+import celuk.gcodeviewer.entities.Entity;
+import static org.junit.Assert.assertEquals;
+import java.nio.ByteBuffer;
+import org.joml.Vector3f;
+import org.junit.Test;
+
+/**
+ *
+ * @author Tony Aldhous
+ */
+public class SegmentVertexBufferTest {
+    @Test
+    public void testSegmentVertexBuffer() {
+        SegmentStore store = new SegmentStore(true);
+        SegmentVertexBuffer vertexBuffer = new SegmentVertexBuffer();
+        Vector3f colour = new Vector3f(1.0f, 0.0f, 0.0f);
+        Vector3f normal = new Vector3f(0.0f, 1.0f, 0.0f);
+
+        // Add enough segments to fill more than one page.
+        int nSegments = SegmentVertexBuffer.SEGMENTS_PER_PAGE + 10;
+        for (int i = 0; i < nSegments; ++i) {
+            int layer = (i < 5 ? Entity.NULL_LAYER : i / 100);
+            int index = store.addSegment(new Vector3f(i, 2.0f * i, 0.3f), new Vector3f(1.0f, 0.0f, 0.0f), 0.5f,
+                                         layer, i + 10, i % 2);
+            store.setExtrusion(index, normal, 0.4f, 0.2f, "FILL", 3, colour);
+            store.setDataValue(index, Entity.DATA_B, 90.0f);
+            vertexBuffer.addSegment(store, index);
+        }
+        assertEquals(nSegments, vertexBuffer.size());
+        assertEquals(2, vertexBuffer.getNumberOfPages());
+        assertEquals(SegmentVertexBuffer.SEGMENTS_PER_PAGE * SegmentVertexBuffer.BYTES_PER_SEGMENT,
+                     vertexBuffer.getPage(0).limit());
+        assertEquals(10 * SegmentVertexBuffer.BYTES_PER_SEGMENT, vertexBuffer.getPage(1).limit());
+
+        // A NULL layer is replaced by the line number.
+        ByteBuffer page = vertexBuffer.getPage(0);
+        int p = 2 * SegmentVertexBuffer.BYTES_PER_SEGMENT;
+        assertEquals(12, page.getInt(p + SegmentVertexBuffer.ATTRIBUTES_OFFSET + 4));
+        vertexBuffer.setLayer(2, 0);
+        assertEquals(0, page.getInt(p + SegmentVertexBuffer.ATTRIBUTES_OFFSET + 4));
+
+        // Last segment, on the second page.
+        int i = nSegments - 1;
+        page = vertexBuffer.getPage(1);
+        p = 9 * SegmentVertexBuffer.BYTES_PER_SEGMENT;
+        assertEquals(i, page.getFloat(p + SegmentVertexBuffer.POSITION_OFFSET), 0.0);
+        assertEquals(2.0f * i, page.getFloat(p + SegmentVertexBuffer.POSITION_OFFSET + 4), 0.0);
+        assertEquals(32767, page.getShort(p + SegmentVertexBuffer.NORMAL_OFFSET + 2));
+        assertEquals(SegmentVertexBuffer.toHalfFloat(0.4f), page.getShort(p + SegmentVertexBuffer.DIMENSION_OFFSET + 2));
+        assertEquals(3 | ((i % 2) << SegmentVertexBuffer.TYPE_BITS), page.getInt(p + SegmentVertexBuffer.ATTRIBUTES_OFFSET));
+        assertEquals(i / 100, page.getInt(p + SegmentVertexBuffer.ATTRIBUTES_OFFSET + 4));
+        assertEquals(i + 10, page.getInt(p + SegmentVertexBuffer.ATTRIBUTES_OFFSET + 8));
+        assertEquals(32767, page.getShort(p + SegmentVertexBuffer.ANGLE_OFFSET + 2));
+
+        vertexBuffer.clear();
+        assertEquals(0, vertexBuffer.size());
+    }
+
+    @Test
+    public void testHalfFloat() {
+        assertEquals(0x3c00, SegmentVertexBuffer.toHalfFloat(1.0f));
+        assertEquals(0x3666, SegmentVertexBuffer.toHalfFloat(0.4f));
+        assertEquals((short)0xc000, SegmentVertexBuffer.toHalfFloat(-2.0f));
+        // Rounded up to the next power of two.
+        assertEquals(0x4000, SegmentVertexBuffer.toHalfFloat(1.9999f));
+        assertEquals(0x7bff, SegmentVertexBuffer.toHalfFloat(1.0e6f));
+        assertEquals(0, SegmentVertexBuffer.toHalfFloat(1.0e-6f));
+    }
+
+    @Test
+    public void testOctahedral() {
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        SegmentVertexBuffer.putOctahedral(buffer, 0, 0.0f, 1.0f, 0.0f);
+        assertEquals(0, buffer.getShort(0));
+        assertEquals(32767, buffer.getShort(2));
+
+        // The lower half is folded onto the corners.
+        SegmentVertexBuffer.putOctahedral(buffer, 0, 0.0f, 0.0f, -1.0f);
+        assertEquals(32767, buffer.getShort(0));
+        assertEquals(32767, buffer.getShort(2));
+
+        SegmentVertexBuffer.putOctahedral(buffer, 0, -0.6f, 0.0f, -0.8f);
+        assertEquals(-32767, buffer.getShort(0));
+        assertEquals(32767.0f * 0.8f / 1.4f, buffer.getShort(2), 1.0f);
+    }
+
+    @Test
+    public void testLargeLineNumber() {
+        // Line numbers beyond the precision of a float are stored exactly.
+        SegmentStore store = new SegmentStore(true);
+        SegmentVertexBuffer vertexBuffer = new SegmentVertexBuffer();
+        int lineNumber = (1 << 24) + 1;
+        int index = store.addSegment(new Vector3f(0.0f, 0.0f, 0.0f), new Vector3f(1.0f, 0.0f, 0.0f), 0.5f,
+                                     3, lineNumber, 0);
+        store.setExtrusion(index, new Vector3f(0.0f, 1.0f, 0.0f), 0.4f, 0.2f, "FILL", 3, new Vector3f(1.0f, 0.0f, 0.0f));
+        vertexBuffer.addSegment(store, index);
+        assertEquals(lineNumber, vertexBuffer.getPage(0).getInt(SegmentVertexBuffer.ATTRIBUTES_OFFSET + 8));
+    }
+
+    @Test
+    public void testUnknownType() {
+        // The type index is -1 before the first type comment, or for a type with no colour.
+        SegmentStore store = new SegmentStore(true);
+        SegmentVertexBuffer vertexBuffer = new SegmentVertexBuffer();
+        int index = store.addSegment(new Vector3f(0.0f, 0.0f, 0.0f), new Vector3f(1.0f, 0.0f, 0.0f), 0.5f,
+                                     3, 10, 1);
+        store.setExtrusion(index, new Vector3f(0.0f, 1.0f, 0.0f), 0.4f, 0.2f, "", -1, new Vector3f(1.0f, 1.0f, 1.0f));
+        vertexBuffer.addSegment(store, index);
+        int attributes = vertexBuffer.getPage(0).getInt(SegmentVertexBuffer.ATTRIBUTES_OFFSET);
+        assertEquals(0, attributes & ((1 << SegmentVertexBuffer.TYPE_BITS) - 1));
+        assertEquals(1, attributes >> SegmentVertexBuffer.TYPE_BITS);
+    }
+}
@@ -0,0 +1,134 @@
+package celuk.gcodeviewer.gcode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+/**
+ * Checks the FastGCodeParser against the reference parboiled parser.
+ *
+ * @author Tony Aldhous
+ */
+public class FastGCodeParserTest {
+
+    private static final String[] TEST_LINES = {
+        ";Generated with Cura_SteamEngine Robox 1.5",
+        "=Alternative comment",
+        "<Another alternative comment",
+        ";Layer count: 30",
+        ";LAYER:0",
+        ";LAYER : 0",
+        ";LAYER:12 height:",
+        ";LAYER:1height:0.500",
+        ";LAYER :1 height : 0.500",
+        ";layer:-2 HEIGHT:+0.25 extra text",
+        ";LAYER:",
+        ";LAYER_COUNT:30",
+        ";TYPE:WALL-INNER",
+        ";TYPE : WALL-INNER",
+        ";type:support_interface",
+        ";TYPE:",
+        ";# infillLayerThickness = 0.3",
+        ";#fillExtrusionWidth_mm=0.5",
+        ";# x = 1",
+        ";# badSetting = -1",
+        "G0 F12000 X47.246 Y72.381 Z0.300",
+        "G0 F 12000 X 47.246 Y 72 Z 0.300",
+        "G1 X-10.5 Y+.25 E-0.0001",
+        "G1 X10 Y",
+        "G1 X Y",
+        "G28 X Y Z",
+        "G90",
+        "G91 X Y Z",
+        "G92 E0",
+        "G1 X1. Y2",
+        "G1 X1 y2 Z3",
+        "G1 X-",
+        "G1 X10 ; move to X10",
+        "G1 X10;",
+        "G1 B0.3 ;PARTIAL OPEN B0.102",
+        "G1 B0.3 ; partial  open b 0.102 trailing",
+        "G1 B0.3 ;PARTIAL OPEN B",
+        "G1 X123456789.123456789 Y0.00000000000000000001",
+        "G1 X0.1234567890123456789",
+        "M83",
+        "M 104 S210",
+        "T1",
+        "T0 ; tool zero",
+        "G1X10Y20",
+        "G",
+        "GX",
+        "N10 G1 X10",
+        "X10",
+        ";comment with non-ASCII \u00e9\u00e8 \u2713",
+        "G1 X5 ;\u00e9",
+    };
+
+    @Test
+    public void testAgainstReferenceParser() {
+        ParboiledGCodeParser referenceParser = new ParboiledGCodeParser();
+        FastGCodeParser stringParser = new FastGCodeParser();
+        FastGCodeParser byteParser = new FastGCodeParser();
+        Map<String, Double> referenceSettings = new HashMap<>();
+        Map<String, Double> stringSettings = new HashMap<>();
+        Map<String, Double> byteSettings = new HashMap<>();
+        referenceParser.setSettingsMap(referenceSettings);
+        stringParser.setSettingsMap(stringSettings);
+        byteParser.setSettingsMap(byteSettings);
+
+        for (String testLine : TEST_LINES) {
+            referenceParser.resetLine();
+            stringParser.resetLine();
+            byteParser.resetLine();
+            boolean referenceMatched = referenceParser.parse(testLine);
+            assertEquals(testLine, referenceMatched, stringParser.parse(testLine));
+
+            // Parse the line from the middle of a larger buffer.
+            byte[] lineBytes = testLine.getBytes(StandardCharsets.UTF_8);
+            byte[] buffer = new byte[lineBytes.length + 8];
+            System.arraycopy(lineBytes, 0, buffer, 3, lineBytes.length);
+            assertEquals(testLine, referenceMatched, byteParser.parse(buffer, 3, 3 + lineBytes.length));
+
+            if (referenceMatched) {
+                compareLines(testLine, referenceParser.getLine(), stringParser.getLine());
+                compareLines(testLine, referenceParser.getLine(), byteParser.getLine());
+            }
+        }
+        assertEquals(referenceSettings, stringSettings);
+        assertEquals(referenceSettings, byteSettings);
+    }
+
+    @Test
+    public void testNumbers() {
+        FastGCodeParser parser = new FastGCodeParser();
+        String[] numbers = { "0", "-0", "1", "0.1", ".1", "47.246", "-72.381", "12000", "0.000001",
+                             "3.14159265358979", "123456.789012", "99999999999.9999", "0.30000000000000004" };
+        for (String number : numbers) {
+            parser.resetLine();
+            assertTrue(parser.parse("G1 X" + number));
+            assertEquals(number, Double.valueOf(number), parser.getLine().getValue('X', 0.0), 0.0);
+        }
+    }
+
+    @Test
+    public void testUnmatchedLine() {
+        FastGCodeParser parser = new FastGCodeParser();
+        parser.resetLine();
+        assertFalse(parser.parse("N10 G1 X10"));
+        assertEquals("no match.", parser.getErrorReport());
+    }
+
+    private void compareLines(String testLine, GCodeLine expected, GCodeLine actual) {
+        assertEquals(testLine, expected.commandLetter, actual.commandLetter);
+        assertEquals(testLine, expected.commandNumber, actual.commandNumber);
+        assertEquals(testLine, expected.layerNumber, actual.layerNumber);
+        assertEquals(testLine, expected.layerHeight, actual.layerHeight, 0.0);
+        assertEquals(testLine, expected.type, actual.type);
+        assertEquals(testLine, expected.comment, actual.comment);
+        assertEquals(testLine, expected.getValueMap(), actual.getValueMap());
+    }
+}
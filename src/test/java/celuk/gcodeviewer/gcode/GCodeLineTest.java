@@ -5,6 +5,8 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import celuk.gcodeviewer.gcode.GCodeLine;
+import java.util.HashMap;
+import java.util.Map;
 import org.junit.Test;
 
 /**
@@ -44,5 +46,31 @@ public class GCodeLineTest {
         assertEquals(line.getValue('A', 0.0), 5.2, 0.0005);
         assertEquals(line.getValue('E', 404.0), 404.0, 0.0005);
     }
+
+    @Test
+    public void testValueMapView() {
+        
+        GCodeLine line = new GCodeLine();
+        line.setValue('X', 10.5);
+        line.setValue('b', 0.102);
+        line.setValue('B', 0.3);
+
+        assertTrue(line.isValueSet('b'));
+        assertEquals(line.getValue('b', 0.0), 0.102, 0.0005);
+        assertEquals(line.getValue('B', 0.0), 0.3, 0.0005);
+
+        Map<Character, Double> expected = new HashMap<>();
+        expected.put('X', 10.5);
+        expected.put('b', 0.102);
+        expected.put('B', 0.3);
+        assertEquals(expected, line.getValueMap());
+        assertEquals(3, line.getValueMap().size());
+
+        line.reset();
+        assertTrue(line.hasNoValues());
+        assertTrue(line.getValueMap().isEmpty());
+        assertFalse(line.isValueSet('X'));
+        assertEquals(line.getValue('X', 404.0), 404.0, 0.0005);
+    }
     
 }